@@ -1,12 +1,14 @@
 package org.sahagin.main;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.sahagin.report.HtmlReport;
 import org.sahagin.share.AcceptableLocales;
 import org.sahagin.share.Config;
 import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.IllegalTestScriptException;
+import org.sahagin.share.JavaConfig;
 import org.sahagin.share.Logging;
 import org.sahagin.share.SysMessages;
 import org.sahagin.share.yaml.YamlConvertException;
@@ -17,7 +19,8 @@ public class SahaginMain {
     private static final String MSG_CONFIG_NOT_FOUND = "config file not found: %s";
 
     private enum Action {
-        Report("report");
+        Report("report"),
+        SrcTree("srcTree");
 
         private String value;
 
@@ -40,9 +43,13 @@ public class SahaginMain {
 
     }
 
-    // first argument is action name (now "report" only), second argument is configuration file path
+    // first argument is action name ("report" or "srcTree"), second argument is configuration file path.
+    // "srcTree" action generates SrcTree before test execution
+    // so that SahaginPreMain can skip the source parsing at test JVM startup.
+    // It should be called after the test sources are compiled
     public static void main(String[] args)
-            throws YamlConvertException, IllegalDataStructureException, IllegalTestScriptException {
+            throws YamlConvertException, IllegalDataStructureException, IllegalTestScriptException,
+            IOException, ClassNotFoundException, InstantiationException, IllegalAccessException {
         if (args.length == 0) {
             throw new IllegalArgumentException(MSG_NO_COMMAND_LINE_ARGUMENT);
         }
@@ -72,6 +79,9 @@ public class SahaginMain {
         case Report:
             report(config);
             break;
+        case SrcTree:
+            srcTree(JavaConfig.generateFromYamlConfig(configFile), locales);
+            break;
         default:
             throw new RuntimeException("implementation error");
         }
@@ -83,4 +93,11 @@ public class SahaginMain {
         report.generate(config.getRootBaseReportInputIntermediateDataDirs(),
                 config.getRootBaseReportOutputDir());
     }
+
+    private static void srcTree(JavaConfig config, AcceptableLocales locales)
+            throws IllegalTestScriptException, IOException,
+            ClassNotFoundException, InstantiationException, IllegalAccessException {
+        SahaginPreMain.initializeAdapters(config, locales);
+        SahaginPreMain.generatePrebuiltSrcTree(config, locales);
+    }
 }
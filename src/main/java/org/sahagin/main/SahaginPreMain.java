@@ -3,6 +3,8 @@ package org.sahagin.main;
 import java.io.File;
 import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
@@ -20,28 +22,35 @@ import org.sahagin.runlib.external.adapter.junit4.JUnit4Adapter;
 import org.sahagin.runlib.external.adapter.selendroid.SelendroidAdapter;
 import org.sahagin.runlib.external.adapter.testng.TestNGAdapter;
 import org.sahagin.runlib.external.adapter.webdriver.WebDriverAdapter;
+import org.sahagin.runlib.runresultsgen.HookRegistry;
 import org.sahagin.runlib.runresultsgen.RunResultsGenerateHookSetter;
+import org.sahagin.runlib.runresultsgen.RuntimeSrcTree;
 import org.sahagin.runlib.srctreegen.SrcTreeGenerator;
+import org.sahagin.runlib.srctreegen.TestSelection;
 import org.sahagin.share.AcceptableLocales;
 import org.sahagin.share.CommonPath;
+import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.IllegalTestScriptException;
 import org.sahagin.share.JavaConfig;
 import org.sahagin.share.Logging;
 import org.sahagin.share.SrcTreeChecker;
 import org.sahagin.share.SysMessages;
 import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.SrcTreeFiles;
+import org.sahagin.share.srctree.SrcTreeSnapshot;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlUtils;
 
 //provides premain method to generate SrcTree and RunResults and
 //generate HTML report from them
 public class SahaginPreMain {
+    private static Logger logger = Logging.getLogger(SahaginPreMain.class.getName());
     private static final String MSG_TEST_FRAMEWORK_NOT_FOUND
     = "testFramework not found: %s";
 
     // agentArgs is configuration YAML file path
     public static void premain(String agentArgs, Instrumentation inst)
-            throws YamlConvertException, IllegalTestScriptException,
+            throws YamlConvertException, IllegalTestScriptException, IllegalDataStructureException,
             IOException, ClassNotFoundException, InstantiationException, IllegalAccessException {
         String configFilePath;
         String propValue = System.getProperty("sahagin.configPath");
@@ -54,10 +63,53 @@ public class SahaginPreMain {
             configFilePath = "sahagin.yml";
         }
         JavaConfig config = JavaConfig.generateFromYamlConfig(new File(configFilePath));
+        // the test methods selected by the test runner, such as -Dsahagin.testSelection=${test}
+        // for Maven surefire plugin
+        String testSelectionValue = System.getProperty("sahagin.testSelection");
+        if (!StringUtils.isBlank(testSelectionValue)) {
+            config.setTestSelection(testSelectionValue);
+        }
         Logging.setLoggerEnabled(config.isOutputLog());
         AcceptableLocales locales = AcceptableLocales.getInstance(config.getUserLocale());
-        JavaAdapterContainer.globalInitialize(locales, config.getTestFramework());
         SysMessages.globalInitialize(locales);
+        initializeAdapters(config, locales);
+
+        // delete previous data
+        if (config.getRootBaseRunOutputIntermediateDataDir().exists()) {
+            FileUtils.deleteDirectory(config.getRootBaseRunOutputIntermediateDataDir());
+        }
+        FileUtils.deleteQuietly(CommonPath.intermediateDataArchiveFile(
+                config.getRootBaseRunOutputIntermediateDataDir()));
+
+        SrcTree srcTree = loadPrebuiltSrcTree(config, locales);
+        if (srcTree == null) {
+            srcTree = generateSrcTree(config, locales);
+        }
+        // dump srcTree
+        SrcTreeFiles.dump(srcTree,
+                config.getRootBaseRunOutputIntermediateDataDir(), config.usesSrcTreeBinary());
+
+        // the transformer holds only the runtime projection of srcTree.
+        // If the snapshot is written, code bodies are read from it only for the transformed classes
+        RuntimeSrcTree runtimeSrcTree;
+        if (config.usesSrcTreeBinary()) {
+            runtimeSrcTree = new RuntimeSrcTree(SrcTreeSnapshot.open(
+                    CommonPath.srcTreeSnapshotFile(config.getRootBaseRunOutputIntermediateDataDir())));
+        } else {
+            runtimeSrcTree = new RuntimeSrcTree(srcTree);
+        }
+        // the inserted hooks get config and srcTree from the registry
+        // instead of loading them again
+        HookRegistry.globalInitialize(config, runtimeSrcTree);
+        RunResultsGenerateHookSetter transformer
+        = new RunResultsGenerateHookSetter(HookRegistry.globalInstance());
+        inst.addTransformer(transformer);
+    }
+
+    // also used by SahaginMain
+    static void initializeAdapters(JavaConfig config, AcceptableLocales locales)
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+        JavaAdapterContainer.globalInitialize(locales, config.getTestFramework());
 
         // default adapters
         new JavaSystemAdapter().initialSetAdapter();
@@ -87,27 +139,91 @@ public class SahaginPreMain {
             throw new RuntimeException(String.format(
                     MSG_TEST_FRAMEWORK_NOT_FOUND, config.getTestFramework()));
         }
+    }
 
-        // delete previous data
-        if (config.getRootBaseRunOutputIntermediateDataDir().exists()) {
-            FileUtils.deleteDirectory(config.getRootBaseRunOutputIntermediateDataDir());
+    // adapters must be initialized before calling this method
+    static SrcTreeGenerator createSrcTreeGenerator(JavaConfig config, AcceptableLocales locales) {
+        SrcTreeGenerator generator = new SrcTreeGenerator(
+                AdapterContainer.globalInstance().getAdditionalTestDocs(), locales);
+        generator.setParseThreadCount(config.getSrcTreeParseThreads());
+        generator.setPrefilter(config.usesSrcTreePrefilter());
+        generator.setParseBatchSize(config.getSrcTreeParseBatchSize());
+        generator.setPrunesUnreachable(config.usesSrcTreePruneUnreachable());
+        generator.setRemovesUnreachable(config.usesSrcTreeRemoveUnreachable());
+        generator.setTestSelection(TestSelection.parse(config.getTestSelection()));
+        generator.setSrcFileFilter(config.getSrcTreeIncludes(), config.getSrcTreeExcludes());
+        if (config.usesSrcTreeCache()) {
+            generator.setCacheDir(config.getRootBaseSrcTreeCacheDir());
         }
-
-        SrcTree srcTree = generateAndDumpSrcTree(config, locales);
-        RunResultsGenerateHookSetter transformer = new RunResultsGenerateHookSetter(configFilePath, srcTree);
-        inst.addTransformer(transformer);
+        return generator;
     }
 
-    private static SrcTree generateAndDumpSrcTree(JavaConfig config, AcceptableLocales locales)
+    private static SrcTree generateSrcTree(JavaConfig config, AcceptableLocales locales)
             throws IllegalTestScriptException {
-        // generate and dump srcTree
-        SrcTreeGenerator generator = new SrcTreeGenerator(
-                AdapterContainer.globalInstance().getAdditionalTestDocs(), locales);
-        File srcTreeFile = CommonPath.srcTreeFile(config.getRootBaseRunOutputIntermediateDataDir());
+        SrcTreeGenerator generator = createSrcTreeGenerator(config, locales);
         SrcTree srcTree = generator.generateWithRuntimeClassPath(
-                config.getRootBaseTestDir(), Charsets.UTF_8);
+                config.getRootBaseTestDirs(), Charsets.UTF_8);
         SrcTreeChecker.check(srcTree);
-        YamlUtils.dump(srcTree.toYamlObject(), srcTreeFile);
         return srcTree;
     }
+
+    // returns null if no prebuilt SrcTree exists or it is out of date
+    static SrcTree loadPrebuiltSrcTree(JavaConfig config, AcceptableLocales locales)
+            throws IOException {
+        File prebuiltDir = config.getRootBasePrebuiltSrcTreeDir();
+        File fingerprintFile = CommonPath.prebuiltSrcTreeFingerprintFile(prebuiltDir);
+        File prebuiltSrcTreeFile = CommonPath.prebuiltSrcTreeFile(prebuiltDir);
+        if (!fingerprintFile.exists() || !prebuiltSrcTreeFile.exists()) {
+            return null;
+        }
+        String fingerprint = FileUtils.readFileToString(fingerprintFile, Charsets.UTF_8).trim();
+        String actualFingerprint = createSrcTreeGenerator(config, locales).generationFingerprint(
+                config.getRootBaseTestDirs(), Charsets.UTF_8);
+        if (!fingerprint.equals(actualFingerprint)) {
+            logger.info("prebuilt srcTree is out of date: " + prebuiltSrcTreeFile.getAbsolutePath());
+            return null;
+        }
+
+        SrcTree srcTree = new SrcTree();
+        try {
+            YamlUtils.loadStream(prebuiltSrcTreeFile, srcTree);
+            srcTree.resolveKeyReference(0);
+        } catch (YamlConvertException | IllegalDataStructureException e) {
+            logger.log(Level.INFO, "failed to load prebuilt srcTree", e);
+            return null;
+        }
+        logger.info("prebuilt srcTree is used: " + prebuiltSrcTreeFile.getAbsolutePath());
+        // prebuilt SrcTree always contains all test methods
+        if (config.getTestSelection() != null) {
+            createSrcTreeGenerator(config, locales).applyTestSelection(srcTree);
+        }
+        return srcTree;
+    }
+
+    // generate SrcTree and its fingerprint to the prebuilt SrcTree directory.
+    // also used by SahaginMain
+    static void generatePrebuiltSrcTree(JavaConfig config, AcceptableLocales locales)
+            throws IllegalTestScriptException, IOException {
+        SrcTreeGenerator generator = createSrcTreeGenerator(config, locales);
+        // prebuilt SrcTree is shared by all test runs, so it must contain all test methods
+        generator.setTestSelection(null);
+        // calculate fingerprint before generation
+        // not to regard the source file changed during the generation as up-to-date
+        String fingerprint = generator.generationFingerprint(config.getRootBaseTestDirs(), Charsets.UTF_8);
+        SrcTree srcTree = generator.generateWithRuntimeClassPath(
+                config.getRootBaseTestDirs(), Charsets.UTF_8);
+        dumpPrebuiltSrcTree(config, srcTree, fingerprint);
+    }
+
+    // also used by SrcTreeProcessor
+    static void dumpPrebuiltSrcTree(JavaConfig config, SrcTree srcTree, String fingerprint)
+            throws IllegalTestScriptException, IOException {
+        SrcTreeChecker.check(srcTree);
+        File prebuiltDir = config.getRootBasePrebuiltSrcTreeDir();
+        File fingerprintFile = CommonPath.prebuiltSrcTreeFingerprintFile(prebuiltDir);
+        // delete fingerprint first not to use the half written srcTree
+        FileUtils.deleteQuietly(fingerprintFile);
+        YamlUtils.dumpStream(srcTree, CommonPath.prebuiltSrcTreeFile(prebuiltDir));
+        FileUtils.writeStringToFile(fingerprintFile, fingerprint, Charsets.UTF_8);
+    }
 }
@@ -0,0 +1,190 @@
+package org.sahagin.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.lang3.StringUtils;
+import org.sahagin.runlib.srctreegen.JavacSrcTreeCollector;
+import org.sahagin.runlib.srctreegen.SrcFileFinder;
+import org.sahagin.runlib.srctreegen.SrcTreeGenerator;
+import org.sahagin.share.AcceptableLocales;
+import org.sahagin.share.IllegalTestScriptException;
+import org.sahagin.share.JavaConfig;
+import org.sahagin.share.Logging;
+import org.sahagin.share.SysMessages;
+import org.sahagin.share.yaml.YamlConvertException;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+// Annotation processor which generates SrcTree from the javac trees
+// while compiling the test sources, and dumps it to the prebuilt SrcTree directory
+// as the "srcTree" action of SahaginMain does.
+// Then SahaginPreMain can skip the source parsing by JDT at test JVM startup.
+// This processor is not registered as a service, so specify it explicitly by
+// javac -processor option (or annotationProcessors of maven-compiler-plugin) for the test compilation.
+// "sahagin.configPath" processor option is the configuration file path (default is sahagin.yml).
+// Requires javac of Java 8 or later
+@SupportedAnnotationTypes("*")
+@SupportedOptions("sahagin.configPath")
+public class SrcTreeProcessor extends AbstractProcessor {
+    private static Logger logger = Logging.getLogger(SrcTreeProcessor.class.getName());
+    private JavaConfig config;
+    private JavacSrcTreeCollector collector = null;
+    private String fingerprint;
+    private SrcFileFinder testSrcFileFinder;
+    // root types which have not been analyzed yet
+    private Set<TypeElement> pendingTypes = new HashSet<>(256);
+    private boolean processingOver = false;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        String configFilePath = processingEnv.getOptions().get("sahagin.configPath");
+        if (StringUtils.isBlank(configFilePath)) {
+            configFilePath = "sahagin.yml";
+        }
+        File configFile = new File(configFilePath);
+        if (!configFile.exists()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "SrcTree is not generated since config file not found: "
+                            + configFile.getAbsolutePath());
+            return;
+        }
+
+        JavacTask task;
+        try {
+            task = JavacTask.instance(processingEnv);
+        } catch (IllegalArgumentException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "SrcTree is not generated since the compiler is not javac");
+            return;
+        }
+
+        try {
+            config = JavaConfig.generateFromYamlConfig(configFile);
+            Logging.setLoggerEnabled(config.isOutputLog());
+            AcceptableLocales locales = AcceptableLocales.getInstance(config.getUserLocale());
+            SysMessages.globalInitialize(locales);
+            SahaginPreMain.initializeAdapters(config, locales);
+            SrcTreeGenerator generator = SahaginPreMain.createSrcTreeGenerator(config, locales);
+            // prebuilt SrcTree must contain all test methods
+            generator.setTestSelection(null);
+            List<File> testDirs = new ArrayList<>(config.getRootBaseTestDirs().size());
+            for (File testDir : config.getRootBaseTestDirs()) {
+                testDirs.add(testDir.getCanonicalFile());
+            }
+            testSrcFileFinder = new SrcFileFinder(testDirs);
+            testSrcFileFinder.setIncludes(config.getSrcTreeIncludes());
+            testSrcFileFinder.setExcludes(config.getSrcTreeExcludes());
+            fingerprint = generator.generationFingerprint(
+                    testDirs, Charsets.UTF_8, compileClassPathEntries());
+            collector = new JavacSrcTreeCollector(generator, task, config.getTestFramework());
+        } catch (YamlConvertException | IOException | URISyntaxException | ClassNotFoundException
+                | InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        task.addTaskListener(new AnalyzeListener());
+    }
+
+    // javac loads the processors from the class path unless the processor path is specified,
+    // so the class path of the test compilation is obtained from the class loader of this class.
+    // If the processor path is specified, the class path directories such as target/classes
+    // are not found, and the prebuilt SrcTree is regarded as out of date at the test time
+    private String[] compileClassPathEntries() throws URISyntaxException {
+        ClassLoader loader = getClass().getClassLoader();
+        if (!(loader instanceof URLClassLoader)) {
+            return System.getProperty("java.class.path").split(Pattern.quote(File.pathSeparator));
+        }
+        List<String> result = new ArrayList<>(256);
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+            if ("file".equals(url.getProtocol())) {
+                result.add(new File(url.toURI()).getPath());
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (collector == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                pendingTypes.add((TypeElement) element);
+            }
+        }
+        if (roundEnv.processingOver()) {
+            processingOver = true;
+        }
+        return false; // don't claim any annotation
+    }
+
+    private boolean isTestSrcFile(File srcFile) {
+        try {
+            return testSrcFileFinder.isTarget(srcFile.getCanonicalFile());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void dumpSrcTree() {
+        long startTime = System.currentTimeMillis();
+        try {
+            SahaginPreMain.dumpPrebuiltSrcTree(config, collector.generate(), fingerprint);
+        } catch (IllegalTestScriptException | IOException e) {
+            throw new RuntimeException(e);
+        }
+        logger.info(String.format("prebuilt srcTree is generated by javac (%d ms)",
+                System.currentTimeMillis() - startTime));
+    }
+
+    private class AnalyzeListener implements TaskListener {
+
+        @Override
+        public void started(TaskEvent e) {}
+
+        @Override
+        public void finished(TaskEvent e) {
+            if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getTypeElement() == null) {
+                return;
+            }
+            File srcFile = new File(e.getCompilationUnit().getSourceFile().toUri());
+            if (isTestSrcFile(srcFile)) {
+                collector.collect(e.getCompilationUnit(), e.getTypeElement());
+            }
+            // SrcTree is dumped after all types are analyzed.
+            // (it is not dumped if compilation fails)
+            if (pendingTypes.remove(e.getTypeElement()) && processingOver && pendingTypes.isEmpty()) {
+                dumpSrcTree();
+            }
+        }
+    }
+}
@@ -6,10 +6,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.FileWriterWithEncoding;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.velocity.VelocityContext;
@@ -21,15 +31,18 @@ import org.sahagin.share.CommonPath;
 import org.sahagin.share.CommonUtils;
 import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.IllegalTestScriptException;
+import org.sahagin.share.IntermediateDataArchive;
 import org.sahagin.share.SysMessages;
 import org.sahagin.share.TestDocResolver;
 import org.sahagin.share.runresults.LineScreenCapture;
 import org.sahagin.share.runresults.RootMethodRunResult;
 import org.sahagin.share.runresults.RunFailure;
 import org.sahagin.share.runresults.RunResults;
+import org.sahagin.share.runresults.RunResultsSegmentReader;
 import org.sahagin.share.runresults.StackLine;
 import org.sahagin.share.srctree.PageClass;
 import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.SrcTreeFiles;
 import org.sahagin.share.srctree.TestMethod;
 import org.sahagin.share.srctree.code.Code;
 import org.sahagin.share.srctree.code.CodeLine;
@@ -45,6 +58,9 @@ import org.sahagin.share.yaml.YamlUtils;
 public class HtmlReport {
     private static final int NO_IMAGE_WIDTH = 736;
     private static final int NO_IMAGE_HEIGHT = 455;
+    // srcTrees are merged in parallel if the number of the input data directories
+    // is this value or more
+    static final int PARALLEL_MERGE_MIN_DIRS = 8;
 
     public HtmlReport() {
         // stop generating velocity.log
@@ -116,7 +132,8 @@ public class HtmlReport {
     // generate ResportScreenCapture list from lineScreenCaptures and
     private List<ReportScreenCapture> generateReportScreenCaptures(
             List<LineScreenCapture> lineScreenCaptures,
-            File inputCaptureRootDir, File reportOutputDir, File methodReportParentDir) {
+            File inputCaptureRootDir, boolean archived,
+            File reportOutputDir, File methodReportParentDir) {
         List<ReportScreenCapture> reportCaptures = new ArrayList<>(lineScreenCaptures.size());
 
         // add noImage capture
@@ -146,7 +163,12 @@ public class HtmlReport {
             // use ttId as imageId
             String ttId = generateTtId(lineScreenCapture.getStackLines());
             reportCapture.setImageId(ttId);
-            reportCapture.setImageSizeFromImageFile(lineScreenCapture.getPath());
+            if (archived) {
+                // the original capture file has been packed to the archive
+                reportCapture.setImageSizeFromImageFile(absOutputCapturePath);
+            } else {
+                reportCapture.setImageSizeFromImageFile(lineScreenCapture.getPath());
+            }
             reportCapture.setExecutionTime(lineScreenCapture.getExecutionTime());
             reportCaptures.add(reportCapture);
         }
@@ -368,48 +390,110 @@ public class HtmlReport {
         return result;
     }
 
-    private SrcTree generateSrcTree(List<File> reportInputDataDirs)
+    private SrcTree loadSrcTree(Path reportInputDataDir) throws IllegalDataStructureException {
+        // generate srcTree from YAML file or binary snapshot file
+        return SrcTreeFiles.load(reportInputDataDir);
+    }
+
+    // loads and merges the srcTree of reportInputDataDirs[from, to).
+    // The right half is always merged into the left half,
+    // so the result is the same as the sequential merge
+    private class SrcTreeMergeTask extends RecursiveTask<SrcTree> {
+        private static final long serialVersionUID = 1L;
+        private final List<Path> reportInputDataDirs;
+        private final int from;
+        private final int to;
+
+        private SrcTreeMergeTask(List<Path> reportInputDataDirs, int from, int to) {
+            this.reportInputDataDirs = reportInputDataDirs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SrcTree compute() {
+            if (to - from == 1) {
+                try {
+                    return loadSrcTree(reportInputDataDirs.get(from));
+                } catch (IllegalDataStructureException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            SrcTreeMergeTask right = new SrcTreeMergeTask(reportInputDataDirs, mid, to);
+            right.fork();
+            SrcTree left = new SrcTreeMergeTask(reportInputDataDirs, from, mid).compute();
+            left.merge(right.join());
+            return left;
+        }
+    }
+
+    // also used by HtmlReportTest
+    SrcTree generateSrcTree(List<Path> reportInputDataDirs)
             throws IllegalDataStructureException {
-        SrcTree srcTree = new SrcTree();
-        for (File reportInputDataDir : reportInputDataDirs) {
-            // generate srcTree from YAML file
-            Map<String, Object> yamlObj = YamlUtils.load(
-                    CommonPath.srcTreeFile(reportInputDataDir));
+        SrcTree srcTree;
+        if (reportInputDataDirs.size() < PARALLEL_MERGE_MIN_DIRS) {
+            srcTree = new SrcTree();
+            for (Path reportInputDataDir : reportInputDataDirs) {
+                srcTree.merge(loadSrcTree(reportInputDataDir));
+            }
+        } else {
+            // load and merge many srcTrees, for example from sharded test executions,
+            // by parallel tree-reduce
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
             try {
-                SrcTree eachSrcTree = new SrcTree();
-                eachSrcTree.fromYamlObject(yamlObj);
-                srcTree.merge(eachSrcTree);
-            } catch (YamlConvertException e) {
-                throw new IllegalDataStructureException(e);
+                srcTree = pool.invoke(
+                        new SrcTreeMergeTask(reportInputDataDirs, 0, reportInputDataDirs.size()));
+            } finally {
+                pool.shutdown();
             }
         }
-        srcTree.resolveKeyReference();
+        srcTree.resolveKeyReference(0);
         return srcTree;
     }
 
+    // returns all regular files under dir
+    private List<Path> listFiles(Path dir) {
+        final List<Path> result = new ArrayList<>(256);
+        if (!Files.isDirectory(dir)) {
+            return result;
+        }
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        result.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("fail to list " + dir.toUri(), e);
+        }
+        return result;
+    }
+
     // returns RunResults list for reportInputDataDirs
-    private List<RunResults> generateRunResultList(List<File> reportInputDataDirs, SrcTree srcTree)
+    private List<RunResults> generateRunResultList(List<Path> reportInputDataDirs, SrcTree srcTree)
             throws IllegalDataStructureException {
         List<RunResults> resultsList = new ArrayList<>(reportInputDataDirs.size());
-        for (File reportInputDataDir : reportInputDataDirs) {
+        for (Path reportInputDataDir : reportInputDataDirs) {
             RunResults results = new RunResults();
-            Collection<File> runResultFiles;
-            File runResultsRootDir = CommonPath.runResultRootDir(reportInputDataDir);
-            if (runResultsRootDir.exists()) {
-                runResultFiles = FileUtils.listFiles(runResultsRootDir, null, true);
-            } else {
-                runResultFiles = new ArrayList<>(0);
-            }
-            for (File runResultFile : runResultFiles) {
-                Map<String, Object> runResultYamlObj = YamlUtils.load(runResultFile);
+            for (Path runResultFile : listFiles(CommonPath.runResultRootDir(reportInputDataDir))) {
                 RootMethodRunResult rootMethodRunResult = new RootMethodRunResult();
                 try {
-                    rootMethodRunResult.fromYamlObject(runResultYamlObj);
+                    YamlUtils.loadStream(runResultFile, rootMethodRunResult);
                 } catch (YamlConvertException e) {
                     throw new IllegalDataStructureException(e);
                 }
                 results.addRootMethodRunResults(rootMethodRunResult);
             }
+            for (RootMethodRunResult rootMethodRunResult : RunResultsSegmentReader.readAll(
+                    listFiles(CommonPath.runResultSegmentDir(reportInputDataDir)))) {
+                results.addRootMethodRunResults(rootMethodRunResult);
+            }
             results.resolveKeyReference(srcTree);
             resultsList.add(results);
         }
@@ -430,18 +514,50 @@ public class HtmlReport {
         context.put(key, StringEscapeUtils.escapeHtml(value));
     }
 
-    // each report HTML file is {methodQualifiedParentPath}/{methodSimpleName}.html
+    // each report HTML file is {methodQualifiedParentPath}/{methodSimpleName}.html.
+    // Each of reportInputDataDirs can be the archive file of the intermediate data directory.
+    // The directory packed to {directory}.zip is read from the archive
+    // unless a file in the directory has been modified after the archive
     public void generate(List<File> reportInputDataDirs, File reportOutputDir)
             throws IllegalDataStructureException, IllegalTestScriptException {
+        List<File> packedDirs = new ArrayList<>(reportInputDataDirs.size());
+        List<Path> inputDataDirs = new ArrayList<>(reportInputDataDirs.size());
+        List<FileSystem> archives = new ArrayList<>(reportInputDataDirs.size());
+        try {
+            for (File reportInputDataDir : reportInputDataDirs) {
+                File archiveFile = CommonPath.intermediateDataArchiveFile(reportInputDataDir);
+                if (IntermediateDataArchive.isArchive(reportInputDataDir)) {
+                    archiveFile = reportInputDataDir;
+                } else if (!IntermediateDataArchive.isUpToDate(archiveFile, reportInputDataDir)) {
+                    packedDirs.add(reportInputDataDir);
+                    inputDataDirs.add(reportInputDataDir.toPath());
+                    continue;
+                }
+                FileSystem archive = IntermediateDataArchive.open(archiveFile);
+                archives.add(archive);
+                packedDirs.add(IntermediateDataArchive.packedDir(archiveFile));
+                inputDataDirs.add(archive.getPath("/"));
+            }
+            generate(packedDirs, inputDataDirs, reportOutputDir);
+        } finally {
+            for (FileSystem archive : archives) {
+                IOUtils.closeQuietly(archive);
+            }
+        }
+    }
+
+    // inputDataDirs.. the directory from which the data is actually read for each of packedDirs
+    private void generate(List<File> packedDirs, List<Path> inputDataDirs, File reportOutputDir)
+            throws IllegalDataStructureException, IllegalTestScriptException {
         deleteDirIfExists(reportOutputDir); // delete previous execution output
         File htmlExternalResRootDir = CommonPath.htmlExternalResourceRootDir(reportOutputDir);
-        SrcTree srcTree = generateSrcTree(reportInputDataDirs);
-        List<RunResults> runResultsList = generateRunResultList(reportInputDataDirs, srcTree);
+        SrcTree srcTree = generateSrcTree(inputDataDirs);
+        List<RunResults> runResultsList = generateRunResultList(inputDataDirs, srcTree);
 
         // generate src-tree-yaml.js
         VelocityContext srcTreeContext = new VelocityContext();
         // don't need HTML encode
-        String srcTreeYamlStr = YamlUtils.dumpToString(srcTree.toYamlObject());
+        String srcTreeYamlStr = YamlUtils.dumpStreamToString(srcTree);
         srcTreeContext.put("yamlStr", srcTreeYamlStr);
         File srcTreeYamlJsFile = new File(htmlExternalResRootDir, "js/report/src-tree-yaml.js");
         generateVelocityOutput(srcTreeContext, "/template/src-tree-yaml.js.vm", srcTreeYamlJsFile);
@@ -494,16 +610,12 @@ public class HtmlReport {
         // copy screen captures to reportOutputDir
         // TODO copying screen capture may be slow action
         File htmlReportCaptureRootDir = CommonPath.htmlReportCaptureRootDir(reportOutputDir);
-        for (File reportInputDataDir : reportInputDataDirs) {
-            File inputCaptureRootDir = CommonPath.inputCaptureRootDir(reportInputDataDir);
-            try {
-                if (inputCaptureRootDir.exists()) {
-                    // assume runResults for each reportInputDataDir has different root method run results
-                    // and the capture files are not overwritten.
-                    FileUtils.copyDirectory(inputCaptureRootDir, htmlReportCaptureRootDir);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        for (Path inputDataDir : inputDataDirs) {
+            Path inputCaptureRootDir = CommonPath.inputCaptureRootDir(inputDataDir);
+            if (Files.exists(inputCaptureRootDir)) {
+                // assume runResults for each reportInputDataDir has different root method run results
+                // and the capture files are not overwritten.
+                IntermediateDataArchive.copyDirectory(inputCaptureRootDir, htmlReportCaptureRootDir);
             }
         }
 
@@ -553,10 +665,12 @@ public class HtmlReport {
             escapePut(methodContext, "jsVarAssign", SysMessages.get(SysMessages.JS_VAR_ASSIGN));
             RootMethodRunResult runResult = null;
             File inputCaptureRootDir = null;
+            boolean archived = false;
             for (int i = 0; i < runResultsList.size(); i++) {
                 runResult = runResultsList.get(i).getRunResultByRootMethod(rootMethod);
                 if (runResult != null) {
-                    inputCaptureRootDir = CommonPath.inputCaptureRootDir(reportInputDataDirs.get(i));
+                    inputCaptureRootDir = CommonPath.inputCaptureRootDir(packedDirs.get(i));
+                    archived = (inputDataDirs.get(i).getFileSystem() != FileSystems.getDefault());
                     escapePut(methodContext, "executionTime", Integer.toString(runResult.getExecutionTime()));
                     break; // assume results for each runResults are for different root method
                 }
@@ -586,7 +700,8 @@ public class HtmlReport {
             }
             addLineScreenCaptureForErrorEachStackLine(lineScreenCaptures, runFailure);
             List<ReportScreenCapture> captures = generateReportScreenCaptures(
-                    lineScreenCaptures, inputCaptureRootDir, reportOutputDir, methodReportParentDir);
+                    lineScreenCaptures, inputCaptureRootDir, archived,
+                    reportOutputDir, methodReportParentDir);
             methodContext.put("captures", captures);
 
             // use encoded method name to avoid various possible file name encoding problem
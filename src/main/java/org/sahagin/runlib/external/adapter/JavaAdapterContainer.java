@@ -43,6 +43,10 @@ public class JavaAdapterContainer extends AdapterContainer {
         }
     }
 
+    public String getAcceptableTestFramework() {
+        return acceptableTestFramework;
+    }
+
     public boolean isRootMethodAdapterSet() {
         return this.rootMethodAdapter != null;
     }
@@ -0,0 +1,88 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sahagin.share.srctree.code.CodeLine;
+
+// immutable line interval index of the code body.
+// This holds no reference to the code body itself
+class CodeLineIndex {
+    private final int[] startLines;
+    private final int[] endLines;
+    // true if both startLines and endLines are in the ascending order,
+    // which is always true for the code body generated from the source code
+    private final boolean sorted;
+
+    public CodeLineIndex(List<CodeLine> codeBody) {
+        startLines = new int[codeBody.size()];
+        endLines = new int[codeBody.size()];
+        boolean sorted = true;
+        for (int i = 0; i < codeBody.size(); i++) {
+            startLines[i] = codeBody.get(i).getStartLine();
+            endLines[i] = codeBody.get(i).getEndLine();
+            if (i > 0 && (startLines[i] < startLines[i - 1] || endLines[i] < endLines[i - 1])) {
+                sorted = false;
+            }
+        }
+        this.sorted = sorted;
+    }
+
+    public int size() {
+        return startLines.length;
+    }
+
+    public int getStartLine(int codeBodyIndex) {
+        return startLines[codeBodyIndex];
+    }
+
+    public int getEndLine(int codeBodyIndex) {
+        return endLines[codeBodyIndex];
+    }
+
+    // the first index whose end line is equal to or after the line
+    private int lowerBound(int line) {
+        int low = 0;
+        int high = endLines.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (endLines[mid] < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // indexes of the code lines which contain the line, in the ascending order.
+    // Multiple code lines may contain the same line
+    public List<Integer> indexesAt(int line) {
+        List<Integer> result = new ArrayList<>(2);
+        if (!sorted) {
+            for (int i = 0; i < startLines.length; i++) {
+                if (startLines[i] <= line && line <= endLines[i]) {
+                    result.add(i);
+                }
+            }
+            return result;
+        }
+        for (int i = lowerBound(line); i < startLines.length && startLines[i] <= line; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    // returns -1 if not found
+    public int firstIndexAt(int line) {
+        if (!sorted) {
+            List<Integer> indexes = indexesAt(line);
+            return indexes.isEmpty() ? -1 : indexes.get(0);
+        }
+        int i = lowerBound(line);
+        if (i < startLines.length && startLines[i] <= line) {
+            return i;
+        }
+        return -1;
+    }
+}
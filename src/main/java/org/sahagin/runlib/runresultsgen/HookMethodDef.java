@@ -1,71 +1,74 @@
 package org.sahagin.runlib.runresultsgen;
 
 import java.io.File;
+import java.util.List;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FileUtils;
 import org.sahagin.report.HtmlReport;
 import org.sahagin.share.CommonPath;
 import org.sahagin.share.Config;
 import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.IllegalTestScriptException;
-import org.sahagin.share.JavaConfig;
+import org.sahagin.share.IntermediateDataArchive;
 import org.sahagin.share.Logging;
-import org.sahagin.share.srctree.SrcTree;
-import org.sahagin.share.yaml.YamlConvertException;
-import org.sahagin.share.yaml.YamlUtils;
 
-// TODO support multiple thread concurrent test execution
+// the hooks may be called from multiple threads concurrently.
+// The manager is initialized only once by the class initialization of this class,
+// which the JVM serializes, so no lock is needed on the hook calls
 
 public class HookMethodDef {
     private static Logger logger = Logging.getLogger(HookMethodDef.class.getName());
-    private static HookMethodManager manager = null;
-
-    // if called multiple times, just ignored
-    public static void initialize(String configFilePath) {
-        if (manager != null) {
-            return;
+    // initialized only once when this class is loaded by the first hook call.
+    // null if HookRegistry has not been initialized
+    private static final HookMethodManager manager = initialize();
+
+    private static HookMethodManager initialize() {
+        HookRegistry registry = HookRegistry.globalInstance();
+        if (registry == null) {
+            logger.severe("HookRegistry is not initialized. Maybe javaagent option is not recognized properly.");
+            return null;
         }
 
         logger.info("initialize");
 
-        final Config config;
-        try {
-            config = JavaConfig.generateFromYamlConfig(new File(configFilePath));
-        } catch (YamlConvertException e) {
-            throw new RuntimeException(e);
-        }
-
-        // load srcTree from already dumped srcTree YAML
-        final File srcTreeFile = CommonPath.srcTreeFile(config.getRootBaseRunOutputIntermediateDataDir());
-        SrcTree srcTree = new SrcTree();
-        try {
-            srcTree.fromYamlObject(YamlUtils.load(srcTreeFile));
-        } catch (YamlConvertException e) {
-            throw new RuntimeException(e);
-        }
-        try {
-            srcTree.resolveKeyReference();
-        } catch (IllegalDataStructureException e) {
-            throw new RuntimeException(e);
-        }
-
-        manager = new HookMethodManager(srcTree, config);
-
-        if (!config.isRunTestOnly()) {
-            // set up shutdown hook which generates HTML report
-            Runtime.getRuntime().addShutdownHook(new Thread() {
-                @Override
-                public void run() {
-                    HtmlReport report = new HtmlReport();
-                    try {
-                        report.generate(config.getRootBaseReportInputIntermediateDataDirs(),
-                                config.getRootBaseReportOutputDir());
-                    } catch (IllegalDataStructureException | IllegalTestScriptException e) {
-                        throw new RuntimeException(e);
+        final Config config = registry.getConfig();
+        // the hooks use the same srcTree as the transformer uses
+        final HookMethodManager result = new HookMethodManager(registry, config);
+
+        // set up shutdown hook which finishes run results and generates HTML report
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                result.close();
+                List<File> reportInputDataDirs = config.getRootBaseReportInputIntermediateDataDirs();
+                if (config.usesIntermediateDataArchive()) {
+                    File intermediateDataDir = config.getRootBaseRunOutputIntermediateDataDir();
+                    File archiveFile = CommonPath.intermediateDataArchiveFile(intermediateDataDir);
+                    IntermediateDataArchive.pack(intermediateDataDir, archiveFile);
+                    // The mapped snapshot file may not be deleted on some OS, so delete quietly.
+                    // The report reads the archive given explicitly
+                    // even if the directory is left partly deleted
+                    FileUtils.deleteQuietly(intermediateDataDir);
+                    for (int i = 0; i < reportInputDataDirs.size(); i++) {
+                        if (reportInputDataDirs.get(i).getAbsoluteFile().equals(
+                                intermediateDataDir.getAbsoluteFile())) {
+                            reportInputDataDirs.set(i, archiveFile);
+                        }
                     }
                 }
-            });
-        }
+                if (config.isRunTestOnly()) {
+                    return;
+                }
+                HtmlReport report = new HtmlReport();
+                try {
+                    report.generate(reportInputDataDirs, config.getRootBaseReportOutputDir());
+                } catch (IllegalDataStructureException | IllegalTestScriptException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        return result;
     }
 
     private static void initializedCheck() {
@@ -74,40 +77,41 @@ public class HookMethodDef {
         }
     }
 
-    public static void beforeMethodHook(String hookedClassQualifiedName,
-            String hookedMethodSimpleName, String actualHookedMethodSimpleName) {
+    // methodId.. the id of HookRegistry.getSrcTree()
+
+    public static void enterMethodHook(int methodId) {
+        initializedCheck();
+        manager.enterMethodHook(methodId);
+    }
+
+    public static void exitMethodHook(int methodId) {
+        initializedCheck();
+        manager.exitMethodHook(methodId);
+    }
+
+    public static void beforeMethodHook(int methodId) {
         initializedCheck();
-        manager.beforeMethodHook(
-                hookedClassQualifiedName, hookedMethodSimpleName, actualHookedMethodSimpleName);
+        manager.beforeMethodHook(methodId);
     }
 
-    public static void methodErrorHook(
-            String hookedClassQualifiedName, String hookedMethodSimpleName, Throwable e) {
+    public static void methodErrorHook(int methodId, Throwable e) {
         initializedCheck();
-        manager.methodErrorHook(hookedClassQualifiedName, hookedMethodSimpleName, e);
+        manager.methodErrorHook(methodId, e);
     }
 
-    public static void afterMethodHook(
-            String hookedClassQualifiedName, String hookedMethodSimpleName) {
+    public static void afterMethodHook(int methodId) {
         initializedCheck();
-        manager.afterMethodHook(hookedClassQualifiedName, hookedMethodSimpleName);
+        manager.afterMethodHook(methodId);
     }
 
-    public static void beforeCodeLineHook(String hookedClassQualifiedName,
-            String hookedMethodSimpleName, String actualHookedMethodSimpleName,
-            String hookedArgClassesStr, int hookedLine, int actualInsertedLine) {
+    // codeLineId.. the id registered to HookRegistry
+    public static void beforeCodeLineHook(int methodId, int codeLineId, int actualInsertedLine) {
         initializedCheck();
-        manager.beforeCodeLineHook(hookedClassQualifiedName,
-                hookedMethodSimpleName, actualHookedMethodSimpleName,
-                hookedArgClassesStr, hookedLine, actualInsertedLine);
+        manager.beforeCodeLineHook(methodId, codeLineId, actualInsertedLine);
     }
 
-    public static void afterCodeLineHook(String hookedClassQualifiedName,
-            String hookedMethodSimpleName, String actualHookedMethodSimpleName,
-            String hookedArgClassesStr, int hookedLine, int actualInsertedLine) {
+    public static void afterCodeLineHook(int methodId, int codeLineId, int actualInsertedLine) {
         initializedCheck();
-        manager.afterCodeLineHook(hookedClassQualifiedName,
-                hookedMethodSimpleName, actualHookedMethodSimpleName,
-                hookedArgClassesStr, hookedLine, actualInsertedLine);
+        manager.afterCodeLineHook(methodId, codeLineId, actualInsertedLine);
     }
-}
\ No newline at end of file
+}
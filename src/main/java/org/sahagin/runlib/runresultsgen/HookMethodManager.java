@@ -3,7 +3,12 @@ package org.sahagin.runlib.runresultsgen;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.Charsets;
@@ -16,85 +21,110 @@ import org.sahagin.runlib.runresultsgen.StackLineUtils.LineReplacer;
 import org.sahagin.share.CommonPath;
 import org.sahagin.share.CommonUtils;
 import org.sahagin.share.Config;
-import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.Logging;
 import org.sahagin.share.runresults.LineScreenCapture;
 import org.sahagin.share.runresults.RootMethodRunResult;
 import org.sahagin.share.runresults.RunFailure;
+import org.sahagin.share.runresults.RunResultsSegmentWriter;
 import org.sahagin.share.runresults.StackLine;
-import org.sahagin.share.srctree.SrcTree;
-import org.sahagin.share.srctree.TestMethod;
-import org.sahagin.share.srctree.code.CodeLine;
-import org.sahagin.share.srctree.code.Field;
-import org.sahagin.share.srctree.code.SubMethodInvoke;
-import org.sahagin.share.srctree.code.TestStep;
-import org.sahagin.share.srctree.code.TestStepLabel;
-import org.sahagin.share.srctree.code.VarAssign;
 import org.sahagin.share.yaml.YamlUtils;
 
+// The hooks may be called from multiple threads concurrently.
+// The state of the root method being executed is held for each thread,
+// and the per-line hooks don't take any lock
 public class HookMethodManager {
     private static Logger logger = Logging.getLogger(HookMethodManager.class.getName());
-    private SrcTree srcTree;
-    private File runResultsRootDir;
-    private File captureRootDir;
-    private int currentCaptureNo = 1;
-    private RootMethodRunResult currentRunResult = null;
-    private String currentActualRootMethodSimpleName = null;
-    private String methodKeyCache = null; // used in getTestMethod method
-    private TestMethod methodCache = null; // used in getTestMethod method
-    private long startMethodTime;
-    private long startTestStepLabelTime;
-    private LinkedHashMap<String, Long> startTimeMap = new LinkedHashMap<>();
-
-    public HookMethodManager(SrcTree srcTree, Config config) {
-        if (srcTree == null) {
+    private final HookRegistry registry;
+    private final RuntimeSrcTree srcTree;
+    private final File runResultsRootDir;
+    private final File runResultsTempDir;
+    private final File captureRootDir;
+    private final File runResultSegmentDir; // null if segment is not used
+    // segment writers of all threads, which are closed by close method
+    private final Queue<RunResultsSegmentWriter> segmentWriters = new ConcurrentLinkedQueue<>();
+    // the last capture number for each root method id,
+    // which is shared by the threads executing the same root method
+    private final AtomicIntegerArray captureNos;
+    private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    // the state only accessed by one thread
+    private static class ThreadState {
+        private final ShadowStack shadowStack = new ShadowStack();
+        private RunResultsSegmentWriter segmentWriter = null; // created lazily
+        private RootMethodRunResult currentRunResult = null;
+        private int currentRootMethodId = -1;
+        private String currentActualRootMethodSimpleName = null;
+        private long startMethodTime;
+        private long startTestStepLabelTime;
+    }
+
+    public HookMethodManager(HookRegistry registry, Config config) {
+        if (registry == null) {
             throw new NullPointerException();
         }
         if (config == null) {
             throw new NullPointerException();
         }
-        this.srcTree = srcTree;
+        this.registry = registry;
+        this.srcTree = registry.getSrcTree();
         runResultsRootDir = CommonPath.runResultRootDir(config.getRootBaseRunOutputIntermediateDataDir());
+        runResultsTempDir = CommonPath.runResultTempDir(config.getRootBaseRunOutputIntermediateDataDir());
         captureRootDir = CommonPath.inputCaptureRootDir(config.getRootBaseRunOutputIntermediateDataDir());
+        if (config.usesRunResultsSegment()) {
+            runResultSegmentDir = CommonPath.runResultSegmentDir(
+                    config.getRootBaseRunOutputIntermediateDataDir());
+        } else {
+            runResultSegmentDir = null;
+        }
+        captureNos = new AtomicIntegerArray(srcTree.getMethodCount());
     }
 
-    // initialize runResult information if the method for the arguments is root method
-    public void beforeMethodHook(String hookedClassQualifiedName,
-            String hookedMethodSimpleName, String actualHookedMethodSimpleName) {
-        if (currentRunResult != null) {
-            return; // maybe called inside of the root method
-        }
+    // pushes the frame of the hooked sub method to the shadow stack
+    public void enterMethodHook(int hookedMethodId) {
+        threadState.get().shadowStack.push(hookedMethodId);
+    }
 
-        List<TestMethod> rootMethods = srcTree.getRootMethodTable().getByName(
-                hookedClassQualifiedName, hookedMethodSimpleName);
-        if (rootMethods.size() == 0) {
-            return; // hooked method is not root method
+    // pops the frame of the hooked sub method from the shadow stack.
+    // This hook is called in the finally block
+    public void exitMethodHook(int hookedMethodId) {
+        threadState.get().shadowStack.pop(hookedMethodId);
+    }
+
+    // initialize runResult information for the root method
+    public void beforeMethodHook(int rootMethodId) {
+        ThreadState state = threadState.get();
+        state.shadowStack.push(rootMethodId);
+        if (state.currentRunResult != null) {
+            return; // maybe called inside of the root method
         }
-        assert rootMethods.size() == 1;
-        TestMethod rootMethod = rootMethods.get(0);
+        assert srcTree.isRootMethod(rootMethodId);
 
-        logger.info("beforeMethodHook: " + hookedMethodSimpleName);
+        logger.info("beforeMethodHook: " + srcTree.getSimpleName(rootMethodId));
 
-        // initialize current captureNo and runResult
-        currentCaptureNo = 1;
-        currentRunResult = new RootMethodRunResult();
-        currentRunResult.setRootMethodKey(rootMethod.getKey());
-        currentRunResult.setRootMethod(rootMethod);
-        currentActualRootMethodSimpleName = actualHookedMethodSimpleName;
+        // initialize current runResult
+        state.currentRunResult = new RootMethodRunResult();
+        state.currentRunResult.setRootMethodKey(srcTree.getMethodKey(rootMethodId));
+        state.currentRootMethodId = rootMethodId;
+        // the hook is inserted to the method whose name is the same as the srcTree
+        state.currentActualRootMethodSimpleName = srcTree.getSimpleName(rootMethodId);
 
-        startMethodTime = System.currentTimeMillis();
+        state.startMethodTime = System.currentTimeMillis();
     }
 
     // set up runFailure information
     // This method must be called before afterMethodHook is called
-    public void methodErrorHook(String hookedClassQualifiedName,
-            String hookedMethodSimpleName, Throwable e) {
-        if (currentRunResult == null) {
+    public void methodErrorHook(int hookedMethodId, Throwable e) {
+        final ThreadState state = threadState.get();
+        if (state.currentRunResult == null) {
             return; // maybe called outside of the root method
         }
-        TestMethod rootMethod = currentRunResult.getRootMethod();
-        if (!rootMethod.getTestClassKey().equals(hookedClassQualifiedName)
-                || !rootMethod.getSimpleName().equals(hookedMethodSimpleName)) {
+        if (hookedMethodId != state.currentRootMethodId) {
             return; // hooked method is not current root method
         }
 
@@ -106,8 +136,8 @@ public class HookMethodManager {
             @Override
             public void replace(String classQualifiedName, String methodSimpleName, int line) {
                 super.replace(classQualifiedName, methodSimpleName, line);
-                if (StringUtils.equals(methodSimpleName, currentActualRootMethodSimpleName)) {
-                    replaceMethodSimpleName(currentRunResult.getRootMethod().getSimpleName());
+                if (StringUtils.equals(methodSimpleName, state.currentActualRootMethodSimpleName)) {
+                    replaceMethodSimpleName(srcTree.getSimpleName(state.currentRootMethodId));
                 }
             }
         };
@@ -115,51 +145,109 @@ public class HookMethodManager {
         for (StackLine stackLine : stackLines) {
             runFailure.addStackLine(stackLine);
         }
-        currentRunResult.addRunFailure(runFailure);
+        state.currentRunResult.addRunFailure(runFailure);
 
-        captureScreenForStackLines(rootMethod, Arrays.asList(stackLines), Arrays.asList(-1));
+        captureScreenForStackLines(state, Arrays.asList(stackLines), Arrays.asList(-1));
     }
 
     // write runResult to YAML file if the method for the arguments is root method
-    public void afterMethodHook(String hookedClassQualifiedName, String hookedMethodSimpleName) {
-        if (currentRunResult == null) {
+    public void afterMethodHook(int hookedMethodId) {
+        ThreadState state = threadState.get();
+        state.shadowStack.pop(hookedMethodId);
+        if (state.currentRunResult == null) {
             return; // maybe called outside of the root method
         }
-        TestMethod rootMethod = currentRunResult.getRootMethod();
-        if (!rootMethod.getTestClassKey().equals(hookedClassQualifiedName)
-                || !rootMethod.getSimpleName().equals(hookedMethodSimpleName)) {
+        if (hookedMethodId != state.currentRootMethodId) {
             return; // hooked method is not current root method
         }
+        String hookedClassQualifiedName = srcTree.getClassQualifiedName(hookedMethodId);
+        String hookedMethodSimpleName = srcTree.getSimpleName(hookedMethodId);
 
         long currentTime = System.currentTimeMillis();
-        currentRunResult.setExecutionTime((int) (currentTime - startMethodTime));
+        state.currentRunResult.setExecutionTime((int) (currentTime - state.startMethodTime));
         logger.info("afterMethodHook: " + hookedMethodSimpleName);
 
-        // use encoded name to avoid various possible file name encoding problem
-        // and to escape invalid file name character (Method name may contain such characters
-        // if method is Groovy method, for example).
-        File runResultFile = new File(String.format("%s/%s/%s", runResultsRootDir,
-                CommonUtils.encodeToSafeAsciiFileNameString(hookedClassQualifiedName, Charsets.UTF_8),
-                CommonUtils.encodeToSafeAsciiFileNameString(hookedMethodSimpleName, Charsets.UTF_8)));
-        if (runResultFile.getParentFile() != null) {
-            runResultFile.getParentFile().mkdirs();
-        }
-        // write runResult to YAML file
-        YamlUtils.dump(currentRunResult.toYamlObject(), runResultFile);
-
-        // clear current captureNo and runResult
-        currentCaptureNo = -1;
-        currentRunResult = null;
-        currentActualRootMethodSimpleName = null;
+        if (runResultSegmentDir != null) {
+            // append runResult to the segment file of this thread
+            segmentWriter(state).append(state.currentRunResult);
+        } else {
+            // use encoded name to avoid various possible file name encoding problem
+            // and to escape invalid file name character (Method name may contain such characters
+            // if method is Groovy method, for example).
+            File runResultFile = new File(String.format("%s/%s/%s", runResultsRootDir,
+                    CommonUtils.encodeToSafeAsciiFileNameString(hookedClassQualifiedName, Charsets.UTF_8),
+                    CommonUtils.encodeToSafeAsciiFileNameString(hookedMethodSimpleName, Charsets.UTF_8)));
+            // write runResult to YAML file
+            dumpRunResult(state.currentRunResult, runResultFile);
+        }
+
+        // clear current runResult
+        state.currentRunResult = null;
+        state.currentRootMethodId = -1;
+        state.currentActualRootMethodSimpleName = null;
+    }
+
+    // The threads executing the same root method write to the same file,
+    // so runResult is written to the temporary file first, and then the file is renamed.
+    // The last renamed file wins, and the file is never left partly written
+    private void dumpRunResult(RootMethodRunResult runResult, File runResultFile) {
+        runResultsTempDir.mkdirs();
+        runResultFile.getParentFile().mkdirs();
+        File tempFile;
+        try {
+            tempFile = File.createTempFile("runResult", ".tmp", runResultsTempDir);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        YamlUtils.dumpStream(runResult, tempFile);
+        try {
+            try {
+                Files.move(tempFile.toPath(), runResultFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), runResultFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException("exception for " + runResultFile.getAbsolutePath(), e);
+        }
+    }
+
+    // each thread writes to its own segment file, so no lock is needed to append
+    private RunResultsSegmentWriter segmentWriter(ThreadState state) {
+        if (state.segmentWriter == null) {
+            // multiple JVMs and threads may write to the same directory
+            state.segmentWriter = new RunResultsSegmentWriter(
+                    RunResultsSegmentWriter.newSegmentFile(runResultSegmentDir));
+            segmentWriters.add(state.segmentWriter);
+        }
+        return state.segmentWriter;
+    }
+
+    // writes the index of the run results segments.
+    // This method must be called before the report is generated.
+    // The run result appended by the other thread after this method is called is ignored
+    public void close() {
+        RunResultsSegmentWriter segmentWriter;
+        while ((segmentWriter = segmentWriters.poll()) != null) {
+            try {
+                segmentWriter.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        // the temporary files are left only if writing them has failed
+        runResultsTempDir.delete();
     }
 
     // If the code line for the specified method and codeLineIndex is the last line
     // of a TestStepLabel block,
     // this method returns the code body index for the TestStepLabel, otherwise returns -1.
     private int getTestStepLabelIndexIfThisLineIsStepLastCode(
-            TestMethod method, int codeLineIndex) {
-        if (method.getCodeBody().size() -1 > codeLineIndex
-                && !(method.getCodeBody().get(codeLineIndex + 1).getCode() instanceof TestStepLabel)) {
+            int methodId, int codeLineIndex) {
+        if (srcTree.getCodeBodySize(methodId) -1 > codeLineIndex
+                && !srcTree.isTestStepLabel(methodId, codeLineIndex + 1)) {
             // next code line is not TestStepLabel
             return -1;
         }
@@ -168,7 +256,7 @@ public class HookMethodManager {
         // so searches the TestSTepLabel for this statement
         int index = codeLineIndex;
         while (index >= 0) {
-            if (method.getCodeBody().get(index).getCode() instanceof TestStepLabel) {
+            if (srcTree.isTestStepLabel(methodId, index)) {
                 return index;
             }
             index--;
@@ -176,166 +264,66 @@ public class HookMethodManager {
         return -1; // not TestStepLabel is found before the specified codeLineIndex line
     }
 
-    // get TestMethod for the method information.
-    // this method uses cache to improve performance
-    private TestMethod getTestMethod(String classQualifiedName,
-            String methodSimpleName, String argClassesStr) {
-        String methodKey = TestMethod.generateMethodKey(
-                classQualifiedName, methodSimpleName, argClassesStr);
-        TestMethod result;
-        if (StringUtils.equals(methodKeyCache, methodKey)) {
-            result = methodCache; // re-use cache
-        } else {
-            try {
-                result = srcTree.getTestMethodByKey(methodKey, true);
-            } catch (IllegalDataStructureException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        // cache key and method to improve method search performance.
-        // caching is executed even if TestMethod is not found
-        methodKeyCache = methodKey;
-        methodCache = result;
-        return result;
-    }
-
-    private List<Integer> getHookedCodeLineIndex(TestMethod method, int hookedLine) {
-        List<Integer> result = new ArrayList<>(2);
-        for (int i = 0; i < method.getCodeBody().size(); i++) {
-            CodeLine codeLine = method.getCodeBody().get(i);
-            if (codeLine.getStartLine() <= hookedLine && hookedLine <= codeLine.getEndLine()) {
-                result.add(i);
-            }
-        }
-        return result;
+    // true if the screen capture may be taken after the code line.
+    // This checks only the srcTree information, and doesn't build any string or key
+    private boolean mayCaptureCodeLine(int methodId, int codeBodyIndex) {
+        return srcTree.capturesThisLine(methodId, codeBodyIndex)
+                || getTestStepLabelIndexIfThisLineIsStepLastCode(methodId, codeBodyIndex) != -1;
     }
 
-    // get the stackLines for the hook method code line.
-    private List<StackLine> getCodeLineHookedStackLines(
-            final String hookedMethodSimpleName, final String actualHookedMethodSimpleName,
-            final int hookedLine, final int actualHookedLine) {
-        // this replacer replaces method name and line to the actual hooked method name and line
-        LineReplacer replacer = new LineReplacer() {
-
-            @Override
-            public void replace(String classQualifiedName, String methodSimpleName, int line) {
-                super.replace(classQualifiedName, methodSimpleName, line);
-                // replacing root method name
-                if (StringUtils.equals(methodSimpleName, currentActualRootMethodSimpleName)) {
-                    replaceMethodSimpleName(currentRunResult.getRootMethod().getSimpleName());
-                }
-                // replacing hooked method name and line number
-                if (StringUtils.equals(methodSimpleName, actualHookedMethodSimpleName)
-                        && (line == actualHookedLine)) {
-                    replaceMethodSimpleName(hookedMethodSimpleName);
-                    replaceLine(hookedLine);
-                }
-            }
-        };
-
-        List<StackLine> result = StackLineUtils.getStackLines(
-                srcTree, Thread.currentThread().getStackTrace(), replacer);
-        assert result.size() > 0;
-        return result;
-    }
-
-    public void beforeCodeLineHook(String hookedClassQualifiedName,
-            final String hookedMethodSimpleName, final String actualHookedMethodSimpleName,
-            String hookedArgClassesStr, final int hookedLine, final int actualHookedLine) {
-        if (currentRunResult == null) {
+    public void beforeCodeLineHook(int hookedMethodId, int codeLineId, int actualHookedLine) {
+        ThreadState state = threadState.get();
+        if (state.currentRunResult == null) {
             return; // maybe called outside of the root method
         }
 
-        TestMethod hookedTestMethod = getTestMethod(
-                hookedClassQualifiedName, hookedMethodSimpleName, hookedArgClassesStr);
-        if (hookedTestMethod == null) {
-            return; // hooked method is not current root method
+        ShadowStack stack = state.shadowStack;
+        stack.setCodeLine(hookedMethodId, codeLineId);
+        int thisCodeLineIndex = registry.getCodeBodyIndex(codeLineId);
+        if (srcTree.isTestStepLabel(hookedMethodId, thisCodeLineIndex)
+                || (thisCodeLineIndex > 0
+                        && srcTree.isTestStepLabel(hookedMethodId, thisCodeLineIndex - 1))) {
+            state.startTestStepLabelTime = System.currentTimeMillis();
+        }
+        if (!mayCaptureCodeLine(hookedMethodId, thisCodeLineIndex)) {
+            return; // the execution time is used only for the screen capture
         }
 
         logger.info(String.format("beforeCodeLineHook: start: %s: %d(%d)",
-                hookedMethodSimpleName, hookedLine, actualHookedLine));
-
-        // don't use getCodeLineHookedStackLines method
-        // since line number in beforeHook current stack trace may not be set
-        // for the root method first line, especially in Sahagin-Groovy
-
-        int thisCodeLineIndex = getHookedCodeLineIndex(hookedTestMethod, hookedLine).get(0);
-        if (hookedTestMethod.getCodeBody().get(thisCodeLineIndex).getCode() instanceof TestStepLabel
-                || (thisCodeLineIndex > 0
-                        && hookedTestMethod.getCodeBody().get(thisCodeLineIndex - 1).getCode() instanceof TestStepLabel)) {
-            startTestStepLabelTime = System.currentTimeMillis();
-        }
+                srcTree.getSimpleName(hookedMethodId), registry.getHookedLine(codeLineId),
+                actualHookedLine));
 
-        String codeLineKey = getCodeLineKey(hookedClassQualifiedName, hookedMethodSimpleName,
-                hookedArgClassesStr, hookedLine);
-        if (startTimeMap.containsKey(codeLineKey)) {
-            // this is the case when afterCodeLineHook has not been called for the previous method call.
-            // TODO fix RunResultsGenerateHookSetter so that afterCodeLineHook is called
-            // even if hooked line throws exception.
-            logger.info(String.format("overwriting duplicated codeLineKey: %s", codeLineKey));
-        } else {
-            logger.info(String.format("putting codeLineKey: %s", codeLineKey));
-        }
-        startTimeMap.put(codeLineKey, System.currentTimeMillis());
+        stack.setLineStartTime(System.currentTimeMillis());
     }
 
-    public void afterCodeLineHook(String hookedClassQualifiedName,
-            final String hookedMethodSimpleName, final String actualHookedMethodSimpleName,
-            String hookedArgClassesStr, final int hookedLine, final int actualHookedLine) {
-        if (currentRunResult == null) {
+    public void afterCodeLineHook(int hookedMethodId, int codeLineId, int actualHookedLine) {
+        ThreadState state = threadState.get();
+        if (state.currentRunResult == null) {
             return; // maybe called outside of the root method
         }
-
-        TestMethod hookedTestMethod = getTestMethod(
-                hookedClassQualifiedName, hookedMethodSimpleName, hookedArgClassesStr);
-        if (hookedTestMethod == null) {
-            return; // hooked method is not current root method
+        if (!mayCaptureCodeLine(hookedMethodId, registry.getCodeBodyIndex(codeLineId))) {
+            return; // skip not capture line
+        }
+        ShadowStack stack = state.shadowStack;
+        if (!stack.isExecuting(hookedMethodId, codeLineId)) {
+            // maybe beforeHook for this line has not been called unexpectedly
+            throw new RuntimeException("code line not found in shadow stack: " + codeLineId);
         }
 
+        String hookedMethodSimpleName = srcTree.getSimpleName(hookedMethodId);
+        int hookedLine = registry.getHookedLine(codeLineId);
         logger.info(String.format("afterCodeLineHook: start: %s: %d(%d)",
                 hookedMethodSimpleName, hookedLine, actualHookedLine));
 
-        List<StackLine> thisStackLines = getCodeLineHookedStackLines(
-                hookedMethodSimpleName, actualHookedMethodSimpleName, hookedLine, actualHookedLine);
-
-        String codeLineKey = getCodeLineKey(hookedClassQualifiedName, hookedMethodSimpleName,
-                hookedArgClassesStr, hookedLine);
-        Long startTime = startTimeMap.get(codeLineKey);
-        if (startTime == null) {
-            // maybe beforeHook for codeLineKey has not been called unexpectedly
-            throw new RuntimeException("codeLineKey not found: " + codeLineKey);
-        }
-        int executionTime = (int) (System.currentTimeMillis() - startTime);
-        startTimeMap.remove(codeLineKey);
+        List<StackLine> thisStackLines = StackLineUtils.getStackLines(srcTree, registry, stack);
+        int executionTime = (int) (System.currentTimeMillis() - stack.getLineStartTime());
 
         // calculate capturesThisLine value
-        CodeLine thisCodeLine = thisStackLines.get(0).getMethod().getCodeBody().get(
-                thisStackLines.get(0).getCodeBodyIndex());
-        boolean capturesThisLine;
-        if (thisCodeLine.getCode() instanceof SubMethodInvoke) {
-            SubMethodInvoke thisMethodInvoke = (SubMethodInvoke) thisCodeLine.getCode();
-            CaptureStyle thisCaptureStyle = thisMethodInvoke.getSubMethod().getCaptureStyle();
-            capturesThisLine
-            = (thisCaptureStyle == CaptureStyle.THIS_LINE || thisCaptureStyle == CaptureStyle.STEP_IN);
-        } else if (thisCodeLine.getCode() instanceof VarAssign) {
-            VarAssign assign = (VarAssign) thisCodeLine.getCode();
-            if (assign.getValue() instanceof SubMethodInvoke) {
-                SubMethodInvoke thisMethodInvoke = (SubMethodInvoke) assign.getValue();
-                CaptureStyle thisCaptureStyle = thisMethodInvoke.getSubMethod().getCaptureStyle();
-                capturesThisLine
-                = (thisCaptureStyle == CaptureStyle.THIS_LINE || thisCaptureStyle == CaptureStyle.STEP_IN);
-            } else if (assign.getVariable() instanceof Field) {
-                capturesThisLine = true;
-            } else {
-                capturesThisLine = false;
-            }
-        } else if (thisCodeLine.getCode() instanceof TestStep) {
+        int thisCodeBodyIndex = registry.getCodeBodyIndex(codeLineId);
+        if (srcTree.isTestStep(hookedMethodId, thisCodeBodyIndex)) {
             throw new RuntimeException("not supported");
-        } else {
-            // don't take screenshot for this line
-            capturesThisLine = false;
         }
+        boolean capturesThisLine = srcTree.capturesThisLine(hookedMethodId, thisCodeBodyIndex);
 
         // Calculate testStepLabelStackLines, testStepLabelExecutionTime and capturesTestStepLabel.
         // Since screen capture for TestStepLabel is taken at the last line of the TestStepLabel block,
@@ -344,22 +332,21 @@ public class HookMethodManager {
         int testStepLabelExecutionTime = -1;
         boolean capturesTestStepLabel = false;
         int stepLabelIndex = getTestStepLabelIndexIfThisLineIsStepLastCode(
-                hookedTestMethod, thisStackLines.get(0).getCodeBodyIndex());
+                hookedMethodId, thisCodeBodyIndex);
         if (stepLabelIndex != -1) {
             capturesTestStepLabel = true;
             // testStepLabelStackLines can be obtained
             // by changing the top element of thisStackLines
-            CodeLine stepLabelCodeLine = hookedTestMethod.getCodeBody().get(stepLabelIndex);
             testStepLabelStackLines = new ArrayList<>(thisStackLines.size());
             for (StackLine stackLine : thisStackLines) {
                 // clone and add new StackLine instance
                 testStepLabelStackLines.add(new StackLine(stackLine));
             }
             StackLine topStackLine = testStepLabelStackLines.get(0);
-            topStackLine.setLine(stepLabelCodeLine.getStartLine());
+            topStackLine.setLine(srcTree.getStartLine(hookedMethodId, stepLabelIndex));
             topStackLine.setCodeBodyIndex(stepLabelIndex);
 
-            testStepLabelExecutionTime = (int) (System.currentTimeMillis() - startTestStepLabelTime);
+            testStepLabelExecutionTime = (int) (System.currentTimeMillis() - state.startTestStepLabelTime);
         }
 
         if (!capturesThisLine && !capturesTestStepLabel) {
@@ -367,7 +354,7 @@ public class HookMethodManager {
             return;
         }
 
-        if (!canStepInCaptureTo(thisStackLines)) {
+        if (!canStepInCaptureTo(stack)) {
             logger.info("afterCodeLineHook: skip not stepInCapture line");
             return;
         }
@@ -384,7 +371,7 @@ public class HookMethodManager {
             stackLinesList.add(testStepLabelStackLines);
             executionTimeList.add(testStepLabelExecutionTime);
         }
-        File captureFile = captureScreenForStackLines(currentRunResult.getRootMethod(), stackLinesList, executionTimeList);
+        File captureFile = captureScreenForStackLines(state, stackLinesList, executionTimeList);
         if (captureFile != null) {
             if (capturesThisLine) {
                 logger.info("afterCodeLineHook: end with this line capture " + captureFile.getName());
@@ -395,20 +382,8 @@ public class HookMethodManager {
         }
     }
 
-    // Calculate unique key for each code line hook
-    private String getCodeLineKey(final String hookedClassQualifiedName,
-                                  final String hookedMethodSimpleName,
-                                  String hookedArgClassesStr, final int hookedLine) {
-        return String.format("%s_%s_%s_%d_%d",
-                hookedClassQualifiedName,
-                hookedMethodSimpleName,
-                hookedArgClassesStr,
-                hookedLine,
-                Thread.currentThread().getStackTrace().length);
-    }
-
     // returns null if not executed
-    private File captureScreen(TestMethod rootMethod) {
+    private File captureScreen(int rootMethodId) {
         byte[] screenData = AdapterContainer.globalInstance().captureScreen();
         if (screenData == null) {
             return null;
@@ -418,10 +393,9 @@ public class HookMethodManager {
         // and to escape invalid file name character (Method name may contain such characters
         // if method is Groovy method, for example).
         File captureFile = new File(String.format("%s/%s/%s/%03d.png", captureRootDir,
-                CommonUtils.encodeToSafeAsciiFileNameString(rootMethod.getTestClass().getQualifiedName(), Charsets.UTF_8),
-                CommonUtils.encodeToSafeAsciiFileNameString(rootMethod.getSimpleName(), Charsets.UTF_8),
-                currentCaptureNo));
-        currentCaptureNo++;
+                CommonUtils.encodeToSafeAsciiFileNameString(srcTree.getClassQualifiedName(rootMethodId), Charsets.UTF_8),
+                CommonUtils.encodeToSafeAsciiFileNameString(srcTree.getSimpleName(rootMethodId), Charsets.UTF_8),
+                captureNos.incrementAndGet(rootMethodId)));
 
         if (captureFile.getParentFile() != null) {
             captureFile.getParentFile().mkdirs();
@@ -443,7 +417,7 @@ public class HookMethodManager {
     // - returns screen capture file.
     // - returns null if fails to capture
     private File captureScreenForStackLines(
-            TestMethod rootMethod, List<List<StackLine>> stackLinesList, List<Integer> executionTimes) {
+            ThreadState state, List<List<StackLine>> stackLinesList, List<Integer> executionTimes) {
         if (stackLinesList == null) {
             throw new NullPointerException();
         }
@@ -453,7 +427,7 @@ public class HookMethodManager {
         if (stackLinesList.size() != executionTimes.size()) {
             throw new IllegalArgumentException("size mismatch");
         }
-        File captureFile = captureScreen(rootMethod);
+        File captureFile = captureScreen(state.currentRootMethodId);
         if (captureFile == null) {
             return null;
         }
@@ -462,17 +436,24 @@ public class HookMethodManager {
             capture.setPath(new File(captureFile.getAbsolutePath()));
             capture.addAllStackLines(stackLinesList.get(i));
             capture.setExecutionTime(executionTimes.get(i));
-            currentRunResult.addLineScreenCapture(capture);
+            state.currentRunResult.addLineScreenCapture(capture);
         }
         return captureFile;
     }
 
     // if method is called from not stepInCapture line, then returns false.
-    private boolean canStepInCaptureTo(List<StackLine> stackLines) {
+    private boolean canStepInCaptureTo(ShadowStack stack) {
+        // the frames which have not executed any code line are not in the stack lines
+        int bottom = stack.size() - 1;
+        while (bottom >= 0 && stack.getCodeLineId(bottom) == -1) {
+            bottom--;
+        }
         // stack bottom line ( = root line) is always regarded as stepIn true line
-        for (int i = 0; i < stackLines.size() - 1; i++) {
-            StackLine stackLine = stackLines.get(i);
-            CaptureStyle style = stackLine.getMethod().getCaptureStyle();
+        for (int depth = 0; depth < bottom; depth++) {
+            if (stack.getCodeLineId(depth) == -1) {
+                continue;
+            }
+            CaptureStyle style = srcTree.getCaptureStyle(stack.getMethodId(depth));
             if (style != CaptureStyle.STEP_IN && style != CaptureStyle.STEP_IN_ONLY) {
                 return false;
             }
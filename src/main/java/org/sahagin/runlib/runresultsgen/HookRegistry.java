@@ -0,0 +1,76 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.util.Arrays;
+
+import org.sahagin.share.Config;
+
+// the information shared between RunResultsGenerateHookSetter and HookMethodDef.
+// The hook setter registers each hooked code line at transform time,
+// and the inserted hook passes only the int method id and code line id,
+// so that the hook doesn't need to build any string key to find the method and the line.
+// Both of them must be loaded by the same class loader as the agent
+public class HookRegistry {
+    private static HookRegistry globalInstance = null;
+    private final Config config;
+    private final RuntimeSrcTree srcTree;
+    // code line id is the index of these arrays
+    private volatile int[] codeLineMethodIds = new int[256];
+    private volatile int[] hookedLines = new int[256];
+    private volatile int[] codeBodyIndexes = new int[256];
+    private int codeLineCount = 0;
+
+    private HookRegistry(Config config, RuntimeSrcTree srcTree) {
+        if (config == null) {
+            throw new NullPointerException();
+        }
+        if (srcTree == null) {
+            throw new NullPointerException();
+        }
+        this.config = config;
+        this.srcTree = srcTree;
+    }
+
+    public static synchronized void globalInitialize(Config config, RuntimeSrcTree srcTree) {
+        globalInstance = new HookRegistry(config, srcTree);
+    }
+
+    // returns null if not initialized
+    public static synchronized HookRegistry globalInstance() {
+        return globalInstance;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public RuntimeSrcTree getSrcTree() {
+        return srcTree;
+    }
+
+    // returns the code line id for the code line hooked at hookedLine.
+    // codeBodyIndex is the first code body index in the hooked line
+    public synchronized int registerCodeLine(int methodId, int hookedLine, int codeBodyIndex) {
+        if (codeLineCount == codeLineMethodIds.length) {
+            int newLength = codeLineCount * 2;
+            codeLineMethodIds = Arrays.copyOf(codeLineMethodIds, newLength);
+            hookedLines = Arrays.copyOf(hookedLines, newLength);
+            codeBodyIndexes = Arrays.copyOf(codeBodyIndexes, newLength);
+        }
+        codeLineMethodIds[codeLineCount] = methodId;
+        hookedLines[codeLineCount] = hookedLine;
+        codeBodyIndexes[codeLineCount] = codeBodyIndex;
+        return codeLineCount++;
+    }
+
+    public int getMethodId(int codeLineId) {
+        return codeLineMethodIds[codeLineId];
+    }
+
+    public int getHookedLine(int codeLineId) {
+        return hookedLines[codeLineId];
+    }
+
+    public int getCodeBodyIndex(int codeLineId) {
+        return codeBodyIndexes[codeLineId];
+    }
+}
@@ -6,7 +6,11 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,27 +18,41 @@ import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtMethod;
+import javassist.LoaderClassPath;
 import javassist.NotFoundException;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.openqa.selenium.io.IOUtils;
-import org.sahagin.share.IllegalTestScriptException;
 import org.sahagin.share.Logging;
-import org.sahagin.share.srctree.SrcTree;
 import org.sahagin.share.srctree.TestMethod;
-import org.sahagin.share.srctree.TestMethodTable;
-import org.sahagin.share.srctree.code.CodeLine;
-import org.sahagin.share.yaml.YamlConvertException;
 
 public class RunResultsGenerateHookSetter implements ClassFileTransformer {
     private static Logger logger = Logging.getLogger(RunResultsGenerateHookSetter.class.getName());
-    private String configFilePath;
-    private SrcTree srcTree;
+    private HookRegistry registry;
+    private RuntimeSrcTree srcTree;
+    // qualified names of the classes which may be transformed
+    private Set<String> hookTargetClassNames;
+    // the class loaders whose class path has been appended to the default ClassPool
+    private final Set<ClassLoader> appendedLoaders
+    = Collections.newSetFromMap(new WeakHashMap<ClassLoader, Boolean>(4));
 
-    public RunResultsGenerateHookSetter(String configFilePath, SrcTree srcTree)
-            throws YamlConvertException, IllegalTestScriptException {
-        this.configFilePath = configFilePath;
-        this.srcTree = srcTree;
+    // the hooks inserted by this transformer refer to the method ids of registry.getSrcTree()
+    // and the code line ids registered to registry
+    public RunResultsGenerateHookSetter(HookRegistry registry) {
+        this.registry = registry;
+        this.srcTree = registry.getSrcTree();
+        this.hookTargetClassNames = hookTargetClassNames(srcTree);
+    }
+
+    private static Set<String> hookTargetClassNames(RuntimeSrcTree srcTree) {
+        Set<String> result = new HashSet<>(256);
+        for (int methodId = 0; methodId < srcTree.getMethodCount(); methodId++) {
+            // no hook is inserted to the sub method without code body
+            if (srcTree.isRootMethod(methodId) || srcTree.getCodeBodySize(methodId) > 0) {
+                result.add(srcTree.getClassQualifiedName(methodId));
+            }
+        }
+        return result;
     }
 
     // throws NotFoundException if fails to get names
@@ -57,10 +75,9 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
         return TestMethod.generateMethodKey(classQualifiedName, methodSimpleName, argClassQualifiedNames);
     }
 
-    private List<Pair<CtMethod, TestMethod>> allMethodsSub(
-            TestMethodTable table, CtClass ctClass) {
+    private List<Pair<CtMethod, Integer>> allMethodsSub(boolean root, CtClass ctClass) {
         CtMethod[] allMethods = ctClass.getMethods();
-        List<Pair<CtMethod, TestMethod>> result = new ArrayList<>(allMethods.length);
+        List<Pair<CtMethod, Integer>> result = new ArrayList<>(allMethods.length);
         for (CtMethod ctMethod : allMethods) {
             if (!ctMethod.getDeclaringClass().getName().equals(ctClass.getName())) {
                 // methods defined on superclass are also included in the result list of
@@ -68,9 +85,9 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
                 continue;
             }
             try {
-                TestMethod testMethod = table.getByKey(generateMethodKey(ctMethod));
-                if (testMethod != null) {
-                    result.add(Pair.of(ctMethod, testMethod));
+                int methodId = srcTree.getMethodIdByKey(generateMethodKey(ctMethod));
+                if (methodId != -1 && srcTree.isRootMethod(methodId) == root) {
+                    result.add(Pair.of(ctMethod, methodId));
                 }
             } catch (NotFoundException e) {
                 // just ignore this method
@@ -80,17 +97,12 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
         return result;
     }
 
-    private List<Pair<CtMethod, TestMethod>> allRootMethods(SrcTree srcTree, CtClass ctClass) {
-        return allMethodsSub(srcTree.getRootMethodTable(), ctClass);
+    private List<Pair<CtMethod, Integer>> allRootMethods(CtClass ctClass) {
+        return allMethodsSub(true, ctClass);
     }
 
-    private List<Pair<CtMethod, TestMethod>> allSubMethods(SrcTree srcTree, CtClass ctClass) {
-        return allMethodsSub(srcTree.getSubMethodTable(), ctClass);
-    }
-
-    private String hookInitializeSrc() {
-        String hookClassName = HookMethodDef.class.getCanonicalName();
-        return String.format("%s.initialize(\"%s\");", hookClassName, configFilePath);
+    private List<Pair<CtMethod, Integer>> allSubMethods(CtClass ctClass) {
+        return allMethodsSub(false, ctClass);
     }
 
     // TODO should return false if user should define class java/.. or javax/...
@@ -107,15 +119,15 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
 
     // Returns true if the statement for the codeLineIndex is the last statement for the containing line.
     // This may return false since multiple statement can be found in a line.
-    private boolean isLineLastStament(TestMethod method, int codeLineIndex) {
-        CodeLine codeLine = method.getCodeBody().get(codeLineIndex);
-        if (codeLineIndex == method.getCodeBody().size() - 1) {
+    private boolean isLineLastStament(int methodId, int codeLineIndex) {
+        if (codeLineIndex == srcTree.getCodeBodySize(methodId) - 1) {
             return true;
         }
 
-        CodeLine nextCodeLine = method.getCodeBody().get(codeLineIndex + 1);
-        assert codeLine.getEndLine() <= nextCodeLine.getStartLine();
-        if (codeLine.getEndLine() == nextCodeLine.getStartLine()) {
+        int endLine = srcTree.getEndLine(methodId, codeLineIndex);
+        int nextStartLine = srcTree.getStartLine(methodId, codeLineIndex + 1);
+        assert endLine <= nextStartLine;
+        if (endLine == nextStartLine) {
             // if next statement exists in the same line,
             // this statement is not the last statement for the line
             return false;
@@ -125,8 +137,8 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
 
     // beforeHook insertion target line for the specified codeLineIndex.
     // Returns -1 if beforeHook for the codeLineIndex should not be inserted
-    private int beforeHookInsertLine(TestMethod method, int codeLineIndex) {
-        if (!isLineLastStament(method, codeLineIndex)) {
+    private int beforeHookInsertLine(int methodId, int codeLineIndex) {
+        if (!isLineLastStament(methodId, codeLineIndex)) {
             // don't insert the beforeHook since afterHook does not inserted to this line
             return -1;
         }
@@ -134,70 +146,69 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
         // so that not to insert the hook to the middle of the line,
         // search the line top statement and insert hook to the statement line
         for (int i = codeLineIndex; i > 0; i--) {
-            CodeLine thisLine = method.getCodeBody().get(i);
-            CodeLine prevLine = method.getCodeBody().get(i - 1);
-            assert prevLine.getEndLine() <= thisLine.getEndLine();
-            if (prevLine.getEndLine() != thisLine.getStartLine()) {
-                return thisLine.getStartLine();
+            int thisStartLine = srcTree.getStartLine(methodId, i);
+            int prevEndLine = srcTree.getEndLine(methodId, i - 1);
+            assert prevEndLine <= srcTree.getEndLine(methodId, i);
+            if (prevEndLine != thisStartLine) {
+                return thisStartLine;
             }
         }
-        return method.getCodeBody().get(0).getStartLine();
+        return srcTree.getStartLine(methodId, 0);
     }
 
     // afterHook insertion target line for the specified codeLineIndex.
     // Returns -1 if afterHook for the codeLineIndex should not be inserted
-    private int afterHookInsertLine(TestMethod method, int codeLineIndex) {
+    private int afterHookInsertLine(int methodId, int codeLineIndex) {
         // if multiple statements exist in one line, afterHook is inserted only after the last statement,
         // since when multi-line statements are like:
         // method(1);method(
         //         2);
         // insertion to the middle of the statement causes problem
-        if (!isLineLastStament(method, codeLineIndex)) {
+        if (!isLineLastStament(methodId, codeLineIndex)) {
             return -1;
         }
         // insert hook to the next line of the codeLine
         // since insertAt method inserts code just before the specified line
-        CodeLine codeLine = method.getCodeBody().get(codeLineIndex);
-        return codeLine.getEndLine() + 1;
+        return srcTree.getEndLine(methodId, codeLineIndex) + 1;
     }
 
     // - set beforeCodeLineHook and afterCodeLineHook for the each CodeLine of the specified method body
     // - returns true this method actually transform ctMethod body
-    private boolean insertCodeBodyHook(TestMethod method, CtMethod ctMethod,
-            String classQualifiedName, String methodSimpleName, String methodArgClassesStr) throws CannotCompileException {
+    private boolean insertCodeBodyHook(int methodId, CtMethod ctMethod) throws CannotCompileException {
         String hookClassName = HookMethodDef.class.getCanonicalName();
-        String initializeSrc = hookInitializeSrc();
         boolean transformed = false;
 
         // iterate code body in the inverse order,
         // so that beforeHook is always inserted after the afterHook of the previous line
         // even if target line of these two hooks are the same
-        for (int i = method.getCodeBody().size() - 1; i >= 0; i--) {
-            int hookedLine = method.getCodeBody().get(i).getStartLine();
+        for (int i = srcTree.getCodeBodySize(methodId) - 1; i >= 0; i--) {
+            int hookedLine = srcTree.getStartLine(methodId, i);
+            int afterHookInsertedLine = afterHookInsertLine(methodId, i);
+            int beforeHookInsertedLine = beforeHookInsertLine(methodId, i);
+            if (afterHookInsertedLine == -1 && beforeHookInsertedLine == -1) {
+                continue;
+            }
+            // the same id is used for beforeHook and afterHook
+            int codeLineId = registry.registerCodeLine(
+                    methodId, hookedLine, srcTree.getFirstCodeBodyIndexAt(methodId, hookedLine));
 
             // insert afterHook first and beforeHook second in each iteration,
             // so that beforeHook is always inserted before the afterHook
             // even if actual inserted lines for these two hooks are the same
 
-            int afterHookInsertedLine = afterHookInsertLine(method, i);
             if (afterHookInsertedLine != -1) {
                 int actualAfterHookInsertedLine = ctMethod.insertAt(afterHookInsertedLine, false, null);
                 ctMethod.insertAt(afterHookInsertedLine,
-                        String.format("%s%s.afterCodeLineHook(\"%s\",\"%s\",\"%s\",\"%s\",%d, %d);",
-                                initializeSrc, hookClassName, classQualifiedName,
-                                methodSimpleName, methodSimpleName,
-                                methodArgClassesStr, hookedLine, actualAfterHookInsertedLine));
+                        String.format("%s.afterCodeLineHook(%d, %d, %d);", hookClassName,
+                                methodId, codeLineId, actualAfterHookInsertedLine));
                 transformed = true;
             }
 
-            int beforeHookInsertedLine = beforeHookInsertLine(method, i);
             if (beforeHookInsertedLine != -1) {
                 int actualBeforeHookInsertedLine = ctMethod.insertAt(beforeHookInsertedLine, false, null);
                 ctMethod.insertAt(beforeHookInsertedLine,
-                        String.format("%s%s.beforeCodeLineHook(\"%s\",\"%s\",\"%s\",\"%s\",%d, %d);",
-                                initializeSrc, hookClassName, classQualifiedName,
-                                methodSimpleName, methodSimpleName,
-                                methodArgClassesStr, hookedLine, actualBeforeHookInsertedLine));
+                        String.format("%s.beforeCodeLineHook(%d, %d, %d);", hookClassName,
+                                methodId, codeLineId, actualBeforeHookInsertedLine));
                 transformed = true;
             }
         }
@@ -205,6 +216,22 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
         return transformed;
     }
 
+    // The default ClassPool searches classes through the loader of java.lang.Object,
+    // which only finds the bootstrap classes on Java 9 or later,
+    // so the hook classes such as HookMethodDef cannot be compiled into the transformed class.
+    // The class path of the loader of the transformed class is also searched for them
+    private ClassPool classPoolFor(ClassLoader loader) {
+        ClassPool classPool = ClassPool.getDefault();
+        if (loader != null) {
+            synchronized (appendedLoaders) {
+                if (appendedLoaders.add(loader)) {
+                    classPool.appendClassPath(new LoaderClassPath(loader));
+                }
+            }
+        }
+        return classPool;
+    }
+
     @Override
     public byte[] transform(ClassLoader loader, String className,
             Class<?> classBeingRedefined,
@@ -221,10 +248,14 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
         if (isJavaSystemClassName(className)) {
             return null;
         }
+        // Don't parse the classes which have no hook target method,
+        // so that the classes of not selected tests and libraries are loaded as they are
+        if (className == null || !hookTargetClassNames.contains(className.replace('/', '.'))) {
+            return null;
+        }
 
-        ClassPool classPool = ClassPool.getDefault();
+        ClassPool classPool = classPoolFor(loader);
         String hookClassName = HookMethodDef.class.getCanonicalName();
-        String initializeSrc = hookInitializeSrc();
         boolean transformed = false;
         InputStream stream = null;
         try {
@@ -238,44 +269,40 @@ public class RunResultsGenerateHookSetter implements ClassFileTransformer {
                 return null;
             }
 
-            for (Pair<CtMethod, TestMethod> pair : allSubMethods(srcTree, ctClass)) {
+            for (Pair<CtMethod, Integer> pair : allSubMethods(ctClass)) {
                 CtMethod ctSubMethod = pair.getLeft();
-                TestMethod subMethod = pair.getRight();
+                int subMethodId = pair.getRight();
                 if (ctSubMethod.isEmpty()) {
                     logger.info("skip empty method: " + ctSubMethod.getLongName());
                     continue; // cannot hook empty method
                 }
 
-                String subClassQualifiedName = subMethod.getTestClass().getQualifiedName();
-                String subMethodSimpleName = subMethod.getSimpleName();
-                String subMethodArgClassesStr = TestMethod.argClassQualifiedNamesToArgClassesStr(
-                        getArgClassQualifiedNames(ctSubMethod));
-                boolean insertResult = insertCodeBodyHook(
-                        subMethod, ctSubMethod, subClassQualifiedName, subMethodSimpleName, subMethodArgClassesStr);
+                boolean insertResult = insertCodeBodyHook(subMethodId, ctSubMethod);
                 if (insertResult) {
+                    // maintain the shadow stack frame for the code line hooks
+                    ctSubMethod.insertBefore(String.format("%s.enterMethodHook(%d);",
+                            hookClassName, subMethodId));
+                    ctSubMethod.insertAfter(String.format("%s.exitMethodHook(%d);",
+                            hookClassName, subMethodId), true);
                     transformed = true;
                 }
             }
 
             CtClass exceptionType = classPool.get(Throwable.class.getCanonicalName());
-            for (Pair<CtMethod, TestMethod> pair : allRootMethods(srcTree, ctClass)) {
+            for (Pair<CtMethod, Integer> pair : allRootMethods(ctClass)) {
                 CtMethod ctRootMethod = pair.getLeft();
-                TestMethod rootMethod = pair.getRight();
+                int rootMethodId = pair.getRight();
                 if (ctRootMethod.isEmpty()) {
                     continue; // cannot hook empty method
                 }
 
-                String rootClassQualifiedName = rootMethod.getTestClass().getQualifiedName();
-                String rootMethodSimpleName = rootMethod.getSimpleName();
-                String rootMethodArgClassesStr = TestMethod.argClassQualifiedNamesToArgClassesStr(
-                        getArgClassQualifiedNames(ctRootMethod));
-                insertCodeBodyHook(rootMethod, ctRootMethod, rootClassQualifiedName, rootMethodSimpleName, rootMethodArgClassesStr);
-                ctRootMethod.insertBefore(String.format("%s%s.beforeMethodHook(\"%s\",\"%s\",\"%s\");",
-                        initializeSrc, hookClassName, rootClassQualifiedName, rootMethodSimpleName, rootMethodSimpleName));
-                ctRootMethod.addCatch(String.format("{ %s%s.methodErrorHook(\"%s\",\"%s\",$e); throw $e; }",
-                        initializeSrc, hookClassName, rootClassQualifiedName, rootMethodSimpleName), exceptionType);
-                ctRootMethod.insertAfter(String.format("%s%s.afterMethodHook(\"%s\",\"%s\");",
-                        initializeSrc, hookClassName, rootClassQualifiedName, rootMethodSimpleName), true);
+                insertCodeBodyHook(rootMethodId, ctRootMethod);
+                ctRootMethod.insertBefore(String.format("%s.beforeMethodHook(%d);",
+                        hookClassName, rootMethodId));
+                ctRootMethod.addCatch(String.format("{ %s.methodErrorHook(%d, $e); throw $e; }",
+                        hookClassName, rootMethodId), exceptionType);
+                ctRootMethod.insertAfter(String.format("%s.afterMethodHook(%d);",
+                        hookClassName, rootMethodId), true);
                 transformed = true;
             }
 
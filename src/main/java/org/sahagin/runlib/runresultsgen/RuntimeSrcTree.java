@@ -0,0 +1,314 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.sahagin.runlib.external.CaptureStyle;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.SrcTreeSnapshot;
+import org.sahagin.share.srctree.TestMethod;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.CodeLine;
+import org.sahagin.share.srctree.code.Field;
+import org.sahagin.share.srctree.code.SubMethodInvoke;
+import org.sahagin.share.srctree.code.TestStep;
+import org.sahagin.share.srctree.code.TestStepLabel;
+import org.sahagin.share.srctree.code.VarAssign;
+
+// immutable projection of SrcTree which holds only the information used while running the tests.
+// Each method is identified by int id, and source text, TestDoc and code trees are not held,
+// so that the agent does not keep the whole SrcTree during the test execution.
+// If this is created from SrcTreeSnapshot, the code body information of each method
+// is read from the snapshot when it is used first
+public class RuntimeSrcTree {
+    // code line flags
+    private static final byte CAPTURES_THIS_LINE = 1;
+    private static final byte TEST_STEP_LABEL = 2;
+    private static final byte TEST_STEP = 4;
+    private static final int[] NO_IDS = new int[0];
+    private static final String MSG_METHOD_NOT_FOUND = "method not found for key: %s";
+
+    private final String[] methodKeys;
+    private final String[] classKeys;
+    private final String[] classQualifiedNames;
+    private final String[] simpleNames;
+    private final CaptureStyle[] captureStyles;
+    private final boolean[] rootMethods;
+    private final int[] codeBodySizes;
+    // null element means not loaded yet
+    private final MethodCodeBody[] codeBodies;
+    private final SrcTreeSnapshot snapshot; // null if all code bodies are loaded at first
+    private final Map<String, Integer> keyToId;
+    private final Map<Pair<String, String>, int[]> rootNameToIds;
+    private final Map<Pair<String, String>, int[]> subNameToIds;
+
+    // immutable, so this can be published to other threads without synchronization
+    private static final class MethodCodeBody {
+        private final CodeLineIndex lineIndex;
+        private final byte[] flags;
+
+        private MethodCodeBody(CodeLineIndex lineIndex, byte[] flags) {
+            this.lineIndex = lineIndex;
+            this.flags = flags;
+        }
+    }
+
+    private RuntimeSrcTree(int size, SrcTreeSnapshot snapshot) {
+        methodKeys = new String[size];
+        classKeys = new String[size];
+        classQualifiedNames = new String[size];
+        simpleNames = new String[size];
+        captureStyles = new CaptureStyle[size];
+        rootMethods = new boolean[size];
+        codeBodySizes = new int[size];
+        codeBodies = new MethodCodeBody[size];
+        this.snapshot = snapshot;
+        keyToId = new HashMap<>(size * 2);
+        rootNameToIds = new HashMap<>(size);
+        subNameToIds = new HashMap<>(size);
+    }
+
+    // srcTree.. sub methods of SubMethodInvoke are resolved by the key
+    // if its key reference has not been resolved
+    public RuntimeSrcTree(SrcTree srcTree) {
+        this(srcTree.getSubMethodTable().getTestMethods().size()
+                + srcTree.getRootMethodTable().getTestMethods().size(), null);
+        List<TestMethod> subMethodList = srcTree.getSubMethodTable().getTestMethods();
+        List<TestMethod> rootMethodList = srcTree.getRootMethodTable().getTestMethods();
+        List<TestMethod> methods = new ArrayList<>(methodKeys.length);
+        methods.addAll(subMethodList);
+        methods.addAll(rootMethodList);
+        for (int id = 0; id < methods.size(); id++) {
+            TestMethod method = methods.get(id);
+            String classQualifiedName;
+            if (method.getTestClass() != null) {
+                classQualifiedName = method.getTestClass().getQualifiedName();
+            } else {
+                classQualifiedName = method.getTestClassKey();
+            }
+            setMethod(id, method.getKey(), method.getTestClassKey(), classQualifiedName,
+                    method.getSimpleName(), method.getCaptureStyle(),
+                    id >= subMethodList.size(), method.getCodeBody().size());
+        }
+        setNameIndex();
+        // code bodies are set after all methods are set
+        // since they refer to the capture style of the other methods
+        for (int id = 0; id < methods.size(); id++) {
+            codeBodies[id] = newCodeBody(methods.get(id).getCodeBody());
+        }
+    }
+
+    // only the method index is read here, and each code body is read when it is used first
+    public RuntimeSrcTree(SrcTreeSnapshot snapshot) {
+        this(snapshot.getMethodCount(), snapshot);
+        for (int id = 0; id < methodKeys.length; id++) {
+            setMethod(id, snapshot.getMethodKey(id), snapshot.getTestClassKey(id),
+                    snapshot.getClassQualifiedName(id), snapshot.getSimpleName(id),
+                    snapshot.getCaptureStyle(id), snapshot.isRootMethod(id),
+                    snapshot.getCodeBodySize(id));
+        }
+        setNameIndex();
+    }
+
+    private void setMethod(int id, String methodKey, String classKey, String classQualifiedName,
+            String simpleName, CaptureStyle captureStyle, boolean root, int codeBodySize) {
+        // class names and method names are shared by many methods,
+        // and keys are shared with the hook method arguments
+        methodKeys[id] = intern(methodKey);
+        classKeys[id] = intern(classKey);
+        classQualifiedNames[id] = intern(classQualifiedName);
+        simpleNames[id] = intern(simpleName);
+        captureStyles[id] = captureStyle;
+        rootMethods[id] = root;
+        codeBodySizes[id] = codeBodySize;
+
+        // the first method wins if the same key is found
+        if (!keyToId.containsKey(methodKeys[id])) {
+            keyToId.put(methodKeys[id], id);
+        }
+    }
+
+    // called after all methods are set
+    private void setNameIndex() {
+        Map<Pair<String, String>, List<Integer>> rootNameIdLists = new HashMap<>(methodKeys.length);
+        Map<Pair<String, String>, List<Integer>> subNameIdLists = new HashMap<>(methodKeys.length);
+        for (int id = 0; id < methodKeys.length; id++) {
+            Map<Pair<String, String>, List<Integer>> nameIdLists
+            = rootMethods[id] ? rootNameIdLists : subNameIdLists;
+            Pair<String, String> name = Pair.of(classQualifiedNames[id], simpleNames[id]);
+            List<Integer> ids = nameIdLists.get(name);
+            if (ids == null) {
+                ids = new ArrayList<>(1);
+                nameIdLists.put(name, ids);
+            }
+            ids.add(id);
+        }
+        toIdArrayMap(rootNameIdLists, rootNameToIds);
+        toIdArrayMap(subNameIdLists, subNameToIds);
+    }
+
+    private static String intern(String str) {
+        return str == null ? null : str.intern();
+    }
+
+    private static void toIdArrayMap(Map<Pair<String, String>, List<Integer>> idLists,
+            Map<Pair<String, String>, int[]> result) {
+        for (Map.Entry<Pair<String, String>, List<Integer>> entry : idLists.entrySet()) {
+            int[] ids = new int[entry.getValue().size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = entry.getValue().get(i);
+            }
+            result.put(entry.getKey(), ids);
+        }
+    }
+
+    private MethodCodeBody newCodeBody(List<CodeLine> codeBody) {
+        byte[] flags = new byte[codeBody.size()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = codeLineFlag(codeBody.get(i).getCode());
+        }
+        return new MethodCodeBody(new CodeLineIndex(codeBody), flags);
+    }
+
+    private MethodCodeBody codeBody(int methodId) {
+        MethodCodeBody result = codeBodies[methodId];
+        if (result == null) {
+            result = loadCodeBody(methodId);
+        }
+        return result;
+    }
+
+    private synchronized MethodCodeBody loadCodeBody(int methodId) {
+        if (codeBodies[methodId] == null) {
+            TestMethod method;
+            try {
+                method = snapshot.readMethod(methodId);
+            } catch (IllegalDataStructureException e) {
+                throw new RuntimeException(e);
+            }
+            codeBodies[methodId] = newCodeBody(method.getCodeBody());
+        }
+        return codeBodies[methodId];
+    }
+
+    private boolean capturesSubMethod(SubMethodInvoke invoke) {
+        CaptureStyle style;
+        if (invoke.getSubMethod() != null) {
+            style = invoke.getSubMethod().getCaptureStyle();
+        } else {
+            int subMethodId = getMethodIdByKey(invoke.getSubMethodKey());
+            if (subMethodId == -1) {
+                throw new RuntimeException(
+                        String.format(MSG_METHOD_NOT_FOUND, invoke.getSubMethodKey()));
+            }
+            style = captureStyles[subMethodId];
+        }
+        return style == CaptureStyle.THIS_LINE || style == CaptureStyle.STEP_IN;
+    }
+
+    private byte codeLineFlag(Code code) {
+        if (code instanceof SubMethodInvoke) {
+            return capturesSubMethod((SubMethodInvoke) code) ? CAPTURES_THIS_LINE : 0;
+        } else if (code instanceof VarAssign) {
+            VarAssign assign = (VarAssign) code;
+            if (assign.getValue() instanceof SubMethodInvoke) {
+                return capturesSubMethod((SubMethodInvoke) assign.getValue()) ? CAPTURES_THIS_LINE : 0;
+            } else if (assign.getVariable() instanceof Field) {
+                return CAPTURES_THIS_LINE;
+            }
+            return 0;
+        } else if (code instanceof TestStepLabel) {
+            return TEST_STEP_LABEL;
+        } else if (code instanceof TestStep) {
+            return TEST_STEP;
+        }
+        return 0;
+    }
+
+    public int getMethodCount() {
+        return methodKeys.length;
+    }
+
+    // returns -1 if not found
+    public int getMethodIdByKey(String methodKey) {
+        Integer id = keyToId.get(methodKey);
+        return id == null ? -1 : id;
+    }
+
+    // returns empty array if not found.
+    // Don't modify the returned array
+    public int[] getRootMethodIdsByName(String classQualifiedName, String methodSimpleName) {
+        int[] ids = rootNameToIds.get(Pair.of(classQualifiedName, methodSimpleName));
+        return ids == null ? NO_IDS : ids;
+    }
+
+    // returns empty array if not found.
+    // Don't modify the returned array
+    public int[] getSubMethodIdsByName(String classQualifiedName, String methodSimpleName) {
+        int[] ids = subNameToIds.get(Pair.of(classQualifiedName, methodSimpleName));
+        return ids == null ? NO_IDS : ids;
+    }
+
+    public boolean isRootMethod(int methodId) {
+        return rootMethods[methodId];
+    }
+
+    public String getMethodKey(int methodId) {
+        return methodKeys[methodId];
+    }
+
+    public String getTestClassKey(int methodId) {
+        return classKeys[methodId];
+    }
+
+    public String getClassQualifiedName(int methodId) {
+        return classQualifiedNames[methodId];
+    }
+
+    public String getSimpleName(int methodId) {
+        return simpleNames[methodId];
+    }
+
+    public CaptureStyle getCaptureStyle(int methodId) {
+        return captureStyles[methodId];
+    }
+
+    public int getCodeBodySize(int methodId) {
+        return codeBodySizes[methodId];
+    }
+
+    public int getStartLine(int methodId, int codeBodyIndex) {
+        return codeBody(methodId).lineIndex.getStartLine(codeBodyIndex);
+    }
+
+    public int getEndLine(int methodId, int codeBodyIndex) {
+        return codeBody(methodId).lineIndex.getEndLine(codeBodyIndex);
+    }
+
+    public List<Integer> getCodeBodyIndexesAt(int methodId, int line) {
+        return codeBody(methodId).lineIndex.indexesAt(line);
+    }
+
+    // returns -1 if not found
+    public int getFirstCodeBodyIndexAt(int methodId, int line) {
+        return codeBody(methodId).lineIndex.firstIndexAt(line);
+    }
+
+    // true if the code line calls the method whose screen capture is taken for this line,
+    // or assigns value to the field
+    public boolean capturesThisLine(int methodId, int codeBodyIndex) {
+        return (codeBody(methodId).flags[codeBodyIndex] & CAPTURES_THIS_LINE) != 0;
+    }
+
+    public boolean isTestStepLabel(int methodId, int codeBodyIndex) {
+        return (codeBody(methodId).flags[codeBodyIndex] & TEST_STEP_LABEL) != 0;
+    }
+
+    public boolean isTestStep(int methodId, int codeBodyIndex) {
+        return (codeBody(methodId).flags[codeBodyIndex] & TEST_STEP) != 0;
+    }
+}
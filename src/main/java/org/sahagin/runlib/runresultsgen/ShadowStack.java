@@ -0,0 +1,76 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.util.Arrays;
+
+// call stack of the hooked methods for one thread, which is maintained by the inserted hooks.
+// Each frame holds the method id and the code line which the method is executing now,
+// so that the StackLine list can be built without Thread.getStackTrace.
+// The frame is popped by the finally block hook, so the frame is never left
+// even if the method exits by exception, and the code line of the frame left by exception
+// is overwritten by the next code line hook of the frame
+class ShadowStack {
+    private static final int NO_CODE_LINE = -1;
+    private int[] methodIds = new int[64];
+    private int[] codeLineIds = new int[64];
+    private long[] lineStartTimes = new long[64];
+    private int size = 0;
+
+    public void push(int methodId) {
+        if (size == methodIds.length) {
+            methodIds = Arrays.copyOf(methodIds, size * 2);
+            codeLineIds = Arrays.copyOf(codeLineIds, size * 2);
+            lineStartTimes = Arrays.copyOf(lineStartTimes, size * 2);
+        }
+        methodIds[size] = methodId;
+        codeLineIds[size] = NO_CODE_LINE;
+        size++;
+    }
+
+    // pops the frames until the top frame for methodId is popped.
+    // Does nothing if no frame for methodId is found
+    public void pop(int methodId) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (methodIds[i] == methodId) {
+                size = i;
+                return;
+            }
+        }
+    }
+
+    // sets the code line which the top frame is executing now.
+    // If the top frame is not for methodId, a new frame is pushed
+    public void setCodeLine(int methodId, int codeLineId) {
+        if (size == 0 || methodIds[size - 1] != methodId) {
+            push(methodId);
+        }
+        codeLineIds[size - 1] = codeLineId;
+    }
+
+    public void setLineStartTime(long lineStartTime) {
+        lineStartTimes[size - 1] = lineStartTime;
+    }
+
+    // true if the top frame is executing the code line
+    public boolean isExecuting(int methodId, int codeLineId) {
+        return size > 0 && methodIds[size - 1] == methodId && codeLineIds[size - 1] == codeLineId;
+    }
+
+    public long getLineStartTime() {
+        return lineStartTimes[size - 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // depth 0 is the top frame
+
+    public int getMethodId(int depth) {
+        return methodIds[size - 1 - depth];
+    }
+
+    // returns -1 if the method has not executed any hooked code line yet
+    public int getCodeLineId(int depth) {
+        return codeLineIds[size - 1 - depth];
+    }
+}
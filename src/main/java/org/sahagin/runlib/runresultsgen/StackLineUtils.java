@@ -4,10 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.sahagin.share.runresults.StackLine;
-import org.sahagin.share.srctree.SrcTree;
-import org.sahagin.share.srctree.TestMethod;
-import org.sahagin.share.srctree.TestMethodTable;
-import org.sahagin.share.srctree.code.CodeLine;
 
 class StackLineUtils {
 
@@ -49,70 +45,75 @@ class StackLineUtils {
         }
     }
 
-    // - assume only 1 root method line exists in currentStackTrace
-    //   and overloaded root method does not exists
-    // returns null if not found
-    public static TestMethod getRootMethod(
-            TestMethodTable rootMethodTable, StackTraceElement[] currentStackTrace) {
-        for (StackTraceElement element : currentStackTrace) {
-            List<TestMethod> rootMethods
-            = rootMethodTable.getByName(element.getClassName(), element.getMethodName());
-            if (rootMethods.size() > 0) {
-                assert rootMethods.size() == 1;
-                return rootMethods.get(0);
-            }
-        }
-        return null;
-    }
-
     // return null if not found
-    private static StackLine getStackLine(
-            TestMethodTable table, String classQualifiedName, String methodSimpleName, int line) {
+    private static StackLine getStackLine(RuntimeSrcTree srcTree, int[] nameMethodIds, int line) {
         if (line <= 0) {
             return null; // 0 or negative line number never matches
         }
-        List<TestMethod> nameMethods = table.getByName(classQualifiedName, methodSimpleName);
-        for (TestMethod method : nameMethods) {
-            for (int i = 0; i < method.getCodeBody().size(); i++) {
-                CodeLine codeLine = method.getCodeBody().get(i);
-                if (codeLine.getStartLine() <= line && line <= codeLine.getEndLine()) {
-                    StackLine result = new StackLine();
-                    result.setMethodKey(method.getKey());
-                    result.setMethod(method);
-                    result.setCodeBodyIndex(i);
-                    result.setLine(line);
-                    return result;
-                }
+        for (int methodId : nameMethodIds) {
+            int codeBodyIndex = srcTree.getFirstCodeBodyIndexAt(methodId, line);
+            if (codeBodyIndex != -1) {
+                // method is not set since RuntimeSrcTree does not have TestMethod instance,
+                // and only methodKey is used for the run results
+                StackLine result = new StackLine();
+                result.setMethodKey(srcTree.getMethodKey(methodId));
+                result.setCodeBodyIndex(codeBodyIndex);
+                result.setLine(line);
+                return result;
             }
         }
         return null;
     }
 
     // null means method does not exists in srcTree
-    private static StackLine getStackLine(SrcTree srcTree,
+    private static StackLine getStackLine(RuntimeSrcTree srcTree,
             String classQualifiedName, String methodSimpleName, int line) {
-        StackLine rootStackLine = getStackLine(
-                srcTree.getRootMethodTable(), classQualifiedName, methodSimpleName, line);
+        StackLine rootStackLine = getStackLine(srcTree,
+                srcTree.getRootMethodIdsByName(classQualifiedName, methodSimpleName), line);
         if (rootStackLine != null) {
             return rootStackLine;
         }
-        StackLine subStackLine = getStackLine(
-                srcTree.getSubMethodTable(), classQualifiedName, methodSimpleName, line);
+        StackLine subStackLine = getStackLine(srcTree,
+                srcTree.getSubMethodIdsByName(classQualifiedName, methodSimpleName), line);
         if (subStackLine != null) {
             return subStackLine;
         }
         return null;
     }
 
-    private static StackLine getStackLine(SrcTree srcTree,
+    private static StackLine getStackLine(RuntimeSrcTree srcTree,
             StackTraceElement element, LineReplacer replacer) {
         replacer.replace(element.getClassName(), element.getMethodName(), element.getLineNumber());
         return getStackLine(srcTree, replacer.getReplacedClassQualifiedName(),
                 replacer.getReplacedMethodSimpleName(), replacer.getReplacedLine());
     }
 
+    // the frames which have not executed any hooked code line are skipped.
+    // The line of each StackLine is the start line of the hooked code line,
+    // that is, the first line of the statements hooked together.
+    // This is also true for the caller frames, so if the sub method is called
+    // from the second or later line of the multi-line statement,
+    // the line of the caller frame is the start line of the statement
+    // instead of the line in the stack trace
+    public static List<StackLine> getStackLines(
+            RuntimeSrcTree srcTree, HookRegistry registry, ShadowStack stack) {
+        List<StackLine> stackLines = new ArrayList<>(stack.size());
+        for (int depth = 0; depth < stack.size(); depth++) {
+            int codeLineId = stack.getCodeLineId(depth);
+            if (codeLineId == -1) {
+                continue;
+            }
+            StackLine stackLine = new StackLine();
+            stackLine.setMethodKey(srcTree.getMethodKey(stack.getMethodId(depth)));
+            stackLine.setCodeBodyIndex(registry.getCodeBodyIndex(codeLineId));
+            stackLine.setLine(registry.getHookedLine(codeLineId));
+            stackLines.add(stackLine);
+        }
+        return stackLines;
+    }
+
     // gap line (the line out of SrcTree) is skipped
-    public static List<StackLine> getStackLines(SrcTree srcTree,
+    public static List<StackLine> getStackLines(RuntimeSrcTree srcTree,
             StackTraceElement[] elements, LineReplacer replacer) {
         List<StackLine> stackLines = new ArrayList<>(elements.length);
         for (StackTraceElement element : elements) {
@@ -0,0 +1,117 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.sahagin.runlib.external.CaptureStyle;
+
+// Generation scoped cache of the values derived from JDT bindings.
+// The key is IBinding.getKey(), which is the same for the same Java element
+// even among the different ASTParser instances.
+// Values must not hold any binding since the binding is valid only in one parsing.
+// This class is thread safe.
+class BindingCache {
+    private Map<String, String> methodKeys = new ConcurrentHashMap<>(1024);
+    private Map<String, String> noArgMethodKeys = new ConcurrentHashMap<>(1024);
+    private Map<String, SuperMethodKeys> superMethodKeys = new ConcurrentHashMap<>(1024);
+    private Map<String, Pair<String, CaptureStyle>> methodTestDocs = new ConcurrentHashMap<>(1024);
+    private Map<String, Pair<String, Boolean>> classTestDocs = new ConcurrentHashMap<>(256);
+    private AtomicLong hitCount = new AtomicLong(0);
+    private AtomicLong missCount = new AtomicLong(0);
+
+    // the keys of the methods which the method overrides,
+    // and the types referred to while searching them
+    public static class SuperMethodKeys {
+        private List<String> keys = new ArrayList<>(4);
+        private Set<String> referredTypes = new LinkedHashSet<>(4);
+        private boolean unresolvedBindingFound = false;
+
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        public void addKey(String key) {
+            keys.add(key);
+        }
+
+        public Set<String> getReferredTypes() {
+            return referredTypes;
+        }
+
+        public boolean isUnresolvedBindingFound() {
+            return unresolvedBindingFound;
+        }
+
+        public void setUnresolvedBindingFound(boolean unresolvedBindingFound) {
+            this.unresolvedBindingFound = unresolvedBindingFound;
+        }
+    }
+
+    // returns null if bindingKey is null or value is not found
+    private <T> T get(Map<String, T> map, String bindingKey) {
+        if (bindingKey == null) {
+            return null;
+        }
+        T value = map.get(bindingKey);
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    // do nothing if bindingKey is null
+    private <T> void put(Map<String, T> map, String bindingKey, T value) {
+        if (bindingKey == null) {
+            return;
+        }
+        map.put(bindingKey, value);
+    }
+
+    public String getMethodKey(String bindingKey, boolean noArgClassesStr) {
+        return get(noArgClassesStr ? noArgMethodKeys : methodKeys, bindingKey);
+    }
+
+    public void putMethodKey(String bindingKey, boolean noArgClassesStr, String methodKey) {
+        put(noArgClassesStr ? noArgMethodKeys : methodKeys, bindingKey, methodKey);
+    }
+
+    public SuperMethodKeys getSuperMethodKeys(String bindingKey) {
+        return get(superMethodKeys, bindingKey);
+    }
+
+    public void putSuperMethodKeys(String bindingKey, SuperMethodKeys keys) {
+        put(superMethodKeys, bindingKey, keys);
+    }
+
+    public Pair<String, CaptureStyle> getMethodTestDoc(String bindingKey) {
+        return get(methodTestDocs, bindingKey);
+    }
+
+    public void putMethodTestDoc(String bindingKey, Pair<String, CaptureStyle> testDoc) {
+        put(methodTestDocs, bindingKey, testDoc);
+    }
+
+    public Pair<String, Boolean> getClassTestDoc(String bindingKey) {
+        return get(classTestDocs, bindingKey);
+    }
+
+    public void putClassTestDoc(String bindingKey, Pair<String, Boolean> testDoc) {
+        put(classTestDocs, bindingKey, testDoc);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+}
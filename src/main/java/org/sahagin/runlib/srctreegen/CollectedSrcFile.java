@@ -0,0 +1,235 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sahagin.share.srctree.PageClass;
+import org.sahagin.share.srctree.TestClass;
+import org.sahagin.share.srctree.TestField;
+import org.sahagin.share.srctree.TestMethod;
+import org.sahagin.share.yaml.YamlConvertException;
+import org.sahagin.share.yaml.YamlConvertible;
+import org.sahagin.share.yaml.YamlUtils;
+
+// Classes, methods and fields collected from one source file.
+// Code body of each method may contain UnresolvedCode.
+class CollectedSrcFile implements YamlConvertible {
+    private String srcFilePath;
+    private String srcFileHash;
+    // binary names of the classes declared in this file
+    private Set<String> declaredTypes = new LinkedHashSet<>(4);
+    // binary names of the source classes whose definition affects the data of this file
+    private Set<String> referredTypes = new LinkedHashSet<>(16);
+    // true if some types or methods cannot be resolved
+    private boolean unresolvedBindingFound = false;
+    private Map<String, TestClass> classMap = new HashMap<>(4);
+    private List<TestClass> rootClasses = new ArrayList<>(4);
+    private List<TestClass> subClasses = new ArrayList<>(4);
+    private List<TestMethod> rootMethods = new ArrayList<>(16);
+    private List<TestMethod> subMethods = new ArrayList<>(16);
+    private List<TestField> fields = new ArrayList<>(4);
+    private boolean finished = false;
+
+    public CollectedSrcFile(String srcFilePath) {
+        this.srcFilePath = srcFilePath;
+    }
+
+    public String getSrcFilePath() {
+        return srcFilePath;
+    }
+
+    public String getSrcFileHash() {
+        return srcFileHash;
+    }
+
+    public void setSrcFileHash(String srcFileHash) {
+        this.srcFileHash = srcFileHash;
+    }
+
+    public Set<String> getDeclaredTypes() {
+        return declaredTypes;
+    }
+
+    public void addDeclaredType(String declaredType) {
+        declaredTypes.add(declaredType);
+    }
+
+    public Set<String> getReferredTypes() {
+        return referredTypes;
+    }
+
+    public void addReferredType(String referredType) {
+        referredTypes.add(referredType);
+    }
+
+    public boolean isUnresolvedBindingFound() {
+        return unresolvedBindingFound;
+    }
+
+    public void setUnresolvedBindingFound(boolean unresolvedBindingFound) {
+        this.unresolvedBindingFound = unresolvedBindingFound;
+    }
+
+    // returns null if not found
+    public TestClass getTestClass(String classKey) {
+        return classMap.get(classKey);
+    }
+
+    // - class which has root method is regarded as root class
+    //   even if this class also has sub method or field.
+    // - returns the already added class if the class for the key exists
+    public TestClass addTestClass(String classKey, String testDoc, boolean isPage, boolean isRoot) {
+        TestClass testClass = classMap.get(classKey);
+        if (testClass == null) {
+            if (isPage) {
+                testClass = new PageClass();
+            } else {
+                testClass = new TestClass();
+            }
+            testClass.setKey(classKey);
+            testClass.setQualifiedName(classKey);
+            testClass.setTestDoc(testDoc);
+            classMap.put(classKey, testClass);
+        }
+        if (isRoot) {
+            if (!rootClasses.contains(testClass)) {
+                rootClasses.add(testClass);
+            }
+        } else if (!subClasses.contains(testClass)) {
+            subClasses.add(testClass);
+        }
+        return testClass;
+    }
+
+    public void addRootMethod(TestMethod rootMethod) {
+        rootMethods.add(rootMethod);
+    }
+
+    public void addSubMethod(TestMethod subMethod) {
+        subMethods.add(subMethod);
+    }
+
+    public void addTestField(TestField testField) {
+        fields.add(testField);
+        testField.getTestClass().addTestFieldKey(testField.getKey());
+        testField.getTestClass().addTestField(testField);
+    }
+
+    // Set method information to each class.
+    // Must be called once after all classes and methods are added
+    public void finish() {
+        if (finished) {
+            throw new IllegalStateException("already finished: " + srcFilePath);
+        }
+        finished = true;
+        subClasses.removeAll(rootClasses);
+        // root method keys are followed by sub method keys
+        for (TestMethod rootMethod : rootMethods) {
+            rootMethod.getTestClass().addTestMethodKey(rootMethod.getKey());
+            rootMethod.getTestClass().addTestMethod(rootMethod);
+        }
+        for (TestMethod subMethod : subMethods) {
+            subMethod.getTestClass().addTestMethodKey(subMethod.getKey());
+            subMethod.getTestClass().addTestMethod(subMethod);
+        }
+    }
+
+    public List<TestClass> getRootClasses() {
+        return rootClasses;
+    }
+
+    public List<TestClass> getSubClasses() {
+        return subClasses;
+    }
+
+    public List<TestMethod> getRootMethods() {
+        return rootMethods;
+    }
+
+    public List<TestMethod> getSubMethods() {
+        return subMethods;
+    }
+
+    public List<TestField> getFields() {
+        return fields;
+    }
+
+    @Override
+    public Map<String, Object> toYamlObject() {
+        Map<String, Object> result = new HashMap<>(16);
+        result.put("path", srcFilePath);
+        result.put("hash", srcFileHash);
+        result.put("declaredTypes", new ArrayList<>(declaredTypes));
+        result.put("referredTypes", new ArrayList<>(referredTypes));
+        result.put("unresolvedBindingFound", unresolvedBindingFound);
+        result.put("rootClasses", YamlUtils.toYamlObjectList(rootClasses));
+        result.put("subClasses", YamlUtils.toYamlObjectList(subClasses));
+        result.put("rootMethods", YamlUtils.toYamlObjectList(rootMethods));
+        result.put("subMethods", YamlUtils.toYamlObjectList(subMethods));
+        result.put("fields", YamlUtils.toYamlObjectList(fields));
+        return result;
+    }
+
+    private void addYamlTestClasses(
+            Map<String, Object> yamlObject, String key, List<TestClass> dest)
+                    throws YamlConvertException {
+        for (Map<String, Object> classYamlObj : YamlUtils.getYamlObjectListValue(yamlObject, key)) {
+            TestClass testClass = TestClass.newInstanceFromYamlObject(classYamlObj);
+            classMap.put(testClass.getKey(), testClass);
+            dest.add(testClass);
+        }
+    }
+
+    private void addYamlTestMethods(
+            Map<String, Object> yamlObject, String key, List<TestMethod> dest)
+                    throws YamlConvertException {
+        for (Map<String, Object> methodYamlObj : YamlUtils.getYamlObjectListValue(yamlObject, key)) {
+            TestMethod testMethod = new TestMethod();
+            testMethod.fromYamlObject(methodYamlObj);
+            TestClass testClass = classMap.get(testMethod.getTestClassKey());
+            if (testClass == null) {
+                throw new YamlConvertException("class not found: " + testMethod.getTestClassKey());
+            }
+            testMethod.setTestClass(testClass);
+            testClass.addTestMethod(testMethod);
+            dest.add(testMethod);
+        }
+    }
+
+    // Method and field keys of each class have already been set in the YAML,
+    // so it is regarded as finished
+    @Override
+    public void fromYamlObject(Map<String, Object> yamlObject) throws YamlConvertException {
+        srcFilePath = YamlUtils.getStrValue(yamlObject, "path");
+        srcFileHash = YamlUtils.getStrValue(yamlObject, "hash");
+        declaredTypes = new LinkedHashSet<>(YamlUtils.getStrListValue(yamlObject, "declaredTypes"));
+        referredTypes = new LinkedHashSet<>(YamlUtils.getStrListValue(yamlObject, "referredTypes"));
+        unresolvedBindingFound = YamlUtils.getBooleanValue(yamlObject, "unresolvedBindingFound");
+        classMap.clear();
+        rootClasses.clear();
+        subClasses.clear();
+        rootMethods.clear();
+        subMethods.clear();
+        fields.clear();
+        addYamlTestClasses(yamlObject, "rootClasses", rootClasses);
+        addYamlTestClasses(yamlObject, "subClasses", subClasses);
+        addYamlTestMethods(yamlObject, "rootMethods", rootMethods);
+        addYamlTestMethods(yamlObject, "subMethods", subMethods);
+        for (Map<String, Object> fieldYamlObj : YamlUtils.getYamlObjectListValue(yamlObject, "fields")) {
+            TestField testField = new TestField();
+            testField.fromYamlObject(fieldYamlObj);
+            TestClass testClass = classMap.get(testField.getTestClassKey());
+            if (testClass == null) {
+                throw new YamlConvertException("class not found: " + testField.getTestClassKey());
+            }
+            testField.setTestClass(testClass);
+            testClass.addTestField(testField);
+            fields.add(testField);
+        }
+        finished = true;
+    }
+}
@@ -0,0 +1,725 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.sahagin.runlib.additionaltestdoc.AdditionalClassTestDoc;
+import org.sahagin.runlib.additionaltestdoc.AdditionalMethodTestDoc;
+import org.sahagin.runlib.additionaltestdoc.AdditionalPage;
+import org.sahagin.runlib.external.CaptureStyle;
+import org.sahagin.runlib.external.TestStepLabelMethod;
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.TestClass;
+import org.sahagin.share.srctree.TestField;
+import org.sahagin.share.srctree.TestMethod;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.CodeLine;
+import org.sahagin.share.srctree.code.LocalVar;
+import org.sahagin.share.srctree.code.MethodArgument;
+import org.sahagin.share.srctree.code.StringCode;
+import org.sahagin.share.srctree.code.TestStepLabel;
+import org.sahagin.share.srctree.code.UnknownCode;
+
+import com.sun.source.tree.AssertTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import static org.sahagin.runlib.external.adapter.javasystem.JavaSystemAdditionalTestDocsAdapter.*;
+
+// Collects the same data as SrcTreeGenerator from the javac trees
+// which have already been analyzed by the compiler, so that the test sources
+// don't need to be parsed again by JDT.
+// Each top level class must be passed to collect method after javac analysis of the class,
+// and generate method must be called after all classes are collected.
+// Root methods are detected by the test framework name
+// since JavaRootMethodAdapter depends on JDT binding.
+public class JavacSrcTreeCollector {
+    private SrcTreeGenerator generator;
+    private String testFramework;
+    private Trees trees;
+    private Elements elements;
+    private Types types;
+    // source file path -> collected data. sorted by path
+    private Map<String, CollectedSrcFile> collectedFiles = new TreeMap<>();
+    private Map<ExecutableElement, List<String>> superMethodKeysCache = new HashMap<>(1024);
+
+    // generator is used for its TestDoc setting and the merge of the collected data
+    public JavacSrcTreeCollector(SrcTreeGenerator generator, JavacTask task, String testFramework) {
+        if (!"jUnit3".equals(testFramework) && !"jUnit4".equals(testFramework)
+                && !"testNG".equals(testFramework)) {
+            throw new IllegalArgumentException("not supported testFramework: " + testFramework);
+        }
+        this.generator = generator;
+        this.testFramework = testFramework;
+        this.trees = Trees.instance(task);
+        this.elements = task.getElements();
+        this.types = task.getTypes();
+    }
+
+    // collects the classes, methods and fields in the specified top level type
+    public void collect(CompilationUnitTree unit, TypeElement topLevelType) {
+        TreePath path = trees.getPath(topLevelType);
+        if (path == null) {
+            return; // not defined in the source
+        }
+        String srcFilePath = new File(unit.getSourceFile().toUri()).getPath();
+        CollectedSrcFile collected = collectedFiles.get(srcFilePath);
+        if (collected == null) {
+            collected = new CollectedSrcFile(srcFilePath);
+            collectedFiles.put(srcFilePath, collected);
+        }
+        CharSequence content;
+        try {
+            content = unit.getSourceFile().getCharContent(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        new CollectScanner(collected, unit, content).scan(path, null);
+    }
+
+    public SrcTree generate() {
+        List<CollectedSrcFile> result = new ArrayList<>(collectedFiles.values());
+        for (CollectedSrcFile collected : result) {
+            collected.finish();
+        }
+        return generator.generateFromCollected(result);
+    }
+
+    private String getBinaryName(TypeElement type) {
+        return elements.getBinaryName(type).toString();
+    }
+
+    // name of the type erasure in the same form as SrcTreeGenerator
+    private String erasureName(TypeMirror type) {
+        TypeMirror erasure = types.erasure(type);
+        if (erasure.getKind() == TypeKind.ARRAY) {
+            return arrayComponentName(((ArrayType) erasure).getComponentType()) + "[]";
+        } else if (erasure.getKind() == TypeKind.DECLARED) {
+            return getBinaryName((TypeElement) types.asElement(erasure));
+        } else {
+            // "int", "boolean", etc
+            return erasure.toString();
+        }
+    }
+
+    // array component uses qualified name instead of binary name
+    private String arrayComponentName(TypeMirror component) {
+        if (component.getKind() == TypeKind.ARRAY) {
+            return arrayComponentName(((ArrayType) component).getComponentType()) + "[]";
+        } else if (component.getKind() == TypeKind.DECLARED) {
+            return ((TypeElement) types.asElement(component)).getQualifiedName().toString();
+        } else {
+            return component.toString();
+        }
+    }
+
+    private List<String> getArgClassQualifiedNames(ExecutableElement method) {
+        List<String> result = new ArrayList<>(method.getParameters().size());
+        for (VariableElement param : method.getParameters()) {
+            result.add(erasureName(param.asType()));
+        }
+        return result;
+    }
+
+    private TypeElement getDeclaringClass(Element element) {
+        return (TypeElement) element.getEnclosingElement();
+    }
+
+    // constructor name is the class simple name as in JDT
+    private String getMethodName(ExecutableElement method) {
+        if (method.getKind() == ElementKind.CONSTRUCTOR) {
+            return getDeclaringClass(method).getSimpleName().toString();
+        }
+        return method.getSimpleName().toString();
+    }
+
+    private String generateMethodKey(ExecutableElement method, boolean noArgClassesStr) {
+        String classQualifiedName = getBinaryName(getDeclaringClass(method));
+        String methodSimpleName = getMethodName(method);
+        if (noArgClassesStr) {
+            return TestMethod.generateMethodKey(classQualifiedName, methodSimpleName);
+        } else {
+            return TestMethod.generateMethodKey(
+                    classQualifiedName, methodSimpleName, getArgClassQualifiedNames(method));
+        }
+    }
+
+    private boolean isClassOrInterface(TypeElement type) {
+        return type.getKind() == ElementKind.CLASS || type.getKind() == ElementKind.INTERFACE;
+    }
+
+    private boolean isRootMethod(ExecutableElement method) {
+        if ("jUnit4".equals(testFramework)) {
+            return JavacUtils.getAnnotationMirror(
+                    method.getAnnotationMirrors(), "org.junit.Test") != null;
+        } else if ("testNG".equals(testFramework)) {
+            return JavacUtils.getAnnotationMirror(
+                    method.getAnnotationMirrors(), "org.testng.annotations.Test") != null;
+        }
+        // jUnit3
+        if (!method.getSimpleName().toString().startsWith("test")) {
+            return false;
+        }
+        TypeElement defClass = getDeclaringClass(method);
+        while (defClass != null) {
+            if (defClass.getQualifiedName().contentEquals("junit.framework.TestCase")) {
+                return true;
+            }
+            TypeMirror superClass = defClass.getSuperclass();
+            if (superClass.getKind() != TypeKind.DECLARED) {
+                break;
+            }
+            defClass = (TypeElement) types.asElement(superClass);
+        }
+        return false;
+    }
+
+    // result first value .. TestDoc value. return null if no TestDoc found
+    // result second value.. isPage
+    private Pair<String, Boolean> getTestDoc(TypeElement type) {
+        // Page testDoc is prior to TestDoc value
+        String pageDoc = JavacUtils.getPageDoc(type, generator.getLocales());
+        if (pageDoc != null) {
+            return Pair.of(pageDoc, true);
+        }
+        String testDoc = JavacUtils.getTestDoc(type, generator.getLocales()).getLeft();
+        if (testDoc != null) {
+            return Pair.of(testDoc, false);
+        }
+        AdditionalClassTestDoc additional
+        = generator.getAdditionalTestDocs().getClassTestDoc(getBinaryName(type));
+        if (additional != null) {
+            return Pair.of(additional.getTestDoc(), additional instanceof AdditionalPage);
+        }
+        return Pair.of(null, false);
+    }
+
+    // null and default CaptureStyle pair if not found
+    private Pair<String, CaptureStyle> getTestDoc(ExecutableElement method) {
+        Pair<String, CaptureStyle> pair = JavacUtils.getTestDoc(method, generator.getLocales());
+        if (pair.getLeft() != null) {
+            return pair;
+        }
+        AdditionalMethodTestDoc additional = generator.getAdditionalTestDocs().getMethodTestDoc(
+                getBinaryName(getDeclaringClass(method)), getMethodName(method),
+                getArgClassQualifiedNames(method));
+        if (additional != null) {
+            return Pair.of(additional.getTestDoc(), additional.getCaptureStyle());
+        }
+        return Pair.of(null, CaptureStyle.getDefault());
+    }
+
+    // add the keys of the super methods of the specified method
+    // from the specified type and its super class and implementing interface recursively.
+    // superOnly: if true, does not check the specified type itself
+    private void addSuperMethodKeys(List<String> result,
+            TypeMirror type, ExecutableElement method, boolean superOnly) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return;
+        }
+        TypeElement typeElement = (TypeElement) types.asElement(type);
+        if (!superOnly) {
+            for (Element member : typeElement.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                ExecutableElement declaredMethod = (ExecutableElement) member;
+                if (elements.overrides(method, declaredMethod, getDeclaringClass(method))) {
+                    result.add(generateMethodKey(declaredMethod, false));
+                    result.add(generateMethodKey(declaredMethod, true));
+                }
+            }
+        }
+        addSuperMethodKeys(result, typeElement.getSuperclass(), method, false);
+        for (TypeMirror implInterface : typeElement.getInterfaces()) {
+            addSuperMethodKeys(result, implInterface, method, false);
+        }
+    }
+
+    private List<String> getSuperMethodKeys(ExecutableElement method) {
+        List<String> result = superMethodKeysCache.get(method);
+        if (result == null) {
+            result = new ArrayList<>(4);
+            if (method.getKind() == ElementKind.METHOD) {
+                addSuperMethodKeys(result, getDeclaringClass(method).asType(), method, true);
+            }
+            superMethodKeysCache.put(method, result);
+        }
+        return result;
+    }
+
+    // collects data from one top level class
+    private class CollectScanner extends TreePathScanner<Void, Void> {
+        private CollectedSrcFile collected;
+        private CompilationUnitTree unit;
+        private CharSequence content;
+        private SourcePositions positions;
+
+        public CollectScanner(
+                CollectedSrcFile collected, CompilationUnitTree unit, CharSequence content) {
+            this.collected = collected;
+            this.unit = unit;
+            this.content = content;
+            this.positions = trees.getSourcePositions();
+        }
+
+        // the source code of the tree
+        private String original(Tree tree) {
+            long start = positions.getStartPosition(unit, tree);
+            long end = positions.getEndPosition(unit, tree);
+            if (start < 0 || end < start) {
+                return tree.toString().trim();
+            }
+            return content.subSequence((int) start, (int) end).toString().trim();
+        }
+
+        private Element getElement(TreePath parentPath, Tree tree) {
+            return trees.getElement(new TreePath(parentPath, tree));
+        }
+
+        // Returns existing TestClass if found in this source file.
+        // If not found, create new TestClass and returns it
+        private TestClass classElementTestClass(TypeElement classElement, boolean isRoot) {
+            String classKey = getBinaryName(classElement);
+            TestClass testClass = collected.getTestClass(classKey);
+            if (testClass != null) {
+                return collected.addTestClass(classKey, null, false, isRoot);
+            }
+            Pair<String, Boolean> pair = getTestDoc(classElement);
+            // for root class, page class is used though root class cannot be page class
+            return collected.addTestClass(classKey, pair.getLeft(), pair.getRight(), isRoot);
+        }
+
+        private TestMethod generateTestMethod(
+                MethodTree node, ExecutableElement method, TestClass testClass) {
+            TestMethod testMethod = new TestMethod();
+            testMethod.setKey(generateMethodKey(method, false));
+            testMethod.setSimpleName(getMethodName(method));
+            for (VariableTree param : node.getParameters()) {
+                testMethod.addArgVariable(param.getName().toString());
+            }
+            if (method.isVarArgs()) {
+                testMethod.setVariableLengthArgIndex(testMethod.getArgVariables().size() - 1);
+            }
+            testMethod.setTestClassKey(testClass.getKey());
+            testMethod.setTestClass(testClass);
+            return testMethod;
+        }
+
+        // returns null if the method is not root method
+        private TestMethod collectRootMethod(MethodTree node, ExecutableElement method) {
+            if (!isRootMethod(method)) {
+                return null;
+            }
+            TypeElement classElement = getDeclaringClass(method);
+            if (!isClassOrInterface(classElement)) {
+                // enum method, etc
+                return null;
+            }
+
+            TestClass rootClass = classElementTestClass(classElement, true);
+            TestMethod testMethod = generateTestMethod(node, method, rootClass);
+            Pair<String, CaptureStyle> pair = getTestDoc(method);
+            if (pair.getLeft() != null) {
+                testMethod.setTestDoc(pair.getLeft());
+                testMethod.setCaptureStyle(pair.getRight());
+            }
+            collected.addRootMethod(testMethod);
+            return testMethod;
+        }
+
+        // returns null if the method is not sub method
+        private TestMethod collectSubMethod(MethodTree node, ExecutableElement method) {
+            Pair<String, CaptureStyle> testDocPair = getTestDoc(method);
+            if (testDocPair.getLeft() == null) {
+                return null;
+            }
+            TypeElement classElement = getDeclaringClass(method);
+            if (!isClassOrInterface(classElement)) {
+                // enum method, etc
+                return null;
+            }
+
+            TestClass testClass = classElementTestClass(classElement, false);
+            TestMethod testMethod = generateTestMethod(node, method, testClass);
+            testMethod.setTestDoc(testDocPair.getLeft());
+            testMethod.setCaptureStyle(testDocPair.getRight());
+            collected.addSubMethod(testMethod);
+            return testMethod;
+        }
+
+        @Override
+        public Void visitClass(ClassTree node, Void p) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element instanceof TypeElement) {
+                collected.addDeclaredType(getBinaryName((TypeElement) element));
+            }
+            return super.visitClass(node, p);
+        }
+
+        @Override
+        public Void visitVariable(VariableTree node, Void p) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element == null || element.getKind() != ElementKind.FIELD) {
+                return super.visitVariable(node, p);
+            }
+            TypeElement classElement = getDeclaringClass(element);
+            if (!isClassOrInterface(classElement)) {
+                // enum field, etc
+                return super.visitVariable(node, p);
+            }
+
+            // TODO support additional testDoc for Field
+            String testDoc = JavacUtils.getTestDoc(element, generator.getLocales()).getLeft();
+            if (testDoc == null) {
+                return super.visitVariable(node, p);
+            }
+
+            TestClass testClass = classElementTestClass(classElement, false);
+            TestField testField = new TestField();
+            testField.setTestClassKey(testClass.getKey());
+            testField.setTestClass(testClass);
+            testField.setKey(testClass.getKey() + "." + element.getSimpleName());
+            testField.setSimpleName(element.getSimpleName().toString());
+            testField.setTestDoc(testDoc);
+            testField.setValue(null); // TODO currently not supported
+            collected.addTestField(testField);
+            return super.visitVariable(node, p);
+        }
+
+        private Code generateMethodInvokeCode(ExecutableElement method, TreePath parentPath,
+                ExpressionTree thisInstance, List<? extends ExpressionTree> arguments,
+                String original, TestMethod parentMethod) {
+            if (method == null) {
+                collected.setUnresolvedBindingFound(true);
+                return generateUnknownCode(original);
+            }
+
+            // the method itself is prior to its super methods
+            UnresolvedMethodInvoke invoke = new UnresolvedMethodInvoke();
+            invoke.addCandidateKey(generateMethodKey(method, false), false);
+            invoke.addCandidateKey(generateMethodKey(method, true), false);
+            for (String superMethodKey : getSuperMethodKeys(method)) {
+                invoke.addCandidateKey(superMethodKey, true);
+            }
+            if (thisInstance == null) {
+                invoke.setThisInstance(null);
+            } else {
+                invoke.setThisInstance(expressionCode(parentPath, thisInstance, parentMethod));
+            }
+            for (ExpressionTree arg : arguments) {
+                invoke.addArg(expressionCode(parentPath, arg, parentMethod));
+            }
+            invoke.setOriginal(original);
+            return invoke;
+        }
+
+        private Code generateMethodArgCode(IdentifierTree identifier, TestMethod parentMethod) {
+            int argIndex;
+            if (parentMethod == null) {
+                argIndex = -1;
+            } else {
+                argIndex = parentMethod.getArgVariables().indexOf(identifier.getName().toString());
+            }
+
+            if (argIndex == -1) {
+                // when fails to resolve parameter variable
+                return generateUnknownCode(original(identifier));
+            }
+
+            MethodArgument methodArg = new MethodArgument();
+            methodArg.setOriginal(original(identifier));
+            methodArg.setArgIndex(argIndex);
+            return methodArg;
+        }
+
+        private Code generateFieldCode(IdentifierTree identifier, VariableElement field) {
+            String key = getBinaryName(getDeclaringClass(field)) + "." + field.getSimpleName();
+            UnresolvedField fieldCode = new UnresolvedField();
+            fieldCode.setFieldKey(key);
+            fieldCode.setOriginal(original(identifier));
+            return fieldCode;
+        }
+
+        private LocalVar generateLocalVarCode(String name) {
+            LocalVar localVar = new LocalVar();
+            localVar.setOriginal(name);
+            localVar.setName(name);
+            return localVar;
+        }
+
+        // assignTree is used to get original code. variable can be null
+        private Code generateLocalVarAssignCode(TreePath parentPath, Tree assignTree,
+                Element variable, ExpressionTree right, TestMethod parentMethod) {
+            Code rightCode = expressionCode(parentPath, right, parentMethod);
+            if (rightCode instanceof UnknownCode) {
+                // ignore left for UnknownCode assignment
+                return rightCode;
+            }
+            if (variable == null) {
+                return rightCode; // ignore left
+            }
+            if (variable.getKind() != ElementKind.LOCAL_VARIABLE) {
+                // ignore left for field assignment and method argument assignment
+                // TODO should handle field assignment as VarAssign for Field ??
+                return rightCode;
+            }
+            // whether the right code is UnknownCode and whether variable type is page class
+            // are checked when resolved
+            UnresolvedVarAssign assign = new UnresolvedVarAssign();
+            assign.setAssignOriginal(original(assignTree));
+            assign.setVariable(generateLocalVarCode(variable.getSimpleName().toString()));
+            assign.setVariableClassKey(erasureName(variable.asType()));
+            assign.setValue(rightCode);
+            return assign;
+        }
+
+        // return null if method does not represent TestStepLabel
+        private TestStepLabel generateTestStepLabelCode(TreePath parentPath,
+                MethodInvocationTree invocation, ExecutableElement method, TestMethod parentMethod) {
+            if (method == null || !method.getSimpleName().contentEquals("TestDoc")) {
+                return null;
+            }
+            TypeElement defClass = getDeclaringClass(method);
+            if (!defClass.getQualifiedName().contentEquals(TestStepLabelMethod.class.getCanonicalName())) {
+                return null;
+            }
+            assert invocation.getArguments().size() == 1;
+            Code argCode = expressionCode(parentPath, invocation.getArguments().get(0), parentMethod);
+            if (!(argCode instanceof StringCode)) {
+                throw new RuntimeException(
+                        "testDoc method argument must be string literal argument at this moment");
+            }
+
+            TestStepLabel stepLabel = new TestStepLabel();
+            stepLabel.setLabel(null);
+            stepLabel.setText(((StringCode) argCode).getValue());
+            return stepLabel;
+        }
+
+        private Code generateAssertMethodInvokeCode(TreePath parentPath,
+                ExpressionTree expression, String original, TestMethod parentMethod) {
+            String assertMethodKey = TestMethod.generateMethodKey(CLASS_QUALIFIED_NAME, METHOD_ASSERT);
+            UnresolvedMethodInvoke assertMethodInvoke = new UnresolvedMethodInvoke();
+            assertMethodInvoke.addCandidateKey(assertMethodKey, false);
+            assertMethodInvoke.setAlwaysInvoke(true);
+            assertMethodInvoke.addArg(expressionCode(parentPath, expression, parentMethod));
+            assertMethodInvoke.setOriginal(original);
+            return assertMethodInvoke;
+        }
+
+        private Code generateInfixMethodInvokeCode(
+                TreePath parentPath, BinaryTree binary, TestMethod parentMethod) {
+            String infixMethodKey;
+            if (binary.getKind() == Tree.Kind.EQUAL_TO) {
+                infixMethodKey = TestMethod.generateMethodKey(CLASS_QUALIFIED_NAME, METHOD_EQUALS);
+            } else if (binary.getKind() == Tree.Kind.NOT_EQUAL_TO) {
+                infixMethodKey = TestMethod.generateMethodKey(CLASS_QUALIFIED_NAME, METHOD_NOT_EQUALS);
+            } else {
+                return generateUnknownCode(original(binary));
+            }
+
+            TreePath path = new TreePath(parentPath, binary);
+            UnresolvedMethodInvoke infixMethodInvoke = new UnresolvedMethodInvoke();
+            infixMethodInvoke.addCandidateKey(infixMethodKey, false);
+            infixMethodInvoke.setAlwaysInvoke(true);
+            infixMethodInvoke.addArg(expressionCode(path, binary.getLeftOperand(), parentMethod));
+            infixMethodInvoke.addArg(expressionCode(path, binary.getRightOperand(), parentMethod));
+            infixMethodInvoke.setOriginal(original(binary));
+            return infixMethodInvoke;
+        }
+
+        private UnknownCode generateUnknownCode(String original) {
+            UnknownCode unknownCode = new UnknownCode();
+            unknownCode.setOriginal(original);
+            return unknownCode;
+        }
+
+        // "this" and "super" identifiers
+        private boolean isThisOrSuper(ExpressionTree expression) {
+            if (!(expression instanceof IdentifierTree)) {
+                return false;
+            }
+            String name = ((IdentifierTree) expression).getName().toString();
+            return "this".equals(name) || "super".equals(name);
+        }
+
+        private Code methodInvocationCode(
+                TreePath path, MethodInvocationTree invocation, TestMethod parentMethod) {
+            ExpressionTree select = invocation.getMethodSelect();
+            ExpressionTree thisInstance;
+            if (select instanceof MemberSelectTree) {
+                thisInstance = ((MemberSelectTree) select).getExpression();
+            } else {
+                thisInstance = null;
+            }
+            if (isThisOrSuper(select) || (thisInstance instanceof IdentifierTree
+                    && ((IdentifierTree) thisInstance).getName().contentEquals("super"))) {
+                // this(..), super(..) and super.method(..) are not handled as in JDT
+                return generateUnknownCode(original(invocation));
+            }
+            Element element = trees.getElement(path);
+            ExecutableElement method
+            = element instanceof ExecutableElement ? (ExecutableElement) element : null;
+            TestStepLabel stepLabel = generateTestStepLabelCode(path, invocation, method, parentMethod);
+            if (stepLabel != null) {
+                return stepLabel;
+            }
+            return generateMethodInvokeCode(method, path, thisInstance,
+                    invocation.getArguments(), original(invocation), parentMethod);
+        }
+
+        private Code expressionCode(
+                TreePath parentPath, ExpressionTree expression, TestMethod parentMethod) {
+            if (expression == null) {
+                StringCode strCode = new StringCode();
+                strCode.setValue(null);
+                strCode.setOriginal("null");
+                return strCode;
+            }
+            TreePath path = new TreePath(parentPath, expression);
+            if (expression.getKind() == Tree.Kind.STRING_LITERAL) {
+                StringCode strCode = new StringCode();
+                strCode.setValue((String) ((LiteralTree) expression).getValue());
+                strCode.setOriginal(original(expression));
+                return strCode;
+            } else if (expression instanceof AssignmentTree) {
+                AssignmentTree assignment = (AssignmentTree) expression;
+                Element variable = null;
+                if (assignment.getVariable() instanceof IdentifierTree) {
+                    variable = getElement(path, assignment.getVariable());
+                }
+                return generateLocalVarAssignCode(path, expression, variable,
+                        assignment.getExpression(), parentMethod);
+            } else if (expression instanceof MethodInvocationTree) {
+                return methodInvocationCode(path, (MethodInvocationTree) expression, parentMethod);
+            } else if (expression instanceof NewClassTree) {
+                NewClassTree creation = (NewClassTree) expression;
+                Element element = trees.getElement(path);
+                ExecutableElement constructor
+                = element instanceof ExecutableElement ? (ExecutableElement) element : null;
+                return generateMethodInvokeCode(constructor, path, null,
+                        creation.getArguments(), original(expression), parentMethod);
+            } else if (expression instanceof IdentifierTree) {
+                IdentifierTree identifier = (IdentifierTree) expression;
+                Element element = isThisOrSuper(identifier) ? null : trees.getElement(path);
+                if (element == null) {
+                    return generateUnknownCode(original(expression));
+                }
+                switch (element.getKind()) {
+                case PARAMETER:
+                    return generateMethodArgCode(identifier, parentMethod);
+                case FIELD:
+                case ENUM_CONSTANT:
+                    return generateFieldCode(identifier, (VariableElement) element);
+                case LOCAL_VARIABLE:
+                case EXCEPTION_PARAMETER:
+                case RESOURCE_VARIABLE:
+                    return generateLocalVarCode(identifier.getName().toString());
+                default:
+                    return generateUnknownCode(original(expression));
+                }
+            } else if (expression instanceof BinaryTree) {
+                return generateInfixMethodInvokeCode(parentPath, (BinaryTree) expression, parentMethod);
+            } else {
+                return generateUnknownCode(original(expression));
+            }
+        }
+
+        private CodeLine statementCodeLine(
+                TreePath methodPath, StatementTree statement, TestMethod parentMethod) {
+            TreePath path = new TreePath(methodPath, statement);
+            Code code;
+            if (statement instanceof ExpressionStatementTree) {
+                code = expressionCode(
+                        path, ((ExpressionStatementTree) statement).getExpression(), parentMethod);
+            } else if (statement instanceof VariableTree) {
+                VariableTree varTree = (VariableTree) statement;
+                ExpressionTree expression = varTree.getInitializer();
+                if (expression == null) {
+                    code = new UnknownCode();
+                } else {
+                    code = generateLocalVarAssignCode(path, statement,
+                            trees.getElement(path), expression, parentMethod);
+                }
+            } else if (statement instanceof AssertTree) {
+                code = generateAssertMethodInvokeCode(path,
+                        ((AssertTree) statement).getCondition(), original(statement), parentMethod);
+            } else {
+                code = new UnknownCode();
+            }
+
+            CodeLine codeLine = new CodeLine();
+            codeLine.setStartLine(lineNumber(positions.getStartPosition(unit, statement)));
+            codeLine.setEndLine(lineNumber(positions.getEndPosition(unit, statement)));
+            codeLine.setCode(code);
+            // sometimes original value set by expressionCode method does not equal to the one of statement
+            code.setOriginal(original(statement));
+            return codeLine;
+        }
+
+        private int lineNumber(long position) {
+            return (int) unit.getLineMap().getLineNumber(position);
+        }
+
+        @Override
+        public Void visitMethod(MethodTree node, Void p) {
+            Element element = trees.getElement(getCurrentPath());
+            if (!(element instanceof ExecutableElement)) {
+                return super.visitMethod(node, p);
+            }
+            ExecutableElement method = (ExecutableElement) element;
+            TestMethod testMethod = collectRootMethod(node, method);
+            if (testMethod == null) {
+                testMethod = collectSubMethod(node, method);
+            }
+            if (testMethod == null || node.getBody() == null) {
+                // no body. Maybe abstract method or interface method
+                return super.visitMethod(node, p);
+            }
+            TreePath bodyPath = new TreePath(getCurrentPath(), node.getBody());
+            for (StatementTree statement : node.getBody().getStatements()) {
+                if (positions.getEndPosition(unit, statement) < 0) {
+                    continue; // implicit super() call generated by javac
+                }
+                testMethod.addCodeBody(statementCodeLine(bodyPath, statement, testMethod));
+            }
+            return super.visitMethod(node, p);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.sahagin.runlib.external.CaptureStyle;
+import org.sahagin.runlib.external.Locale;
+import org.sahagin.runlib.external.Page;
+import org.sahagin.runlib.external.PageDoc;
+import org.sahagin.runlib.external.PageDocs;
+import org.sahagin.runlib.external.Pages;
+import org.sahagin.runlib.external.TestDoc;
+import org.sahagin.runlib.external.TestDocs;
+import org.sahagin.share.AcceptableLocales;
+
+// javac element version of ASTUtils
+@SuppressWarnings("deprecation") // ignore Page and Pages annotation warning
+class JavacUtils {
+
+    // Get the annotation whose class name is equals to annotationClassName.
+    // Return null if specified name annotation is not found.
+    public static AnnotationMirror getAnnotationMirror(
+            List<? extends AnnotationMirror> annotations, String annotationClassName) {
+        if (annotationClassName == null) {
+            throw new NullPointerException();
+        }
+        for (AnnotationMirror annotation : annotations) {
+            Element annotationElement = annotation.getAnnotationType().asElement();
+            String qName = ((TypeElement) annotationElement).getQualifiedName().toString();
+            // TODO if multiple annotations for annotationClassName exists
+            if (qName.equals(annotationClassName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static AnnotationMirror getAnnotationMirror(
+            List<? extends AnnotationMirror> annotations, Class<?> annotationClass) {
+        if (annotationClass == null) {
+            throw new NullPointerException();
+        }
+        return getAnnotationMirror(annotations, annotationClass.getCanonicalName());
+    }
+
+    // returns null if specified varName annotation is not found
+    private static Object getAnnotationValue(AnnotationMirror annotation, String varName) {
+        if (annotation == null) {
+            throw new NullPointerException();
+        }
+        if (varName == null) {
+            throw new NullPointerException();
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(varName)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    // - for example, returns string "STEP_IN" for CaptureStyle.STEP_IN
+    // returns null if specified varName annotation is not found
+    private static String getEnumAnnotationFieldName(AnnotationMirror annotation, String varName) {
+        Object value = getAnnotationValue(annotation, varName);
+        if (value == null) {
+            return null;
+        }
+        assert value instanceof VariableElement;
+        return ((VariableElement) value).getSimpleName().toString();
+    }
+
+    // returns default value if varName value is not specified
+    private static CaptureStyle getAnnotationCaptureStyleValue(
+            AnnotationMirror annotation, String varName) {
+        String fieldName = getEnumAnnotationFieldName(annotation, varName);
+        if (fieldName == null) {
+            return CaptureStyle.getDefault();
+        }
+        return CaptureStyle.valueOf(fieldName);
+    }
+
+    // returns default value if varName value is not specified
+    private static Locale getAnnotationLocaleValue(
+            AnnotationMirror annotation, String varName) {
+        String fieldName = getEnumAnnotationFieldName(annotation, varName);
+        if (fieldName == null) {
+            return Locale.getDefault();
+        }
+        return Locale.valueOf(fieldName);
+    }
+
+    // returns the annotations contained in the value of the specified annotation
+    private static List<AnnotationMirror> getAnnotationArrayValue(AnnotationMirror annotation) {
+        List<?> values = (List<?>) getAnnotationValue(annotation, "value");
+        List<AnnotationMirror> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            result.add((AnnotationMirror) ((AnnotationValue) value).getValue());
+        }
+        return result;
+    }
+
+    // return empty list and default CaptureStyle pair if no TestDoc is found
+    private static Pair<Map<Locale, String>, CaptureStyle> getAllTestDocs(
+            List<? extends AnnotationMirror> annotations) {
+        AnnotationMirror testDocAnnotation = getAnnotationMirror(annotations, TestDoc.class);
+        AnnotationMirror testDocsAnnotation = getAnnotationMirror(annotations, TestDocs.class);
+        if (testDocAnnotation != null && testDocsAnnotation != null) {
+            // TODO throw IllegalTestScriptException
+            throw new RuntimeException("don't use @TestDoc and @TestDocs at the same place");
+        }
+
+        // all @testDoc annotations including annotations contained in @TestDocs
+        List<AnnotationMirror> allTestDocAnnotations = new ArrayList<>(2);
+        CaptureStyle resultCaptureStyle = null;
+
+        if (testDocAnnotation != null) {
+            allTestDocAnnotations.add(testDocAnnotation);
+            resultCaptureStyle = getAnnotationCaptureStyleValue(testDocAnnotation, "capture");
+        } else if (testDocsAnnotation != null) {
+            for (AnnotationMirror element : getAnnotationArrayValue(testDocsAnnotation)) {
+                if (getEnumAnnotationFieldName(element, "capture") != null) {
+                    // TODO throw IllegalTestScriptException
+                    throw new RuntimeException(
+                            "capture must be set on not @TestDoc but @TestDocs");
+                }
+                allTestDocAnnotations.add(element);
+            }
+            resultCaptureStyle = getAnnotationCaptureStyleValue(testDocsAnnotation, "capture");
+        }
+
+        Map<Locale, String> resultTestDocMap = new HashMap<>(allTestDocAnnotations.size());
+        for (AnnotationMirror eachTestDocAnnotation : allTestDocAnnotations) {
+            Object value = getAnnotationValue(eachTestDocAnnotation, "value");
+            Locale locale = getAnnotationLocaleValue(eachTestDocAnnotation, "locale");
+            resultTestDocMap.put(locale, (String) value);
+        }
+        return Pair.of(resultTestDocMap, resultCaptureStyle);
+    }
+
+    // return empty list if no Page is found
+    private static Map<Locale, String> getAllPageDocs(List<? extends AnnotationMirror> annotations) {
+        // all @PageDoc or @Page annotations including annotations contained in @PageDocs or @Page
+        List<AnnotationMirror> allPageAnnotations = new ArrayList<>(2);
+
+        List<Class<?>> singlePageAnnotationClasses = new ArrayList<>(2);
+        singlePageAnnotationClasses.add(PageDoc.class);
+        singlePageAnnotationClasses.add(Page.class);
+        for (Class<?> annotationClass : singlePageAnnotationClasses) {
+            AnnotationMirror annotation = getAnnotationMirror(annotations, annotationClass);
+            if (annotation == null) {
+                continue; // annotation is not found
+            }
+            if (allPageAnnotations.size() > 0) {
+                // TODO throw IllegalTestScriptException
+                throw new RuntimeException("don't use multiple page annoations at the same place");
+            }
+            allPageAnnotations.add(annotation);
+        }
+
+        List<Class<?>> multiplePageAnnotationClasses = new ArrayList<>(2);
+        multiplePageAnnotationClasses.add(PageDocs.class);
+        multiplePageAnnotationClasses.add(Pages.class);
+        for (Class<?> annotationClass : multiplePageAnnotationClasses) {
+            AnnotationMirror annotation = getAnnotationMirror(annotations, annotationClass);
+            if (annotation == null) {
+                continue; // annotation is not found
+            }
+            if (allPageAnnotations.size() > 0) {
+                // TODO throw IllegalTestScriptException
+                throw new RuntimeException("don't use multiple page annoations at the same place");
+            }
+            allPageAnnotations.addAll(getAnnotationArrayValue(annotation));
+        }
+
+        Map<Locale, String> resultPageMap = new HashMap<>(allPageAnnotations.size());
+        for (AnnotationMirror eachPageAnnotation : allPageAnnotations) {
+            Object value = getAnnotationValue(eachPageAnnotation, "value");
+            Locale locale = getAnnotationLocaleValue(eachPageAnnotation, "locale");
+            resultPageMap.put(locale, (String) value);
+        }
+        return resultPageMap;
+    }
+
+    // first... value
+    // second... captureStyle value.
+    // return null and default CaptureStyle pair if no TestDoc is found
+    public static Pair<String, CaptureStyle> getTestDoc(
+            Element element, AcceptableLocales locales) {
+        Pair<Map<Locale, String>, CaptureStyle> allTestDocs
+        = getAllTestDocs(element.getAnnotationMirrors());
+        Map<Locale, String> testDocMap = allTestDocs.getLeft();
+        if (testDocMap.isEmpty()) {
+            return Pair.of(null, CaptureStyle.getDefault()); // no @TestDoc found
+        }
+        for (Locale locale : locales.getLocales()) {
+            String value = testDocMap.get(locale);
+            if (value != null) {
+                return Pair.of(value, allTestDocs.getRight());
+            }
+        }
+        // set empty string if no locale matched data is found
+        return Pair.of("", allTestDocs.getRight());
+    }
+
+    // return null if no Page found
+    public static String getPageDoc(Element element, AcceptableLocales locales) {
+        Map<Locale, String> allPages = getAllPageDocs(element.getAnnotationMirrors());
+        if (allPages.isEmpty()) {
+            return null; // no @Page found
+        }
+        for (Locale locale : locales.getLocales()) {
+            String value = allPages.get(locale);
+            if (value != null) {
+                return value;
+            }
+        }
+        // set empty string if no locale matched data is found
+        return "";
+    }
+}
@@ -0,0 +1,164 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sahagin.share.CommonUtils;
+
+// Java source file content which is read before JDT parsing.
+// Content is read once and is cached
+class SrcFile {
+    private static final Pattern PACKAGE_PATTERN
+    = Pattern.compile("^\\s*package\\s+([\\w\\s.]+?)\\s*;");
+    private static final Pattern TYPE_DECLARATION_PATTERN
+    = Pattern.compile("\\b(class|interface|enum)\\s+([\\w$]+)");
+
+    private String path;
+    private Charset charset;
+    private String content = null;
+    private String hash = null;
+    private String codeOnlyContent = null;
+
+    public SrcFile(String path, Charset charset) {
+        this.path = path;
+        this.charset = charset;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getContent() {
+        if (content == null) {
+            try {
+                byte[] bytes = Files.readAllBytes(new File(path).toPath());
+                hash = CommonUtils.calcSHA1Digest(bytes);
+                content = new String(bytes, charset);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return content;
+    }
+
+    // SHA1 digest of the file content
+    public String getHash() {
+        getContent();
+        return hash;
+    }
+
+    // content from which comments, string literals and character literals are removed
+    public String getCodeOnlyContent() {
+        if (codeOnlyContent == null) {
+            codeOnlyContent = removeCommentAndLiteral(getContent());
+        }
+        return codeOnlyContent;
+    }
+
+    // empty string for default package
+    public String getPackageName() {
+        Matcher matcher = PACKAGE_PATTERN.matcher(getCodeOnlyContent());
+        if (!matcher.find()) {
+            return "";
+        }
+        return matcher.group(1).replaceAll("\\s", "");
+    }
+
+    // qualified names of the types declared at the top level of this file
+    public List<String> getTopLevelTypeNames() {
+        String code = getCodeOnlyContent();
+        String packageName = getPackageName();
+        List<String> result = new ArrayList<>(4);
+        Matcher matcher = TYPE_DECLARATION_PATTERN.matcher(code);
+        int depth = 0;
+        int pos = 0;
+        while (matcher.find()) {
+            for (; pos < matcher.start(); pos++) {
+                if (code.charAt(pos) == '{') {
+                    depth++;
+                } else if (code.charAt(pos) == '}') {
+                    depth--;
+                }
+            }
+            if (depth == 0) {
+                if (packageName.equals("")) {
+                    result.add(matcher.group(2));
+                } else {
+                    result.add(packageName + "." + matcher.group(2));
+                }
+            }
+        }
+        return result;
+    }
+
+    // simple names of all the types declared in this file including nested types
+    public List<String> getTypeSimpleNames() {
+        List<String> result = new ArrayList<>(4);
+        Matcher matcher = TYPE_DECLARATION_PATTERN.matcher(getCodeOnlyContent());
+        while (matcher.find()) {
+            result.add(matcher.group(2));
+        }
+        return result;
+    }
+
+    // The directory which corresponds to the default package.
+    // returns null if the directory structure does not match to the package name
+    public File getSrcRootDir() {
+        File dir = new File(path).getAbsoluteFile().getParentFile();
+        String packageName = getPackageName();
+        if (packageName.equals("")) {
+            return dir;
+        }
+        String[] packageElements = packageName.split(Pattern.quote("."));
+        for (int i = packageElements.length - 1; i >= 0; i--) {
+            if (dir == null || !dir.getName().equals(packageElements[i])) {
+                return null;
+            }
+            dir = dir.getParentFile();
+        }
+        return dir;
+    }
+
+    // Replace comments and literals with space characters
+    // (line breaks in block comments are preserved)
+    static String removeCommentAndLiteral(String src) {
+        StringBuilder result = new StringBuilder(src.length());
+        int i = 0;
+        while (i < src.length()) {
+            char c = src.charAt(i);
+            char next = (i + 1 < src.length()) ? src.charAt(i + 1) : '\0';
+            if (c == '/' && next == '/') {
+                while (i < src.length() && src.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && next == '*') {
+                int end = src.indexOf("*/", i + 2);
+                end = (end == -1) ? src.length() : end + 2;
+                for (int j = i; j < end; j++) {
+                    result.append(src.charAt(j) == '\n' ? '\n' : ' ');
+                }
+                i = end;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < src.length() && src.charAt(i) != c && src.charAt(i) != '\n') {
+                    if (src.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                i++;
+                result.append(' ');
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,202 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sahagin.share.Logging;
+
+// Finds the java source files in the source root directories.
+// - include and exclude patterns are the glob patterns for the path relative to the source root
+//   directory, such as "com/example/**" or "**/generated/**".
+//   The file is found if it matches any include pattern (or no include pattern is set)
+//   and matches no exclude pattern
+// - the directories are walked in parallel
+// - the symbolic links to directories are followed
+//   except for the links to their ancestor directories
+public class SrcFileFinder {
+    private static Logger logger = Logging.getLogger(SrcFileFinder.class.getName());
+    private List<Path> srcRootDirs;
+    private List<PathMatcher> includes = new ArrayList<>(4);
+    private List<PathMatcher> excludes = new ArrayList<>(4);
+    // matchers for the exclude patterns which end with "/**".
+    // The directory matched with these matchers are not walked at all
+    private List<PathMatcher> excludedDirs = new ArrayList<>(4);
+    private int threadCount = 1;
+
+    public SrcFileFinder(List<File> srcRootDirs) {
+        this.srcRootDirs = new ArrayList<>(srcRootDirs.size());
+        for (File srcRootDir : srcRootDirs) {
+            this.srcRootDirs.add(srcRootDir.getAbsoluteFile().toPath());
+        }
+    }
+
+    private static PathMatcher globMatcher(FileSystem fileSystem, String pattern) {
+        return fileSystem.getPathMatcher("glob:" + pattern);
+    }
+
+    // patterns use '/' as the separator
+    public void setIncludes(List<String> patterns) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        includes.clear();
+        for (String pattern : patterns) {
+            includes.add(globMatcher(fileSystem, pattern));
+        }
+    }
+
+    // patterns use '/' as the separator
+    public void setExcludes(List<String> patterns) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        excludes.clear();
+        excludedDirs.clear();
+        for (String pattern : patterns) {
+            excludes.add(globMatcher(fileSystem, pattern));
+            if (pattern.endsWith("/**")) {
+                excludedDirs.add(globMatcher(fileSystem, StringUtils.removeEnd(pattern, "/**")));
+            }
+        }
+    }
+
+    // 0 means the number of available processors
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 0) {
+            throw new IllegalArgumentException("negative value: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    private boolean matchesAny(List<PathMatcher> matchers, Path relPath) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isTargetRelPath(Path relPath) {
+        if (!includes.isEmpty() && !matchesAny(includes, relPath)) {
+            return false;
+        }
+        return !matchesAny(excludes, relPath);
+    }
+
+    // returns true if srcFile is in the source root directories and is not filtered out
+    public boolean isTarget(File srcFile) {
+        Path path = srcFile.getAbsoluteFile().toPath();
+        if (!path.getFileName().toString().endsWith(".java")) {
+            return false;
+        }
+        for (Path srcRootDir : srcRootDirs) {
+            if (path.startsWith(srcRootDir) && isTargetRelPath(srcRootDir.relativize(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class WalkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private Path srcRootDir;
+        private Path dir;
+        // the real path of dir
+        private Path realDir;
+        // the action for the parent directory. null for srcRootDir
+        private WalkAction parent;
+        private Queue<String> result;
+
+        public WalkAction(Path srcRootDir, Path dir, Path realDir,
+                WalkAction parent, Queue<String> result) {
+            this.srcRootDir = srcRootDir;
+            this.dir = dir;
+            this.realDir = realDir;
+            this.parent = parent;
+            this.result = result;
+        }
+
+        // returns true if realPath is the real path of dir or its ancestor directories
+        private boolean isWalking(Path realPath) {
+            for (WalkAction action = this; action != null; action = action.parent) {
+                if (action.realDir.equals(realPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkAction> subActions = new ArrayList<>(8);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    Path relPath = srcRootDir.relativize(path);
+                    if (Files.isDirectory(path)) {
+                        if (matchesAny(excludedDirs, relPath)) {
+                            continue;
+                        }
+                        if (!Files.isSymbolicLink(path)) {
+                            subActions.add(new WalkAction(srcRootDir, path,
+                                    realDir.resolve(path.getFileName()), this, result));
+                            continue;
+                        }
+                        // the link to the ancestor directory makes the cycle
+                        Path realPath = path.toRealPath();
+                        if (isWalking(realPath)) {
+                            logger.info("skip directory link to its ancestor: " + path);
+                        } else {
+                            subActions.add(new WalkAction(srcRootDir, path, realPath, this, result));
+                        }
+                    } else if (path.getFileName().toString().endsWith(".java")
+                            && isTargetRelPath(relPath)) {
+                        result.add(path.toString());
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            invokeAll(subActions);
+        }
+    }
+
+    // returns the absolute paths of the found files in the sorted order
+    public List<String> find() {
+        for (Path srcRootDir : srcRootDirs) {
+            if (!Files.isDirectory(srcRootDir)) {
+                throw new IllegalArgumentException("directory does not exist: " + srcRootDir);
+            }
+        }
+        int actualThreadCount = threadCount;
+        if (actualThreadCount == 0) {
+            actualThreadCount = Runtime.getRuntime().availableProcessors();
+        }
+        Queue<String> found = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(actualThreadCount);
+        try {
+            for (Path srcRootDir : srcRootDirs) {
+                pool.invoke(new WalkAction(
+                        srcRootDir, srcRootDir, srcRootDir.toRealPath(), null, found));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        // the order must not depend on the walk order,
+        // and the same file may be found from the nested source root directories
+        return new ArrayList<>(new TreeSet<>(found));
+    }
+}
@@ -0,0 +1,118 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.sahagin.runlib.additionaltestdoc.AdditionalClassTestDoc;
+import org.sahagin.runlib.additionaltestdoc.AdditionalMethodTestDoc;
+import org.sahagin.runlib.additionaltestdoc.AdditionalTestDocs;
+
+// Lexical classification of the source files which is done before JDT parsing.
+// The file which can contain neither root methods nor TestDoc is classified as IRRELEVANT,
+// and is not parsed by itself (it may be still referred to through the source path).
+// The classification errs on the relevant side.
+// If TestSelection is specified, the file which declares no selected class
+// is not regarded as ROOT_CANDIDATE.
+// (nested class is checked by its package name and simple name)
+class SrcFilePrefilter {
+    // @Test or qualified @Test annotation (but not @TestDoc, etc)
+    private static final Pattern TEST_ANNOTATION_PATTERN
+    = Pattern.compile("@\\s*(\\w+\\s*\\.\\s*)*Test\\b");
+    // jUnit3 root method name is test***
+    private static final Pattern JUNIT3_TEST_METHOD_PATTERN
+    = Pattern.compile("\\btest\\w*\\s*\\(");
+    private static final Pattern TEST_DOC_ANNOTATION_PATTERN = Pattern.compile(
+            "@\\s*(\\w+\\s*\\.\\s*)*(TestDoc|TestDocs|PageDoc|PageDocs|Page|Pages)\\b");
+
+    public enum Kind {
+        ROOT_CANDIDATE,
+        TEST_DOC_CARRIER,
+        IRRELEVANT
+    }
+
+    private Pattern rootMethodPattern;
+    // matches the declaration of the class which has additional TestDoc.
+    // null if no such class exists
+    private Pattern additionalTestDocClassPattern;
+    // null means all root methods are selected
+    private TestSelection selection;
+
+    private SrcFilePrefilter(Pattern rootMethodPattern,
+            Pattern additionalTestDocClassPattern, TestSelection selection) {
+        this.rootMethodPattern = rootMethodPattern;
+        this.additionalTestDocClassPattern = additionalTestDocClassPattern;
+        this.selection = selection;
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(
+                Math.max(qualifiedName.lastIndexOf('.'), qualifiedName.lastIndexOf('$')) + 1);
+    }
+
+    // returns null if root methods of the testFramework cannot be detected lexically.
+    // selection can be null
+    public static SrcFilePrefilter create(String testFramework,
+            AdditionalTestDocs additionalTestDocs, TestSelection selection) {
+        Pattern rootMethodPattern;
+        if ("jUnit4".equals(testFramework) || "testNG".equals(testFramework)) {
+            rootMethodPattern = TEST_ANNOTATION_PATTERN;
+        } else if ("jUnit3".equals(testFramework)) {
+            rootMethodPattern = JUNIT3_TEST_METHOD_PATTERN;
+        } else {
+            return null;
+        }
+
+        Set<String> classNames = new LinkedHashSet<>(64);
+        for (AdditionalClassTestDoc classTestDoc : additionalTestDocs.getClassTestDocs()) {
+            classNames.add(simpleName(classTestDoc.getQualifiedName()));
+            if (classTestDoc.getDelegateToQualifiedName() != null) {
+                classNames.add(simpleName(classTestDoc.getDelegateToQualifiedName()));
+            }
+        }
+        for (AdditionalMethodTestDoc methodTestDoc : additionalTestDocs.getMethodTestDocs()) {
+            classNames.add(simpleName(methodTestDoc.getClassQualifiedName()));
+        }
+        if (classNames.isEmpty()) {
+            return new SrcFilePrefilter(rootMethodPattern, null, selection);
+        }
+        StringBuilder namesRegex = new StringBuilder(1024);
+        for (String className : classNames) {
+            if (namesRegex.length() > 0) {
+                namesRegex.append("|");
+            }
+            namesRegex.append(Pattern.quote(className));
+        }
+        Pattern additionalTestDocClassPattern = Pattern.compile(
+                "\\b(class|interface|enum)\\s+(" + namesRegex + ")\\b");
+        return new SrcFilePrefilter(rootMethodPattern, additionalTestDocClassPattern, selection);
+    }
+
+    private boolean declaresSelectedClass(SrcFile srcFile) {
+        if (selection == null) {
+            return true;
+        }
+        String packagePrefix = srcFile.getPackageName().isEmpty() ? "" : srcFile.getPackageName() + ".";
+        for (String typeName : srcFile.getTypeSimpleNames()) {
+            if (selection.mayBeSelectedClass(packagePrefix + typeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Kind classify(SrcFile srcFile) {
+        String code = srcFile.getCodeOnlyContent();
+        if (rootMethodPattern.matcher(code).find() && declaresSelectedClass(srcFile)) {
+            return Kind.ROOT_CANDIDATE;
+        }
+        if (TEST_DOC_ANNOTATION_PATTERN.matcher(code).find()) {
+            return Kind.TEST_DOC_CARRIER;
+        }
+        if (additionalTestDocClassPattern != null
+                && additionalTestDocClassPattern.matcher(code).find()) {
+            return Kind.TEST_DOC_CARRIER;
+        }
+        return Kind.IRRELEVANT;
+    }
+}
@@ -0,0 +1,121 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.sahagin.share.CommonUtils;
+import org.sahagin.share.Logging;
+import org.sahagin.share.yaml.YamlConvertException;
+import org.sahagin.share.yaml.YamlUtils;
+
+// Persistent cache of CollectedSrcFile for each source file.
+// The cached data is used only when the fingerprint (class path, additional TestDocs, etc)
+// equals to the one used when the data was stored.
+// - cacheDir/index: fingerprint and all cached source file paths
+// - cacheDir/files/(SHA1 digest of source file path): CollectedSrcFile YAML
+class SrcTreeCache {
+    private static Logger logger = Logging.getLogger(SrcTreeCache.class.getName());
+    private File cacheDir;
+    private String fingerprint;
+    private Set<String> cachedSrcFilePaths = new HashSet<>(256);
+
+    public SrcTreeCache(File cacheDir, String fingerprint) {
+        if (cacheDir == null) {
+            throw new NullPointerException();
+        }
+        if (fingerprint == null) {
+            throw new NullPointerException();
+        }
+        this.cacheDir = cacheDir;
+        this.fingerprint = fingerprint;
+    }
+
+    private File indexFile() {
+        return new File(cacheDir, "index");
+    }
+
+    private File cachedFile(String srcFilePath) {
+        return new File(new File(cacheDir, "files"),
+                CommonUtils.calcSHA1Digest(srcFilePath, Charsets.UTF_8));
+    }
+
+    // all cached data is discarded if the fingerprint differs
+    public void loadIndex() {
+        cachedSrcFilePaths.clear();
+        if (!indexFile().exists()) {
+            return;
+        }
+        try {
+            Map<String, Object> yamlObj = YamlUtils.load(indexFile());
+            String formatVersion = YamlUtils.getStrValue(yamlObj, "formatVersion");
+            String cachedFingerprint = YamlUtils.getStrValue(yamlObj, "fingerprint");
+            if (!StringUtils.equals(formatVersion, CommonUtils.formatVersion())
+                    || !StringUtils.equals(cachedFingerprint, fingerprint)) {
+                logger.info("fingerprint changed. discard cache: " + cacheDir.getAbsolutePath());
+                FileUtils.deleteDirectory(cacheDir);
+                return;
+            }
+            cachedSrcFilePaths.addAll(YamlUtils.getStrListValue(yamlObj, "srcFiles"));
+        } catch (YamlConvertException | IOException | RuntimeException e) {
+            // just ignore broken cache
+            logger.info("ignore cache index: " + e.getMessage());
+        }
+    }
+
+    public Set<String> getCachedSrcFilePaths() {
+        return cachedSrcFilePaths;
+    }
+
+    // returns null if not cached
+    public CollectedSrcFile load(String srcFilePath) {
+        if (!cachedSrcFilePaths.contains(srcFilePath)) {
+            return null;
+        }
+        File file = cachedFile(srcFilePath);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            CollectedSrcFile result = new CollectedSrcFile(srcFilePath);
+            result.fromYamlObject(YamlUtils.load(file));
+            if (!StringUtils.equals(srcFilePath, result.getSrcFilePath())) {
+                return null;
+            }
+            return result;
+        } catch (YamlConvertException | RuntimeException e) {
+            // just ignore broken cache
+            logger.info("ignore cache for " + srcFilePath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // code body of collected must not contain UnresolvedCode
+    public void store(CollectedSrcFile collected) {
+        YamlUtils.dump(collected.toYamlObject(), cachedFile(collected.getSrcFilePath()));
+    }
+
+    // stores the index and removes the cache for the source files which no longer exist
+    public void storeIndex(Collection<String> srcFilePaths) {
+        for (String cachedSrcFilePath : cachedSrcFilePaths) {
+            if (!srcFilePaths.contains(cachedSrcFilePath)) {
+                FileUtils.deleteQuietly(cachedFile(cachedSrcFilePath));
+            }
+        }
+        cachedSrcFilePaths = new HashSet<>(srcFilePaths);
+        Map<String, Object> yamlObj = new HashMap<>(4);
+        yamlObj.put("formatVersion", CommonUtils.formatVersion());
+        yamlObj.put("fingerprint", fingerprint);
+        yamlObj.put("srcFiles", new ArrayList<>(srcFilePaths));
+        YamlUtils.dump(yamlObj, indexFile());
+    }
+}
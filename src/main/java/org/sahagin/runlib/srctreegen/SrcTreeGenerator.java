@@ -1,20 +1,41 @@
 package org.sahagin.runlib.srctreegen;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.AssertStatement;
@@ -22,6 +43,7 @@ import org.eclipse.jdt.core.dom.Assignment;
 import org.eclipse.jdt.core.dom.Block;
 import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.ExpressionStatement;
 import org.eclipse.jdt.core.dom.FieldDeclaration;
@@ -37,6 +59,7 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
 import org.eclipse.jdt.core.dom.Statement;
 import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
 import org.sahagin.runlib.additionaltestdoc.AdditionalClassTestDoc;
@@ -44,28 +67,25 @@ import org.sahagin.runlib.additionaltestdoc.AdditionalMethodTestDoc;
 import org.sahagin.runlib.additionaltestdoc.AdditionalPage;
 import org.sahagin.runlib.additionaltestdoc.AdditionalTestDocs;
 import org.sahagin.runlib.external.CaptureStyle;
+import org.sahagin.runlib.external.Locale;
 import org.sahagin.runlib.external.TestStepLabelMethod;
 import org.sahagin.runlib.external.adapter.JavaAdapterContainer;
 import org.sahagin.share.AcceptableLocales;
 import org.sahagin.share.CommonUtils;
 import org.sahagin.share.IllegalTestScriptException;
 import org.sahagin.share.Logging;
-import org.sahagin.share.srctree.PageClass;
 import org.sahagin.share.srctree.SrcTree;
 import org.sahagin.share.srctree.TestClass;
-import org.sahagin.share.srctree.TestClassTable;
 import org.sahagin.share.srctree.TestField;
-import org.sahagin.share.srctree.TestFieldTable;
 import org.sahagin.share.srctree.TestMethod;
-import org.sahagin.share.srctree.TestMethodTable;
 import org.sahagin.share.srctree.code.Code;
 import org.sahagin.share.srctree.code.CodeLine;
 import org.sahagin.share.srctree.code.Field;
 import org.sahagin.share.srctree.code.LocalVar;
 import org.sahagin.share.srctree.code.MethodArgument;
 import org.sahagin.share.srctree.code.StringCode;
-import org.sahagin.share.srctree.code.SubMethodInvoke;
 import org.sahagin.share.srctree.code.TestStepLabel;
+import org.sahagin.share.srctree.code.SubMethodInvoke;
 import org.sahagin.share.srctree.code.UnknownCode;
 import org.sahagin.share.srctree.code.VarAssign;
 
@@ -75,6 +95,21 @@ public class SrcTreeGenerator {
     private static Logger logger = Logging.getLogger(SrcTreeGenerator.class.getName());
     private AdditionalTestDocs additionalTestDocs;
     private AcceptableLocales locales;
+    private File cacheDir = null;
+    private int parseThreadCount = 1;
+    private boolean prefilter = false;
+    private int parseBatchSize = 0;
+    private boolean prunesUnreachable = false;
+    private boolean removesUnreachable = false;
+    private TestSelection testSelection = null;
+    private List<String> srcIncludes = new ArrayList<>(0);
+    private List<String> srcExcludes = new ArrayList<>(0);
+    // created for each generation
+    private BindingCache bindingCache = new BindingCache();
+    // the number of the files loaded from the cache in the last generation
+    private int cacheLoadedFileCount = 0;
+    // jar file path, length and modified time -> manifest information of the jar
+    private static Map<String, JarManifest> jarManifestCache = new ConcurrentHashMap<>(64);
 
     // additionalTestDocs can be null
     public SrcTreeGenerator(AdditionalTestDocs additionalTestDocs, AcceptableLocales locales) {
@@ -87,9 +122,112 @@ public class SrcTreeGenerator {
         this.locales = locales;
     }
 
+    // If set, the data collected from each source file is stored in this directory
+    // and reused in the next generation unless the source file or its dependency is changed.
+    // null means no cache is used
+    public void setCacheDir(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    // The source files are split into parseThreadCount partitions
+    // and each partition is parsed on its own thread.
+    // 1 means all source files are parsed on the current thread,
+    // 0 means the number of available processors is used
+    public void setParseThreadCount(int parseThreadCount) {
+        if (parseThreadCount < 0) {
+            throw new IllegalArgumentException("negative value: " + parseThreadCount);
+        }
+        this.parseThreadCount = parseThreadCount;
+    }
+
+    // If positive, source files are given to JDT by at most parseBatchSize files,
+    // and the ASTs and bindings of each batch are released before the next batch is parsed.
+    // This bounds the peak heap usage regardless of the number of the source files.
+    // 0 means all files are parsed at once
+    public void setParseBatchSize(int parseBatchSize) {
+        if (parseBatchSize < 0) {
+            throw new IllegalArgumentException("negative value: " + parseBatchSize);
+        }
+        this.parseBatchSize = parseBatchSize;
+    }
+
+    // If true, the source files which lexically seem to contain
+    // neither root methods nor TestDoc are not parsed.
+    // This is ignored for the test framework whose root methods cannot be found lexically
+    public void setPrefilter(boolean prefilter) {
+        this.prefilter = prefilter;
+    }
+
+    // If true, the code body is generated only for the sub methods
+    // which may be called from the root methods
+    public void setPrunesUnreachable(boolean prunesUnreachable) {
+        this.prunesUnreachable = prunesUnreachable;
+    }
+
+    // If true, the sub methods which are never called from the root methods
+    // are removed from the SrcTree. This implies setPrunesUnreachable(true).
+    // The sub methods called only from the non root methods such as @Before method
+    // are also removed
+    public void setRemovesUnreachable(boolean removesUnreachable) {
+        this.removesUnreachable = removesUnreachable;
+    }
+
+    // If set, only the selected root methods and the sub methods reachable from them
+    // are left in the SrcTree. null means all root methods are selected.
+    // The source files which declare no selected class are not parsed if the prefilter is enabled
+    // and the cache is not used
+    public void setTestSelection(TestSelection testSelection) {
+        this.testSelection = testSelection;
+    }
+
+    AdditionalTestDocs getAdditionalTestDocs() {
+        return additionalTestDocs;
+    }
+
+    AcceptableLocales getLocales() {
+        return locales;
+    }
+
+    // glob patterns for the source file paths relative to the source root directory.
+    // Used only by the methods which find the source files in the source root directories
+    public void setSrcFileFilter(List<String> includes, List<String> excludes) {
+        this.srcIncludes = includes;
+        this.srcExcludes = excludes;
+    }
+
+    private boolean pruneEnabled() {
+        return prunesUnreachable || removesUnreachable;
+    }
+
+    // hit count of the binding derived value cache in the last generation
+    public long getBindingCacheHitCount() {
+        return bindingCache.getHitCount();
+    }
+
+    // miss count of the binding derived value cache in the last generation
+    public long getBindingCacheMissCount() {
+        return bindingCache.getMissCount();
+    }
+
+    // the number of the source files whose data is loaded from the cache dir
+    // in the last generation
+    public int getCacheLoadedFileCount() {
+        return cacheLoadedFileCount;
+    }
+
     // result first value .. TestDoc value. return null if no TestDoc found
     // result second value.. isPage
     private Pair<String, Boolean> getTestDoc(ITypeBinding type) {
+        Pair<String, Boolean> cached = bindingCache.getClassTestDoc(type.getKey());
+        if (cached != null) {
+            return cached;
+        }
+        Pair<String, Boolean> result = extractTestDoc(type);
+        bindingCache.putClassTestDoc(type.getKey(), result);
+        return result;
+    }
+
+    private Pair<String, Boolean> extractTestDoc(ITypeBinding type) {
         // Page testDoc is prior to TestDoc value
         String pageDoc = ASTUtils.getPageDoc(type, locales);
         if (pageDoc != null) {
@@ -110,6 +248,16 @@ public class SrcTreeGenerator {
 
     // null and default CaptureStyle pair if not found
     private Pair<String, CaptureStyle> getTestDoc(IMethodBinding method) {
+        Pair<String, CaptureStyle> cached = bindingCache.getMethodTestDoc(method.getKey());
+        if (cached != null) {
+            return cached;
+        }
+        Pair<String, CaptureStyle> result = extractTestDoc(method);
+        bindingCache.putMethodTestDoc(method.getKey(), result);
+        return result;
+    }
+
+    private Pair<String, CaptureStyle> extractTestDoc(IMethodBinding method) {
         // TODO additional TestDoc should be prior to annotation TestDoc !?
         Pair<String, CaptureStyle> pair = ASTUtils.getTestDoc(method, locales);
         if (pair.getLeft() != null) {
@@ -177,6 +325,16 @@ public class SrcTreeGenerator {
     }
 
     private String generateMethodKey(IMethodBinding method, boolean noArgClassesStr) {
+        String cached = bindingCache.getMethodKey(method.getKey(), noArgClassesStr);
+        if (cached != null) {
+            return cached;
+        }
+        String result = generateMethodKeySub(method, noArgClassesStr);
+        bindingCache.putMethodKey(method.getKey(), noArgClassesStr, result);
+        return result;
+    }
+
+    private String generateMethodKeySub(IMethodBinding method, boolean noArgClassesStr) {
         String classQualifiedName = method.getDeclaringClass().getBinaryName();
         String methodSimpleName = method.getName();
         List<String> argClassQualifiedNames = getArgClassQualifiedNames(method);
@@ -188,10 +346,40 @@ public class SrcTreeGenerator {
         }
     }
 
+    // adds the binary name of the type to typeNames if the type is defined in the source files.
+    // returns false if the type is not resolved
+    private static boolean addReferredTypeName(ITypeBinding type, Set<String> typeNames) {
+        if (type == null) {
+            return false;
+        }
+        ITypeBinding erasure = type.getErasure();
+        if (erasure.isArray()) {
+            erasure = erasure.getElementType();
+        }
+        if (erasure.isRecovered()) {
+            return false;
+        }
+        if (erasure.isFromSource() && erasure.getBinaryName() != null) {
+            typeNames.add(erasure.getBinaryName());
+            // top level type is also added since only top level types
+            // are recorded for the files skipped by the prefilter
+            ITypeBinding topLevelType = erasure;
+            while (topLevelType.getDeclaringClass() != null) {
+                topLevelType = topLevelType.getDeclaringClass();
+            }
+            if (topLevelType != erasure && topLevelType.getBinaryName() != null) {
+                typeNames.add(topLevelType.getBinaryName());
+            }
+        }
+        return true;
+    }
+
     // srcFiles..parse target files
     // classPathEntries.. all class paths (class file containing directory or jar file) srcFiles depend
+    // srcPathEntries.. source root directories in which the source files srcFiles depend
+    // are searched. can be null
     private static void parseAST(String[] srcFiles, Charset srcCharset,
-            String[] classPathEntries, FileASTRequestor requestor) {
+            String[] classPathEntries, String[] srcPathEntries, FileASTRequestor requestor) {
         ASTParser parser = ASTParser.newParser(AST.JLS8);
         Map<?, ?> options = JavaCore.getOptions();
         JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
@@ -199,7 +387,15 @@ public class SrcTreeGenerator {
         parser.setKind(ASTParser.K_COMPILATION_UNIT);
         parser.setResolveBindings(true);
         parser.setBindingsRecovery(true);
-        parser.setEnvironment(classPathEntries, null, null, true);
+        if (srcPathEntries == null) {
+            parser.setEnvironment(classPathEntries, null, null, true);
+        } else {
+            String[] srcPathEncodings = new String[srcPathEntries.length];
+            for (int i = 0; i < srcPathEncodings.length; i++) {
+                srcPathEncodings[i] = srcCharset.name();
+            }
+            parser.setEnvironment(classPathEntries, srcPathEntries, srcPathEncodings, true);
+        }
         String[] srcEncodings = new String[srcFiles.length];
         for (int i = 0; i < srcEncodings.length; i++) {
             srcEncodings[i] = srcCharset.name();
@@ -208,56 +404,97 @@ public class SrcTreeGenerator {
                 srcFiles, srcEncodings, new String[]{}, requestor, null);
     }
 
-    // Get all root methods and its class as TestRootClass.
-    // Each TestRootClass owns only TestRootMethod, and TestSubMethod information is not set yet.
-    // methods does not have code information yet.
-    private class CollectRootVisitor extends ASTVisitor {
-        private TestClassTable rootClassTable;
-        private TestMethodTable rootMethodTable;
+    // Collect root and sub methods, their classes, fields and method code bodies
+    // from one compilation unit.
+    // Code which depends on the data in other source files is collected as UnresolvedCode.
+    private class CollectVisitor extends ASTVisitor {
+        private CollectedSrcFile collected;
+        private CompilationUnit compilationUnit;
+
+        public CollectVisitor(CollectedSrcFile collected, CompilationUnit compilationUnit) {
+            this.collected = collected;
+            this.compilationUnit = compilationUnit;
+        }
 
-        // old value in rootClassTable is not replaced.
-        // old value in rootMethodTable is replaced.
-        public CollectRootVisitor(
-                TestClassTable rootClassTable, TestMethodTable rootMethodTable) {
-            this.rootClassTable = rootClassTable;
-            this.rootMethodTable = rootMethodTable;
+        // record the source class on which the collected data depends
+        private void addReferredType(ITypeBinding type) {
+            Set<String> typeNames = new LinkedHashSet<>(2);
+            if (!addReferredTypeName(type, typeNames)) {
+                collected.setUnresolvedBindingFound(true);
+            }
+            for (String typeName : typeNames) {
+                collected.addReferredType(typeName);
+            }
         }
 
-        @Override
-        public boolean visit(MethodDeclaration node) {
-            IMethodBinding methodBinding = node.resolveBinding();
-            if (!JavaAdapterContainer.globalInstance().isRootMethod(methodBinding)) {
-                return super.visit(node);
+        private void addReferredTypeHierarchy(ITypeBinding type) {
+            if (type == null) {
+                return;
             }
+            addReferredType(type);
+            addReferredTypeHierarchy(type.getSuperclass());
+            for (ITypeBinding implInterface : type.getInterfaces()) {
+                addReferredTypeHierarchy(implInterface);
+            }
+        }
 
-            ITypeBinding classBinding = methodBinding.getDeclaringClass();
-            if (!classBinding.isClass() && !classBinding.isInterface()) {
-                // enum method, etc
-                return super.visit(node);
+        private void addDeclaredType(ITypeBinding type) {
+            if (type == null || type.getBinaryName() == null) {
+                collected.setUnresolvedBindingFound(true);
+                return;
             }
+            collected.addDeclaredType(type.getBinaryName());
+            // super class definition affects root method and super method decision
+            addReferredTypeHierarchy(type.getSuperclass());
+            for (ITypeBinding implInterface : type.getInterfaces()) {
+                addReferredTypeHierarchy(implInterface);
+            }
+        }
 
-            TestClass rootClass = rootClassTable.getByKey(classBinding.getBinaryName());
-            if (rootClass == null) {
-                Pair<String, Boolean> pair = getTestDoc(classBinding);
-                if (pair.getRight()) {
-                    rootClass = new PageClass(); // though root class cannot be page class
-                } else {
-                    rootClass = new TestClass();
-                }
-                rootClass.setKey(classBinding.getBinaryName());
-                rootClass.setQualifiedName(classBinding.getBinaryName());
-                rootClass.setTestDoc(pair.getLeft());
-                rootClassTable.addTestClass(rootClass);
+        @Override
+        public boolean visit(TypeDeclaration node) {
+            addDeclaredType(node.resolveBinding());
+            return super.visit(node);
+        }
+
+        @Override
+        public boolean visit(EnumDeclaration node) {
+            addDeclaredType(node.resolveBinding());
+            return super.visit(node);
+        }
+
+        @Override
+        public boolean visit(AnnotationTypeDeclaration node) {
+            addDeclaredType(node.resolveBinding());
+            return super.visit(node);
+        }
+
+        @Override
+        public boolean visit(AnonymousClassDeclaration node) {
+            addDeclaredType(node.resolveBinding());
+            return super.visit(node);
+        }
+
+        // Returns existing TestClass if found in this source file.
+        // If not found, create new TestClass and returns it
+        private TestClass classBindingTestClass(ITypeBinding classBinding, boolean isRoot) {
+            String classKey = classBinding.getBinaryName();
+            TestClass testClass = collected.getTestClass(classKey);
+            if (testClass != null) {
+                return collected.addTestClass(classKey, null, false, isRoot);
             }
+            Pair<String, Boolean> pair = getTestDoc(classBinding);
+            // for root class, page class is used though root class cannot be page class
+            return collected.addTestClass(classKey, pair.getLeft(), pair.getRight(), isRoot);
+        }
 
+        private TestMethod generateTestMethod(
+                MethodDeclaration node, IMethodBinding methodBinding, TestClass testClass) {
             TestMethod testMethod = new TestMethod();
             testMethod.setKey(generateMethodKey(methodBinding, false));
             testMethod.setSimpleName(methodBinding.getName());
-            Pair<String, CaptureStyle> pair = getTestDoc(methodBinding);
-            if (pair.getLeft() != null) {
-                // pair is null if the root method does not have TestDoc annotation
-                testMethod.setTestDoc(pair.getLeft());
-                testMethod.setCaptureStyle(pair.getRight());
+            for (ITypeBinding paramType : methodBinding.getParameterTypes()) {
+                addReferredType(paramType);
             }
             for (Object element : node.parameters()) {
                 if (!(element instanceof SingleVariableDeclaration)) {
@@ -269,77 +506,52 @@ public class SrcTreeGenerator {
                     testMethod.setVariableLengthArgIndex(testMethod.getArgVariables().size() - 1);
                 }
             }
-            testMethod.setTestClassKey(rootClass.getKey());
-            testMethod.setTestClass(rootClass);
-            rootMethodTable.addTestMethod(testMethod);
-
-            rootClass.addTestMethodKey(testMethod.getKey());
-            rootClass.addTestMethod(testMethod);
-
-            return super.visit(node);
-        }
-    }
-
-    private class CollectRootRequestor extends FileASTRequestor {
-        private TestClassTable rootClassTable;
-        private TestMethodTable rootMethodTable;
-
-        public CollectRootRequestor() {
-            rootClassTable = new TestClassTable();
-            rootMethodTable = new TestMethodTable();
+            testMethod.setTestClassKey(testClass.getKey());
+            testMethod.setTestClass(testClass);
+            return testMethod;
         }
 
-        public TestClassTable getRootClassTable() {
-            return rootClassTable;
-        }
+        // returns null if the method is not root method
+        private TestMethod collectRootMethod(MethodDeclaration node, IMethodBinding methodBinding) {
+            if (!JavaAdapterContainer.globalInstance().isRootMethod(methodBinding)) {
+                return null;
+            }
+            ITypeBinding classBinding = methodBinding.getDeclaringClass();
+            if (!classBinding.isClass() && !classBinding.isInterface()) {
+                // enum method, etc
+                return null;
+            }
 
-        public TestMethodTable getRootMethodTable() {
-            return rootMethodTable;
+            TestClass rootClass = classBindingTestClass(classBinding, true);
+            TestMethod testMethod = generateTestMethod(node, methodBinding, rootClass);
+            Pair<String, CaptureStyle> pair = getTestDoc(methodBinding);
+            if (pair.getLeft() != null) {
+                // pair is null if the root method does not have TestDoc annotation
+                testMethod.setTestDoc(pair.getLeft());
+                testMethod.setCaptureStyle(pair.getRight());
+            }
+            collected.addRootMethod(testMethod);
+            return testMethod;
         }
 
-        @Override
-        public void acceptAST(String sourceFilePath, CompilationUnit ast) {
-            ast.accept(new CollectRootVisitor(rootClassTable, rootMethodTable));
-        }
-    }
-
-    private class CollectSubVisitor extends ASTVisitor {
-        private TestClassTable subClassTable;
-        private TestMethodTable subMethodTable;
-        private TestClassTable rootClassTable;
-        private TestFieldTable fieldTable;
-
-        // rootClassTable if only for read, not write any data.
-        // old value in subClassTable is not replaced.
-        // old value in subMethodTable and fieldTable is replaced.
-        public CollectSubVisitor(TestClassTable rootClassTable,
-                TestClassTable subClassTable, TestMethodTable subMethodTable, TestFieldTable fieldTable) {
-            this.rootClassTable = rootClassTable;
-            this.subClassTable = subClassTable;
-            this.subMethodTable = subMethodTable;
-            this.fieldTable = fieldTable;
-        }
-
-        // Returns existing TestClass in rootClassTable or subClassTable if found in these table.
-        // If not found, create new TestClass and add it to subClassTable and returns it
-        private TestClass classBindingTestClass(ITypeBinding classBinding) {
-            TestClass testClass = rootClassTable.getByKey(classBinding.getBinaryName());
-            if (testClass == null) {
-                testClass = subClassTable.getByKey(classBinding.getBinaryName());
-                if (testClass == null) {
-                    Pair<String, Boolean> pair = getTestDoc(classBinding);
-                    if (pair.getRight()) {
-                        testClass = new PageClass();
-                    } else {
-                        testClass = new TestClass();
-                    }
-                    testClass.setKey(classBinding.getBinaryName());
-                    testClass.setQualifiedName(classBinding.getBinaryName());
-                    testClass.setTestDoc(pair.getLeft());
-                    subClassTable.addTestClass(testClass);
-                }
+        // returns null if the method is not sub method
+        private TestMethod collectSubMethod(MethodDeclaration node, IMethodBinding methodBinding) {
+            Pair<String, CaptureStyle> testDocPair = testDocIfSubMethod(methodBinding);
+            if (testDocPair.getLeft() == null) {
+                return null;
+            }
+            ITypeBinding classBinding = methodBinding.getDeclaringClass();
+            if (!classBinding.isClass() && !classBinding.isInterface()) {
+                // enum method, etc
+                return null;
             }
-            return testClass;
+
+            TestClass testClass = classBindingTestClass(classBinding, false);
+            TestMethod testMethod = generateTestMethod(node, methodBinding, testClass);
+            testMethod.setTestDoc(testDocPair.getLeft());
+            testMethod.setCaptureStyle(testDocPair.getRight());
+            collected.addSubMethod(testMethod);
+            return testMethod;
         }
 
         @Override
@@ -360,7 +572,7 @@ public class SrcTreeGenerator {
                 return super.visit(node);
             }
 
-            TestClass testClass = classBindingTestClass(classBinding);
+            TestClass testClass = classBindingTestClass(classBinding, false);
             TestField testField = new TestField();
             testField.setTestClassKey(testClass.getKey());
             testField.setTestClass(testClass);
@@ -368,190 +580,79 @@ public class SrcTreeGenerator {
             testField.setSimpleName(variable.getName());
             testField.setTestDoc(testDoc);
             testField.setValue(null); // TODO currently not supported
-            fieldTable.addTestField(testField);
-
-            testClass.addTestFieldKey(testField.getKey());
-            testClass.addTestField(testField);
-
-            return super.visit(node);
-        }
-
-        @Override
-        public boolean visit(MethodDeclaration node) {
-            IMethodBinding methodBinding = node.resolveBinding();
-            Pair<String, CaptureStyle> testDocPair = testDocIfSubMethod(methodBinding);
-            if (testDocPair.getLeft() == null) {
-                return super.visit(node);
-            }
-
-            ITypeBinding classBinding = methodBinding.getDeclaringClass();
-            if (!classBinding.isClass() && !classBinding.isInterface()) {
-                // enum method, etc
-                return super.visit(node);
-            }
-
-            TestClass testClass = classBindingTestClass(classBinding);
-
-            TestMethod testMethod = new TestMethod();
-            testMethod.setKey(generateMethodKey(methodBinding, false));
-            testMethod.setSimpleName(methodBinding.getName());
-            testMethod.setTestDoc(testDocPair.getLeft());
-            testMethod.setCaptureStyle(testDocPair.getRight());
-            for (Object element : node.parameters()) {
-                if (!(element instanceof SingleVariableDeclaration)) {
-                    throw new RuntimeException("not supported yet: " + element);
-                }
-                SingleVariableDeclaration varDecl = (SingleVariableDeclaration)element;
-                testMethod.addArgVariable(varDecl.getName().getIdentifier());
-                if (varDecl.isVarargs()) {
-                    testMethod.setVariableLengthArgIndex(testMethod.getArgVariables().size() - 1);
-                }
-            }
-            testMethod.setTestClassKey(testClass.getKey());
-            testMethod.setTestClass(testClass);
-            subMethodTable.addTestMethod(testMethod);
-
-            testClass.addTestMethodKey(testMethod.getKey());
-            testClass.addTestMethod(testMethod);
+            collected.addTestField(testField);
 
             return super.visit(node);
         }
-    }
-
-    private class CollectSubRequestor extends FileASTRequestor {
-        private TestClassTable subClassTable;
-        private TestMethodTable subMethodTable;
-        private TestClassTable rootClassTable;
-        private TestFieldTable fieldTable;
-
-        public CollectSubRequestor(TestClassTable rootClassTable) {
-            this.rootClassTable = rootClassTable;
-            subClassTable = new TestClassTable();
-            subMethodTable = new TestMethodTable();
-            fieldTable = new TestFieldTable();
-        }
-
-        public TestClassTable getSubClassTable() {
-            return subClassTable;
-        }
-
-        public TestMethodTable getSubMethodTable() {
-            return subMethodTable;
-        }
-
-        public TestFieldTable getFieldTable() {
-            return fieldTable;
-        }
-
-        @Override
-        public void acceptAST(String sourceFilePath, CompilationUnit ast) {
-            ast.accept(new CollectSubVisitor(
-                    rootClassTable, subClassTable, subMethodTable, fieldTable));
-        }
-    }
-
-    private class CollectCodeVisitor extends ASTVisitor {
-        private TestClassTable subClassTable;
-        private TestMethodTable rootMethodTable;
-        private TestMethodTable subMethodTable;
-        private TestFieldTable fieldTable;
-        private CompilationUnit compilationUnit;
-
-        // set code information to method table
-        public CollectCodeVisitor(TestClassTable subClassTable,
-                TestMethodTable rootMethodTable, TestMethodTable subMethodTable,
-                TestFieldTable fieldTable, CompilationUnit compilationUnit) {
-            this.subClassTable = subClassTable;
-            this.rootMethodTable = rootMethodTable;
-            this.subMethodTable = subMethodTable;
-            this.fieldTable = fieldTable;
-            this.compilationUnit = compilationUnit;
-        }
-
-        private TestMethod getTestMethod(IMethodBinding method) {
-            TestMethod testMethod = subMethodTable.getByKey(generateMethodKey(method, false));
-            if (testMethod != null) {
-                return testMethod;
-            }
-            testMethod = subMethodTable.getByKey(generateMethodKey(method, true));
-            if (testMethod != null) {
-                return testMethod;
-            }
-            return null;
-        }
 
-        // search super method of the specified method
+        // add the keys of the super methods of the specified method
         // from the specified type and its super class and implementing interface recursively.
         // type: class or interface
         // superOnly: if true, does not check the specified type itself
-        private TestMethod getSuperMethodSub(
+        private void addSuperMethodKeys(BindingCache.SuperMethodKeys result,
                 ITypeBinding type, IMethodBinding method, boolean superOnly) {
             if (type == null) {
-                return null;
+                return;
+            }
+            if (!addReferredTypeName(type, result.getReferredTypes())) {
+                result.setUnresolvedBindingFound(true);
             }
             if (!superOnly) {
                 for (IMethodBinding declaredMethod : type.getDeclaredMethods()) {
                     if (method.overrides(declaredMethod)) {
-                        TestMethod testMethod = getTestMethod(declaredMethod);
-                        if (testMethod != null) {
-                            return testMethod;
-                        }
+                        result.addKey(generateMethodKey(declaredMethod, false));
+                        result.addKey(generateMethodKey(declaredMethod, true));
                     }
                 }
             }
-            TestMethod testMethod = getSuperMethodSub(type.getSuperclass(), method, false);
-            if (testMethod != null) {
-                return testMethod;
-            }
+            addSuperMethodKeys(result, type.getSuperclass(), method, false);
             for (ITypeBinding implInterface : type.getInterfaces()) {
-                testMethod = getSuperMethodSub(implInterface, method, false);
-                if (testMethod != null) {
-                    return testMethod;
-                }
+                addSuperMethodKeys(result, implInterface, method, false);
             }
-            return null;
         }
 
-        // First found super method of the specified method.
-        // returns null if not found
-        private TestMethod getSuperMethod(IMethodBinding method) {
-            return getSuperMethodSub(method.getDeclaringClass(), method, true);
+        private BindingCache.SuperMethodKeys getSuperMethodKeys(IMethodBinding method) {
+            BindingCache.SuperMethodKeys result = bindingCache.getSuperMethodKeys(method.getKey());
+            if (result == null) {
+                result = new BindingCache.SuperMethodKeys();
+                addSuperMethodKeys(result, method.getDeclaringClass(), method, true);
+                bindingCache.putSuperMethodKeys(method.getKey(), result);
+            }
+            // referred types are recorded for each source file
+            if (result.isUnresolvedBindingFound()) {
+                collected.setUnresolvedBindingFound(true);
+            }
+            for (String referredType : result.getReferredTypes()) {
+                collected.addReferredType(referredType);
+            }
+            return result;
         }
 
         private Code generateMethodInvokeCode(IMethodBinding binding,
                 Expression thisInstance, List<?> arguments, String original, TestMethod parentMethod) {
             if (binding == null) {
+                collected.setUnresolvedBindingFound(true);
                 return generateUnknownCode(original);
             }
 
-            boolean childInvoke = false;
-            TestMethod invocationMethod = getTestMethod(binding);
-            if (invocationMethod == null) {
-                invocationMethod = getSuperMethod(binding);
-                if (invocationMethod != null) {
-                    childInvoke = true;
-                }
+            // the method itself is prior to its super methods
+            UnresolvedMethodInvoke invoke = new UnresolvedMethodInvoke();
+            invoke.addCandidateKey(generateMethodKey(binding, false), false);
+            invoke.addCandidateKey(generateMethodKey(binding, true), false);
+            for (String superMethodKey : getSuperMethodKeys(binding).getKeys()) {
+                invoke.addCandidateKey(superMethodKey, true);
             }
-
-            if (invocationMethod == null) {
-                return generateUnknownCode(original);
-            }
-
-            SubMethodInvoke subMethodInvoke = new SubMethodInvoke();
-            subMethodInvoke.setSubMethodKey(invocationMethod.getKey());
-            subMethodInvoke.setSubMethod(invocationMethod);
             if (thisInstance == null) {
-                subMethodInvoke.setThisInstance(null);
+                invoke.setThisInstance(null);
             } else {
-                subMethodInvoke.setThisInstance(expressionCode(thisInstance, parentMethod));
+                invoke.setThisInstance(expressionCode(thisInstance, parentMethod));
             }
             for (Object arg : arguments) {
                 Expression exp = (Expression) arg;
-                subMethodInvoke.addArg(expressionCode(exp, parentMethod));
+                invoke.addArg(expressionCode(exp, parentMethod));
             }
-            subMethodInvoke.setChildInvoke(childInvoke);
-            subMethodInvoke.setOriginal(original);
-            return subMethodInvoke;
+            invoke.setOriginal(original);
+            return invoke;
         }
 
         private Code generateMethodArgCode(SimpleName simpleName,
@@ -577,17 +678,12 @@ public class SrcTreeGenerator {
 
         private Code generateFieldCode(SimpleName simpleName,
                 IVariableBinding localVarBinding) {
+            addReferredType(localVarBinding.getDeclaringClass());
             String key = localVarBinding.getDeclaringClass().getBinaryName()
                     + "." + localVarBinding.getName();
-            TestField testField = fieldTable.getByKey(key);
-            if (testField == null) {
-                return generateUnknownCode(simpleName.toString().trim());
-            }
-            Field field = new Field();
-            field.setFieldKey(testField.getKey());
-            field.setField(testField);
+            UnresolvedField field = new UnresolvedField();
+            field.setFieldKey(key);
             field.setOriginal(simpleName.toString().trim());
-            field.setThisInstance(null); // TODO really null??
             return field;
         }
 
@@ -622,18 +718,13 @@ public class SrcTreeGenerator {
                 return rightCode;
             }
 
-            String classKey = varBinding.getType().getBinaryName();
-            TestClass subClass = subClassTable.getByKey(classKey);
-            if (subClass != null && subClass instanceof PageClass) {
-                // ignore left for page type variable assignment
-                // since usually page type variable is not used in other TestDoc
-                return rightCode;
-            }
-
-            LocalVar localVar = generateLocalVarCode(simpleName, varBinding);
-            VarAssign assign = new VarAssign();
-            assign.setOriginal(expression.toString().trim());
-            assign.setVariable(localVar);
+            // whether the right code is UnknownCode and whether variable type is page class
+            // are checked when resolved
+            addReferredType(varBinding.getType());
+            UnresolvedVarAssign assign = new UnresolvedVarAssign();
+            assign.setAssignOriginal(expression.toString().trim());
+            assign.setVariable(generateLocalVarCode(simpleName, varBinding));
+            assign.setVariableClassKey(varBinding.getType().getBinaryName());
             assign.setValue(rightCode);
             return assign;
         }
@@ -670,14 +761,12 @@ public class SrcTreeGenerator {
             return stepLabel;
         }
 
-        private SubMethodInvoke generateAssertMethodInvokeCode(
+        private Code generateAssertMethodInvokeCode(
                 Expression expression, String original, TestMethod parentMethod) {
             String assertMethodKey = TestMethod.generateMethodKey(CLASS_QUALIFIED_NAME, METHOD_ASSERT);
-            TestMethod assertMethod = subMethodTable.getByKey(assertMethodKey);
-            assert assertMethod != null;
-            SubMethodInvoke assertMethodInvoke = new SubMethodInvoke();
-            assertMethodInvoke.setSubMethodKey(assertMethodKey);
-            assertMethodInvoke.setSubMethod(assertMethod);
+            UnresolvedMethodInvoke assertMethodInvoke = new UnresolvedMethodInvoke();
+            assertMethodInvoke.addCandidateKey(assertMethodKey, false);
+            assertMethodInvoke.setAlwaysInvoke(true);
             assertMethodInvoke.addArg(expressionCode(expression, parentMethod));
             assertMethodInvoke.setOriginal(original);
             return assertMethodInvoke;
@@ -694,11 +783,9 @@ public class SrcTreeGenerator {
                 return generateUnknownCode(infix);
             }
 
-            TestMethod infixMethod = subMethodTable.getByKey(infixMethodKey);
-            assert infixMethod != null;
-            SubMethodInvoke infixMethodInvoke = new SubMethodInvoke();
-            infixMethodInvoke.setSubMethodKey(infixMethodKey);
-            infixMethodInvoke.setSubMethod(infixMethod);
+            UnresolvedMethodInvoke infixMethodInvoke = new UnresolvedMethodInvoke();
+            infixMethodInvoke.addCandidateKey(infixMethodKey, false);
+            infixMethodInvoke.setAlwaysInvoke(true);
             Code leftCode = expressionCode(infix.getLeftOperand(), parentMethod);
             Code rightcode = expressionCode(infix.getRightOperand(), parentMethod);
             infixMethodInvoke.addArg(leftCode);
@@ -807,22 +894,12 @@ public class SrcTreeGenerator {
 
         @Override
         public boolean visit(MethodDeclaration node) {
-            TestMethod testMethod;
             IMethodBinding methodBinding = node.resolveBinding();
-            if (JavaAdapterContainer.globalInstance().isRootMethod(methodBinding)) {
-                // TODO searching twice from table is not elegant logic..
-                testMethod = rootMethodTable.getByKey(generateMethodKey(methodBinding, false));
-                if (testMethod == null) {
-                    testMethod = rootMethodTable.getByKey(generateMethodKey(methodBinding, true));
-                }
-            } else if (testDocIfSubMethod(methodBinding).getLeft() != null) {
-                // subMethod
-                // TODO searching twice from table is not elegant logic..
-                testMethod = subMethodTable.getByKey(generateMethodKey(methodBinding, false));
-                if (testMethod == null) {
-                    testMethod = subMethodTable.getByKey(generateMethodKey(methodBinding, true));
-                }
-            } else {
+            TestMethod testMethod = collectRootMethod(node, methodBinding);
+            if (testMethod == null) {
+                testMethod = collectSubMethod(node, methodBinding);
+            }
+            if (testMethod == null) {
                 return super.visit(node);
             }
 
@@ -841,82 +918,800 @@ public class SrcTreeGenerator {
         }
     }
 
-    private class CollectCodeRequestor extends FileASTRequestor {
-        private TestClassTable subClassTable;
-        private TestMethodTable rootMethodTable;
-        private TestMethodTable subMethodTable;
-        private TestFieldTable fieldTable;
+    private class CollectRequestor extends FileASTRequestor {
+        private List<CollectedSrcFile> collectedFiles;
 
-        public CollectCodeRequestor(TestClassTable subClassTable,
-                TestMethodTable rootMethodTable, TestMethodTable subMethodTable,
-                TestFieldTable fieldTable) {
-            this.subClassTable = subClassTable;
-            this.rootMethodTable = rootMethodTable;
-            this.subMethodTable = subMethodTable;
-            this.fieldTable = fieldTable;
+        public CollectRequestor(int srcFileCount) {
+            collectedFiles = new ArrayList<>(srcFileCount);
+        }
+
+        public List<CollectedSrcFile> getCollectedFiles() {
+            return collectedFiles;
         }
 
         @Override
         public void acceptAST(String sourceFilePath, CompilationUnit ast) {
-            ast.accept(new CollectCodeVisitor(
-                    subClassTable, rootMethodTable, subMethodTable, fieldTable, ast));
+            CollectedSrcFile collected = new CollectedSrcFile(sourceFilePath);
+            ast.accept(new CollectVisitor(collected, ast));
+            collected.finish();
+            collectedFiles.add(collected);
+        }
+    }
+
+    // Merge collected source files data into SrcTree,
+    // and replace UnresolvedCode in the code body with the actual code.
+    // If resolvesCodeBody is false, UnresolvedCode is left as it is
+    private SrcTree mergeCollectedFiles(
+            List<CollectedSrcFile> collectedFiles, boolean resolvesCodeBody) {
+        SrcTree result = new SrcTree();
+        for (CollectedSrcFile collected : collectedFiles) {
+            for (TestClass rootClass : collected.getRootClasses()) {
+                result.getRootClassTable().addTestClass(rootClass);
+            }
+            for (TestClass subClass : collected.getSubClasses()) {
+                result.getSubClassTable().addTestClass(subClass);
+            }
+            for (TestMethod rootMethod : collected.getRootMethods()) {
+                result.getRootMethodTable().addTestMethod(rootMethod);
+            }
+            for (TestMethod subMethod : collected.getSubMethods()) {
+                result.getSubMethodTable().addTestMethod(subMethod);
+            }
+            for (TestField field : collected.getFields()) {
+                result.getFieldTable().addTestField(field);
+            }
+        }
+
+        // add additional TestDoc to the table
+        AdditionalTestDocsSetter setter = new AdditionalTestDocsSetter(
+                result.getRootClassTable(), result.getSubClassTable(),
+                result.getRootMethodTable(), result.getSubMethodTable());
+        setter.set(additionalTestDocs);
+
+        if (!resolvesCodeBody) {
+            return result;
+        }
+        for (CollectedSrcFile collected : collectedFiles) {
+            resolveCodeBody(collected.getRootMethods(), result);
+            resolveCodeBody(collected.getSubMethods(), result);
+        }
+        return result;
+    }
+
+    // resolves UnresolvedCode, and also sets method and field reference
+    // to the code loaded from the cache
+    private void resolveCodeBody(List<TestMethod> testMethods, SrcTree srcTree) {
+        for (TestMethod testMethod : testMethods) {
+            for (CodeLine codeLine : testMethod.getCodeBody()) {
+                codeLine.setCode(UnresolvedCode.resolve(codeLine.getCode(), srcTree));
+                setCodeReference(codeLine.getCode(), srcTree);
+            }
+        }
+    }
+
+    // method key without class key part
+    private String methodSignature(TestMethod testMethod) {
+        String key = testMethod.getKey();
+        String classKey = testMethod.getTestClassKey();
+        if (classKey != null && key.startsWith(classKey)) {
+            return key.substring(classKey.length());
+        }
+        return key;
+    }
+
+    private void addSubMethodInvokes(Code code, List<SubMethodInvoke> invokes) {
+        if (code instanceof SubMethodInvoke) {
+            SubMethodInvoke invoke = (SubMethodInvoke) code;
+            invokes.add(invoke);
+            addSubMethodInvokes(invoke.getThisInstance(), invokes);
+            for (Code arg : invoke.getArgs()) {
+                addSubMethodInvokes(arg, invokes);
+            }
+        } else if (code instanceof Field) {
+            addSubMethodInvokes(((Field) code).getThisInstance(), invokes);
+        } else if (code instanceof VarAssign) {
+            addSubMethodInvokes(((VarAssign) code).getVariable(), invokes);
+            addSubMethodInvokes(((VarAssign) code).getValue(), invokes);
+        }
+    }
+
+    // Resolves the code body of the root methods and the sub methods reachable from them,
+    // and clears or removes the other sub methods.
+    // The overriding methods of the called sub method are also regarded as reachable
+    // since they may be called instead of the sub method at runtime.
+    // (they are found by the method signature)
+    private void pruneUnreachable(SrcTree srcTree, boolean removes) {
+        long startTime = System.currentTimeMillis();
+        Map<String, List<TestMethod>> signatureMap = new HashMap<>(256);
+        for (TestMethod subMethod : srcTree.getSubMethodTable().getTestMethods()) {
+            String signature = methodSignature(subMethod);
+            List<TestMethod> sameSignatureMethods = signatureMap.get(signature);
+            if (sameSignatureMethods == null) {
+                sameSignatureMethods = new ArrayList<>(2);
+                signatureMap.put(signature, sameSignatureMethods);
+            }
+            sameSignatureMethods.add(subMethod);
+        }
+
+        Set<TestMethod> reachableSubMethods = new HashSet<>(256);
+        LinkedList<TestMethod> queue
+        = new LinkedList<>(srcTree.getRootMethodTable().getTestMethods());
+        while (!queue.isEmpty()) {
+            TestMethod testMethod = queue.removeFirst();
+            resolveCodeBody(Arrays.asList(testMethod), srcTree);
+            List<SubMethodInvoke> invokes = new ArrayList<>(16);
+            for (CodeLine codeLine : testMethod.getCodeBody()) {
+                addSubMethodInvokes(codeLine.getCode(), invokes);
+            }
+            for (SubMethodInvoke invoke : invokes) {
+                if (invoke.getSubMethod() == null) {
+                    continue;
+                }
+                List<TestMethod> calleeCandidates
+                = signatureMap.get(methodSignature(invoke.getSubMethod()));
+                if (calleeCandidates == null) {
+                    continue;
+                }
+                for (TestMethod callee : calleeCandidates) {
+                    if (reachableSubMethods.add(callee)) {
+                        queue.add(callee);
+                    }
+                }
+            }
+        }
+
+        int unreachableCount = 0;
+        Iterator<TestMethod> it = srcTree.getSubMethodTable().getTestMethods().iterator();
+        while (it.hasNext()) {
+            TestMethod subMethod = it.next();
+            if (reachableSubMethods.contains(subMethod)) {
+                continue;
+            }
+            unreachableCount++;
+            if (removes) {
+                it.remove();
+                subMethod.getTestClass().getTestMethodKeys().remove(subMethod.getKey());
+                subMethod.getTestClass().getTestMethods().remove(subMethod);
+            } else {
+                subMethod.clearCodeBody();
+            }
+        }
+        logger.info(String.format("srcTree: %d reachable and %d unreachable sub methods (%d ms)",
+                reachableSubMethods.size(), unreachableCount,
+                System.currentTimeMillis() - startTime));
+    }
+
+    private void setCodeReference(Code code, SrcTree srcTree) {
+        if (code instanceof SubMethodInvoke) {
+            SubMethodInvoke invoke = (SubMethodInvoke) code;
+            if (invoke.getSubMethod() == null) {
+                invoke.setSubMethod(srcTree.getSubMethodTable().getByKey(invoke.getSubMethodKey()));
+            }
+            setCodeReference(invoke.getThisInstance(), srcTree);
+            for (Code arg : invoke.getArgs()) {
+                setCodeReference(arg, srcTree);
+            }
+        } else if (code instanceof Field) {
+            Field field = (Field) code;
+            if (field.getField() == null) {
+                field.setField(srcTree.getFieldTable().getByKey(field.getFieldKey()));
+            }
+            setCodeReference(field.getThisInstance(), srcTree);
+        } else if (code instanceof VarAssign) {
+            VarAssign assign = (VarAssign) code;
+            setCodeReference(assign.getVariable(), srcTree);
+            setCodeReference(assign.getValue(), srcTree);
+        }
+    }
+
+    private int actualParseThreadCount(int srcFileCount) {
+        int threadCount = parseThreadCount;
+        if (threadCount == 0) {
+            threadCount = Runtime.getRuntime().availableProcessors();
+        }
+        return Math.max(1, Math.min(threadCount, srcFileCount));
+    }
+
+    private String[] srcPathEntries(List<String> srcFiles, Charset srcCharset) {
+        List<SrcFile> srcFileList = new ArrayList<>(srcFiles.size());
+        for (String srcFilePath : srcFiles) {
+            srcFileList.add(new SrcFile(srcFilePath, srcCharset));
+        }
+        return srcPathEntries(srcFileList);
+    }
+
+    private String[] srcPathEntries(Collection<SrcFile> srcFiles) {
+        Set<String> srcPathSet = new LinkedHashSet<>(16);
+        for (SrcFile srcFile : srcFiles) {
+            File srcRootDir = srcFile.getSrcRootDir();
+            if (srcRootDir != null) {
+                srcPathSet.add(srcRootDir.getAbsolutePath());
+            }
+        }
+        return srcPathSet.toArray(new String[0]);
+    }
+
+    private boolean usesBatch(int srcFileCount) {
+        return parseBatchSize > 0 && srcFileCount > parseBatchSize;
+    }
+
+    // parse srcFiles by parseBatchSize files.
+    // Only CollectedSrcFile, which has no reference to the AST, is carried across batches
+    private List<CollectedSrcFile> collectByBatch(List<String> srcFiles, Charset srcCharset,
+            String[] classPathEntries, String[] srcPathEntries) {
+        if (!usesBatch(srcFiles.size())) {
+            CollectRequestor requestor = new CollectRequestor(srcFiles.size());
+            parseAST(srcFiles.toArray(new String[0]), srcCharset,
+                    classPathEntries, srcPathEntries, requestor);
+            return requestor.getCollectedFiles();
+        }
+        List<CollectedSrcFile> result = new ArrayList<>(srcFiles.size());
+        for (int from = 0; from < srcFiles.size(); from += parseBatchSize) {
+            int to = Math.min(from + parseBatchSize, srcFiles.size());
+            CollectRequestor requestor = new CollectRequestor(to - from);
+            parseAST(srcFiles.subList(from, to).toArray(new String[0]), srcCharset,
+                    classPathEntries, srcPathEntries, requestor);
+            result.addAll(requestor.getCollectedFiles());
+        }
+        return result;
+    }
+
+    private List<CollectedSrcFile> sortBySrcFiles(
+            List<CollectedSrcFile> collectedFiles, List<String> srcFiles) {
+        Map<String, CollectedSrcFile> collectedMap = new HashMap<>(srcFiles.size() * 2);
+        for (CollectedSrcFile collected : collectedFiles) {
+            collectedMap.put(collected.getSrcFilePath(), collected);
+        }
+        List<CollectedSrcFile> result = new ArrayList<>(srcFiles.size());
+        for (String srcFilePath : srcFiles) {
+            CollectedSrcFile collected = collectedMap.get(srcFilePath);
+            if (collected != null) {
+                result.add(collected);
+            }
+        }
+        return result;
+    }
+
+    // the result is in the same order as srcFiles regardless of the thread count and the batch size
+    private List<CollectedSrcFile> collect(List<String> srcFiles, final Charset srcCharset,
+            final String[] classPathEntries, String[] srcPathEntries) {
+        int threadCount = actualParseThreadCount(srcFiles.size());
+        if (threadCount == 1 && !usesBatch(srcFiles.size())) {
+            return collectByBatch(srcFiles, srcCharset, classPathEntries, srcPathEntries);
+        }
+
+        // each partition or batch refers to the types in the other ones through the source path
+        final String[] workerSrcPathEntries;
+        if (srcPathEntries == null) {
+            workerSrcPathEntries = srcPathEntries(srcFiles, srcCharset);
+        } else {
+            workerSrcPathEntries = srcPathEntries;
+        }
+        if (threadCount == 1) {
+            return sortBySrcFiles(collectByBatch(
+                    srcFiles, srcCharset, classPathEntries, workerSrcPathEntries), srcFiles);
+        }
+
+        // split into contiguous partitions to keep the files in the same package together
+        List<Future<List<CollectedSrcFile>>> futures = new ArrayList<>(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                int from = srcFiles.size() * i / threadCount;
+                int to = srcFiles.size() * (i + 1) / threadCount;
+                final List<String> partition = new ArrayList<>(srcFiles.subList(from, to));
+                futures.add(executor.submit(new Callable<List<CollectedSrcFile>>() {
+
+                    @Override
+                    public List<CollectedSrcFile> call() {
+                        return collectByBatch(
+                                partition, srcCharset, classPathEntries, workerSrcPathEntries);
+                    }
+                }));
+            }
+
+            List<CollectedSrcFile> collectedFiles = new ArrayList<>(srcFiles.size());
+            for (Future<List<CollectedSrcFile>> future : futures) {
+                collectedFiles.addAll(future.get());
+            }
+            return sortBySrcFiles(collectedFiles, srcFiles);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // returns null if prefilter is not used
+    // selection can be null
+    private SrcFilePrefilter createPrefilter(TestSelection selection) {
+        if (!prefilter) {
+            return null;
+        }
+        return SrcFilePrefilter.create(JavaAdapterContainer.globalInstance().getAcceptableTestFramework(),
+                additionalTestDocs, selection);
+    }
+
+    // returns the files which are not IRRELEVANT
+    private List<String> prefilterSrcFiles(Collection<SrcFile> srcFiles, SrcFilePrefilter filter) {
+        List<String> result = new ArrayList<>(srcFiles.size());
+        int rootCandidateCount = 0;
+        int testDocCarrierCount = 0;
+        for (SrcFile srcFile : srcFiles) {
+            SrcFilePrefilter.Kind kind = filter.classify(srcFile);
+            if (kind == SrcFilePrefilter.Kind.ROOT_CANDIDATE) {
+                rootCandidateCount++;
+            } else if (kind == SrcFilePrefilter.Kind.TEST_DOC_CARRIER) {
+                testDocCarrierCount++;
+            } else {
+                continue;
+            }
+            result.add(srcFile.getPath());
+        }
+        logger.info(String.format(
+                "srcTree prefilter: %d root method candidates, %d TestDoc carriers, %d files skipped",
+                rootCandidateCount, testDocCarrierCount, srcFiles.size() - result.size()));
+        return result;
+    }
+
+    // the generation settings which may change the generation result for the same source files
+    private void appendSettingsFingerprint(StringBuilder builder, Charset srcCharset) {
+        builder.append(srcCharset.name()).append("\n");
+        builder.append(createPrefilter(null) != null).append("\n");
+        builder.append(JavaAdapterContainer.globalInstance().getAcceptableTestFramework()).append("\n");
+        for (Locale locale : locales.getLocales()) {
+            builder.append(locale.getValue()).append("\n");
+        }
+        for (AdditionalClassTestDoc classTestDoc : additionalTestDocs.getClassTestDocs()) {
+            builder.append(String.format("%s,%s,%s,%s%n", classTestDoc.getQualifiedName(),
+                    classTestDoc.getTestDoc(), classTestDoc.getDelegateToQualifiedName(),
+                    classTestDoc instanceof AdditionalPage));
+        }
+        for (AdditionalMethodTestDoc methodTestDoc : additionalTestDocs.getMethodTestDocs()) {
+            String argClassesStr = null;
+            if (methodTestDoc.isOverloaded()) {
+                argClassesStr = methodTestDoc.getArgClassesStr();
+            }
+            builder.append(String.format("%s,%s,%s,%s,%s%n", methodTestDoc.getQualifiedName(),
+                    argClassesStr, methodTestDoc.getVariableLengthArgIndex(),
+                    methodTestDoc.getTestDoc(), methodTestDoc.getCaptureStyle()));
+        }
+    }
+
+    // the source file paths relative to their source root directories without the extension,
+    // such as "org/sahagin/TestMain"
+    private Set<String> srcRelPaths(Collection<SrcFile> srcFiles) {
+        Set<String> result = new HashSet<>(srcFiles.size() * 2);
+        for (SrcFile srcFile : srcFiles) {
+            File srcRootDir = srcFile.getSrcRootDir();
+            if (srcRootDir == null) {
+                continue;
+            }
+            String srcFilePath = new File(srcFile.getPath()).getAbsolutePath();
+            String relPath = srcFilePath.substring(srcRootDir.getAbsolutePath().length() + 1);
+            if (relPath.endsWith(".java")) {
+                result.add(relPath.substring(0, relPath.length() - ".java".length())
+                        .replace(File.separatorChar, '/'));
+            }
+        }
+        return result;
+    }
+
+    // Page objects and TestDocs of the main code are resolved through
+    // the class files in the class path directory such as target/classes.
+    // The class files compiled from the source files themselves are not checked
+    // since they are changed whenever the source files are compiled,
+    // and nothing is appended if the directory has no other class file
+    private void appendClassPathDirFingerprint(
+            StringBuilder builder, File classPathDir, Set<String> srcRelPaths) {
+        String dirPath = classPathDir.getAbsolutePath();
+        long newestModified = 0;
+        int classFileCount = 0;
+        for (File classFile : FileUtils.listFiles(classPathDir, new String[] {"class"}, true)) {
+            String relPath = classFile.getAbsolutePath().substring(dirPath.length() + 1)
+                    .replace(File.separatorChar, '/');
+            relPath = relPath.substring(0, relPath.length() - ".class".length());
+            // the class file of the nested class is compiled from the same source file
+            int innerIndex = relPath.indexOf('$', relPath.lastIndexOf('/') + 1);
+            if (innerIndex != -1) {
+                relPath = relPath.substring(0, innerIndex);
+            }
+            if (srcRelPaths.contains(relPath)) {
+                continue;
+            }
+            newestModified = Math.max(newestModified, classFile.lastModified());
+            classFileCount++;
+        }
+        if (classFileCount > 0) {
+            builder.append(String.format("%s,%d,%d%n", dirPath, classFileCount, newestModified));
+        }
+    }
+
+    // the value which changes when the generation result may change for the same source files
+    private String cacheFingerprint(
+            Charset srcCharset, String[] classPathEntries, Collection<SrcFile> srcFiles) {
+        StringBuilder builder = new StringBuilder(4096);
+        appendSettingsFingerprint(builder, srcCharset);
+        // the entries in the manifest-only jar are checked instead of the jar itself,
+        // since the jar such as the booter jar of Maven surefire plug-in
+        // is created with the new temporary name for each test run
+        Set<String> classPathSet = new LinkedHashSet<>(classPathEntries.length * 2);
+        addToClassPathSet(classPathSet, classPathEntries);
+        Set<String> srcRelPaths = srcRelPaths(srcFiles);
+        for (String classPathEntry : classPathSet) {
+            File classPathFile = new File(classPathEntry);
+            if (classPathFile.isDirectory()) {
+                appendClassPathDirFingerprint(builder, classPathFile, srcRelPaths);
+            } else if (!isManifestOnlyJar(classPathFile)) {
+                builder.append(classPathEntry);
+                if (classPathFile.isFile()) {
+                    builder.append(",").append(classPathFile.length());
+                    builder.append(",").append(classPathFile.lastModified());
+                }
+                builder.append("\n");
+            }
+        }
+        return CommonUtils.calcSHA1Digest(builder.toString(), Charsets.UTF_8);
+    }
+
+    // The value which changes when the SrcTree generated by generateWithRuntimeClassPath
+    // may change. This is used to check if the SrcTree generated beforehand is still valid.
+    // The source file contents and the class files in the class path directories are checked,
+    // but the jars are not since the jars in the class path at the build time
+    // are usually different from the ones at the test time
+    public String generationFingerprint(File srcRootDir, Charset srcCharset) {
+        return generationFingerprint(Arrays.asList(srcRootDir), srcCharset);
+    }
+
+    public String generationFingerprint(List<File> srcRootDirs, Charset srcCharset) {
+        return generationFingerprint(srcRootDirs, srcCharset, runtimeClassPathEntries());
+    }
+
+    // classPathEntries.. the class path which is used to generate SrcTree
+    public String generationFingerprint(
+            List<File> srcRootDirs, Charset srcCharset, String[] classPathEntries) {
+        StringBuilder builder = new StringBuilder(16384);
+        builder.append(CommonUtils.formatVersion()).append("\n");
+        appendSettingsFingerprint(builder, srcCharset);
+        builder.append(prunesUnreachable).append(",").append(removesUnreachable).append("\n");
+        List<String> rootPaths = new ArrayList<>(srcRootDirs.size());
+        for (File srcRootDir : srcRootDirs) {
+            rootPaths.add(srcRootDir.getAbsolutePath());
+        }
+        String[] srcFilePaths = listSrcFilePaths(srcRootDirs);
+        List<SrcFile> srcFiles = new ArrayList<>(srcFilePaths.length);
+        for (String srcFilePath : srcFilePaths) {
+            SrcFile srcFile = new SrcFile(srcFilePath, srcCharset);
+            srcFiles.add(srcFile);
+            // use the root directory index and the relative path
+            // so that the fingerprint does not depend on the root directory location
+            String relPath = srcFilePath;
+            for (int i = 0; i < rootPaths.size(); i++) {
+                if (srcFilePath.startsWith(rootPaths.get(i))) {
+                    relPath = i + ":" + srcFilePath.substring(rootPaths.get(i).length());
+                    break;
+                }
+            }
+            builder.append(String.format("%s,%s%n", relPath, srcFile.getHash()));
+        }
+        Set<String> classPathSet = new LinkedHashSet<>(classPathEntries.length * 2);
+        addToClassPathSet(classPathSet, classPathEntries);
+        Set<String> srcRelPaths = srcRelPaths(srcFiles);
+        for (String classPathEntry : classPathSet) {
+            File classPathFile = new File(classPathEntry);
+            if (classPathFile.isDirectory()) {
+                appendClassPathDirFingerprint(builder, classPathFile, srcRelPaths);
+            }
+        }
+        return CommonUtils.calcSHA1Digest(builder.toString(), Charsets.UTF_8);
+    }
+
+    private boolean containsAny(Set<String> set, Set<String> values) {
+        for (String value : values) {
+            if (set.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Only changed source files and the files which depend on them are parsed.
+    // The data of the other files is loaded from the cache
+    private SrcTree generateWithCache(String[] srcFiles, Charset srcCharset, String[] classPathEntries) {
+        long startTime = System.currentTimeMillis();
+        Set<String> srcFileSet = new LinkedHashSet<>(Arrays.asList(srcFiles));
+        Map<String, SrcFile> srcFileMap = new LinkedHashMap<>(srcFiles.length * 2);
+        for (String srcFilePath : srcFileSet) {
+            srcFileMap.put(srcFilePath, new SrcFile(srcFilePath, srcCharset));
+        }
+        SrcTreeCache cache = new SrcTreeCache(cacheDir,
+                cacheFingerprint(srcCharset, classPathEntries, srcFileMap.values()));
+        cache.loadIndex();
+        // test selection is not used to skip files
+        // since the skipped file is stored in the cache as an empty file
+        SrcFilePrefilter filter = createPrefilter(null);
+
+        Set<String> srcPathSet = new LinkedHashSet<>(16);
+        Map<String, CollectedSrcFile> cachedMap = new LinkedHashMap<>(srcFiles.length);
+        Map<String, Set<String>> oldDeclaredTypesMap = new HashMap<>(16);
+        Set<String> changedTypes = new HashSet<>(64);
+        List<String> parseTargets = new ArrayList<>(srcFiles.length);
+        List<CollectedSrcFile> skippedFiles = new ArrayList<>(16);
+        int skippedFileCount = 0;
+        boolean newFileFound = false;
+        for (String srcFilePath : srcFileSet) {
+            SrcFile srcFile = srcFileMap.get(srcFilePath);
+            File srcRootDir = srcFile.getSrcRootDir();
+            if (srcRootDir != null) {
+                srcPathSet.add(srcRootDir.getAbsolutePath());
+            }
+            CollectedSrcFile cached = cache.load(srcFilePath);
+            if (filter != null && filter.classify(srcFile) == SrcFilePrefilter.Kind.IRRELEVANT) {
+                // skipped file is not parsed and only its top level types are recorded
+                // to find the files which depend on it
+                skippedFileCount++;
+                if (cached != null
+                        && StringUtils.equals(cached.getSrcFileHash(), srcFile.getHash())) {
+                    continue;
+                }
+                if (cached == null) {
+                    newFileFound = true;
+                } else {
+                    changedTypes.addAll(cached.getDeclaredTypes());
+                }
+                CollectedSrcFile skipped = new CollectedSrcFile(srcFilePath);
+                skipped.setSrcFileHash(srcFile.getHash());
+                for (String typeName : srcFile.getTopLevelTypeNames()) {
+                    skipped.addDeclaredType(typeName);
+                }
+                skipped.finish();
+                changedTypes.addAll(skipped.getDeclaredTypes());
+                skippedFiles.add(skipped);
+            } else if (cached == null) {
+                newFileFound = true;
+                parseTargets.add(srcFilePath);
+            } else if (!StringUtils.equals(cached.getSrcFileHash(), srcFile.getHash())) {
+                changedTypes.addAll(cached.getDeclaredTypes());
+                oldDeclaredTypesMap.put(srcFilePath, cached.getDeclaredTypes());
+                parseTargets.add(srcFilePath);
+            } else {
+                cachedMap.put(srcFilePath, cached);
+            }
+        }
+        for (String cachedSrcFilePath : cache.getCachedSrcFilePaths()) {
+            if (!srcFileSet.contains(cachedSrcFilePath)) {
+                // deleted file
+                CollectedSrcFile cached = cache.load(cachedSrcFilePath);
+                if (cached != null) {
+                    changedTypes.addAll(cached.getDeclaredTypes());
+                }
+            }
+        }
+
+        String[] srcPathEntries = srcPathSet.toArray(new String[0]);
+        Map<String, CollectedSrcFile> parsedMap = new HashMap<>(parseTargets.size() * 2);
+        while (true) {
+            // cached files which depend on the changed types must be parsed again.
+            // The file which has unresolved type may depend on the newly added file
+            Iterator<Map.Entry<String, CollectedSrcFile>> it = cachedMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CollectedSrcFile> entry = it.next();
+                CollectedSrcFile cached = entry.getValue();
+                if (containsAny(cached.getReferredTypes(), changedTypes)
+                        || (newFileFound && cached.isUnresolvedBindingFound())) {
+                    oldDeclaredTypesMap.put(entry.getKey(), cached.getDeclaredTypes());
+                    parseTargets.add(entry.getKey());
+                    it.remove();
+                }
+            }
+            newFileFound = false;
+            if (parseTargets.isEmpty()) {
+                break;
+            }
+
+            changedTypes = new HashSet<>(16);
+            for (CollectedSrcFile parsed
+                    : collect(parseTargets, srcCharset, classPathEntries, srcPathEntries)) {
+                parsed.setSrcFileHash(srcFileMap.get(parsed.getSrcFilePath()).getHash());
+                parsedMap.put(parsed.getSrcFilePath(), parsed);
+                // the files which refer to newly declared types must be parsed again
+                Set<String> newTypes = new HashSet<>(parsed.getDeclaredTypes());
+                Set<String> oldTypes = oldDeclaredTypesMap.get(parsed.getSrcFilePath());
+                if (oldTypes != null) {
+                    newTypes.removeAll(oldTypes);
+                }
+                changedTypes.addAll(newTypes);
+            }
+            parseTargets.clear();
+        }
+
+        List<CollectedSrcFile> collectedFiles = new ArrayList<>(srcFileSet.size());
+        for (String srcFilePath : srcFileSet) {
+            CollectedSrcFile collected = parsedMap.get(srcFilePath);
+            if (collected == null) {
+                collected = cachedMap.get(srcFilePath);
+            }
+            if (collected != null) {
+                collectedFiles.add(collected);
+            }
         }
+        // all code bodies are resolved since they are stored in the cache
+        SrcTree result = mergeCollectedFiles(collectedFiles, true);
+
+        for (CollectedSrcFile parsed : parsedMap.values()) {
+            cache.store(parsed);
+        }
+        for (CollectedSrcFile skipped : skippedFiles) {
+            cache.store(skipped);
+        }
+        cache.storeIndex(srcFileSet);
+        cacheLoadedFileCount = cachedMap.size();
+        logger.info(String.format(
+                "srcTree cache: %d files parsed, %d files loaded from cache, %d files skipped (%d ms)",
+                parsedMap.size(), cachedMap.size(), skippedFileCount,
+                System.currentTimeMillis() - startTime));
+        if (testSelection != null) {
+            applyTestSelection(result);
+        } else if (pruneEnabled()) {
+            pruneUnreachable(result, removesUnreachable);
+        }
+        return result;
     }
 
     // srcFiles..parse target files
     // srcCharset.. charset of srcFiles.
     // classPathEntries.. all class paths (class file containing directory or jar file) srcFiles depend.
-    // this path value is similar to --classpath command line argument, but you must give
-    // all class containing sub directories even if the class is in a named package
+    // this path value is similar to --classpath command line argument
     public SrcTree generate(String[] srcFiles, Charset srcCharset, String[] classPathEntries) {
-        // collect root class and method table without code body
-        CollectRootRequestor rootRequestor = new CollectRootRequestor();
-        parseAST(srcFiles, srcCharset, classPathEntries, rootRequestor);
+        bindingCache = new BindingCache();
+        cacheLoadedFileCount = 0;
+        SrcTree result;
+        if (cacheDir != null) {
+            result = generateWithCache(srcFiles, srcCharset, classPathEntries);
+        } else {
+            result = generateWithoutCache(srcFiles, srcCharset, classPathEntries);
+        }
+        logger.info(String.format("binding cache: %d hits, %d misses",
+                bindingCache.getHitCount(), bindingCache.getMissCount()));
+        return result;
+    }
 
-        // collect sub class and method table without code body
-        CollectSubRequestor subRequestor = new CollectSubRequestor(rootRequestor.getRootClassTable());
-        parseAST(srcFiles, srcCharset, classPathEntries, subRequestor);
+    private SrcTree generateWithoutCache(
+            String[] srcFiles, Charset srcCharset, String[] classPathEntries) {
+        // collect all classes, methods and fields with single parsing,
+        // then resolve the code which refers to the data in the other source files
+        SrcFilePrefilter filter = createPrefilter(testSelection);
+        List<CollectedSrcFile> collectedFiles;
+        if (filter == null) {
+            collectedFiles = collect(Arrays.asList(srcFiles), srcCharset, classPathEntries, null);
+        } else {
+            // skipped files are referred to through the source path
+            List<SrcFile> srcFileList = new ArrayList<>(srcFiles.length);
+            for (String srcFile : srcFiles) {
+                srcFileList.add(new SrcFile(srcFile, srcCharset));
+            }
+            List<String> parseTargets = prefilterSrcFiles(srcFileList, filter);
+            collectedFiles = collect(
+                    parseTargets, srcCharset, classPathEntries, srcPathEntries(srcFileList));
+        }
+        return generateFromCollected(collectedFiles);
+    }
 
-        // add additional TestDoc to the table
-        AdditionalTestDocsSetter setter = new AdditionalTestDocsSetter(
-                rootRequestor.getRootClassTable(), subRequestor.getSubClassTable(),
-                rootRequestor.getRootMethodTable(), subRequestor.getSubMethodTable());
-        setter.set(additionalTestDocs);
+    // also used by JavacSrcTreeCollector
+    SrcTree generateFromCollected(List<CollectedSrcFile> collectedFiles) {
+        if (testSelection == null && !pruneEnabled()) {
+            return mergeCollectedFiles(collectedFiles, true);
+        }
+        // code body is resolved only for the reachable methods
+        SrcTree result = mergeCollectedFiles(collectedFiles, false);
+        if (testSelection != null) {
+            applyTestSelection(result);
+        } else {
+            pruneUnreachable(result, removesUnreachable);
+        }
+        return result;
+    }
+
+    // Removes the root methods which are not selected by the test selection
+    // and the sub methods which are not reachable from the selected root methods.
+    // This can be applied to the SrcTree loaded from YAML.
+    // Does nothing if no test selection is set
+    public void applyTestSelection(SrcTree srcTree) {
+        if (testSelection == null) {
+            return;
+        }
+        int unselectedCount = 0;
+        Iterator<TestMethod> it = srcTree.getRootMethodTable().getTestMethods().iterator();
+        while (it.hasNext()) {
+            TestMethod rootMethod = it.next();
+            if (testSelection.isSelected(
+                    rootMethod.getTestClass().getQualifiedName(), rootMethod.getSimpleName())) {
+                continue;
+            }
+            unselectedCount++;
+            it.remove();
+            rootMethod.getTestClass().getTestMethodKeys().remove(rootMethod.getKey());
+            rootMethod.getTestClass().getTestMethods().remove(rootMethod);
+        }
+        pruneUnreachable(srcTree, true);
+        Iterator<TestClass> classIt = srcTree.getRootClassTable().getTestClasses().iterator();
+        while (classIt.hasNext()) {
+            TestClass rootClass = classIt.next();
+            if (rootClass.getTestMethods().isEmpty() && rootClass.getTestFields().isEmpty()) {
+                classIt.remove();
+            }
+        }
+        logger.info(String.format("test selection \"%s\": %d root methods selected, %d unselected",
+                testSelection.getValue(), srcTree.getRootMethodTable().getTestMethods().size(),
+                unselectedCount));
+    }
 
-        // collect code
-        CollectCodeRequestor codeRequestor = new CollectCodeRequestor(
-                subRequestor.getSubClassTable(), rootRequestor.getRootMethodTable(),
-                subRequestor.getSubMethodTable(), subRequestor.getFieldTable());
-        parseAST(srcFiles, srcCharset, classPathEntries, codeRequestor);
+    private static class JarManifest {
+        // Class-Path attribute values in the jar manifest.
+        // empty array if the jar has no manifest or no Class-Path attribute
+        private final String[] classPath;
+        // true if the jar has the Class-Path attribute and no entry other than META-INF
+        private final boolean manifestOnly;
 
-        SrcTree result = new SrcTree();
-        result.setRootClassTable(rootRequestor.getRootClassTable());
-        result.setSubClassTable(subRequestor.getSubClassTable());
-        result.setRootMethodTable(rootRequestor.getRootMethodTable());
-        result.setSubMethodTable(subRequestor.getSubMethodTable());
-        result.setFieldTable(subRequestor.getFieldTable());
+        private JarManifest(String[] classPath, boolean manifestOnly) {
+            this.classPath = classPath;
+            this.manifestOnly = manifestOnly;
+        }
+    }
+
+    private static JarManifest getJarManifest(File jarFile) {
+        // the key contains the file length and modified time to detect the jar update
+        String cacheKey = String.format("%s,%d,%d",
+                jarFile.getAbsolutePath(), jarFile.length(), jarFile.lastModified());
+        JarManifest cached = jarManifestCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        String[] classPath = new String[0];
+        boolean manifestOnly;
+        try (JarFile jar = new JarFile(jarFile)) {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                String jarClassPathStr = manifest.getMainAttributes().getValue("Class-Path");
+                if (jarClassPathStr != null) {
+                    classPath = jarClassPathStr.split(" "); // separator is space character
+                }
+            }
+            manifestOnly = classPath.length > 0;
+            Enumeration<JarEntry> entries = jar.entries();
+            while (manifestOnly && entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && !entry.getName().startsWith("META-INF/")) {
+                    manifestOnly = false;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("exception for " + jarFile.getAbsolutePath(), e);
+        }
+        JarManifest result = new JarManifest(classPath, manifestOnly);
+        jarManifestCache.put(cacheKey, result);
         return result;
     }
 
-    private void addToClassPathListFromJarManifest(List<String> classPathList, File jarFile) {
-        if (!jarFile.exists()) {
+    // true if the file is the jar which only has the manifest with Class-Path attribute
+    private static boolean isManifestOnlyJar(File file) {
+        return file.getName().endsWith(".jar") && file.isFile() && getJarManifest(file).manifestOnly;
+    }
+
+    private void addToClassPathSetFromJarManifest(Set<String> classPathSet, File jarFile) {
+        if (!jarFile.isFile()) {
             return; // do nothing
         }
-        Manifest manifest = CommonUtils.readManifestFromExternalJar(jarFile);
-        if (manifest == null) {
-            return; // just ignore no manifest jar file
-        }
         // jar class path is sometimes not set at java.class.path property
         // (this case happens for Maven surefire plug-in.
         //  see http://maven.apache.org/surefire/maven-surefire-plugin/examples/class-loading.html)
-        String jarClassPathStr = manifest.getMainAttributes().getValue("Class-Path");
-        if (jarClassPathStr != null) {
-            String[] jarClassPathArray = jarClassPathStr.split(" "); // separator is space character
-            addToClassPathList(classPathList, jarClassPathArray);
-        }
+        addToClassPathSet(classPathSet, getJarManifest(jarFile).classPath);
     }
 
-    private void addToClassPathList(List<String> classPathList, String[] classPathArray) {
+    private void addToClassPathSet(Set<String> classPathSet, String[] classPathArray) {
         for (String classPath : classPathArray) {
             if (classPath == null || classPath.trim().equals("")) {
                 continue;
@@ -931,54 +1726,60 @@ public class SrcTreeGenerator {
             String absClassPath = new File(classPathWithoutPrefix).getAbsolutePath();
 
             if (absClassPath.endsWith(".jar")) {
-                if (!classPathList.contains(absClassPath)) {
-                    classPathList.add(absClassPath);
-                    addToClassPathListFromJarManifest(classPathList, new File(absClassPath));
+                if (classPathSet.add(absClassPath)) {
+                    addToClassPathSetFromJarManifest(classPathSet, new File(absClassPath));
                 }
             } else if (absClassPath.endsWith(".zip")) {
-                if (!classPathList.contains(absClassPath)) {
-                    classPathList.add(absClassPath);
-                }
-            } else {
-                File classPathFile = new File(absClassPath);
-                if (classPathFile.isDirectory()) {
-                    // needs to add all sub directories
-                    // since SrcTreeGenerator does not search classPathEntry sub directories
-                    // TODO should add jar file in the sub directories ??
-                    Collection<File> subDirCollection = FileUtils.listFilesAndDirs(
-                            classPathFile, FileFilterUtils.directoryFileFilter(), FileFilterUtils.trueFileFilter());
-                    for (File subDir : subDirCollection) {
-                        if (!classPathList.contains(subDir.getAbsolutePath())) {
-                            classPathList.add(subDir.getAbsolutePath());
-                        }
-                    }
-                }
+                classPathSet.add(absClassPath);
+            } else if (new File(absClassPath).isDirectory()) {
+                // class path directory is the package root directory
+                // and JDT searches the classes in the package sub directories,
+                // so sub directories are not added
+                classPathSet.add(absClassPath);
             }
         }
     }
 
+    // all java source file absolute paths in srcRootDirs which match the source file filter
+    private String[] listSrcFilePaths(List<File> srcRootDirs) {
+        long startTime = System.currentTimeMillis();
+        SrcFileFinder finder = new SrcFileFinder(srcRootDirs);
+        finder.setIncludes(srcIncludes);
+        finder.setExcludes(srcExcludes);
+        finder.setThreadCount(parseThreadCount);
+        List<String> srcFilePaths = finder.find();
+        logger.info(String.format("source files: %d files found (%d ms)",
+                srcFilePaths.size(), System.currentTimeMillis() - startTime));
+        return srcFilePaths.toArray(new String[0]);
+    }
+
     public SrcTree generateWithRuntimeClassPath(File srcRootDir, Charset srcCharset)
             throws IllegalTestScriptException {
+        return generateWithRuntimeClassPath(Arrays.asList(srcRootDir), srcCharset);
+    }
+
+    public SrcTree generateWithRuntimeClassPath(List<File> srcRootDirs, Charset srcCharset)
+            throws IllegalTestScriptException {
         // set up srcFilePaths
-        if (!srcRootDir.exists()) {
-            throw new IllegalArgumentException("directory does not exist: " + srcRootDir.getAbsolutePath());
-        }
-        Collection<File> srcFileCollection = FileUtils.listFiles(srcRootDir, new String[]{"java"}, true);
-        List<File> srcFileList = new ArrayList<>(srcFileCollection);
-        String[] srcFilePaths = new String[srcFileList.size()];
-        for (int i = 0; i < srcFileList.size(); i++) {
-            srcFilePaths[i] = srcFileList.get(i).getAbsolutePath();
-        }
+        String[] srcFilePaths = listSrcFilePaths(srcRootDirs);
+
+        return generate(srcFilePaths, srcCharset, runtimeClassPathEntries());
+    }
 
-        // set up classPathEntries
+    // the entries of java.class.path property and the entries in their jar manifests.
+    // also used by SrcTreeGeneratorTest
+    String[] runtimeClassPathEntries() {
         // TODO handle wild card classpath entry
-        List<String> classPathList = new ArrayList<>(64);
+        long startTime = System.currentTimeMillis();
+        Set<String> classPathSet = new LinkedHashSet<>(256);
         String classPathStr = System.getProperty("java.class.path");
         String[] classPathArray = classPathStr.split(Pattern.quote(File.pathSeparator));
-        addToClassPathList(classPathList, classPathArray);
-        for (String classPath : classPathList) {
-            logger.info("classPath: " + classPath);
+        addToClassPathSet(classPathSet, classPathArray);
+        for (String classPath : classPathSet) {
+            logger.fine("classPath: " + classPath);
         }
-        return generate(srcFilePaths, srcCharset, classPathList.toArray(new String[0]));
+        logger.info(String.format("classPath: %d entries (%d ms)",
+                classPathSet.size(), System.currentTimeMillis() - startTime));
+        return classPathSet.toArray(new String[0]);
     }
 }
@@ -0,0 +1,130 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+// The root methods selected to run, in the similar format to the test parameter
+// of Maven surefire plugin:
+// - comma separated patterns, and the pattern starting with '!' excludes the matched methods
+// - each pattern is the class name pattern and optional method name patterns
+//   separated by '#', and method name patterns are separated by '+' (MyTest#testA+testB)
+// - '*' matches any characters
+// - class name pattern which contains '.' or '/' matches the qualified name,
+//   otherwise it matches the simple name. ".java" or ".class" suffix is ignored
+public class TestSelection {
+    private String value;
+    private List<Selector> includes = new ArrayList<>(4);
+    private List<Selector> excludes = new ArrayList<>(4);
+
+    private static class Selector {
+        private Pattern classPattern;
+        private boolean qualified;
+        // null means all methods
+        private Pattern methodPattern;
+
+        private boolean matchesClass(String classQualifiedName) {
+            if (qualified) {
+                return classPattern.matcher(classQualifiedName).matches();
+            }
+            String simpleName = classQualifiedName.substring(Math.max(
+                    classQualifiedName.lastIndexOf('.'), classQualifiedName.lastIndexOf('$')) + 1);
+            return classPattern.matcher(simpleName).matches();
+        }
+
+        private boolean matches(String classQualifiedName, String methodSimpleName) {
+            if (!matchesClass(classQualifiedName)) {
+                return false;
+            }
+            return methodPattern == null || methodPattern.matcher(methodSimpleName).matches();
+        }
+    }
+
+    private TestSelection(String value) {
+        this.value = value;
+    }
+
+    private static Pattern wildcardPattern(String wildcard) {
+        StringBuilder regex = new StringBuilder(wildcard.length() * 2);
+        for (String part : StringUtils.splitPreserveAllTokens(wildcard, '*')) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            if (!part.isEmpty()) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static Selector parseSelector(String pattern) {
+        Selector selector = new Selector();
+        String classPart = StringUtils.substringBefore(pattern, "#").trim();
+        String methodPart = StringUtils.substringAfter(pattern, "#").trim();
+        classPart = StringUtils.removeStart(classPart, "**/");
+        classPart = StringUtils.removeEnd(StringUtils.removeEnd(classPart, ".java"), ".class");
+        selector.qualified = classPart.contains(".") || classPart.contains("/");
+        selector.classPattern = wildcardPattern(classPart.replace('/', '.'));
+        if (!methodPart.isEmpty()) {
+            List<String> methodRegexes = new ArrayList<>(2);
+            for (String method : StringUtils.split(methodPart, '+')) {
+                methodRegexes.add(wildcardPattern(method.trim()).pattern());
+            }
+            selector.methodPattern = Pattern.compile(StringUtils.join(methodRegexes, "|"));
+        }
+        return selector;
+    }
+
+    // returns null if value is blank, which means all root methods are selected
+    public static TestSelection parse(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        TestSelection result = new TestSelection(value.trim());
+        for (String pattern : StringUtils.split(value, ',')) {
+            pattern = pattern.trim();
+            if (pattern.startsWith("!")) {
+                result.excludes.add(parseSelector(pattern.substring(1)));
+            } else if (!pattern.isEmpty()) {
+                result.includes.add(parseSelector(pattern));
+            }
+        }
+        return result;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public boolean isSelected(String classQualifiedName, String methodSimpleName) {
+        for (Selector exclude : excludes) {
+            if (exclude.matches(classQualifiedName, methodSimpleName)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Selector include : includes) {
+            if (include.matches(classQualifiedName, methodSimpleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // returns false only if no method of the class can be selected
+    public boolean mayBeSelectedClass(String classQualifiedName) {
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Selector include : includes) {
+            if (include.matchesClass(classQualifiedName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,31 @@
+package org.sahagin.runlib.srctreegen;
+
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.code.Code;
+
+// Code which cannot be decided until all source files are collected,
+// since it depends on the methods, fields or classes collected from the other source files.
+// This code is replaced with the actual code by SrcTreeGenerator and never appears in the SrcTree.
+abstract class UnresolvedCode extends Code {
+
+    @Override
+    protected String getType() {
+        throw new UnsupportedOperationException("unresolved code: " + getOriginal());
+    }
+
+    // srcTree must contain all the collected classes, methods and fields
+    protected abstract Code resolveSub(SrcTree srcTree);
+
+    public static Code resolve(Code code, SrcTree srcTree) {
+        if (!(code instanceof UnresolvedCode)) {
+            return code;
+        }
+        UnresolvedCode unresolved = (UnresolvedCode) code;
+        Code result = unresolved.resolveSub(srcTree);
+        // original value is overridden for the statement level code
+        if (unresolved.getOriginal() != null) {
+            result.setOriginal(unresolved.getOriginal());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package org.sahagin.runlib.srctreegen;
+
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.TestField;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.Field;
+import org.sahagin.share.srctree.code.UnknownCode;
+
+// Field reference which becomes Field if the field key is found in the field table
+class UnresolvedField extends UnresolvedCode {
+    private String fieldKey;
+
+    public String getFieldKey() {
+        return fieldKey;
+    }
+
+    public void setFieldKey(String fieldKey) {
+        this.fieldKey = fieldKey;
+    }
+
+    @Override
+    protected Code resolveSub(SrcTree srcTree) {
+        TestField testField = srcTree.getFieldTable().getByKey(fieldKey);
+        if (testField == null) {
+            return new UnknownCode();
+        }
+        Field field = new Field();
+        field.setFieldKey(testField.getKey());
+        field.setField(testField);
+        field.setThisInstance(null); // TODO really null??
+        return field;
+    }
+}
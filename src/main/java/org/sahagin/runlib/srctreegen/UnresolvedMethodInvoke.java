@@ -0,0 +1,84 @@
+package org.sahagin.runlib.srctreegen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.TestMethod;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.SubMethodInvoke;
+import org.sahagin.share.srctree.code.UnknownCode;
+
+// Method invocation which becomes SubMethodInvoke
+// if any of the candidate method keys is found in the sub method table.
+// Candidates are checked in the added order and the first found one is used.
+class UnresolvedMethodInvoke extends UnresolvedCode {
+    private List<String> candidateKeys = new ArrayList<>(4);
+    private List<Boolean> candidateChildInvokes = new ArrayList<>(4);
+    // if true, SubMethodInvoke for the first candidate is generated even if no candidate is found
+    private boolean alwaysInvoke = false;
+    private List<Code> args = new ArrayList<>(4);
+    private Code thisInstance;
+
+    public List<String> getCandidateKeys() {
+        return candidateKeys;
+    }
+
+    public void addCandidateKey(String key, boolean childInvoke) {
+        candidateKeys.add(key);
+        candidateChildInvokes.add(childInvoke);
+    }
+
+    public boolean isAlwaysInvoke() {
+        return alwaysInvoke;
+    }
+
+    public void setAlwaysInvoke(boolean alwaysInvoke) {
+        this.alwaysInvoke = alwaysInvoke;
+    }
+
+    public List<Code> getArgs() {
+        return args;
+    }
+
+    public void addArg(Code arg) {
+        args.add(arg);
+    }
+
+    public Code getThisInstance() {
+        return thisInstance;
+    }
+
+    public void setThisInstance(Code thisInstance) {
+        this.thisInstance = thisInstance;
+    }
+
+    @Override
+    protected Code resolveSub(SrcTree srcTree) {
+        int foundIndex = -1;
+        TestMethod invocationMethod = null;
+        for (int i = 0; i < candidateKeys.size(); i++) {
+            invocationMethod = srcTree.getSubMethodTable().getByKey(candidateKeys.get(i));
+            if (invocationMethod != null) {
+                foundIndex = i;
+                break;
+            }
+        }
+        if (foundIndex == -1) {
+            if (!alwaysInvoke) {
+                return new UnknownCode();
+            }
+            foundIndex = 0;
+        }
+
+        SubMethodInvoke subMethodInvoke = new SubMethodInvoke();
+        subMethodInvoke.setSubMethodKey(candidateKeys.get(foundIndex));
+        subMethodInvoke.setSubMethod(invocationMethod);
+        subMethodInvoke.setThisInstance(UnresolvedCode.resolve(thisInstance, srcTree));
+        for (Code arg : args) {
+            subMethodInvoke.addArg(UnresolvedCode.resolve(arg, srcTree));
+        }
+        subMethodInvoke.setChildInvoke(candidateChildInvokes.get(foundIndex));
+        return subMethodInvoke;
+    }
+}
@@ -0,0 +1,74 @@
+package org.sahagin.runlib.srctreegen;
+
+import org.sahagin.share.srctree.PageClass;
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.TestClass;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.LocalVar;
+import org.sahagin.share.srctree.code.UnknownCode;
+import org.sahagin.share.srctree.code.VarAssign;
+
+// LocalVar assignment which becomes VarAssign
+// unless the value is UnknownCode or the variable type is page class.
+// For these cases, value code itself is used
+class UnresolvedVarAssign extends UnresolvedCode {
+    private String assignOriginal;
+    private LocalVar variable;
+    private String variableClassKey;
+    private Code value;
+
+    public String getAssignOriginal() {
+        return assignOriginal;
+    }
+
+    public void setAssignOriginal(String assignOriginal) {
+        this.assignOriginal = assignOriginal;
+    }
+
+    public LocalVar getVariable() {
+        return variable;
+    }
+
+    public void setVariable(LocalVar variable) {
+        this.variable = variable;
+    }
+
+    public String getVariableClassKey() {
+        return variableClassKey;
+    }
+
+    public void setVariableClassKey(String variableClassKey) {
+        this.variableClassKey = variableClassKey;
+    }
+
+    public Code getValue() {
+        return value;
+    }
+
+    public void setValue(Code value) {
+        this.value = value;
+    }
+
+    @Override
+    protected Code resolveSub(SrcTree srcTree) {
+        Code valueCode = UnresolvedCode.resolve(value, srcTree);
+        if (valueCode instanceof UnknownCode) {
+            // ignore left for UnknownCode assignment
+            return valueCode;
+        }
+        TestClass subClass = null;
+        if (variableClassKey != null) {
+            subClass = srcTree.getSubClassTable().getByKey(variableClassKey);
+        }
+        if (subClass != null && subClass instanceof PageClass) {
+            // ignore left for page type variable assignment
+            // since usually page type variable is not used in other TestDoc
+            return valueCode;
+        }
+        VarAssign assign = new VarAssign();
+        assign.setOriginal(assignOriginal);
+        assign.setVariable(variable);
+        assign.setValue(valueCode);
+        return assign;
+    }
+}
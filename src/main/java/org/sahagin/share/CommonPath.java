@@ -1,6 +1,7 @@
 package org.sahagin.share;
 
 import java.io.File;
+import java.nio.file.Path;
 
 public class CommonPath {
 
@@ -8,14 +9,65 @@ public class CommonPath {
         return new File(reportIntermediateDataDir, "srcTree");
     }
 
+    // path version for the intermediate data directory in the archive
+    public static Path srcTreeFile(Path reportIntermediateDataDir) {
+        return reportIntermediateDataDir.resolve("srcTree");
+    }
+
+    // binary snapshot of srcTree. Only one of srcTreeFile and this file exists
+    public static File srcTreeSnapshotFile(File reportIntermediateDataDir) {
+        return new File(reportIntermediateDataDir, "srcTree.bin");
+    }
+
+    public static Path srcTreeSnapshotFile(Path reportIntermediateDataDir) {
+        return reportIntermediateDataDir.resolve("srcTree.bin");
+    }
+
+    // archive to which reportIntermediateDataDir is packed
+    public static File intermediateDataArchiveFile(File reportIntermediateDataDir) {
+        return new File(reportIntermediateDataDir.getPath() + ".zip");
+    }
+
+    // SrcTree generated beforehand by the srcTree action of SahaginMain
+    public static File prebuiltSrcTreeFile(File prebuiltSrcTreeDir) {
+        return new File(prebuiltSrcTreeDir, "srcTree");
+    }
+
+    public static File prebuiltSrcTreeFingerprintFile(File prebuiltSrcTreeDir) {
+        return new File(prebuiltSrcTreeDir, "fingerprint");
+    }
+
     public static File runResultRootDir(File reportIntermediateDataDir) {
         return new File(reportIntermediateDataDir, "runResults");
     }
 
+    public static Path runResultRootDir(Path reportIntermediateDataDir) {
+        return reportIntermediateDataDir.resolve("runResults");
+    }
+
+    // directory for the run result files being written,
+    // which are moved to runResultRootDir when they are completely written
+    public static File runResultTempDir(File reportIntermediateDataDir) {
+        return new File(reportIntermediateDataDir, "runResultsTemp");
+    }
+
+    // directory for the run results segment files, which are written by each JVM
+    public static File runResultSegmentDir(File reportIntermediateDataDir) {
+        return new File(reportIntermediateDataDir, "runResultSegments");
+    }
+
+    public static Path runResultSegmentDir(Path reportIntermediateDataDir) {
+        return reportIntermediateDataDir.resolve("runResultSegments");
+    }
+
     public static File inputCaptureRootDir(File reportIntermediateDataDir) {
         return new File(reportIntermediateDataDir, "captures");
     }
 
+    public static Path inputCaptureRootDir(Path reportIntermediateDataDir) {
+        return reportIntermediateDataDir.resolve("captures");
+    }
+
     public static File htmlReportMainFile(File reportOutputDir) {
         return new File(reportOutputDir, "index.html");
     }
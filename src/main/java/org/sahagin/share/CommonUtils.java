@@ -6,7 +6,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.jar.Manifest;
@@ -111,13 +117,17 @@ public class CommonUtils {
     }
 
     public static String calcSHA1Digest(String input, Charset inputEncoding) {
+        return calcSHA1Digest(input.getBytes(inputEncoding));
+    }
+
+    public static String calcSHA1Digest(byte[] input) {
         MessageDigest msgDigest;
         try {
             msgDigest = java.security.MessageDigest.getInstance("SHA1");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
-        byte[] digest = msgDigest.digest(input.getBytes(inputEncoding));
+        byte[] digest = msgDigest.digest(input);
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < digest.length; i++) {
             int eachByte = digest[i];
@@ -151,6 +161,21 @@ public class CommonUtils {
         return str;
     }
 
+    // memory-maps the file if it is on the default file system,
+    // otherwise, for example for the file in the zip archive, reads the whole file
+    public static ByteBuffer readOnlyBuffer(Path file) {
+        try {
+            if (file.getFileSystem() != FileSystems.getDefault()) {
+                return ByteBuffer.wrap(Files.readAllBytes(file));
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("exception for " + file.toAbsolutePath(), e);
+        }
+    }
+
     // returns null if no manifest found
     public static Manifest readManifestFromExternalJar(File jarFile) {
         if (!jarFile.getName().endsWith(".jar")) {
@@ -25,6 +25,12 @@ public class Config implements YamlConvertible {
     private boolean outputLog = false; // TODO provisional. this is only for debugging
     // if true, don't generate report, generate only report input
     private boolean runTestOnly = false;
+    // if true, run results are appended to one segment file for each JVM
+    // instead of being written to one YAML file for each root method
+    private boolean runResultsSegment = false;
+    // if true, runOutputIntermediateDataDir is packed to {runOutputIntermediateDataDir}.zip
+    // when the test execution JVM finishes
+    private boolean intermediateDataArchive = false;
     private Locale userLocale = Locale.getSystemLocale();
     private boolean usesSystemLocale = true;
 
@@ -109,6 +115,22 @@ public class Config implements YamlConvertible {
         this.runTestOnly = runTestOnly;
     }
 
+    public final boolean usesRunResultsSegment() {
+        return runResultsSegment;
+    }
+
+    public final void setRunResultsSegment(boolean runResultsSegment) {
+        this.runResultsSegment = runResultsSegment;
+    }
+
+    public final boolean usesIntermediateDataArchive() {
+        return intermediateDataArchive;
+    }
+
+    public final void setIntermediateDataArchive(boolean intermediateDataArchive) {
+        this.intermediateDataArchive = intermediateDataArchive;
+    }
+
     public final Locale getUserLocale() {
         return userLocale;
     }
@@ -141,6 +163,8 @@ public class Config implements YamlConvertible {
         commonConf.put("reportOutputDir", reportOutputDir.getPath());
         commonConf.put("outputLog", outputLog);
         commonConf.put("runTestOnly", runTestOnly);
+        commonConf.put("runResultsSegment", runResultsSegment);
+        commonConf.put("intermediateDataArchive", intermediateDataArchive);
         if (usesSystemLocale) {
             commonConf.put("userLocale", "system");
         } else {
@@ -200,6 +224,22 @@ public class Config implements YamlConvertible {
             runTestOnly = false;
         }
 
+        Boolean runResultsSegmentValue
+        = YamlUtils.getBooleanValue(commonYamlObj, "runResultsSegment", true);
+        if (runResultsSegmentValue != null) {
+            runResultsSegment = runResultsSegmentValue;
+        } else {
+            runResultsSegment = false;
+        }
+
+        Boolean intermediateDataArchiveValue
+        = YamlUtils.getBooleanValue(commonYamlObj, "intermediateDataArchive", true);
+        if (intermediateDataArchiveValue != null) {
+            intermediateDataArchive = intermediateDataArchiveValue;
+        } else {
+            intermediateDataArchive = false;
+        }
+
         String userLocaleValueStr = YamlUtils.getStrValue(commonYamlObj, "userLocale", true);
         if (userLocaleValueStr == null || userLocaleValueStr.equals("system")) {
             usesSystemLocale = true;
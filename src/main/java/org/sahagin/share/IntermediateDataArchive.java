@@ -0,0 +1,132 @@
+package org.sahagin.share;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+
+// intermediate data directory packed into one zip archive,
+// which is much faster to transfer than many small files.
+// The entries are stored without compression, since most of them are PNG captures,
+// and the archive is read through the zip file system without extracting it
+public class IntermediateDataArchive {
+    private static final String MSG_NOT_ARCHIVE = "not intermediate data archive: %s";
+
+    // the archive file given as the intermediate data directory
+    public static boolean isArchive(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        String extension = FilenameUtils.getExtension(file.getName());
+        return extension.equalsIgnoreCase("zip") || extension.equalsIgnoreCase("jar");
+    }
+
+    // the directory from which archiveFile has been packed.
+    // The absolute paths in the run results are based on this directory
+    public static File packedDir(File archiveFile) {
+        return new File(archiveFile.getParentFile(),
+                FilenameUtils.getBaseName(archiveFile.getName()));
+    }
+
+    // true if archiveFile exists and no file in intermediateDataDir has been modified after it.
+    // intermediateDataDir may be left partly deleted after it has been packed
+    public static boolean isUpToDate(File archiveFile, File intermediateDataDir) {
+        if (!archiveFile.isFile()) {
+            return false;
+        }
+        if (!intermediateDataDir.exists()) {
+            return true;
+        }
+        for (File file : FileUtils.listFiles(
+                intermediateDataDir, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE)) {
+            if (file.lastModified() > archiveFile.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static URI archiveUri(File archiveFile) {
+        return URI.create("jar:" + archiveFile.getAbsoluteFile().toURI());
+    }
+
+    // resolves relativePath against the directory of another file system
+    // name by name, since the separator may be different
+    private static Path resolve(Path dir, Path relativePath) {
+        Path result = dir;
+        for (Path name : relativePath) {
+            result = result.resolve(name.toString());
+        }
+        return result;
+    }
+
+    private static void copyTree(final Path srcDir, final Path destDir) throws IOException {
+        Files.walkFileTree(srcDir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.createDirectories(resolve(destDir, srcDir.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.copy(file, resolve(destDir, srcDir.relativize(file)),
+                        StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // adds all files in intermediateDataDir to archiveFile.
+    // The archive is created if it does not exist
+    public static void pack(File intermediateDataDir, File archiveFile) {
+        Map<String, String> env = new HashMap<>(2);
+        env.put("create", "true");
+        env.put("noCompression", "true");
+        try (FileSystem archive = FileSystems.newFileSystem(archiveUri(archiveFile), env)) {
+            copyTree(intermediateDataDir.toPath(), archive.getPath("/"));
+        } catch (IOException e) {
+            throw new RuntimeException("fail to pack " + intermediateDataDir.getAbsolutePath(), e);
+        }
+    }
+
+    // opens the archive as the file system whose root directory
+    // can be used as the intermediate data directory
+    public static FileSystem open(File archiveFile) throws IllegalDataStructureException {
+        try {
+            return FileSystems.newFileSystem(
+                    archiveUri(archiveFile), new HashMap<String, String>(0));
+        } catch (ZipException e) {
+            throw new IllegalDataStructureException(
+                    String.format(MSG_NOT_ARCHIVE, archiveFile.getAbsolutePath()), e);
+        } catch (IOException e) {
+            throw new RuntimeException("fail to open " + archiveFile.getAbsolutePath(), e);
+        }
+    }
+
+    // copies all files under srcDir, which may be in the archive, to destDir
+    public static void copyDirectory(Path srcDir, File destDir) {
+        try {
+            copyTree(srcDir, destDir.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("fail to copy " + srcDir.toUri(), e);
+        }
+    }
+}
@@ -12,10 +12,41 @@ import org.sahagin.share.yaml.YamlConvertException;
 public class JavaConfig extends Config {
     private static final String INVALID_CONFIG_YAML = "failed to load config file \"%s\": %s";
     private static final String TEST_FRAMEWORK_DEFAULT = "jUnit4";
+    private static final File SRC_TREE_CACHE_DIR_DEFAULT = new File("sahagin-srctree-cache");
+    private static final File PREBUILT_SRC_TREE_DIR_DEFAULT = new File("sahagin-prebuilt-srctree");
 
-    private File testDir;
+    // multiple test source root directories can be specified
+    private List<File> testDirs = new ArrayList<>(1);
     private List<String> adapterClassNames = new ArrayList<>(8);
     private String testFramework = TEST_FRAMEWORK_DEFAULT;
+    // if true, reuse the SrcTree data for the unchanged source files
+    private boolean srcTreeCache = false;
+    private File srcTreeCacheDir = SRC_TREE_CACHE_DIR_DEFAULT;
+    // the number of the threads used to parse the source files.
+    // 0 means the number of available processors
+    private int srcTreeParseThreads = 1;
+    // if true, the source files which lexically seem to contain
+    // neither test methods nor TestDoc are not parsed
+    private boolean srcTreePrefilter = false;
+    // the maximum number of the source files parsed at once.
+    // 0 means all source files are parsed at once
+    private int srcTreeParseBatchSize = 0;
+    // if true, code body is generated only for the methods reachable from the test methods
+    private boolean srcTreePruneUnreachable = false;
+    // if true, methods unreachable from the test methods are removed from the srcTree
+    private boolean srcTreeRemoveUnreachable = false;
+    // the SrcTree generated beforehand in this directory is used if it is still valid
+    private File prebuiltSrcTreeDir = PREBUILT_SRC_TREE_DIR_DEFAULT;
+    // the test methods selected to run in the format of surefire test parameter (MyTest#testA+testB).
+    // null means all test methods
+    private String testSelection = null;
+    // glob patterns of the source file path relative to testDir (such as "com/example/**").
+    // If srcTreeIncludes is empty, all source files which don't match srcTreeExcludes are used
+    private List<String> srcTreeIncludes = new ArrayList<>(0);
+    private List<String> srcTreeExcludes = new ArrayList<>(0);
+    // if true, the srcTree passed to the test run and the report is written
+    // in the binary snapshot format instead of YAML
+    private boolean srcTreeBinary = false;
 
     public static JavaConfig generateFromYamlConfig(File yamlConfigFile) throws YamlConvertException {
         Map<String, Object> configYamlObj = YamlUtils.load(yamlConfigFile);
@@ -34,16 +65,30 @@ public class JavaConfig extends Config {
         super(rootDir);
     }
 
+    // returns the first test directory
     public File getRootBaseTestDir() {
-        if (testDir.isAbsolute()) {
-            return testDir;
-        } else {
-            return new File(getRootDir(), testDir.getPath());
+        return getRootBaseTestDirs().get(0);
+    }
+
+    public List<File> getRootBaseTestDirs() {
+        List<File> result = new ArrayList<>(testDirs.size());
+        for (File testDir : testDirs) {
+            if (testDir.isAbsolute()) {
+                result.add(testDir);
+            } else {
+                result.add(new File(getRootDir(), testDir.getPath()));
+            }
         }
+        return result;
     }
 
     public void setTestDir(File testDir) {
-        this.testDir = testDir;
+        testDirs.clear();
+        testDirs.add(testDir);
+    }
+
+    public void addTestDir(File testDir) {
+        testDirs.add(testDir);
     }
 
     public List<String> getAdapterClassNames() {
@@ -62,13 +107,139 @@ public class JavaConfig extends Config {
         this.testFramework = testFramework;
     }
 
+    public boolean usesSrcTreeCache() {
+        return srcTreeCache;
+    }
+
+    public void setSrcTreeCache(boolean srcTreeCache) {
+        this.srcTreeCache = srcTreeCache;
+    }
+
+    public File getRootBaseSrcTreeCacheDir() {
+        if (srcTreeCacheDir.isAbsolute()) {
+            return srcTreeCacheDir;
+        } else {
+            return new File(getRootDir(), srcTreeCacheDir.getPath());
+        }
+    }
+
+    public void setSrcTreeCacheDir(File srcTreeCacheDir) {
+        this.srcTreeCacheDir = srcTreeCacheDir;
+    }
+
+    public int getSrcTreeParseThreads() {
+        return srcTreeParseThreads;
+    }
+
+    public void setSrcTreeParseThreads(int srcTreeParseThreads) {
+        this.srcTreeParseThreads = srcTreeParseThreads;
+    }
+
+    public boolean usesSrcTreePrefilter() {
+        return srcTreePrefilter;
+    }
+
+    public void setSrcTreePrefilter(boolean srcTreePrefilter) {
+        this.srcTreePrefilter = srcTreePrefilter;
+    }
+
+    public int getSrcTreeParseBatchSize() {
+        return srcTreeParseBatchSize;
+    }
+
+    public void setSrcTreeParseBatchSize(int srcTreeParseBatchSize) {
+        this.srcTreeParseBatchSize = srcTreeParseBatchSize;
+    }
+
+    public boolean usesSrcTreePruneUnreachable() {
+        return srcTreePruneUnreachable;
+    }
+
+    public void setSrcTreePruneUnreachable(boolean srcTreePruneUnreachable) {
+        this.srcTreePruneUnreachable = srcTreePruneUnreachable;
+    }
+
+    public boolean usesSrcTreeRemoveUnreachable() {
+        return srcTreeRemoveUnreachable;
+    }
+
+    public void setSrcTreeRemoveUnreachable(boolean srcTreeRemoveUnreachable) {
+        this.srcTreeRemoveUnreachable = srcTreeRemoveUnreachable;
+    }
+
+    public File getRootBasePrebuiltSrcTreeDir() {
+        if (prebuiltSrcTreeDir.isAbsolute()) {
+            return prebuiltSrcTreeDir;
+        } else {
+            return new File(getRootDir(), prebuiltSrcTreeDir.getPath());
+        }
+    }
+
+    public void setPrebuiltSrcTreeDir(File prebuiltSrcTreeDir) {
+        this.prebuiltSrcTreeDir = prebuiltSrcTreeDir;
+    }
+
+    public String getTestSelection() {
+        return testSelection;
+    }
+
+    public void setTestSelection(String testSelection) {
+        this.testSelection = testSelection;
+    }
+
+    public List<String> getSrcTreeIncludes() {
+        return srcTreeIncludes;
+    }
+
+    public void setSrcTreeIncludes(List<String> srcTreeIncludes) {
+        this.srcTreeIncludes = srcTreeIncludes;
+    }
+
+    public List<String> getSrcTreeExcludes() {
+        return srcTreeExcludes;
+    }
+
+    public void setSrcTreeExcludes(List<String> srcTreeExcludes) {
+        this.srcTreeExcludes = srcTreeExcludes;
+    }
+
+    public boolean usesSrcTreeBinary() {
+        return srcTreeBinary;
+    }
+
+    public void setSrcTreeBinary(boolean srcTreeBinary) {
+        this.srcTreeBinary = srcTreeBinary;
+    }
+
     @Override
     public Map<String, Object> toYamlObject() {
         Map<String, Object> result = super.toYamlObject();
-        Map<String, Object> javaConf = new HashMap<>(4);
-        javaConf.put("testDir", testDir.getPath());
+        Map<String, Object> javaConf = new HashMap<>(16);
+        if (testDirs.size() == 1) {
+            javaConf.put("testDir", testDirs.get(0).getPath());
+        } else {
+            List<String> testDirPaths = new ArrayList<>(testDirs.size());
+            for (File testDir : testDirs) {
+                testDirPaths.add(testDir.getPath());
+            }
+            javaConf.put("testDir", testDirPaths);
+        }
         javaConf.put("adapters", adapterClassNames);
         javaConf.put("testFramework", testFramework);
+        javaConf.put("srcTreeCache", srcTreeCache);
+        javaConf.put("srcTreeCacheDir", srcTreeCacheDir.getPath());
+        javaConf.put("srcTreeParseThreads", srcTreeParseThreads);
+        javaConf.put("srcTreePrefilter", srcTreePrefilter);
+        javaConf.put("srcTreeParseBatchSize", srcTreeParseBatchSize);
+        javaConf.put("srcTreePruneUnreachable", srcTreePruneUnreachable);
+        javaConf.put("srcTreeRemoveUnreachable", srcTreeRemoveUnreachable);
+        javaConf.put("prebuiltSrcTreeDir", prebuiltSrcTreeDir.getPath());
+        if (testSelection != null) {
+            javaConf.put("testSelection", testSelection);
+        }
+        javaConf.put("srcTreeIncludes", srcTreeIncludes);
+        javaConf.put("srcTreeExcludes", srcTreeExcludes);
+        javaConf.put("srcTreeBinary", srcTreeBinary);
         result.put("java", javaConf);
         return result;
     }
@@ -79,9 +250,20 @@ public class JavaConfig extends Config {
         super.fromYamlObject(yamlObject);
         Map<String, Object> javaYamlObj = YamlUtils.getYamlObjectValue(yamlObject, "java");
         // testDir for java is mandatory
-        // (since cannot get source code path on run time)
-        // TODO support array testDir value (so, testDir can be string or string array)
-        testDir = new File(YamlUtils.getStrValue(javaYamlObj, "testDir"));
+        // (since cannot get source code path on run time).
+        // testDir can be string or string array
+        testDirs = new ArrayList<>(1);
+        if (YamlUtils.getObjectValue(javaYamlObj, "testDir") instanceof List) {
+            List<String> testDirValues = YamlUtils.getStrListValue(javaYamlObj, "testDir");
+            if (testDirValues.isEmpty()) {
+                throw new YamlConvertException("testDir must not be empty");
+            }
+            for (String testDirValue : testDirValues) {
+                testDirs.add(new File(testDirValue));
+            }
+        } else {
+            testDirs.add(new File(YamlUtils.getStrValue(javaYamlObj, "testDir")));
+        }
         adapterClassNames = YamlUtils.getStrListValue(javaYamlObj, "adapters", true);
 
         String testFrameworkValue = YamlUtils.getStrValue(javaYamlObj, "testFramework", true);
@@ -90,5 +272,82 @@ public class JavaConfig extends Config {
         } else {
             testFramework = testFrameworkValue;
         }
+
+        Boolean srcTreeCacheValue = YamlUtils.getBooleanValue(javaYamlObj, "srcTreeCache", true);
+        if (srcTreeCacheValue != null) {
+            srcTreeCache = srcTreeCacheValue;
+        } else {
+            srcTreeCache = false;
+        }
+
+        String srcTreeCacheDirValue = YamlUtils.getStrValue(javaYamlObj, "srcTreeCacheDir", true);
+        if (srcTreeCacheDirValue != null) {
+            srcTreeCacheDir = new File(srcTreeCacheDirValue);
+        } else {
+            srcTreeCacheDir = SRC_TREE_CACHE_DIR_DEFAULT;
+        }
+
+        Integer srcTreeParseThreadsValue
+        = YamlUtils.getIntValue(javaYamlObj, "srcTreeParseThreads", true);
+        if (srcTreeParseThreadsValue == null) {
+            srcTreeParseThreads = 1;
+        } else if (srcTreeParseThreadsValue < 0) {
+            throw new YamlConvertException(
+                    "srcTreeParseThreads must not be negative: " + srcTreeParseThreadsValue);
+        } else {
+            srcTreeParseThreads = srcTreeParseThreadsValue;
+        }
+
+        Boolean srcTreePrefilterValue = YamlUtils.getBooleanValue(javaYamlObj, "srcTreePrefilter", true);
+        if (srcTreePrefilterValue != null) {
+            srcTreePrefilter = srcTreePrefilterValue;
+        } else {
+            srcTreePrefilter = false;
+        }
+
+        Integer srcTreeParseBatchSizeValue
+        = YamlUtils.getIntValue(javaYamlObj, "srcTreeParseBatchSize", true);
+        if (srcTreeParseBatchSizeValue == null) {
+            srcTreeParseBatchSize = 0;
+        } else if (srcTreeParseBatchSizeValue < 0) {
+            throw new YamlConvertException(
+                    "srcTreeParseBatchSize must not be negative: " + srcTreeParseBatchSizeValue);
+        } else {
+            srcTreeParseBatchSize = srcTreeParseBatchSizeValue;
+        }
+
+        Boolean srcTreePruneUnreachableValue
+        = YamlUtils.getBooleanValue(javaYamlObj, "srcTreePruneUnreachable", true);
+        if (srcTreePruneUnreachableValue != null) {
+            srcTreePruneUnreachable = srcTreePruneUnreachableValue;
+        } else {
+            srcTreePruneUnreachable = false;
+        }
+
+        Boolean srcTreeRemoveUnreachableValue
+        = YamlUtils.getBooleanValue(javaYamlObj, "srcTreeRemoveUnreachable", true);
+        if (srcTreeRemoveUnreachableValue != null) {
+            srcTreeRemoveUnreachable = srcTreeRemoveUnreachableValue;
+        } else {
+            srcTreeRemoveUnreachable = false;
+        }
+
+        String prebuiltSrcTreeDirValue = YamlUtils.getStrValue(javaYamlObj, "prebuiltSrcTreeDir", true);
+        if (prebuiltSrcTreeDirValue != null) {
+            prebuiltSrcTreeDir = new File(prebuiltSrcTreeDirValue);
+        } else {
+            prebuiltSrcTreeDir = PREBUILT_SRC_TREE_DIR_DEFAULT;
+        }
+
+        testSelection = YamlUtils.getStrValue(javaYamlObj, "testSelection", true);
+        srcTreeIncludes = YamlUtils.getStrListValue(javaYamlObj, "srcTreeIncludes", true);
+        srcTreeExcludes = YamlUtils.getStrListValue(javaYamlObj, "srcTreeExcludes", true);
+
+        Boolean srcTreeBinaryValue = YamlUtils.getBooleanValue(javaYamlObj, "srcTreeBinary", true);
+        if (srcTreeBinaryValue != null) {
+            srcTreeBinary = srcTreeBinaryValue;
+        } else {
+            srcTreeBinary = false;
+        }
     }
 }
@@ -10,8 +10,11 @@ import org.sahagin.share.srctree.TestMethod;
 import org.sahagin.share.yaml.YamlUtils;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlConvertible;
+import org.sahagin.share.yaml.YamlEventReader;
+import org.sahagin.share.yaml.YamlEventWriter;
+import org.sahagin.share.yaml.YamlStreamConvertible;
 
-public class RootMethodRunResult implements YamlConvertible {
+public class RootMethodRunResult implements YamlConvertible, YamlStreamConvertible {
     private static final String MSG_SRC_TREE_FORMAT_MISMATCH
     = "expected formatVersion is \"%s\", but actual is \"%s\"";
 
@@ -76,9 +79,7 @@ public class RootMethodRunResult implements YamlConvertible {
         return result;
     }
 
-    @Override
-    public void fromYamlObject(Map<String, Object> yamlObject)
-            throws YamlConvertException {
+    private void formatVersionCheck(Map<String, Object> yamlObject) throws YamlConvertException {
         String formatVersion = YamlUtils.getStrValue(yamlObject, "formatVersion");
         // "*" means arbitrary version (this is only for testing sahagin itself)
         if (!formatVersion.equals("*")
@@ -86,6 +87,12 @@ public class RootMethodRunResult implements YamlConvertible {
             throw new YamlConvertException(String.format
                     (MSG_SRC_TREE_FORMAT_MISMATCH, CommonUtils.formatVersion(), formatVersion));
         }
+    }
+
+    @Override
+    public void fromYamlObject(Map<String, Object> yamlObject)
+            throws YamlConvertException {
+        formatVersionCheck(yamlObject);
         rootMethodKey = YamlUtils.getStrValue(yamlObject, "rootMethodKey");
         List<Map<String, Object>> runFailuresYamlObj
         = YamlUtils.getYamlObjectListValue(yamlObject, "runFailures", true);
@@ -106,4 +113,71 @@ public class RootMethodRunResult implements YamlConvertible {
         // TODO should accept empty executionTime
         executionTime = YamlUtils.getIntValue(yamlObject, "executionTime");
     }
+
+    // writes the same YAML as toYamlObject without building the whole YAML object tree
+    @Override
+    public void toYamlStream(YamlEventWriter writer) {
+        writer.startMapping();
+        writer.writeKey("formatVersion");
+        writer.writeValue(CommonUtils.formatVersion());
+        writer.writeKey("rootMethodKey");
+        writer.writeValue(rootMethodKey);
+        if (!runFailures.isEmpty()) {
+            writer.writeKey("runFailures");
+            writer.startSequence();
+            for (RunFailure runFailure : runFailures) {
+                writer.writeValue(YamlUtils.toYamlObject(runFailure));
+            }
+            writer.endSequence();
+        }
+        if (!lineScreenCaptures.isEmpty()) {
+            writer.writeKey("lineScreenCaptures");
+            writer.startSequence();
+            for (LineScreenCapture lineScreenCapture : lineScreenCaptures) {
+                writer.writeValue(YamlUtils.toYamlObject(lineScreenCapture));
+            }
+            writer.endSequence();
+        }
+        writer.writeKey("executionTime");
+        writer.writeValue(executionTime);
+        writer.endMapping();
+    }
+
+    // reads the YAML for fromYamlObject without building the whole YAML object tree
+    @Override
+    public void fromYamlStream(YamlEventReader reader) throws YamlConvertException {
+        runFailures = new ArrayList<>(16);
+        lineScreenCaptures = new ArrayList<>(32);
+        // values other than the lists, such as formatVersion
+        Map<String, Object> otherValues = new HashMap<>(4);
+        reader.startMapping();
+        String key;
+        while ((key = reader.nextKey()) != null) {
+            if (key.equals("runFailures")) {
+                if (!reader.skipNull()) {
+                    reader.startSequence();
+                    while (reader.nextItem()) {
+                        RunFailure runFailure = new RunFailure();
+                        runFailure.fromYamlObject(reader.readYamlObject());
+                        runFailures.add(runFailure);
+                    }
+                }
+            } else if (key.equals("lineScreenCaptures")) {
+                if (!reader.skipNull()) {
+                    reader.startSequence();
+                    while (reader.nextItem()) {
+                        LineScreenCapture lineScreenCapture = new LineScreenCapture();
+                        lineScreenCapture.fromYamlObject(reader.readYamlObject());
+                        lineScreenCaptures.add(lineScreenCapture);
+                    }
+                }
+            } else {
+                otherValues.put(key, reader.readValue());
+            }
+        }
+        formatVersionCheck(otherValues);
+        rootMethodKey = YamlUtils.getStrValue(otherValues, "rootMethodKey");
+        // TODO should accept empty executionTime
+        executionTime = YamlUtils.getIntValue(otherValues, "executionTime");
+    }
 }
@@ -2,8 +2,10 @@ package org.sahagin.share.runresults;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.srctree.SrcTree;
@@ -14,6 +16,10 @@ import org.sahagin.share.yaml.YamlConvertible;
 
 public class RunResults implements YamlConvertible {
     private List<RootMethodRunResult> rootMethodRunResults = new ArrayList<>(512);
+    // index for getRunResultByRootMethodKey.
+    // This is rebuilt when the list size is changed or key reference is resolved
+    private Map<String, RootMethodRunResult> rootMethodKeyIndex = null;
+    private int rootMethodKeyIndexListSize = -1;
 
     public List<RootMethodRunResult> getRootMethodRunResults() {
         return rootMethodRunResults;
@@ -23,11 +29,36 @@ public class RunResults implements YamlConvertible {
         this.rootMethodRunResults.add(rootMethodRunResult);
     }
 
+    private Map<String, RootMethodRunResult> rootMethodKeyIndex() {
+        Map<String, RootMethodRunResult> index = rootMethodKeyIndex;
+        if (index != null && rootMethodKeyIndexListSize == rootMethodRunResults.size()) {
+            return index;
+        }
+        index = new HashMap<>(rootMethodRunResults.size() * 2);
+        for (RootMethodRunResult rootMethodRunResult : rootMethodRunResults) {
+            // the first result wins as the linear search does
+            if (rootMethodRunResult.getRootMethod() != null
+                    && !index.containsKey(rootMethodRunResult.getRootMethod().getKey())) {
+                index.put(rootMethodRunResult.getRootMethod().getKey(), rootMethodRunResult);
+            }
+        }
+        rootMethodKeyIndex = index;
+        rootMethodKeyIndexListSize = rootMethodRunResults.size();
+        return index;
+    }
+
     // returns null if not found
     public RootMethodRunResult getRunResultByRootMethodKey(String key) {
         if (key == null) {
             throw new NullPointerException();
         }
+        RootMethodRunResult result = rootMethodKeyIndex().get(key);
+        if (result == null || (result.getRootMethod() != null
+                && key.equals(result.getRootMethod().getKey()))) {
+            return result;
+        }
+        // the index is stale since the root method has been changed directly
+        rootMethodKeyIndex = null;
         for (RootMethodRunResult rootMethodRunResult : rootMethodRunResults) {
             if ((rootMethodRunResult.getRootMethod() != null)
                     && key.equals(rootMethodRunResult.getRootMethod().getKey())) {
@@ -65,6 +96,7 @@ public class RunResults implements YamlConvertible {
             rootMethodRunResult.fromYamlObject(rootMethodRunResultYamlObj);
             rootMethodRunResults.add(rootMethodRunResult);
         }
+        rootMethodKeyIndex = null;
     }
 
     private void resolveTestMethod(SrcTree srcTree, StackLine stackLine)
@@ -90,14 +122,21 @@ public class RunResults implements YamlConvertible {
                 }
             }
         }
+        rootMethodKeyIndex = null;
     }
 
     // if the keys for this run results or the specified runResults have already been resolved,
     // you should call resolveKeyReference again for this run results after calling this method.
     // (since merging can break correct reference)
     public void merge(RunResults runResults) {
+        // use key set so that merging many run results does not take quadratic time
+        Set<String> rootMethodKeys = new HashSet<>(
+                (rootMethodRunResults.size() + runResults.rootMethodRunResults.size()) * 2);
+        for (RootMethodRunResult rootMethodRunResult : rootMethodRunResults) {
+            rootMethodKeys.add(rootMethodRunResult.getRootMethodKey());
+        }
         for (RootMethodRunResult srcResult : runResults.rootMethodRunResults) {
-            if (getRunResultByRootMethodKey(srcResult.getRootMethodKey()) != null) {
+            if (!rootMethodKeys.add(srcResult.getRootMethodKey())) {
                 throw new RuntimeException(String.format(
                         "not supported: root method %s is called multi times", srcResult.getRootMethodKey()));
             }
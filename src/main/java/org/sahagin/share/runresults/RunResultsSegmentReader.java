@@ -0,0 +1,201 @@
+package org.sahagin.share.runresults;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.Charsets;
+import org.sahagin.share.CommonUtils;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.yaml.YamlBinaryReader;
+import org.sahagin.share.yaml.YamlConvertException;
+
+// reads the segment file written by RunResultsSegmentWriter.
+// The file is memory-mapped and each record is decoded when it is got.
+// If the index has not been written, the index is built by scanning the records
+public class RunResultsSegmentReader {
+    private static final String MSG_NOT_SEGMENT = "not run results segment file: %s";
+    private static final String MSG_LAYOUT_VERSION_MISMATCH
+    = "expected segment layout version is %d, but actual is %d";
+    private static final String MSG_FORMAT_MISMATCH
+    = "expected formatVersion is \"%s\", but actual is \"%s\"";
+    private final ByteBuffer buffer;
+    private final InlineStringReader recordReader = new InlineStringReader();
+    // root method key to record offset
+    private final Map<String, Integer> index;
+
+    private static class InlineStringReader extends YamlBinaryReader {
+
+        @Override
+        protected String readString(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, Charsets.UTF_8);
+        }
+    }
+
+    public RunResultsSegmentReader(File segmentFile) throws IllegalDataStructureException {
+        this(segmentFile.toPath());
+    }
+
+    // segmentFile may be in the zip archive. Such file is read on memory instead of being mapped
+    public RunResultsSegmentReader(Path segmentFile) throws IllegalDataStructureException {
+        buffer = CommonUtils.readOnlyBuffer(segmentFile);
+        if (buffer.remaining() < 12 || buffer.getInt() != RunResultsSegmentWriter.MAGIC) {
+            throw new IllegalDataStructureException(
+                    String.format(MSG_NOT_SEGMENT, segmentFile.toAbsolutePath()));
+        }
+        int layoutVersion = buffer.getInt();
+        if (layoutVersion != RunResultsSegmentWriter.LAYOUT_VERSION) {
+            throw new IllegalDataStructureException(String.format(MSG_LAYOUT_VERSION_MISMATCH,
+                    RunResultsSegmentWriter.LAYOUT_VERSION, layoutVersion));
+        }
+        String formatVersion = recordReader.readString(buffer);
+        if (!formatVersion.equals(CommonUtils.formatVersion())) {
+            throw new IllegalDataStructureException(String.format(
+                    MSG_FORMAT_MISMATCH, CommonUtils.formatVersion(), formatVersion));
+        }
+
+        int recordStart = buffer.position();
+        long indexOffset = -1;
+        int limit = buffer.limit();
+        if (limit - recordStart >= 16
+                && buffer.getInt(limit - 4) == RunResultsSegmentWriter.END_MAGIC) {
+            indexOffset = buffer.getLong(limit - 12);
+        }
+        if (indexOffset >= recordStart && indexOffset <= limit - 16) {
+            index = readIndex((int) indexOffset);
+        } else {
+            index = scanRecords(recordStart);
+        }
+    }
+
+    private Map<String, Integer> readIndex(int indexOffset) {
+        ByteBuffer indexBuffer = buffer.duplicate();
+        indexBuffer.position(indexOffset);
+        int count = indexBuffer.getInt();
+        Map<String, Integer> result = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String rootMethodKey = recordReader.readString(indexBuffer);
+            result.put(rootMethodKey, (int) indexBuffer.getLong());
+        }
+        return result;
+    }
+
+    // the last record which has not been written completely is ignored
+    private Map<String, Integer> scanRecords(int recordStart)
+            throws IllegalDataStructureException {
+        Map<String, Integer> result = new LinkedHashMap<>(512);
+        int offset = recordStart;
+        int headerSize = RunResultsSegmentWriter.RECORD_HEADER_SIZE;
+        while (offset + headerSize <= buffer.limit()) {
+            int length = buffer.getInt(offset);
+            if (length < 0 || offset + headerSize + length > buffer.limit()) {
+                break;
+            }
+            RootMethodRunResult rootMethodRunResult = readRecord(offset);
+            result.put(rootMethodRunResult.getRootMethodKey(), offset);
+            offset += headerSize + length;
+        }
+        return result;
+    }
+
+    private RootMethodRunResult readRecord(int offset) throws IllegalDataStructureException {
+        ByteBuffer recordBuffer = buffer.duplicate();
+        recordBuffer.position(offset + RunResultsSegmentWriter.RECORD_HEADER_SIZE);
+        RootMethodRunResult result = new RootMethodRunResult();
+        try {
+            result.fromYamlObject(recordReader.readYamlObject(recordBuffer));
+        } catch (YamlConvertException e) {
+            throw new IllegalDataStructureException(e);
+        }
+        return result;
+    }
+
+    public Set<String> getRootMethodKeys() {
+        return index.keySet();
+    }
+
+    // returns null if not found.
+    // This method does not resolve key reference
+    public RootMethodRunResult get(String rootMethodKey) throws IllegalDataStructureException {
+        Integer offset = index.get(rootMethodKey);
+        if (offset == null) {
+            return null;
+        }
+        return readRecord(offset);
+    }
+
+    // this method does not resolve key reference
+    public List<RootMethodRunResult> getAll() throws IllegalDataStructureException {
+        List<RootMethodRunResult> result = new ArrayList<>(index.size());
+        for (int offset : index.values()) {
+            result.add(readRecord(offset));
+        }
+        return result;
+    }
+
+    // compares the appended time, then the append sequence number of the records.
+    // The sequence number is meaningful only for the records appended by the same JVM
+    private int compareAppendedOrder(int offset, RunResultsSegmentReader other, int otherOffset) {
+        int timeCompare = Long.compare(
+                buffer.getLong(offset + 4), other.buffer.getLong(otherOffset + 4));
+        if (timeCompare != 0) {
+            return timeCompare;
+        }
+        return Long.compare(buffer.getLong(offset + 12), other.buffer.getLong(otherOffset + 12));
+    }
+
+    // the reader and offset of the latest record of the root method
+    private static class LatestRecord {
+        private RunResultsSegmentReader reader;
+        private int offset;
+    }
+
+    // reads all records of segmentFiles.
+    // If the same root method is found in multiple records, the latest appended record wins
+    // as the run result file overwritten by each run does.
+    // The records are ordered by their appended time and sequence number
+    // since the segments are written in parallel by multiple threads and JVMs,
+    // and the segment files are only used to order the records appended at the same time.
+    // This method does not resolve key reference
+    public static List<RootMethodRunResult> readAll(List<Path> segmentFiles)
+            throws IllegalDataStructureException {
+        List<Path> sortedFiles = new ArrayList<>(segmentFiles);
+        Collections.sort(sortedFiles, new Comparator<Path>() {
+
+            @Override
+            public int compare(Path left, Path right) {
+                return left.getFileName().toString().compareTo(right.getFileName().toString());
+            }
+        });
+        Map<String, LatestRecord> latestRecords = new LinkedHashMap<>(512);
+        for (Path segmentFile : sortedFiles) {
+            RunResultsSegmentReader reader = new RunResultsSegmentReader(segmentFile);
+            for (Map.Entry<String, Integer> entry : reader.index.entrySet()) {
+                LatestRecord latest = latestRecords.get(entry.getKey());
+                if (latest == null) {
+                    latest = new LatestRecord();
+                    latestRecords.put(entry.getKey(), latest);
+                } else if (reader.compareAppendedOrder(
+                        entry.getValue(), latest.reader, latest.offset) < 0) {
+                    continue;
+                }
+                latest.reader = reader;
+                latest.offset = entry.getValue();
+            }
+        }
+        List<RootMethodRunResult> results = new ArrayList<>(latestRecords.size());
+        for (LatestRecord latest : latestRecords.values()) {
+            results.add(latest.reader.readRecord(latest.offset));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,146 @@
+package org.sahagin.share.runresults;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.Charsets;
+import org.sahagin.share.CommonUtils;
+import org.sahagin.share.Logging;
+import org.sahagin.share.yaml.YamlBinaryWriter;
+
+// appends RootMethodRunResult records to the single segment file
+// instead of writing one YAML file for each root method.
+// layout:
+// - header: magic, layout version, formatVersion string
+// - records: length, appended time, append sequence number in this JVM,
+//   and the YAML object of RootMethodRunResult in the binary format
+// - index (written on close): count, and root method key and record offset for each record
+// - trailer (written on close): index offset, end magic
+// Each record is flushed when it is appended,
+// so the records can be read even if the index is not written because of JVM crash.
+// The appended time and the sequence number decide which record is the latest
+// when the same root method is found in multiple segments.
+// append and close may be called from the different threads
+public class RunResultsSegmentWriter implements Closeable {
+    private static Logger logger = Logging.getLogger(RunResultsSegmentWriter.class.getName());
+    static final int MAGIC = 0x53475252; // "SGRR"
+    static final int END_MAGIC = 0x53475245; // "SGRE"
+    static final int LAYOUT_VERSION = 2;
+    // the byte size of the length, appended time and sequence number of each record
+    static final int RECORD_HEADER_SIZE = 20;
+    // the number of the segment files created by this JVM
+    private static final AtomicInteger segmentFileCount = new AtomicInteger(0);
+    // the number of the records appended by this JVM.
+    // Shared by all segments so that the records appended in the same millisecond are ordered
+    private static final AtomicLong appendSequence = new AtomicLong(0);
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(4096);
+    private final InlineStringWriter recordWriter = new InlineStringWriter();
+    // root method key to record offset. The last record wins if the same key is appended
+    private final Map<String, Long> index = new LinkedHashMap<>(512);
+    private long position = 0;
+    private boolean closed = false;
+
+    // strings are written in each record since records are written one by one
+    private static class InlineStringWriter extends YamlBinaryWriter {
+
+        @Override
+        protected void writeString(DataOutput out, String str) throws IOException {
+            byte[] bytes = str.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    // Creates the new segment file in segmentDir.
+    // The file name starts with the creation time, the process id and the sequence number
+    // in this process, so the segment files sorted by name are in the order they are created
+    // even if multiple JVMs and threads write to the same directory
+    public static File newSegmentFile(File segmentDir) {
+        segmentDir.mkdirs();
+        // the name of the runtime is "{pid}@{host}" on most JVMs
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        String prefix = String.format("%013d-%s-%06d-", System.currentTimeMillis(),
+                pid.replaceAll("[^0-9A-Za-z]", "_"), segmentFileCount.incrementAndGet());
+        try {
+            return File.createTempFile(prefix, ".segment", segmentDir);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public RunResultsSegmentWriter(File segmentFile) {
+        if (segmentFile.getParentFile() != null) {
+            segmentFile.getParentFile().mkdirs();
+        }
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(LAYOUT_VERSION);
+            byte[] formatVersion = CommonUtils.formatVersion().getBytes(Charsets.UTF_8);
+            out.writeInt(formatVersion.length);
+            out.write(formatVersion);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("exception for " + segmentFile.getAbsolutePath(), e);
+        }
+        position = out.size();
+    }
+
+    // the record appended after close is ignored
+    public synchronized void append(RootMethodRunResult rootMethodRunResult) {
+        if (closed) {
+            logger.warning("ignore the run result appended after close: "
+                    + rootMethodRunResult.getRootMethodKey());
+            return;
+        }
+        recordBytes.reset();
+        try {
+            DataOutputStream recordOut = new DataOutputStream(recordBytes);
+            recordWriter.writeValue(recordOut, rootMethodRunResult.toYamlObject());
+            recordOut.flush();
+            index.put(rootMethodRunResult.getRootMethodKey(), position);
+            out.writeInt(recordBytes.size());
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(appendSequence.incrementAndGet());
+            recordBytes.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        position += RECORD_HEADER_SIZE + recordBytes.size();
+    }
+
+    // writes the index and closes the file
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long indexOffset = position;
+        try {
+            out.writeInt(index.size());
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                recordWriter.writeString(out, entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(END_MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+}
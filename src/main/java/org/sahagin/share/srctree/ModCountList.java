@@ -0,0 +1,20 @@
+package org.sahagin.share.srctree;
+
+import java.util.ArrayList;
+
+// ArrayList which exposes its modification count,
+// so that the table can check if its index is still valid
+// even if the list is modified directly through the table getter
+class ModCountList<E> extends ArrayList<E> {
+    private static final long serialVersionUID = 1L;
+
+    public ModCountList(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    // changes when any element is added or removed.
+    // (does not change when an element is replaced by set method)
+    public int getModCount() {
+        return modCount;
+    }
+}
@@ -1,7 +1,16 @@
 package org.sahagin.share.srctree;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.sahagin.share.CommonUtils;
 import org.sahagin.share.IllegalDataStructureException;
@@ -15,8 +24,14 @@ import org.sahagin.share.srctree.code.VarAssign;
 import org.sahagin.share.yaml.YamlUtils;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlConvertible;
-
-public class SrcTree implements YamlConvertible {
+import org.sahagin.share.yaml.YamlEventReader;
+import org.sahagin.share.yaml.YamlEventWriter;
+import org.sahagin.share.yaml.YamlStreamConvertible;
+
+public class SrcTree implements YamlConvertible, YamlStreamConvertible {
+    // if the thread count is not specified,
+    // the parallel resolution is used only if each thread has at least this number of methods
+    private static final int PARALLEL_RESOLVE_MIN_METHODS = 256;
     private static final String MSG_CLASS_NOT_FOUND = "class not found; key: %s";
     private static final String MSG_METHOD_NOT_FOUND = "method not found; key: %s";
     private static final String MSG_FIELD_NOT_FOUND = "field not found; key: %s";
@@ -114,9 +129,7 @@ public class SrcTree implements YamlConvertible {
         return result;
     }
 
-    @Override
-    public void fromYamlObject(Map<String, Object> yamlObject)
-            throws YamlConvertException {
+    private void formatVersionCheck(Map<String, Object> yamlObject) throws YamlConvertException {
         String formatVersion = YamlUtils.getStrValue(yamlObject, "formatVersion");
         // "*" means arbitrary version (this is only for testing sahagin itself)
         if (!formatVersion.equals("*")
@@ -124,7 +137,12 @@ public class SrcTree implements YamlConvertible {
             throw new YamlConvertException(String.format
                     (MSG_SRC_TREE_FORMAT_MISMATCH, CommonUtils.formatVersion(), formatVersion));
         }
+    }
 
+    @Override
+    public void fromYamlObject(Map<String, Object> yamlObject)
+            throws YamlConvertException {
+        formatVersionCheck(yamlObject);
         fieldTable = new TestFieldTable();
         Map<String, Object> fieldTableYamlObj
         = YamlUtils.getYamlObjectValue(yamlObject, "fieldTable", true);
@@ -161,6 +179,70 @@ public class SrcTree implements YamlConvertible {
         }
     }
 
+    private void writeTable(YamlEventWriter writer, String key, YamlStreamConvertible table) {
+        writer.writeKey(key);
+        table.toYamlStream(writer);
+    }
+
+    // writes the same YAML as toYamlObject without building the whole YAML object tree
+    @Override
+    public void toYamlStream(YamlEventWriter writer) {
+        writer.startMapping();
+        writer.writeKey("formatVersion");
+        writer.writeValue(CommonUtils.formatVersion());
+        if (!fieldTable.isEmpty()) {
+            writeTable(writer, "fieldTable", fieldTable);
+        }
+        if (!rootMethodTable.isEmpty()) {
+            writeTable(writer, "rootMethodTable", rootMethodTable);
+        }
+        if (!subMethodTable.isEmpty()) {
+            writeTable(writer, "subMethodTable", subMethodTable);
+        }
+        if (!rootClassTable.isEmpty()) {
+            writeTable(writer, "rootClassTable", rootClassTable);
+        }
+        if (!subClassTable.isEmpty()) {
+            writeTable(writer, "subClassTable", subClassTable);
+        }
+        writer.endMapping();
+    }
+
+    // reads the YAML for fromYamlObject without building the whole YAML object tree
+    @Override
+    public void fromYamlStream(YamlEventReader reader) throws YamlConvertException {
+        fieldTable = new TestFieldTable();
+        rootMethodTable = new TestMethodTable();
+        subMethodTable = new TestMethodTable();
+        rootClassTable = new TestClassTable();
+        subClassTable = new TestClassTable();
+        // values other than the tables, such as formatVersion
+        Map<String, Object> otherValues = new HashMap<>(2);
+        reader.startMapping();
+        String key;
+        while ((key = reader.nextKey()) != null) {
+            YamlStreamConvertible table;
+            if (key.equals("fieldTable")) {
+                table = fieldTable;
+            } else if (key.equals("rootMethodTable")) {
+                table = rootMethodTable;
+            } else if (key.equals("subMethodTable")) {
+                table = subMethodTable;
+            } else if (key.equals("rootClassTable")) {
+                table = rootClassTable;
+            } else if (key.equals("subClassTable")) {
+                table = subClassTable;
+            } else {
+                otherValues.put(key, reader.readValue());
+                continue;
+            }
+            if (!reader.skipNull()) {
+                table.fromYamlStream(reader);
+            }
+        }
+        formatVersionCheck(otherValues);
+    }
+
     public TestClass getTestClassByKey(String testClassKey, boolean allowsNotFound)
             throws IllegalDataStructureException {
         TestClass subClass = subClassTable.getByKey(testClassKey);
@@ -284,9 +366,15 @@ public class SrcTree implements YamlConvertible {
         }
     }
 
-    // resolve all methodKey and classKey references.
-    // assume all keys have been set
-    public void resolveKeyReference() throws IllegalDataStructureException {
+    // resolve the references in the code body without triggering its lazy resolution
+    void resolveKeyReferenceInCodeBody(TestMethod testMethod)
+            throws IllegalDataStructureException {
+        for (CodeLine codeLine : testMethod.codeBodyForResolution()) {
+            resolveKeyReferenceInCode(codeLine.getCode());
+        }
+    }
+
+    private void resolveTestClassReference() throws IllegalDataStructureException {
         for (TestClass testClass : rootClassTable.getTestClasses()) {
             resolveTestMethod(testClass);
             resolveTestField(testClass);
@@ -297,21 +385,105 @@ public class SrcTree implements YamlConvertible {
             resolveTestField(testClass);
             resolveDelegateToTestClass(testClass);
         }
-        for (TestMethod testMethod : rootMethodTable.getTestMethods()) {
+    }
+
+    private List<TestMethod> allTestMethods() {
+        List<TestMethod> result = new ArrayList<>(
+                rootMethodTable.getTestMethods().size() + subMethodTable.getTestMethods().size());
+        result.addAll(rootMethodTable.getTestMethods());
+        result.addAll(subMethodTable.getTestMethods());
+        return result;
+    }
+
+    private void resolveTestMethodReference(List<TestMethod> testMethods)
+            throws IllegalDataStructureException {
+        for (TestMethod testMethod : testMethods) {
             resolveTestClass(testMethod);
-            for (CodeLine codeLine : testMethod.getCodeBody()) {
-                resolveKeyReferenceInCode(codeLine.getCode());
-            }
+            testMethod.setPendingKeyReferenceResolver(null);
+            resolveKeyReferenceInCodeBody(testMethod);
         }
-        for (TestMethod testMethod : subMethodTable.getTestMethods()) {
-            resolveTestClass(testMethod);
-            for (CodeLine codeLine : testMethod.getCodeBody()) {
-                resolveKeyReferenceInCode(codeLine.getCode());
+    }
+
+    // resolve all methodKey and classKey references.
+    // assume all keys have been set
+    public void resolveKeyReference() throws IllegalDataStructureException {
+        resolveKeyReference(1);
+    }
+
+    // threadCount.. the number of the threads which resolve the references in the methods.
+    // 0 means the number of available processors for the large srcTree, and 1 for the small one.
+    // The result is the same as resolveKeyReference() regardless of threadCount
+    public void resolveKeyReference(int threadCount) throws IllegalDataStructureException {
+        if (threadCount < 0) {
+            throw new IllegalArgumentException("negative threadCount: " + threadCount);
+        }
+        // the table indexes used by the workers are built here,
+        // and tables are only read after this
+        resolveTestClassReference();
+        for (TestField testField : fieldTable.getTestFields()) {
+            resolveTestClass(testField);
+        }
+
+        List<TestMethod> testMethods = allTestMethods();
+        int actualThreadCount;
+        if (threadCount == 0) {
+            actualThreadCount = Math.min(Runtime.getRuntime().availableProcessors(),
+                    testMethods.size() / PARALLEL_RESOLVE_MIN_METHODS);
+        } else {
+            actualThreadCount = Math.min(threadCount, testMethods.size());
+        }
+        if (actualThreadCount <= 1) {
+            resolveTestMethodReference(testMethods);
+            return;
+        }
+
+        // each worker modifies only the methods and the codes of its own partition
+        List<Future<Void>> futures = new ArrayList<>(actualThreadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(actualThreadCount);
+        try {
+            for (int i = 0; i < actualThreadCount; i++) {
+                int from = testMethods.size() * i / actualThreadCount;
+                int to = testMethods.size() * (i + 1) / actualThreadCount;
+                final List<TestMethod> partition = testMethods.subList(from, to);
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws IllegalDataStructureException {
+                        resolveTestMethodReference(partition);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalDataStructureException) {
+                throw (IllegalDataStructureException) e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+    }
+
+    // resolve class, method and field references at once,
+    // but the references in the code body of each method (SubMethodInvoke, Field, ClassInstance)
+    // are resolved when the code body is accessed first.
+    // The result is the same as resolveKeyReference(),
+    // but the code body access throws RuntimeException if the key is not found
+    public void resolveKeyReferenceLazily() throws IllegalDataStructureException {
+        resolveTestClassReference();
         for (TestField testField : fieldTable.getTestFields()) {
             resolveTestClass(testField);
         }
+        for (TestMethod testMethod : allTestMethods()) {
+            resolveTestClass(testMethod);
+            testMethod.setPendingKeyReferenceResolver(this);
+        }
     }
 
     // merge src to dest
@@ -321,14 +493,17 @@ public class SrcTree implements YamlConvertible {
             if (destClass == null) {
                 destTable.addTestClass(srcClass);
             } else {
-                // some test methods or test fields may not be included in the test class
+                // some test methods or test fields may not be included in the test class.
+                // Use key set so that merging many trees does not take quadratic time
+                Set<String> destMethodKeys = new HashSet<>(destClass.getTestMethodKeys());
                 for (String srcMethodKey : srcClass.getTestMethodKeys()) {
-                    if (!destClass.getTestMethodKeys().contains(srcMethodKey)) {
+                    if (destMethodKeys.add(srcMethodKey)) {
                         destClass.addTestMethodKey(srcMethodKey);
                     }
                 }
+                Set<String> destFieldKeys = new HashSet<>(destClass.getTestFieldKeys());
                 for (String srcFieldKey : srcClass.getTestFieldKeys()) {
-                    if (!destClass.getTestFieldKeys().contains(srcFieldKey)) {
+                    if (destFieldKeys.add(srcFieldKey)) {
                         destClass.addTestFieldKey(srcFieldKey);
                     }
                 }
@@ -0,0 +1,50 @@
+package org.sahagin.share.srctree;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.sahagin.share.CommonPath;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.yaml.YamlConvertException;
+import org.sahagin.share.yaml.YamlUtils;
+
+// dumps and loads srcTree in the report intermediate data directory.
+// The format used is recorded by which of the YAML file and the binary snapshot file exists,
+// so that the loader doesn't need to know the configuration of the writer
+public class SrcTreeFiles {
+
+    public static void dump(SrcTree srcTree, File reportIntermediateDataDir, boolean binary) {
+        File yamlFile = CommonPath.srcTreeFile(reportIntermediateDataDir);
+        File snapshotFile = CommonPath.srcTreeSnapshotFile(reportIntermediateDataDir);
+        if (binary) {
+            yamlFile.delete();
+            SrcTreeSnapshot.write(srcTree, snapshotFile);
+        } else {
+            snapshotFile.delete();
+            YamlUtils.dumpStream(srcTree, yamlFile);
+        }
+    }
+
+    // this method does not resolve key reference
+    public static SrcTree load(File reportIntermediateDataDir)
+            throws IllegalDataStructureException {
+        return load(reportIntermediateDataDir.toPath());
+    }
+
+    // reportIntermediateDataDir may be the directory in the zip archive
+    public static SrcTree load(Path reportIntermediateDataDir)
+            throws IllegalDataStructureException {
+        Path snapshotFile = CommonPath.srcTreeSnapshotFile(reportIntermediateDataDir);
+        if (Files.exists(snapshotFile)) {
+            return SrcTreeSnapshot.read(snapshotFile);
+        }
+        SrcTree srcTree = new SrcTree();
+        try {
+            YamlUtils.loadStream(CommonPath.srcTreeFile(reportIntermediateDataDir), srcTree);
+        } catch (YamlConvertException e) {
+            throw new IllegalDataStructureException(e);
+        }
+        return srcTree;
+    }
+}
@@ -0,0 +1,378 @@
+package org.sahagin.share.srctree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.Charsets;
+import org.sahagin.runlib.external.CaptureStyle;
+import org.sahagin.share.CommonUtils;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.yaml.YamlBinaryReader;
+import org.sahagin.share.yaml.YamlBinaryWriter;
+import org.sahagin.share.yaml.YamlConvertException;
+import org.sahagin.share.yaml.YamlConvertible;
+import org.sahagin.share.yaml.YamlUtils;
+
+// binary snapshot of SrcTree, which is faster to load than the YAML file.
+// layout:
+// - header: magic, layout version, formatVersion string
+// - string table: count, offsets, data. All strings are deduplicated
+// - 5 tables (field, root method, sub method, root class, sub class): count, offsets, data.
+//   Each element is the YAML object of the TestField, TestMethod or TestClass
+//   whose strings are encoded as the string table index
+// - method index: count, and fixed size record for each sub method and root method
+//   (in this order) which holds key, class, name, capture style and code body size
+// The file is memory-mapped and each string is decoded when it is used first.
+// The snapshot can be read as a whole SrcTree by read method,
+// or each method can be read on demand through the instance returned by open method
+public class SrcTreeSnapshot {
+    private static final int MAGIC = 0x53475354; // "SGST"
+    private static final int LAYOUT_VERSION = 2;
+    private static final int METHOD_INDEX_RECORD_SIZE = 24;
+    private static final String MSG_NOT_SNAPSHOT = "not srcTree snapshot file: %s";
+    private static final String MSG_LAYOUT_VERSION_MISMATCH
+    = "expected snapshot layout version is %d, but actual is %d";
+    private static final String MSG_FORMAT_MISMATCH
+    = "expected formatVersion is \"%s\", but actual is \"%s\"";
+
+    // table order in the file
+    private static final int FIELD_TABLE = 0;
+    private static final int ROOT_METHOD_TABLE = 1;
+    private static final int SUB_METHOD_TABLE = 2;
+    private static final int ROOT_CLASS_TABLE = 3;
+    private static final int SUB_CLASS_TABLE = 4;
+    private static final int TABLE_COUNT = 5;
+
+    private final Decoder decoder;
+    // position of the element offsets and element data for each table
+    private final int[] tableOffsetsPositions = new int[TABLE_COUNT];
+    private final int[] tableDataPositions = new int[TABLE_COUNT];
+    private final int[] tableSizes = new int[TABLE_COUNT];
+    private final int methodIndexPosition;
+
+    private static class Encoder extends YamlBinaryWriter {
+        private final Map<String, Integer> stringIds = new LinkedHashMap<>(4096);
+        private final ByteArrayOutputStream elementBytes = new ByteArrayOutputStream(256);
+
+        private int stringId(String str) {
+            Integer id = stringIds.get(str);
+            if (id == null) {
+                id = stringIds.size();
+                stringIds.put(str, id);
+            }
+            return id;
+        }
+
+        @Override
+        protected void writeString(DataOutput out, String str) throws IOException {
+            out.writeInt(stringId(str));
+        }
+
+        private <T extends YamlConvertible> byte[][] encodeTable(List<T> elements)
+                throws IOException {
+            byte[][] result = new byte[elements.size()][];
+            for (int i = 0; i < elements.size(); i++) {
+                elementBytes.reset();
+                DataOutputStream out = new DataOutputStream(elementBytes);
+                writeValue(out, YamlUtils.toYamlObject(elements.get(i)));
+                out.flush();
+                result[i] = elementBytes.toByteArray();
+            }
+            return result;
+        }
+
+        private void encodeMethodIndex(SrcTree srcTree, List<TestMethod> methods,
+                DataOutputStream out) throws IOException {
+            for (TestMethod method : methods) {
+                TestClass testClass = method.getTestClass();
+                if (testClass == null) {
+                    try {
+                        testClass = srcTree.getTestClassByKey(method.getTestClassKey(), true);
+                    } catch (IllegalDataStructureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                String classQualifiedName;
+                if (testClass != null) {
+                    classQualifiedName = testClass.getQualifiedName();
+                } else {
+                    classQualifiedName = method.getTestClassKey();
+                }
+                out.writeInt(stringId(method.getKey()));
+                out.writeInt(stringId(method.getTestClassKey()));
+                out.writeInt(stringId(classQualifiedName));
+                out.writeInt(stringId(method.getSimpleName()));
+                out.writeInt(stringId(method.getCaptureStyle().getValue()));
+                out.writeInt(method.getCodeBody().size());
+            }
+        }
+    }
+
+    // count, offsets and data
+    private static void writeIndexedData(DataOutputStream out, List<byte[]> dataList)
+            throws IOException {
+        out.writeInt(dataList.size());
+        int offset = 0;
+        for (byte[] data : dataList) {
+            out.writeInt(offset);
+            offset += data.length;
+        }
+        out.writeInt(offset); // data length
+        for (byte[] data : dataList) {
+            out.write(data);
+        }
+    }
+
+    private static List<byte[]> asList(byte[][] array) {
+        List<byte[]> result = new ArrayList<>(array.length);
+        for (byte[] data : array) {
+            result.add(data);
+        }
+        return result;
+    }
+
+    public static void write(SrcTree srcTree, File snapshotFile) {
+        Encoder encoder = new Encoder();
+        List<byte[][]> tables = new ArrayList<>(TABLE_COUNT);
+        List<TestMethod> subMethods = srcTree.getSubMethodTable().getTestMethods();
+        List<TestMethod> rootMethods = srcTree.getRootMethodTable().getTestMethods();
+        ByteArrayOutputStream methodIndexBytes = new ByteArrayOutputStream(
+                (subMethods.size() + rootMethods.size()) * METHOD_INDEX_RECORD_SIZE);
+        try {
+            tables.add(encoder.encodeTable(srcTree.getFieldTable().getTestFields()));
+            tables.add(encoder.encodeTable(rootMethods));
+            tables.add(encoder.encodeTable(subMethods));
+            tables.add(encoder.encodeTable(srcTree.getRootClassTable().getTestClasses()));
+            tables.add(encoder.encodeTable(srcTree.getSubClassTable().getTestClasses()));
+            DataOutputStream methodIndexOut = new DataOutputStream(methodIndexBytes);
+            encoder.encodeMethodIndex(srcTree, subMethods, methodIndexOut);
+            encoder.encodeMethodIndex(srcTree, rootMethods, methodIndexOut);
+            methodIndexOut.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        List<byte[]> strings = new ArrayList<>(encoder.stringIds.size());
+        for (String str : encoder.stringIds.keySet()) {
+            strings.add(str.getBytes(Charsets.UTF_8));
+        }
+
+        if (snapshotFile.getParentFile() != null) {
+            snapshotFile.getParentFile().mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(snapshotFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(LAYOUT_VERSION);
+            byte[] formatVersion = CommonUtils.formatVersion().getBytes(Charsets.UTF_8);
+            out.writeInt(formatVersion.length);
+            out.write(formatVersion);
+            writeIndexedData(out, strings);
+            for (byte[][] table : tables) {
+                writeIndexedData(out, asList(table));
+            }
+            out.writeInt(subMethods.size() + rootMethods.size());
+            methodIndexBytes.writeTo(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Decoder extends YamlBinaryReader {
+        private final ByteBuffer buffer;
+        private final int[] stringOffsets;
+        private final int stringDataStart;
+        private final String[] strings; // decoded lazily
+
+        private Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+            int count = buffer.getInt();
+            stringOffsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                stringOffsets[i] = buffer.getInt();
+            }
+            stringOffsets[count] = buffer.getInt(); // data length
+            stringDataStart = buffer.position();
+            buffer.position(stringDataStart + stringOffsets[count]);
+            strings = new String[count];
+        }
+
+        private String string(int id) {
+            String result = strings[id];
+            if (result == null) {
+                byte[] bytes = new byte[stringOffsets[id + 1] - stringOffsets[id]];
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(stringDataStart + stringOffsets[id]);
+                slice.get(bytes);
+                result = new String(bytes, Charsets.UTF_8);
+                strings[id] = result;
+            }
+            return result;
+        }
+
+        @Override
+        protected String readString(ByteBuffer elementBuffer) {
+            return string(elementBuffer.getInt());
+        }
+    }
+
+    private SrcTreeSnapshot(Path snapshotFile) throws IllegalDataStructureException {
+        ByteBuffer buffer = CommonUtils.readOnlyBuffer(snapshotFile);
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IllegalDataStructureException(
+                    String.format(MSG_NOT_SNAPSHOT, snapshotFile.toAbsolutePath()));
+        }
+        int layoutVersion = buffer.getInt();
+        if (layoutVersion != LAYOUT_VERSION) {
+            throw new IllegalDataStructureException(String.format(
+                    MSG_LAYOUT_VERSION_MISMATCH, LAYOUT_VERSION, layoutVersion));
+        }
+        byte[] formatVersionBytes = new byte[buffer.getInt()];
+        buffer.get(formatVersionBytes);
+        String formatVersion = new String(formatVersionBytes, Charsets.UTF_8);
+        if (!formatVersion.equals(CommonUtils.formatVersion())) {
+            throw new IllegalDataStructureException(String.format(
+                    MSG_FORMAT_MISMATCH, CommonUtils.formatVersion(), formatVersion));
+        }
+
+        decoder = new Decoder(buffer);
+        // only the table positions are read here
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            tableSizes[table] = buffer.getInt();
+            tableOffsetsPositions[table] = buffer.position();
+            int dataLength = buffer.getInt(tableOffsetsPositions[table] + tableSizes[table] * 4);
+            tableDataPositions[table] = tableOffsetsPositions[table] + (tableSizes[table] + 1) * 4;
+            buffer.position(tableDataPositions[table] + dataLength);
+        }
+        buffer.getInt(); // method count
+        methodIndexPosition = buffer.position();
+    }
+
+    // returns the snapshot whose elements are read on demand
+    public static SrcTreeSnapshot open(File snapshotFile) throws IllegalDataStructureException {
+        return new SrcTreeSnapshot(snapshotFile.toPath());
+    }
+
+    // snapshotFile may be in the zip archive. Such file is read on memory instead of being mapped
+    public static SrcTreeSnapshot open(Path snapshotFile) throws IllegalDataStructureException {
+        return new SrcTreeSnapshot(snapshotFile);
+    }
+
+    private Map<String, Object> readElement(int table, int index) throws YamlConvertException {
+        ByteBuffer elementBuffer = decoder.buffer.duplicate();
+        int offset = elementBuffer.getInt(tableOffsetsPositions[table] + index * 4);
+        elementBuffer.position(tableDataPositions[table] + offset);
+        return decoder.readYamlObject(elementBuffer);
+    }
+
+    // this method does not resolve key reference
+    public static SrcTree read(File snapshotFile) throws IllegalDataStructureException {
+        return read(snapshotFile.toPath());
+    }
+
+    public static SrcTree read(Path snapshotFile) throws IllegalDataStructureException {
+        SrcTreeSnapshot snapshot = open(snapshotFile);
+        SrcTree srcTree = new SrcTree();
+        try {
+            TestFieldTable fieldTable = new TestFieldTable();
+            for (int i = 0; i < snapshot.tableSizes[FIELD_TABLE]; i++) {
+                TestField testField = new TestField();
+                testField.fromYamlObject(snapshot.readElement(FIELD_TABLE, i));
+                fieldTable.addTestField(testField);
+            }
+            srcTree.setFieldTable(fieldTable);
+            srcTree.setRootMethodTable(snapshot.readMethodTable(ROOT_METHOD_TABLE));
+            srcTree.setSubMethodTable(snapshot.readMethodTable(SUB_METHOD_TABLE));
+            srcTree.setRootClassTable(snapshot.readClassTable(ROOT_CLASS_TABLE));
+            srcTree.setSubClassTable(snapshot.readClassTable(SUB_CLASS_TABLE));
+        } catch (YamlConvertException e) {
+            throw new IllegalDataStructureException(e);
+        }
+        return srcTree;
+    }
+
+    private TestMethodTable readMethodTable(int table) throws YamlConvertException {
+        TestMethodTable result = new TestMethodTable();
+        for (int i = 0; i < tableSizes[table]; i++) {
+            TestMethod testMethod = new TestMethod();
+            testMethod.fromYamlObject(readElement(table, i));
+            result.addTestMethod(testMethod);
+        }
+        return result;
+    }
+
+    private TestClassTable readClassTable(int table) throws YamlConvertException {
+        TestClassTable result = new TestClassTable();
+        for (int i = 0; i < tableSizes[table]; i++) {
+            result.addTestClass(TestClass.newInstanceFromYamlObject(readElement(table, i)));
+        }
+        return result;
+    }
+
+    // method id is the index of the method index, that is,
+    // sub method table index, or sub method count + root method table index
+
+    public int getMethodCount() {
+        return tableSizes[SUB_METHOD_TABLE] + tableSizes[ROOT_METHOD_TABLE];
+    }
+
+    public boolean isRootMethod(int methodId) {
+        return methodId >= tableSizes[SUB_METHOD_TABLE];
+    }
+
+    private int methodIndexValue(int methodId, int field) {
+        return decoder.buffer.getInt(
+                methodIndexPosition + methodId * METHOD_INDEX_RECORD_SIZE + field * 4);
+    }
+
+    public String getMethodKey(int methodId) {
+        return decoder.string(methodIndexValue(methodId, 0));
+    }
+
+    public String getTestClassKey(int methodId) {
+        return decoder.string(methodIndexValue(methodId, 1));
+    }
+
+    public String getClassQualifiedName(int methodId) {
+        return decoder.string(methodIndexValue(methodId, 2));
+    }
+
+    public String getSimpleName(int methodId) {
+        return decoder.string(methodIndexValue(methodId, 3));
+    }
+
+    public CaptureStyle getCaptureStyle(int methodId) {
+        return CaptureStyle.getEnum(decoder.string(methodIndexValue(methodId, 4)));
+    }
+
+    public int getCodeBodySize(int methodId) {
+        return methodIndexValue(methodId, 5);
+    }
+
+    // reads the method element from the file.
+    // This method does not resolve key reference
+    public synchronized TestMethod readMethod(int methodId) throws IllegalDataStructureException {
+        TestMethod result = new TestMethod();
+        try {
+            if (isRootMethod(methodId)) {
+                result.fromYamlObject(readElement(
+                        ROOT_METHOD_TABLE, methodId - tableSizes[SUB_METHOD_TABLE]));
+            } else {
+                result.fromYamlObject(readElement(SUB_METHOD_TABLE, methodId));
+            }
+        } catch (YamlConvertException e) {
+            throw new IllegalDataStructureException(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package org.sahagin.share.srctree;
+
+import java.util.Map;
+
+// lookup index of the table list, which is valid until the list is modified.
+// The table updates the index by put and markValid methods when it adds the element by itself.
+// Like the table list itself, updating the index is not thread safe
+class TableIndex<K, V> {
+    private final ModCountList<?> list;
+    private int modCount;
+    private final Map<K, V> map;
+
+    public TableIndex(ModCountList<?> list, Map<K, V> map) {
+        this.list = list;
+        this.modCount = list.getModCount();
+        this.map = map;
+    }
+
+    public boolean isValidFor(ModCountList<?> list) {
+        return this.list == list && modCount == list.getModCount();
+    }
+
+    // returns null if not found
+    public V get(K key) {
+        return map.get(key);
+    }
+
+    public void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    // regard the index as valid for the current list
+    public void markValid() {
+        modCount = list.getModCount();
+    }
+}
@@ -11,34 +11,66 @@ import org.sahagin.share.CommonUtils;
 import org.sahagin.share.yaml.YamlUtils;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlConvertible;
+import org.sahagin.share.yaml.YamlEventReader;
+import org.sahagin.share.yaml.YamlEventWriter;
+import org.sahagin.share.yaml.YamlStreamConvertible;
 
 //class or interface
-public class TestClassTable implements YamlConvertible {
-    private List<TestClass> testClasses = new ArrayList<>(512);
+public class TestClassTable implements YamlConvertible, YamlStreamConvertible {
+    private ModCountList<TestClass> testClasses = new ModCountList<>(512);
+    // lookup index, which is rebuilt after testClasses is modified
+    private volatile TableIndex<String, TestClass> keyIndex = null;
 
     public List<TestClass> getTestClasses() {
         return testClasses;
     }
 
     public void addTestClass(TestClass testClass) {
+        TableIndex<String, TestClass> currentKeyIndex = keyIndex;
+        boolean indexValid = currentKeyIndex != null && currentKeyIndex.isValidFor(testClasses);
         testClasses.add(testClass);
+        // update the index not to rebuild it for each addition
+        if (indexValid) {
+            if (testClass.getKey() != null && currentKeyIndex.get(testClass.getKey()) == null) {
+                currentKeyIndex.put(testClass.getKey(), testClass);
+            }
+            currentKeyIndex.markValid();
+        }
     }
 
     public boolean isEmpty() {
         return testClasses.isEmpty();
     }
 
+    private TableIndex<String, TestClass> getKeyIndex() {
+        TableIndex<String, TestClass> index = keyIndex;
+        if (index != null && index.isValidFor(testClasses)) {
+            return index;
+        }
+        Map<String, TestClass> map = new HashMap<>(testClasses.size() * 2);
+        for (TestClass testClass : testClasses) {
+            // use the first one for the same key
+            if (testClass.getKey() != null && !map.containsKey(testClass.getKey())) {
+                map.put(testClass.getKey(), testClass);
+            }
+        }
+        index = new TableIndex<>(testClasses, map);
+        keyIndex = index;
+        return index;
+    }
+
     // returns null if not found
     public TestClass getByKey(String key) {
         if (key == null) {
             throw new NullPointerException();
         }
-        for (TestClass testClass : testClasses) {
-            if (key.equals(testClass.getKey())) {
-                return testClass;
-            }
+        TestClass result = getKeyIndex().get(key);
+        if (result != null && !key.equals(result.getKey())) {
+            // key has been changed after the index is built
+            keyIndex = null;
+            result = getKeyIndex().get(key);
         }
-        return null;
+        return result;
     }
 
     public void sort() {
@@ -65,10 +97,41 @@ public class TestClassTable implements YamlConvertible {
             throws YamlConvertException {
         List<Map<String, Object>> testClassesYamlObj
         = YamlUtils.getYamlObjectListValue(yamlObject, "classes", true);
-        testClasses = new ArrayList<>(testClassesYamlObj.size());
+        testClasses = new ModCountList<>(testClassesYamlObj.size());
         for (Map<String, Object> testClassYamlObj : testClassesYamlObj) {
             TestClass testClass = TestClass.newInstanceFromYamlObject(testClassYamlObj);
             testClasses.add(testClass);
         }
     }
+
+    @Override
+    public void toYamlStream(YamlEventWriter writer) {
+        writer.startMapping();
+        if (!isEmpty()) {
+            writer.writeKey("classes");
+            writer.startSequence();
+            for (TestClass testClass : testClasses) {
+                writer.writeValue(YamlUtils.toYamlObject(testClass));
+            }
+            writer.endSequence();
+        }
+        writer.endMapping();
+    }
+
+    @Override
+    public void fromYamlStream(YamlEventReader reader) throws YamlConvertException {
+        testClasses = new ModCountList<>(512);
+        reader.startMapping();
+        String key;
+        while ((key = reader.nextKey()) != null) {
+            if (!key.equals("classes")) {
+                reader.skipValue();
+            } else if (!reader.skipNull()) {
+                reader.startSequence();
+                while (reader.nextItem()) {
+                    testClasses.add(TestClass.newInstanceFromYamlObject(reader.readYamlObject()));
+                }
+            }
+        }
+    }
 }
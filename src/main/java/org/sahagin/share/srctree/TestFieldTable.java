@@ -10,34 +10,66 @@ import java.util.Map;
 import org.sahagin.share.CommonUtils;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlConvertible;
+import org.sahagin.share.yaml.YamlEventReader;
+import org.sahagin.share.yaml.YamlEventWriter;
+import org.sahagin.share.yaml.YamlStreamConvertible;
 import org.sahagin.share.yaml.YamlUtils;
 
-public class TestFieldTable implements YamlConvertible {
-    private List<TestField> testFields = new ArrayList<>(512);
+public class TestFieldTable implements YamlConvertible, YamlStreamConvertible {
+    private ModCountList<TestField> testFields = new ModCountList<>(512);
+    // lookup index, which is rebuilt after testFields is modified
+    private volatile TableIndex<String, TestField> keyIndex = null;
 
     public List<TestField> getTestFields() {
         return testFields;
     }
 
     public void addTestField(TestField testField) {
+        TableIndex<String, TestField> currentKeyIndex = keyIndex;
+        boolean indexValid = currentKeyIndex != null && currentKeyIndex.isValidFor(testFields);
         testFields.add(testField);
+        // update the index not to rebuild it for each addition
+        if (indexValid) {
+            if (testField.getKey() != null && currentKeyIndex.get(testField.getKey()) == null) {
+                currentKeyIndex.put(testField.getKey(), testField);
+            }
+            currentKeyIndex.markValid();
+        }
     }
 
     public boolean isEmpty() {
         return testFields.isEmpty();
     }
 
+    private TableIndex<String, TestField> getKeyIndex() {
+        TableIndex<String, TestField> index = keyIndex;
+        if (index != null && index.isValidFor(testFields)) {
+            return index;
+        }
+        Map<String, TestField> map = new HashMap<>(testFields.size() * 2);
+        for (TestField testField : testFields) {
+            // use the first one for the same key
+            if (testField.getKey() != null && !map.containsKey(testField.getKey())) {
+                map.put(testField.getKey(), testField);
+            }
+        }
+        index = new TableIndex<>(testFields, map);
+        keyIndex = index;
+        return index;
+    }
+
     // returns null if not found
     public TestField getByKey(String key) {
         if (key == null) {
             throw new NullPointerException();
         }
-        for (TestField testField : testFields) {
-            if (key.equals(testField.getKey())) {
-                return testField;
-            }
+        TestField result = getKeyIndex().get(key);
+        if (result != null && !key.equals(result.getKey())) {
+            // key has been changed after the index is built
+            keyIndex = null;
+            result = getKeyIndex().get(key);
         }
-        return null;
+        return result;
     }
 
     public void sort() {
@@ -71,11 +103,44 @@ public class TestFieldTable implements YamlConvertible {
             throws YamlConvertException {
         List<Map<String, Object>> testFieldsYamlObj
         = YamlUtils.getYamlObjectListValue(yamlObject, "fields", true);
-        testFields = new ArrayList<>(testFieldsYamlObj.size());
+        testFields = new ModCountList<>(testFieldsYamlObj.size());
         for (Map<String, Object> testFieldYamlObj : testFieldsYamlObj) {
             TestField testField = new TestField();
             testField.fromYamlObject(testFieldYamlObj);
             testFields.add(testField);
         }
     }
+
+    @Override
+    public void toYamlStream(YamlEventWriter writer) {
+        writer.startMapping();
+        if (!isEmpty()) {
+            writer.writeKey("fields");
+            writer.startSequence();
+            for (TestField testField : testFields) {
+                writer.writeValue(YamlUtils.toYamlObject(testField));
+            }
+            writer.endSequence();
+        }
+        writer.endMapping();
+    }
+
+    @Override
+    public void fromYamlStream(YamlEventReader reader) throws YamlConvertException {
+        testFields = new ModCountList<>(512);
+        reader.startMapping();
+        String key;
+        while ((key = reader.nextKey()) != null) {
+            if (!key.equals("fields")) {
+                reader.skipValue();
+            } else if (!reader.skipNull()) {
+                reader.startSequence();
+                while (reader.nextItem()) {
+                    TestField testField = new TestField();
+                    testField.fromYamlObject(reader.readYamlObject());
+                    testFields.add(testField);
+                }
+            }
+        }
+    }
 }
@@ -7,6 +7,7 @@ import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.sahagin.runlib.external.CaptureStyle;
+import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.srctree.code.CodeLine;
 import org.sahagin.share.yaml.YamlUtils;
 import org.sahagin.share.yaml.YamlConvertException;
@@ -22,6 +23,9 @@ public class TestMethod extends ASTData implements YamlConvertible {
     private List<String> argVariables = new ArrayList<>(4);
     private int variableLengthArgIndex = -1;
     private List<CodeLine> codeBody = new ArrayList<>(32);
+    // the key references in codeBody are resolved by this srcTree when codeBody is accessed first.
+    // null if there is no pending resolution
+    private volatile SrcTree pendingKeyReferenceResolver = null;
 
     public String getTestClassKey() {
         return testClassKey;
@@ -177,9 +181,35 @@ public class TestMethod extends ASTData implements YamlConvertible {
     }
 
     public List<CodeLine> getCodeBody() {
+        if (pendingKeyReferenceResolver != null) {
+            resolvePendingKeyReference();
+        }
+        return codeBody;
+    }
+
+    // used by the key reference resolution itself
+    List<CodeLine> codeBodyForResolution() {
         return codeBody;
     }
 
+    // srcTree.. null means the pending resolution is cancelled
+    void setPendingKeyReferenceResolver(SrcTree srcTree) {
+        pendingKeyReferenceResolver = srcTree;
+    }
+
+    private synchronized void resolvePendingKeyReference() {
+        SrcTree srcTree = pendingKeyReferenceResolver;
+        if (srcTree == null) {
+            return; // already resolved by the other thread
+        }
+        try {
+            srcTree.resolveKeyReferenceInCodeBody(this);
+        } catch (IllegalDataStructureException e) {
+            throw new RuntimeException(e);
+        }
+        pendingKeyReferenceResolver = null;
+    }
+
     public void addCodeBody(CodeLine codeLine) {
         codeBody.add(codeLine);
     }
@@ -188,6 +218,10 @@ public class TestMethod extends ASTData implements YamlConvertible {
         codeBody.addAll(codeLines);
     }
 
+    public void clearCodeBody() {
+        codeBody.clear();
+    }
+
     @Override
     public Map<String, Object> toYamlObject() {
         Map<String, Object> result = new HashMap<>(8);
@@ -235,6 +269,7 @@ public class TestMethod extends ASTData implements YamlConvertible {
         List<Map<String, Object>> codeBodyYamlObj
         = YamlUtils.getYamlObjectListValue(yamlObject, "codeBody", true);
         codeBody = new ArrayList<>(codeBodyYamlObj.size());
+        pendingKeyReferenceResolver = null;
         for (Map<String, Object> codeLineYamlObj : codeBodyYamlObj) {
             CodeLine codeLine = new CodeLine();
             codeLine.fromYamlObject(codeLineYamlObj);
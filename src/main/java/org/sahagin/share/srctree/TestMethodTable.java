@@ -7,38 +7,111 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.sahagin.share.CommonUtils;
 import org.sahagin.share.yaml.YamlUtils;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlConvertible;
+import org.sahagin.share.yaml.YamlEventReader;
+import org.sahagin.share.yaml.YamlEventWriter;
+import org.sahagin.share.yaml.YamlStreamConvertible;
 
-public class TestMethodTable implements YamlConvertible {
-    private List<TestMethod> testMethods = new ArrayList<>(512);
+public class TestMethodTable implements YamlConvertible, YamlStreamConvertible {
+    private ModCountList<TestMethod> testMethods = new ModCountList<>(512);
+    // lookup indexes, which are rebuilt after testMethods is modified
+    private volatile TableIndex<String, TestMethod> keyIndex = null;
+    private volatile TableIndex<Pair<String, String>, List<TestMethod>> nameIndex = null;
 
     public List<TestMethod> getTestMethods() {
         return testMethods;
     }
 
     public void addTestMethod(TestMethod testMethod) {
+        TableIndex<String, TestMethod> currentKeyIndex = keyIndex;
+        if (currentKeyIndex == null || !currentKeyIndex.isValidFor(testMethods)) {
+            currentKeyIndex = null;
+        }
+        TableIndex<Pair<String, String>, List<TestMethod>> currentNameIndex = nameIndex;
+        if (currentNameIndex == null || !currentNameIndex.isValidFor(testMethods)
+                || testMethod.getTestClass() == null) {
+            currentNameIndex = null;
+        }
         testMethods.add(testMethod);
+
+        // update the indexes not to rebuild them for each addition
+        if (currentKeyIndex != null) {
+            if (testMethod.getKey() != null && currentKeyIndex.get(testMethod.getKey()) == null) {
+                currentKeyIndex.put(testMethod.getKey(), testMethod);
+            }
+            currentKeyIndex.markValid();
+        }
+        if (currentNameIndex != null) {
+            Pair<String, String> name = Pair.of(
+                    testMethod.getTestClass().getQualifiedName(), testMethod.getSimpleName());
+            List<TestMethod> sameNameMethods = currentNameIndex.get(name);
+            if (sameNameMethods == null) {
+                sameNameMethods = new ArrayList<>(1);
+                currentNameIndex.put(name, sameNameMethods);
+            }
+            sameNameMethods.add(testMethod);
+            currentNameIndex.markValid();
+        }
     }
 
     public boolean isEmpty() {
         return testMethods.isEmpty();
     }
 
+    private TableIndex<String, TestMethod> getKeyIndex() {
+        TableIndex<String, TestMethod> index = keyIndex;
+        if (index != null && index.isValidFor(testMethods)) {
+            return index;
+        }
+        Map<String, TestMethod> map = new HashMap<>(testMethods.size() * 2);
+        for (TestMethod testMethod : testMethods) {
+            // use the first one for the same key
+            if (testMethod.getKey() != null && !map.containsKey(testMethod.getKey())) {
+                map.put(testMethod.getKey(), testMethod);
+            }
+        }
+        index = new TableIndex<>(testMethods, map);
+        keyIndex = index;
+        return index;
+    }
+
+    private TableIndex<Pair<String, String>, List<TestMethod>> getNameIndex() {
+        TableIndex<Pair<String, String>, List<TestMethod>> index = nameIndex;
+        if (index != null && index.isValidFor(testMethods)) {
+            return index;
+        }
+        Map<Pair<String, String>, List<TestMethod>> map = new HashMap<>(testMethods.size() * 2);
+        for (TestMethod testMethod : testMethods) {
+            Pair<String, String> name = Pair.of(
+                    testMethod.getTestClass().getQualifiedName(), testMethod.getSimpleName());
+            List<TestMethod> sameNameMethods = map.get(name);
+            if (sameNameMethods == null) {
+                sameNameMethods = new ArrayList<>(1);
+                map.put(name, sameNameMethods);
+            }
+            sameNameMethods.add(testMethod);
+        }
+        index = new TableIndex<>(testMethods, map);
+        nameIndex = index;
+        return index;
+    }
+
     // returns null if not found
     public TestMethod getByKey(String key) {
         if (key == null) {
             throw new NullPointerException();
         }
-        for (TestMethod testMethod : testMethods) {
-            if (key.equals(testMethod.getKey())) {
-                return testMethod;
-            }
+        TestMethod result = getKeyIndex().get(key);
+        if (result != null && !key.equals(result.getKey())) {
+            // key has been changed after the index is built
+            keyIndex = null;
+            result = getKeyIndex().get(key);
         }
-        return null;
+        return result;
     }
 
     // returns null if not found
@@ -49,17 +122,17 @@ public class TestMethodTable implements YamlConvertible {
         if (methodSimpleName == null) {
             throw new NullPointerException();
         }
-        List<TestMethod> result = new ArrayList<>(1);
-        for (TestMethod testMethod : testMethods) {
-            if (StringUtils.equals(classQualifiedName, testMethod.getTestClass().getQualifiedName())
-                    && StringUtils.equals(methodSimpleName, testMethod.getSimpleName())) {
-                result.add(testMethod);
-            }
+        List<TestMethod> result = getNameIndex().get(Pair.of(classQualifiedName, methodSimpleName));
+        if (result == null) {
+            return new ArrayList<>(0);
         }
-        return result;
+        // returns the copy not to modify the index
+        return new ArrayList<>(result);
     }
 
     public void sort() {
+        // order of the methods in the name index must be the same as testMethods
+        nameIndex = null;
         Collections.sort(testMethods, new Comparator<TestMethod>() {
 
             // sort by name as much as possible
@@ -90,11 +163,44 @@ public class TestMethodTable implements YamlConvertible {
             throws YamlConvertException {
         List<Map<String, Object>> testMethodsYamlObj
         = YamlUtils.getYamlObjectListValue(yamlObject, "methods", true);
-        testMethods = new ArrayList<>(testMethodsYamlObj.size());
+        testMethods = new ModCountList<>(testMethodsYamlObj.size());
         for (Map<String, Object> testMethodYamlObj : testMethodsYamlObj) {
             TestMethod testMethod = new TestMethod();
             testMethod.fromYamlObject(testMethodYamlObj);
             testMethods.add(testMethod);
         }
     }
+
+    @Override
+    public void toYamlStream(YamlEventWriter writer) {
+        writer.startMapping();
+        if (!isEmpty()) {
+            writer.writeKey("methods");
+            writer.startSequence();
+            for (TestMethod testMethod : testMethods) {
+                writer.writeValue(YamlUtils.toYamlObject(testMethod));
+            }
+            writer.endSequence();
+        }
+        writer.endMapping();
+    }
+
+    @Override
+    public void fromYamlStream(YamlEventReader reader) throws YamlConvertException {
+        testMethods = new ModCountList<>(512);
+        reader.startMapping();
+        String key;
+        while ((key = reader.nextKey()) != null) {
+            if (!key.equals("methods")) {
+                reader.skipValue();
+            } else if (!reader.skipNull()) {
+                reader.startSequence();
+                while (reader.nextItem()) {
+                    TestMethod testMethod = new TestMethod();
+                    testMethod.fromYamlObject(reader.readYamlObject());
+                    testMethods.add(testMethod);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package org.sahagin.share.yaml;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// reads the YAML object tree written by YamlBinaryWriter
+public abstract class YamlBinaryReader {
+    private static final String MSG_INVALID_VALUE_TYPE = "invalid value type: %d";
+    private static final String MSG_VALUE_NOT_MAP = "value must be map, but is \"%s\"";
+
+    // value types
+    static final byte NULL = 0;
+    static final byte STRING = 1;
+    static final byte INT = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+    static final byte LIST = 5;
+    static final byte MAP = 6;
+
+    protected abstract String readString(ByteBuffer buffer);
+
+    // returns the same value as the value passed to YamlBinaryWriter.writeValue
+    public Object readValue(ByteBuffer buffer) throws YamlConvertException {
+        byte type = buffer.get();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(buffer);
+        case INT:
+            return buffer.getInt();
+        case TRUE:
+            return true;
+        case FALSE:
+            return false;
+        case LIST:
+            int listSize = buffer.getInt();
+            List<Object> list = new ArrayList<>(listSize);
+            for (int i = 0; i < listSize; i++) {
+                list.add(readValue(buffer));
+            }
+            return list;
+        case MAP:
+            int mapSize = buffer.getInt();
+            Map<String, Object> map = new HashMap<>(mapSize * 2);
+            for (int i = 0; i < mapSize; i++) {
+                String key = readString(buffer);
+                map.put(key, readValue(buffer));
+            }
+            return map;
+        default:
+            throw new YamlConvertException(String.format(MSG_INVALID_VALUE_TYPE, type));
+        }
+    }
+
+    public Map<String, Object> readYamlObject(ByteBuffer buffer) throws YamlConvertException {
+        Object value = readValue(buffer);
+        if (!(value instanceof Map)) {
+            throw new YamlConvertException(String.format(MSG_VALUE_NOT_MAP, value));
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = (Map<String, Object>) value;
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package org.sahagin.share.yaml;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// writes the YAML object tree in the compact binary format.
+// How each string is written is decided by the subclass,
+// such as the inline UTF-8 bytes or the index of the string table
+public abstract class YamlBinaryWriter {
+    private static final String MSG_UNSUPPORTED_VALUE = "unsupported value: %s";
+
+    protected abstract void writeString(DataOutput out, String str) throws IOException;
+
+    // value.. the value which can be returned by YamlConvertible.toYamlObject
+    public void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(YamlBinaryReader.NULL);
+        } else if (value instanceof String) {
+            out.writeByte(YamlBinaryReader.STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(YamlBinaryReader.INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? YamlBinaryReader.TRUE : YamlBinaryReader.FALSE);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(YamlBinaryReader.LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(YamlBinaryReader.MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException(String.format(MSG_UNSUPPORTED_VALUE, value));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.sahagin.share.yaml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.yaml.snakeyaml.composer.Composer;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+// reads YAML from the SnakeYAML parser event stream.
+// The caller walks the structure by startMapping, nextKey, startSequence and nextItem,
+// and only the value read by readValue or readYamlObject is constructed as Java object,
+// so that the whole YAML object tree is not built at once
+public class YamlEventReader implements Closeable {
+    private static final String MSG_UNEXPECTED_EVENT = "expected %s, but is %s";
+    private static final String MSG_VALUE_NOT_MAP = "value must be map, but is \"%s\"";
+    private final Reader reader;
+    private final Parser parser;
+    private final Resolver resolver = new Resolver();
+    private final Constructor constructor = new Constructor();
+
+    // this reader closes the specified reader when this reader is closed
+    public YamlEventReader(Reader reader) {
+        this.reader = reader;
+        this.parser = new ParserImpl(new StreamReader(reader));
+    }
+
+    private Event nextEvent(Event.ID expected) throws YamlConvertException {
+        Event event = parser.getEvent();
+        if (!event.is(expected)) {
+            throw new YamlConvertException(String.format(MSG_UNEXPECTED_EVENT, expected, event));
+        }
+        return event;
+    }
+
+    public void startDocument() throws YamlConvertException {
+        nextEvent(Event.ID.StreamStart);
+        nextEvent(Event.ID.DocumentStart);
+    }
+
+    public void endDocument() throws YamlConvertException {
+        nextEvent(Event.ID.DocumentEnd);
+        nextEvent(Event.ID.StreamEnd);
+    }
+
+    public void startMapping() throws YamlConvertException {
+        nextEvent(Event.ID.MappingStart);
+    }
+
+    // returns null and consumes the end of the mapping if no more key is found
+    public String nextKey() throws YamlConvertException {
+        if (parser.checkEvent(Event.ID.MappingEnd)) {
+            parser.getEvent();
+            return null;
+        }
+        return ((ScalarEvent) nextEvent(Event.ID.Scalar)).getValue();
+    }
+
+    public void startSequence() throws YamlConvertException {
+        nextEvent(Event.ID.SequenceStart);
+    }
+
+    // returns false and consumes the end of the sequence if no more item is found
+    public boolean nextItem() {
+        if (parser.checkEvent(Event.ID.SequenceEnd)) {
+            parser.getEvent();
+            return false;
+        }
+        return true;
+    }
+
+    // returns true and consumes the value if the next value is null
+    public boolean skipNull() {
+        if (!parser.checkEvent(Event.ID.Scalar)) {
+            return false;
+        }
+        ScalarEvent event = (ScalarEvent) parser.peekEvent();
+        if (event.getTag() != null || !event.getImplicit().canOmitTagInPlainScalar()
+                || !Tag.NULL.equals(resolver.resolve(NodeId.scalar, event.getValue(), true))) {
+            return false;
+        }
+        parser.getEvent();
+        return true;
+    }
+
+    // events for the next value
+    private List<Event> valueEvents() {
+        List<Event> events = new ArrayList<>(64);
+        int depth = 0;
+        do {
+            Event event = parser.getEvent();
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                depth++;
+            } else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                depth--;
+            }
+            events.add(event);
+        } while (depth > 0);
+        return events;
+    }
+
+    public void skipValue() {
+        valueEvents();
+    }
+
+    // returns the same value as YamlUtils.load returns for the value
+    public Object readValue() {
+        List<Event> events = valueEvents();
+        events.add(0, new StreamStartEvent(null, null));
+        events.add(1, new DocumentStartEvent(null, null, false, null, null));
+        events.add(new DocumentEndEvent(null, null, false));
+        events.add(new StreamEndEvent(null, null));
+        constructor.setComposer(new Composer(new EventListParser(events), resolver));
+        return constructor.getSingleData(Object.class);
+    }
+
+    public Map<String, Object> readYamlObject() throws YamlConvertException {
+        Object value = readValue();
+        if (value != null && !(value instanceof Map)) {
+            throw new YamlConvertException(String.format(MSG_VALUE_NOT_MAP, value));
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = (Map<String, Object>) value;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // replays the events already read from the stream
+    private static class EventListParser implements Parser {
+        private final List<Event> events;
+        private int index = 0;
+
+        private EventListParser(List<Event> events) {
+            this.events = events;
+        }
+
+        @Override
+        public boolean checkEvent(Event.ID choice) {
+            return index < events.size() && events.get(index).is(choice);
+        }
+
+        @Override
+        public Event peekEvent() {
+            return index < events.size() ? events.get(index) : null;
+        }
+
+        @Override
+        public Event getEvent() {
+            return index < events.size() ? events.get(index++) : null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.sahagin.share.yaml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+
+// writes YAML to the SnakeYAML emitter event stream.
+// The caller writes the structure by startMapping, writeKey and startSequence,
+// and only the value written by writeValue is converted to the YAML node at once.
+// Each value is written in the same style as YamlUtils.dump writes it
+public class YamlEventWriter implements Closeable {
+    private final Writer writer;
+    private final Emitter emitter;
+
+    // this writer closes the specified writer when this writer is closed
+    public YamlEventWriter(Writer writer) {
+        this.writer = writer;
+        this.emitter = new Emitter(writer, new DumperOptions());
+    }
+
+    private void emit(Event event) {
+        try {
+            emitter.emit(event);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void startDocument() {
+        emit(new StreamStartEvent(null, null));
+        emit(new DocumentStartEvent(null, null, false, null, null));
+    }
+
+    public void endDocument() {
+        emit(new DocumentEndEvent(null, null, false));
+        emit(new StreamEndEvent(null, null));
+    }
+
+    public void startMapping() {
+        emit(new MappingStartEvent(null, null, true, null, null, false));
+    }
+
+    public void endMapping() {
+        emit(new MappingEndEvent(null, null));
+    }
+
+    public void startSequence() {
+        emit(new SequenceStartEvent(null, null, true, null, null, false));
+    }
+
+    public void endSequence() {
+        emit(new SequenceEndEvent(null, null));
+    }
+
+    public void writeKey(String key) {
+        emit(new ScalarEvent(null, null, new ImplicitTuple(true, false), key, null, null, null));
+    }
+
+    // value.. the value which can be passed to YamlUtils.dump, such as the YAML object
+    public void writeValue(Object value) {
+        List<Event> events = YamlUtils.yaml().serialize(YamlUtils.yaml().represent(value));
+        // skip stream and document start and end events
+        for (int i = 2; i < events.size() - 2; i++) {
+            emit(events.get(i));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,12 @@
+package org.sahagin.share.yaml;
+
+// the data which can be converted from and to YAML stream directly
+// without building the whole YAML object tree.
+// The YAML format must be the same as YamlConvertible
+public interface YamlStreamConvertible {
+
+    public void toYamlStream(YamlEventWriter writer);
+
+    public void fromYamlStream(YamlEventReader reader) throws YamlConvertException;
+
+}
@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +17,7 @@ import org.apache.commons.lang.StringUtils;
 import org.sahagin.runlib.external.CaptureStyle;
 import org.sahagin.runlib.external.Locale;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.reader.UnicodeReader;
 
 public class YamlUtils {
     private static final String MSG_KEY_NOT_FOUND = "key \"%s\" is not found";
@@ -26,6 +30,18 @@ public class YamlUtils {
     = "can't convert value to Locale; key: %s; vaule: %s";
     private static final String MSG_NOT_EQUALS_TO_EXPECTED = "\"%s\" is not equals to \"%s\"";
     private static final String MSG_LIST_MUST_NOT_BE_NULL = "list must not be null";
+    // Yaml instance is not thread safe, so each thread reuses its own instance
+    private static final ThreadLocal<Yaml> YAML = new ThreadLocal<Yaml>() {
+
+        @Override
+        protected Yaml initialValue() {
+            return new Yaml();
+        }
+    };
+
+    static Yaml yaml() {
+        return YAML.get();
+    }
 
     // if allowsEmpty and key entry is not found, just returns null.
     // (null may mean null value for the specified key)
@@ -277,8 +293,7 @@ public class YamlUtils {
 
     // this method does not close the stream
     public static Map<String, Object> load(InputStream input) {
-        Yaml yaml = new Yaml();
-        Object rawYamlObj = yaml.load(input);
+        Object rawYamlObj = yaml().load(input);
         @SuppressWarnings("unchecked")
         Map<String, Object> yamlObj = (Map<String, Object>) rawYamlObj;
         return yamlObj;
@@ -297,15 +312,57 @@ public class YamlUtils {
             dumpFile.getParentFile().mkdirs();
         }
         try (FileWriterWithEncoding writer = new FileWriterWithEncoding(dumpFile, Charsets.UTF_8)) {
-            Yaml yaml = new Yaml();
-            yaml.dump(yamlObj, writer);
+            yaml().dump(yamlObj, writer);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public static String dumpToString(Map<String, Object> yamlObj) {
-        Yaml yaml = new Yaml();
-        return yaml.dump(yamlObj);
+        return yaml().dump(yamlObj);
+    }
+
+    // load the YAML file to dest without building the whole YAML object tree
+    public static void loadStream(File yamlFile, YamlStreamConvertible dest)
+            throws YamlConvertException {
+        loadStream(yamlFile.toPath(), dest);
+    }
+
+    // yamlFile may be in the zip archive
+    public static void loadStream(Path yamlFile, YamlStreamConvertible dest)
+            throws YamlConvertException {
+        // detect encoding in the same way as Yaml.load(InputStream)
+        try (YamlEventReader reader = new YamlEventReader(
+                new UnicodeReader(Files.newInputStream(yamlFile)))) {
+            reader.startDocument();
+            dest.fromYamlStream(reader);
+            reader.endDocument();
+        } catch (IOException e) {
+            throw new RuntimeException("exception for " + yamlFile.toAbsolutePath(), e);
+        }
+    }
+
+    // dump src to the YAML file without building the whole YAML object tree
+    public static void dumpStream(YamlStreamConvertible src, File dumpFile) {
+        if (dumpFile.getParentFile() != null) {
+            dumpFile.getParentFile().mkdirs();
+        }
+        try (YamlEventWriter writer = new YamlEventWriter(
+                new FileWriterWithEncoding(dumpFile, Charsets.UTF_8))) {
+            writer.startDocument();
+            src.toYamlStream(writer);
+            writer.endDocument();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String dumpStreamToString(YamlStreamConvertible src) {
+        StringWriter stringWriter = new StringWriter();
+        YamlEventWriter writer = new YamlEventWriter(stringWriter);
+        writer.startDocument();
+        src.toYamlStream(writer);
+        writer.endDocument();
+        return stringWriter.toString();
     }
 }
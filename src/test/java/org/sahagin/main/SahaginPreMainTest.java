@@ -0,0 +1,113 @@
+package org.sahagin.main;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sahagin.TestBase;
+import org.sahagin.share.AcceptableLocales;
+import org.sahagin.share.CommonPath;
+import org.sahagin.share.IllegalTestScriptException;
+import org.sahagin.share.JavaConfig;
+import org.sahagin.share.srctree.SrcTree;
+
+import static org.junit.Assert.*;
+
+public class SahaginPreMainTest extends TestBase {
+
+    private File srcTreeGeneratorTestResourceDir(String subDirName) {
+        return new File(testResourceRoot(),
+                "org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/" + subDirName);
+    }
+
+    // the prebuilt srcTree is used only while the fingerprint of the sources
+    // and the class path directories matches,
+    // and the test selection is applied to the loaded srcTree
+    @Test
+    public void prebuiltSrcTree() throws ClassNotFoundException, InstantiationException,
+    IllegalAccessException, IllegalTestScriptException, IOException {
+        clearWorkDir("prebuiltSrcTree");
+        File workDir = mkWorkDir("prebuiltSrcTree");
+        // keep the directory structure which matches to the package name
+        File packageDir = new File(workDir,
+                "src/org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/testSelection/input");
+        FileUtils.copyDirectory(
+                new File(srcTreeGeneratorTestResourceDir("testSelection"), "input"), packageDir);
+        // the class path directory which has the class file of the main code
+        // and the class file compiled from the test source
+        File classDir = new File(workDir, "classes");
+        File mainClassFile = new File(classDir, "main/MainPage.class");
+        FileUtils.writeStringToFile(mainClassFile, "first", Charsets.UTF_8);
+        File testClassFile = new File(classDir,
+                "org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/testSelection/input/TestPage.class");
+        FileUtils.writeStringToFile(testClassFile, "first", Charsets.UTF_8);
+        String orgClassPath = System.getProperty("java.class.path");
+        System.setProperty("java.class.path", orgClassPath + File.pathSeparator + classDir.getPath());
+        try {
+            JavaConfig config = new JavaConfig(workDir);
+            config.setTestDir(new File("src"));
+            config.setPrebuiltSrcTreeDir(new File("prebuilt"));
+            AcceptableLocales locales = AcceptableLocales.getInstance(null);
+            SahaginPreMain.initializeAdapters(config, locales);
+
+            // missing fingerprint file
+            assertNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+
+            // the prebuilt srcTree contains all tests even if the test selection is set
+            config.setTestSelection("TestMain#selected");
+            SahaginPreMain.generatePrebuiltSrcTree(config, locales);
+            config.setTestSelection(null);
+            SrcTree allSrcTree = SahaginPreMain.loadPrebuiltSrcTree(config, locales);
+            assertNotNull(allSrcTree);
+            assertEquals(3, allSrcTree.getRootMethodTable().getTestMethods().size());
+
+            // the selected srcTree must be the same as the one generated with the test selection
+            // and the same adapters, which add the additional TestDocs of the default adapters
+            config.setTestSelection("TestMain#selected");
+            SrcTree selectedSrcTree = SahaginPreMain.loadPrebuiltSrcTree(config, locales);
+            assertNotNull(selectedSrcTree);
+            selectedSrcTree.sort();
+            SrcTree expectedSrcTree = SahaginPreMain.createSrcTreeGenerator(config, locales)
+                    .generateWithRuntimeClassPath(config.getRootBaseTestDirs(), Charsets.UTF_8);
+            expectedSrcTree.sort();
+            assertEquals(1, expectedSrcTree.getRootMethodTable().getTestMethods().size());
+            assertEquals("selected",
+                    expectedSrcTree.getRootMethodTable().getTestMethods().get(0).getSimpleName());
+            assertYamlEquals(expectedSrcTree.toYamlObject(), selectedSrcTree.toYamlObject());
+            config.setTestSelection(null);
+
+            // settings change
+            config.setSrcTreePruneUnreachable(true);
+            assertNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+            config.setSrcTreePruneUnreachable(false);
+            assertNotNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+
+            // source edit. The prebuilt srcTree is valid again if the source is restored
+            File pageFile = new File(packageDir, "TestPage.java");
+            String pageSrc = FileUtils.readFileToString(pageFile, Charsets.UTF_8);
+            FileUtils.writeStringToFile(
+                    pageFile, pageSrc.replace("Doc:first", "Doc:changed"), Charsets.UTF_8);
+            assertNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+            FileUtils.writeStringToFile(pageFile, pageSrc, Charsets.UTF_8);
+            assertNotNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+
+            // class file change in the class path directory.
+            // The class file compiled from the test source is not checked
+            FileUtils.writeStringToFile(testClassFile, "changed", Charsets.UTF_8);
+            assertTrue(testClassFile.setLastModified(testClassFile.lastModified() + 10000));
+            assertNotNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+            FileUtils.writeStringToFile(mainClassFile, "changed", Charsets.UTF_8);
+            assertTrue(mainClassFile.setLastModified(mainClassFile.lastModified() + 10000));
+            assertNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+
+            // missing fingerprint file after generation
+            FileUtils.forceDelete(CommonPath.prebuiltSrcTreeFingerprintFile(
+                    config.getRootBasePrebuiltSrcTreeDir()));
+            assertNull(SahaginPreMain.loadPrebuiltSrcTree(config, locales));
+        } finally {
+            System.setProperty("java.class.path", orgClassPath);
+        }
+    }
+}
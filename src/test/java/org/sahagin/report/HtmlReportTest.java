@@ -4,9 +4,15 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.Assume;
@@ -18,9 +24,13 @@ import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.sahagin.TestBase;
 import org.sahagin.share.AcceptableLocales;
+import org.sahagin.share.CommonPath;
 import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.IllegalTestScriptException;
+import org.sahagin.share.IntermediateDataArchive;
 import org.sahagin.share.SysMessages;
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.SrcTreeFiles;
 
 public class HtmlReportTest extends TestBase {
 
@@ -144,6 +154,72 @@ public class HtmlReportTest extends TestBase {
         generateMultiReport("multiReportInputIntermediateDirShouldWork");
     }
 
+    private void assertRunResultsReported(File outputDir) throws IOException {
+        File shouldFailHtml = new File(outputDir, "reports/sample.SampleTest/shouldFail.html");
+        assertThat(shouldFailHtml.exists(), is(true));
+        // the capture in the run results is referred to
+        assertThat(FileUtils.readFileToString(shouldFailHtml, Charsets.UTF_8),
+                containsString("001.png"));
+    }
+
+    // the intermediate data directory packed to the archive must be read from the archive
+    // when the archive is given, when the directory has been deleted,
+    // and when the directory has been deleted only partly
+    @Test
+    public void archiveInput()
+            throws IOException, IllegalDataStructureException, IllegalTestScriptException {
+        clearWorkDir("archiveInput");
+        File workDir = mkWorkDir("archiveInput");
+        File inputDir = new File(workDir, "input");
+        FileUtils.copyDirectory(testResourceDir("generatedReportShouldWork/input"), inputDir);
+        File archiveFile = CommonPath.intermediateDataArchiveFile(inputDir);
+        IntermediateDataArchive.pack(inputDir, archiveFile);
+        File outputDir = new File(workDir, "output");
+
+        new HtmlReport().generate(Arrays.asList(archiveFile), outputDir);
+        assertRunResultsReported(outputDir);
+
+        // the files left in the directory are older than the archive
+        FileUtils.deleteDirectory(CommonPath.runResultRootDir(inputDir));
+        FileUtils.deleteDirectory(CommonPath.inputCaptureRootDir(inputDir));
+        assertThat(CommonPath.srcTreeFile(inputDir).setLastModified(
+                archiveFile.lastModified() - 10000), is(true));
+        new HtmlReport().generate(Arrays.asList(inputDir), outputDir);
+        assertRunResultsReported(outputDir);
+
+        FileUtils.deleteDirectory(inputDir);
+        new HtmlReport().generate(Arrays.asList(inputDir), outputDir);
+        assertRunResultsReported(outputDir);
+    }
+
+    // parallel merge of many srcTrees must keep the class and method order
+    // of the sequential merge
+    @Test
+    public void parallelSrcTreeMerge() throws IOException, IllegalDataStructureException {
+        clearWorkDir("parallelSrcTreeMerge");
+        File workDir = mkWorkDir("parallelSrcTreeMerge");
+        String templateYaml = FileUtils.readFileToString(new File(
+                testResourceDir("multiReportInputIntermediateDirShouldWork/child1"), "srcTree"),
+                Charsets.UTF_8);
+        List<Path> inputDataDirs = new ArrayList<>(HtmlReport.PARALLEL_MERGE_MIN_DIRS + 3);
+        SrcTree expected = new SrcTree();
+        for (int i = 0; i < HtmlReport.PARALLEL_MERGE_MIN_DIRS + 3; i++) {
+            // each srcTree has its own root class and shares the same sub method
+            File inputDataDir = new File(workDir, "input" + i);
+            FileUtils.writeStringToFile(new File(inputDataDir, "srcTree"),
+                    templateYaml.replace("Test1", "Test" + i), Charsets.UTF_8);
+            inputDataDirs.add(inputDataDir.toPath());
+            expected.merge(SrcTreeFiles.load(inputDataDir));
+        }
+        expected.resolveKeyReference();
+
+        SrcTree actual = new HtmlReport().generateSrcTree(inputDataDirs);
+        assertThat(actual.getRootMethodTable().getTestMethods().size(),
+                is(HtmlReport.PARALLEL_MERGE_MIN_DIRS + 3));
+        assertThat(actual.getSubMethodTable().getTestMethods().size(), is(1));
+        assertYamlEquals(expected.toYamlObject(), actual.toYamlObject());
+    }
+
     private void quietQuit(WebDriver driver) {
         if (driver != null) {
             try {
@@ -0,0 +1,50 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sahagin.TestBase;
+import org.sahagin.share.srctree.code.CodeLine;
+
+import static org.junit.Assert.*;
+
+public class CodeLineIndexTest extends TestBase {
+
+    private CodeLine codeLine(int startLine, int endLine) {
+        CodeLine codeLine = new CodeLine();
+        codeLine.setStartLine(startLine);
+        codeLine.setEndLine(endLine);
+        return codeLine;
+    }
+
+    @Test
+    public void indexesAt() {
+        List<CodeLine> codeBody = new ArrayList<>(4);
+        codeBody.add(codeLine(1, 1));
+        codeBody.add(codeLine(2, 4));
+        codeBody.add(codeLine(4, 4)); // 2 statements in line 4
+        codeBody.add(codeLine(6, 6));
+        CodeLineIndex index = new CodeLineIndex(codeBody);
+        assertEquals(Arrays.asList(1, 2), index.indexesAt(4));
+        assertEquals(Arrays.asList(1), index.indexesAt(3));
+        assertEquals(Arrays.<Integer>asList(), index.indexesAt(5));
+        assertEquals(1, index.firstIndexAt(4));
+        assertEquals(3, index.firstIndexAt(6));
+        assertEquals(-1, index.firstIndexAt(7));
+    }
+
+    // the code body which is not in the line order must be searched linearly
+    @Test
+    public void unsortedCodeBody() {
+        List<CodeLine> codeBody = new ArrayList<>(3);
+        codeBody.add(codeLine(5, 5));
+        codeBody.add(codeLine(1, 2));
+        codeBody.add(codeLine(2, 2));
+        CodeLineIndex index = new CodeLineIndex(codeBody);
+        assertEquals(Arrays.asList(1, 2), index.indexesAt(2));
+        assertEquals(0, index.firstIndexAt(5));
+        assertEquals(-1, index.firstIndexAt(3));
+    }
+}
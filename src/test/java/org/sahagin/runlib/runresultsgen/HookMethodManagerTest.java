@@ -0,0 +1,246 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sahagin.TestBase;
+import org.sahagin.runlib.external.adapter.AdapterContainer;
+import org.sahagin.runlib.external.adapter.JavaAdapterContainer;
+import org.sahagin.runlib.external.adapter.ScreenCaptureAdapter;
+import org.sahagin.runlib.external.adapter.junit4.JUnit4Adapter;
+import org.sahagin.share.AcceptableLocales;
+import org.sahagin.share.CommonPath;
+import org.sahagin.share.Config;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.runresults.LineScreenCapture;
+import org.sahagin.share.runresults.RootMethodRunResult;
+import org.sahagin.share.runresults.RunResultsSegmentReader;
+import org.sahagin.share.runresults.StackLine;
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.yaml.YamlConvertException;
+import org.sahagin.share.yaml.YamlUtils;
+
+import static org.junit.Assert.*;
+
+public class HookMethodManagerTest extends TestBase {
+    private static final String TEST1_KEY = "Lmanager/TestMain;.test1()V";
+    private static final String TEST2_KEY = "Lmanager/TestMain;.test2()V";
+    private RuntimeSrcTree srcTree;
+
+    @Before
+    public void setUp() throws YamlConvertException, IllegalDataStructureException {
+        SrcTree tree = new SrcTree();
+        tree.fromYamlObject(YamlUtils.load(new File(testResourceDir(), "srcTree")));
+        tree.resolveKeyReference();
+        srcTree = new RuntimeSrcTree(tree);
+        JavaAdapterContainer.globalInitialize(
+                AcceptableLocales.getInstance(null), new JUnit4Adapter().getName());
+        // the capture data is the name of the thread which takes the capture
+        AdapterContainer.globalInstance().setScreenCaptureAdapter(new ScreenCaptureAdapter() {
+
+            @Override
+            public byte[] captureScreen() {
+                return Thread.currentThread().getName().getBytes(Charsets.UTF_8);
+            }
+        });
+    }
+
+    // executes the root method with all hooks.
+    // All threads wait for each other before each hook
+    // so that the hooks of the threads are called alternately
+    private class RootMethodThread extends Thread {
+        private final HookMethodManager manager;
+        private final HookRegistry registry;
+        private final int rootMethodId;
+        private final CyclicBarrier barrier;
+        private Throwable error = null;
+
+        private RootMethodThread(String name, HookMethodManager manager,
+                HookRegistry registry, String rootMethodKey, CyclicBarrier barrier) {
+            super(name);
+            this.manager = manager;
+            this.registry = registry;
+            this.rootMethodId = srcTree.getMethodIdByKey(rootMethodKey);
+            this.barrier = barrier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                barrier.await();
+                manager.beforeMethodHook(rootMethodId);
+                for (int i = 0; i < srcTree.getCodeBodySize(rootMethodId); i++) {
+                    int line = srcTree.getStartLine(rootMethodId, i);
+                    int codeLineId = registry.registerCodeLine(rootMethodId, line, i);
+                    barrier.await();
+                    manager.beforeCodeLineHook(rootMethodId, codeLineId, line);
+                    barrier.await();
+                    manager.afterCodeLineHook(rootMethodId, codeLineId, line);
+                }
+                barrier.await();
+                manager.afterMethodHook(rootMethodId);
+            } catch (InterruptedException | BrokenBarrierException | RuntimeException e) {
+                error = e;
+                barrier.reset();
+            }
+        }
+    }
+
+    private void runConcurrently(Config config, String... rootMethodKeys)
+            throws InterruptedException {
+        HookRegistry.globalInitialize(config, srcTree);
+        HookRegistry registry = HookRegistry.globalInstance();
+        HookMethodManager manager = new HookMethodManager(registry, config);
+        CyclicBarrier barrier = new CyclicBarrier(rootMethodKeys.length);
+        List<RootMethodThread> threads = new ArrayList<>(rootMethodKeys.length);
+        for (int i = 0; i < rootMethodKeys.length; i++) {
+            threads.add(new RootMethodThread(
+                    "thread" + i, manager, registry, rootMethodKeys[i], barrier));
+        }
+        for (RootMethodThread thread : threads) {
+            thread.start();
+        }
+        for (RootMethodThread thread : threads) {
+            thread.join();
+        }
+        manager.close();
+        for (RootMethodThread thread : threads) {
+            if (thread.error != null) {
+                throw new AssertionError(thread.error);
+            }
+        }
+    }
+
+    private RootMethodRunResult loadRunResultFile(Config config, String className,
+            String methodName) throws YamlConvertException {
+        File runResultFile = new File(String.format("%s/%s/%s",
+                CommonPath.runResultRootDir(config.getRootBaseRunOutputIntermediateDataDir()),
+                className, methodName));
+        RootMethodRunResult result = new RootMethodRunResult();
+        YamlUtils.loadStream(runResultFile, result);
+        return result;
+    }
+
+    private List<RootMethodRunResult> loadSegments(Config config)
+            throws IllegalDataStructureException {
+        File segmentDir = CommonPath.runResultSegmentDir(config.getRootBaseRunOutputIntermediateDataDir());
+        List<RootMethodRunResult> results = new ArrayList<>(2);
+        for (File segmentFile : FileUtils.listFiles(segmentDir, null, false)) {
+            results.addAll(new RunResultsSegmentReader(segmentFile).getAll());
+        }
+        return results;
+    }
+
+    // checks that the result only contains the captures of the root method
+    // taken by the single thread, and returns the name of the thread
+    private String assertIsolated(RootMethodRunResult result, String rootMethodKey,
+            Set<String> capturePaths) throws IOException {
+        int rootMethodId = srcTree.getMethodIdByKey(rootMethodKey);
+        assertEquals(rootMethodKey, result.getRootMethodKey());
+        assertTrue(result.getRunFailures().isEmpty());
+        List<LineScreenCapture> captures = result.getLineScreenCaptures();
+        assertEquals(srcTree.getCodeBodySize(rootMethodId), captures.size());
+        String threadName = null;
+        for (int i = 0; i < captures.size(); i++) {
+            LineScreenCapture capture = captures.get(i);
+            assertEquals(1, capture.getStackLines().size());
+            StackLine stackLine = capture.getStackLines().get(0);
+            assertEquals(rootMethodKey, stackLine.getMethodKey());
+            assertEquals(i, stackLine.getCodeBodyIndex());
+            assertEquals(srcTree.getStartLine(rootMethodId, i), stackLine.getLine());
+            String captureThreadName
+            = FileUtils.readFileToString(capture.getPath(), Charsets.UTF_8);
+            if (threadName == null) {
+                threadName = captureThreadName;
+            }
+            assertEquals(threadName, captureThreadName);
+            assertTrue(capturePaths.add(capture.getPath().getAbsolutePath()));
+        }
+        return threadName;
+    }
+
+    private Config config(String subDirName, boolean runResultsSegment) {
+        clearWorkDir(subDirName);
+        Config config = new Config(mkWorkDir(subDirName));
+        config.setRunResultsSegment(runResultsSegment);
+        return config;
+    }
+
+    @Test
+    public void differentRootMethods()
+            throws InterruptedException, YamlConvertException, IOException {
+        Config config = config("differentRootMethods", false);
+        runConcurrently(config, TEST1_KEY, TEST2_KEY);
+        Set<String> capturePaths = new HashSet<>(8);
+        assertEquals("thread0", assertIsolated(
+                loadRunResultFile(config, "manager.TestMain", "test1"), TEST1_KEY, capturePaths));
+        assertEquals("thread1", assertIsolated(
+                loadRunResultFile(config, "manager.TestMain", "test2"), TEST2_KEY, capturePaths));
+        // no temporary file is left
+        assertFalse(CommonPath.runResultTempDir(
+                config.getRootBaseRunOutputIntermediateDataDir()).exists());
+    }
+
+    // the capture numbers are shared by the threads executing the same root method,
+    // and the run result file is written by either of the threads as a whole
+    @Test
+    public void sameRootMethod()
+            throws InterruptedException, YamlConvertException, IOException {
+        Config config = config("sameRootMethod", false);
+        runConcurrently(config, TEST1_KEY, TEST1_KEY);
+        Set<String> capturePaths = new HashSet<>(8);
+        String threadName = assertIsolated(
+                loadRunResultFile(config, "manager.TestMain", "test1"), TEST1_KEY, capturePaths);
+        assertTrue(threadName.equals("thread0") || threadName.equals("thread1"));
+        File captureDir = new File(CommonPath.inputCaptureRootDir(
+                config.getRootBaseRunOutputIntermediateDataDir()), "manager.TestMain/test1");
+        assertEquals(6, FileUtils.listFiles(captureDir, null, false).size());
+        for (int captureNo = 1; captureNo <= 6; captureNo++) {
+            assertTrue(new File(captureDir, String.format("%03d.png", captureNo)).exists());
+        }
+    }
+
+    @Test
+    public void differentRootMethodsSegment() throws InterruptedException,
+    IllegalDataStructureException, IOException {
+        Config config = config("differentRootMethodsSegment", true);
+        runConcurrently(config, TEST1_KEY, TEST2_KEY);
+        List<RootMethodRunResult> results = loadSegments(config);
+        assertEquals(2, results.size());
+        Set<String> capturePaths = new HashSet<>(8);
+        for (RootMethodRunResult result : results) {
+            if (TEST1_KEY.equals(result.getRootMethodKey())) {
+                assertEquals("thread0", assertIsolated(result, TEST1_KEY, capturePaths));
+            } else {
+                assertEquals("thread1", assertIsolated(result, TEST2_KEY, capturePaths));
+            }
+        }
+    }
+
+    // each thread appends its own run result to its own segment
+    @Test
+    public void sameRootMethodSegment() throws InterruptedException,
+    IllegalDataStructureException, IOException {
+        Config config = config("sameRootMethodSegment", true);
+        runConcurrently(config, TEST1_KEY, TEST1_KEY);
+        List<RootMethodRunResult> results = loadSegments(config);
+        assertEquals(2, results.size());
+        Set<String> capturePaths = new HashSet<>(8);
+        Set<String> threadNames = new HashSet<>(2);
+        for (RootMethodRunResult result : results) {
+            threadNames.add(assertIsolated(result, TEST1_KEY, capturePaths));
+        }
+        assertEquals(2, threadNames.size());
+        assertEquals(6, capturePaths.size());
+    }
+}
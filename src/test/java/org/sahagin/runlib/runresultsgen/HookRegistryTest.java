@@ -0,0 +1,224 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.IllegalClassFormatException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sahagin.TestBase;
+import org.sahagin.runlib.external.adapter.JavaAdapterContainer;
+import org.sahagin.runlib.external.adapter.junit4.JUnit4Adapter;
+import org.sahagin.runlib.srctreegen.SrcTreeGenerator;
+import org.sahagin.share.AcceptableLocales;
+import org.sahagin.share.Config;
+import org.sahagin.share.IllegalTestScriptException;
+import org.sahagin.share.srctree.SrcTree;
+
+import static org.junit.Assert.*;
+
+public class HookRegistryTest extends TestBase {
+    private static final String TEST_CLASS_NAME = "org.sahagin.runlib.srctreegen."
+            + "SrcTreeGeneratorTestRes.multiLinesAndStatements.input.TestMain";
+
+    // code line ids must be unique and lookups must work
+    // after the arrays grow, even if the code lines are registered concurrently
+    @Test
+    public void registerCodeLine() throws InterruptedException {
+        HookRegistry.globalInitialize(new Config(mkWorkDir()), new RuntimeSrcTree(new SrcTree()));
+        final HookRegistry registry = HookRegistry.globalInstance();
+        final int threadCount = 4;
+        final int codeLineCount = 500;
+        final int[][] codeLineIds = new int[threadCount][codeLineCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int methodId = i;
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < codeLineCount; j++) {
+                        codeLineIds[methodId][j] = registry.registerCodeLine(methodId, j + 1, j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<Integer> idSet = new HashSet<>(threadCount * codeLineCount);
+        for (int methodId = 0; methodId < threadCount; methodId++) {
+            for (int j = 0; j < codeLineCount; j++) {
+                int codeLineId = codeLineIds[methodId][j];
+                assertTrue(idSet.add(codeLineId));
+                assertEquals(methodId, registry.getMethodId(codeLineId));
+                assertEquals(j + 1, registry.getHookedLine(codeLineId));
+                assertEquals(j, registry.getCodeBodyIndex(codeLineId));
+            }
+        }
+        // ids are assigned from 0 without gaps
+        for (int codeLineId = 0; codeLineId < threadCount * codeLineCount; codeLineId++) {
+            assertTrue(idSet.contains(codeLineId));
+        }
+    }
+
+    // returns the int constant pushed by the instruction at index,
+    // or null if the instruction is not such instruction
+    private Integer intConstant(CodeIterator it, int index, ConstPool constPool) {
+        int opcode = it.byteAt(index);
+        if (opcode >= Opcode.ICONST_M1 && opcode <= Opcode.ICONST_5) {
+            return opcode - Opcode.ICONST_0;
+        } else if (opcode == Opcode.BIPUSH) {
+            return (int) (byte) it.byteAt(index + 1);
+        } else if (opcode == Opcode.SIPUSH) {
+            return it.s16bitAt(index + 1);
+        } else if (opcode == Opcode.LDC || opcode == Opcode.LDC_W) {
+            int constIndex = (opcode == Opcode.LDC) ? it.byteAt(index + 1) : it.u16bitAt(index + 1);
+            Object value = constPool.getLdcValue(constIndex);
+            if (value instanceof Integer) {
+                return (Integer) value;
+            }
+        }
+        return null;
+    }
+
+    // hook method name -> {methodId, codeLineId} list of the code line hook calls in the class
+    private Map<String, List<int[]>> codeLineHookCalls(byte[] classBytes)
+            throws IOException, BadBytecode {
+        ClassFile classFile = new ClassFile(
+                new DataInputStream(new ByteArrayInputStream(classBytes)));
+        ConstPool constPool = classFile.getConstPool();
+        Map<String, List<int[]>> result = new HashMap<>(2);
+        result.put("beforeCodeLineHook", new ArrayList<int[]>(4));
+        result.put("afterCodeLineHook", new ArrayList<int[]>(4));
+        for (Object methodObj : classFile.getMethods()) {
+            CodeAttribute code = ((MethodInfo) methodObj).getCodeAttribute();
+            if (code == null) {
+                continue;
+            }
+            // the int constants pushed just before the current instruction
+            List<Integer> pushedInts = new ArrayList<>(4);
+            CodeIterator it = code.iterator();
+            while (it.hasNext()) {
+                int index = it.next();
+                Integer value = intConstant(it, index, constPool);
+                if (value != null) {
+                    pushedInts.add(value);
+                    continue;
+                }
+                if (it.byteAt(index) == Opcode.INVOKESTATIC) {
+                    int methodRef = it.u16bitAt(index + 1);
+                    String hookName = constPool.getMethodrefName(methodRef);
+                    if (HookMethodDef.class.getName().equals(
+                            constPool.getMethodrefClassName(methodRef))
+                            && result.containsKey(hookName)) {
+                        // arguments are methodId, codeLineId and actualInsertedLine
+                        assertTrue(pushedInts.size() >= 3);
+                        int size = pushedInts.size();
+                        result.get(hookName).add(
+                                new int[] {pushedInts.get(size - 3), pushedInts.get(size - 2)});
+                    }
+                }
+                pushedInts.clear();
+            }
+        }
+        return result;
+    }
+
+    private byte[] compileTestClass(File srcDir) throws IOException {
+        File classDir = mkWorkDir("transformedHooks/classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            Collection<File> srcFiles = FileUtils.listFiles(srcDir, new String[] {"java"}, true);
+            List<String> options = Arrays.asList("-d", classDir.getPath(), "-g",
+                    "-cp", System.getProperty("java.class.path"), "-proc:none");
+            assertTrue(compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(srcFiles)).call());
+        } finally {
+            fileManager.close();
+        }
+        return FileUtils.readFileToByteArray(
+                new File(classDir, TEST_CLASS_NAME.replace('.', '/') + ".class"));
+    }
+
+    // the before and after hooks of each code line must share the one code line id
+    // registered for the line
+    @Test
+    public void transformedHooks() throws IllegalTestScriptException, IOException,
+    IllegalClassFormatException, BadBytecode {
+        clearWorkDir("transformedHooks");
+        File srcDir = new File(testResourceRoot(),
+                "org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/multiLinesAndStatements/input");
+        AcceptableLocales locales = AcceptableLocales.getInstance(null);
+        JavaAdapterContainer.globalInitialize(locales, new JUnit4Adapter().getName());
+        new JUnit4Adapter().initialSetAdapter();
+        SrcTree srcTree = new SrcTreeGenerator(null, locales).generateWithRuntimeClassPath(
+                srcDir, Charsets.UTF_8);
+        RuntimeSrcTree runtimeSrcTree = new RuntimeSrcTree(srcTree);
+        HookRegistry.globalInitialize(new Config(mkWorkDir("transformedHooks")), runtimeSrcTree);
+        HookRegistry registry = HookRegistry.globalInstance();
+
+        byte[] transformed = new RunResultsGenerateHookSetter(registry).transform(
+                getClass().getClassLoader(), TEST_CLASS_NAME.replace('.', '/'),
+                null, null, compileTestClass(srcDir));
+        assertNotNull(transformed);
+        Map<String, List<int[]>> hookCalls = codeLineHookCalls(transformed);
+        List<int[]> beforeCalls = hookCalls.get("beforeCodeLineHook");
+        List<int[]> afterCalls = hookCalls.get("afterCodeLineHook");
+
+        // 3 statements in the first line and 1 statement in the lines after them
+        int rootMethodId = runtimeSrcTree.getRootMethodIdsByName(TEST_CLASS_NAME, "test")[0];
+        assertEquals(2, beforeCalls.size());
+        assertEquals(2, afterCalls.size());
+        Set<Integer> beforeIds = new HashSet<>(2);
+        for (int[] call : beforeCalls) {
+            assertEquals(rootMethodId, call[0]);
+            beforeIds.add(call[1]);
+        }
+        Set<Integer> afterIds = new HashSet<>(2);
+        for (int[] call : afterCalls) {
+            assertEquals(rootMethodId, call[0]);
+            afterIds.add(call[1]);
+        }
+        assertEquals(2, beforeIds.size());
+        assertEquals(beforeIds, afterIds);
+
+        // each id refers to the first statement of the hooked line
+        Map<Integer, Integer> hookedLineToIndex = new HashMap<>(2);
+        for (int codeLineId : beforeIds) {
+            assertEquals(rootMethodId, registry.getMethodId(codeLineId));
+            hookedLineToIndex.put(
+                    registry.getHookedLine(codeLineId), registry.getCodeBodyIndex(codeLineId));
+        }
+        Map<Integer, Integer> expected = new HashMap<>(2);
+        expected.put(runtimeSrcTree.getStartLine(rootMethodId, 0), 0);
+        expected.put(runtimeSrcTree.getStartLine(rootMethodId, 3), 3);
+        assertEquals(expected, hookedLineToIndex);
+    }
+}
@@ -0,0 +1,117 @@
+package org.sahagin.runlib.runresultsgen;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+import org.sahagin.TestBase;
+import org.sahagin.share.Config;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.runresults.StackLine;
+import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.yaml.YamlConvertException;
+import org.sahagin.share.yaml.YamlUtils;
+
+import static org.junit.Assert.*;
+
+public class ShadowStackTest extends TestBase {
+
+    @Test
+    public void pushAndPop() {
+        ShadowStack stack = new ShadowStack();
+        // more frames than the initial capacity
+        for (int methodId = 0; methodId < 100; methodId++) {
+            stack.push(methodId);
+            assertEquals(methodId + 1, stack.size());
+            assertEquals(methodId, stack.getMethodId(0));
+            assertEquals(-1, stack.getCodeLineId(0));
+        }
+        assertEquals(0, stack.getMethodId(99));
+        for (int methodId = 99; methodId >= 0; methodId--) {
+            stack.pop(methodId);
+            assertEquals(methodId, stack.size());
+        }
+
+        // no frame for the method
+        stack.push(1);
+        stack.pop(2);
+        assertEquals(1, stack.size());
+    }
+
+    // the exit hook pops the frames left by the exception,
+    // and the line left by the exception is overwritten by the next code line hook
+    @Test
+    public void popAfterException() {
+        ShadowStack stack = new ShadowStack();
+        stack.push(1);
+        stack.setCodeLine(1, 10);
+        stack.push(2);
+        stack.setCodeLine(2, 20);
+        // method 3 throws the exception without calling its exit hook
+        stack.push(3);
+        stack.setCodeLine(3, 30);
+        // the exit hook of method 2 is called in the finally block
+        stack.pop(2);
+        assertEquals(1, stack.size());
+        assertEquals(1, stack.getMethodId(0));
+        assertTrue(stack.isExecuting(1, 10));
+
+        // method 1 catches the exception and executes the next line
+        stack.setCodeLine(1, 11);
+        assertEquals(1, stack.size());
+        assertTrue(stack.isExecuting(1, 11));
+        assertFalse(stack.isExecuting(1, 10));
+    }
+
+    // the frame of the method without enter hook is pushed by its first code line
+    @Test
+    public void setCodeLinePushesFrame() {
+        ShadowStack stack = new ShadowStack();
+        stack.setCodeLine(5, 50);
+        assertEquals(1, stack.size());
+        assertEquals(5, stack.getMethodId(0));
+        assertEquals(50, stack.getCodeLineId(0));
+
+        stack.push(6);
+        stack.setCodeLine(5, 51);
+        assertEquals(3, stack.size());
+        assertEquals(5, stack.getMethodId(0));
+        assertEquals(51, stack.getCodeLineId(0));
+        assertEquals(6, stack.getMethodId(1));
+        assertEquals(-1, stack.getCodeLineId(1));
+        assertEquals(50, stack.getCodeLineId(2));
+
+        stack.setLineStartTime(123L);
+        assertEquals(123L, stack.getLineStartTime());
+    }
+
+    // the frames without code line are skipped,
+    // and the line of each frame is the hooked line of its code line
+    @Test
+    public void stackLines() throws YamlConvertException, IllegalDataStructureException {
+        SrcTree srcTree = new SrcTree();
+        srcTree.fromYamlObject(YamlUtils.load(new File(testResourceRoot(),
+                "org/sahagin/share/srctree/SrcTreeTestRes/yamlConversion/srcTree")));
+        srcTree.resolveKeyReference();
+        RuntimeSrcTree runtimeSrcTree = new RuntimeSrcTree(srcTree);
+        HookRegistry.globalInitialize(new Config(mkWorkDir()), runtimeSrcTree);
+        HookRegistry registry = HookRegistry.globalInstance();
+        int callerLineId = registry.registerCodeLine(0, 15, 2);
+        int calleeLineId = registry.registerCodeLine(2, 30, 0);
+
+        ShadowStack stack = new ShadowStack();
+        stack.push(0);
+        stack.setCodeLine(0, callerLineId);
+        stack.push(1);
+        stack.push(2);
+        stack.setCodeLine(2, calleeLineId);
+        List<StackLine> stackLines = StackLineUtils.getStackLines(runtimeSrcTree, registry, stack);
+        assertEquals(2, stackLines.size());
+        assertEquals(runtimeSrcTree.getMethodKey(2), stackLines.get(0).getMethodKey());
+        assertEquals(0, stackLines.get(0).getCodeBodyIndex());
+        assertEquals(30, stackLines.get(0).getLine());
+        assertEquals(runtimeSrcTree.getMethodKey(0), stackLines.get(1).getMethodKey());
+        assertEquals(2, stackLines.get(1).getCodeBodyIndex());
+        assertEquals(15, stackLines.get(1).getLine());
+    }
+}
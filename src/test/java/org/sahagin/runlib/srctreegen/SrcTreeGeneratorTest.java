@@ -1,12 +1,30 @@
 package org.sahagin.runlib.srctreegen;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
 import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.sahagin.TestBase;
 import org.sahagin.runlib.additionaltestdoc.AdditionalTestDocs;
+import org.sahagin.runlib.external.CaptureStyle;
 import org.sahagin.runlib.external.Locale;
 import org.sahagin.runlib.external.adapter.Adapter;
 import org.sahagin.runlib.external.adapter.AdapterContainer;
@@ -15,36 +33,60 @@ import org.sahagin.runlib.external.adapter.javasystem.JavaSystemAdapter;
 import org.sahagin.runlib.external.adapter.junit3.JUnit3Adapter;
 import org.sahagin.runlib.external.adapter.junit4.JUnit4Adapter;
 import org.sahagin.runlib.external.adapter.testng.TestNGAdapter;
+import org.sahagin.runlib.runresultsgen.RuntimeSrcTree;
 import org.sahagin.share.AcceptableLocales;
+import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.IllegalTestScriptException;
 import org.sahagin.share.srctree.SrcTree;
+import org.sahagin.share.srctree.SrcTreeSnapshot;
+import org.sahagin.share.srctree.TestMethod;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.SubMethodInvoke;
 import org.sahagin.share.yaml.YamlUtils;
 
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import static org.junit.Assert.*;
+
 public class SrcTreeGeneratorTest extends TestBase {
     private static final JUnit3Adapter JUNIT3 = new JUnit3Adapter();
     private static final JUnit4Adapter JUNIT4 = new JUnit4Adapter();
     private static final TestNGAdapter TESTNG = new TestNGAdapter();
 
-    private void testMain(String subDirName,
+    private SrcTreeGenerator generator(
             AdditionalTestDocs additionalTestDocs, Locale userLocale, Adapter adapter) {
         // set JavaRootMethodAdapter
         JavaAdapterContainer.globalInitialize(
                 AcceptableLocales.getInstance(null), adapter.getName());
         adapter.initialSetAdapter();
-        File testSrcDir = new File(testResourceDir(subDirName), "input");
         AcceptableLocales locales = AcceptableLocales.getInstance(userLocale);
-        SrcTreeGenerator gen = new SrcTreeGenerator(additionalTestDocs, locales);
+        return new SrcTreeGenerator(additionalTestDocs, locales);
+    }
+
+    private void testMain(String subDirName,
+            AdditionalTestDocs additionalTestDocs, Locale userLocale, Adapter adapter) {
+        testMain(subDirName, "srcTree", generator(additionalTestDocs, userLocale, adapter));
+    }
+
+    private void testMain(String subDirName, String expectedFileName, SrcTreeGenerator gen) {
+        File testSrcDir = new File(testResourceDir(subDirName), "input");
         SrcTree srcTree;
         try {
             srcTree = gen.generateWithRuntimeClassPath(testSrcDir, Charsets.UTF_8);
         } catch (IllegalTestScriptException e) {
             throw new RuntimeException(e);
         }
+        assertSrcTree(subDirName, expectedFileName, srcTree);
+    }
+
+    private void assertSrcTree(String subDirName, String expectedFileName, SrcTree srcTree) {
         // To get the same order srcTree YAML regardless of the JDT or JDK implementation,
         // sort before generating YAML file.
         srcTree.sort();
         Map<String, Object> actualYamlObj = srcTree.toYamlObject();
-        File expectedSrcTreeFile = new File(testResourceDir(subDirName), "srcTree");
+        File expectedSrcTreeFile = new File(testResourceDir(subDirName), expectedFileName);
         if (!expectedSrcTreeFile.exists()) {
             // output actual srcTree to use as expected srcTree
             YamlUtils.dump(actualYamlObj, new File(mkWorkDir(subDirName), "actualSrcTree"));
@@ -75,6 +117,364 @@ public class SrcTreeGeneratorTest extends TestBase {
         testMain("variousData", null, null, JUNIT4);
     }
 
+    // parallel parsing must generate the same srcTree as variousData
+    @Test
+    public void parallelParse() {
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        gen.setParseThreadCount(3);
+        testMain("variousData", "srcTree", gen);
+    }
+
+    // batch parsing must generate the same srcTree as variousData
+    @Test
+    public void batchParse() {
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        gen.setParseBatchSize(1);
+        testMain("variousData", "srcTree", gen);
+    }
+
+    // TestHelper is not parsed but the srcTree must be the same as the no prefilter case
+    @Test
+    public void prefilter() {
+        testMain("prefilter", null, null, JUNIT4);
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        gen.setPrefilter(true);
+        testMain("prefilter", "srcTree", gen);
+    }
+
+    // same srcTree must be generated with the binding cache
+    @Test
+    public void bindingCache() {
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        testMain("variousData", "srcTree", gen);
+        assertTrue(gen.getBindingCacheHitCount() > 0);
+        assertTrue(gen.getBindingCacheMissCount() > 0);
+    }
+
+    @Test
+    public void pruneUnreachable() {
+        SrcTreeGenerator pruneGen = generator(null, null, JUNIT4);
+        pruneGen.setPrunesUnreachable(true);
+        testMain("pruneUnreachable", "srcTree", pruneGen);
+        SrcTreeGenerator removeGen = generator(null, null, JUNIT4);
+        removeGen.setRemovesUnreachable(true);
+        testMain("pruneUnreachable", "removedSrcTree", removeGen);
+    }
+
+    // the same srcTree must be generated with and without prefilter,
+    // and by applying the selection to the srcTree of all tests
+    @Test
+    public void testSelection() throws IllegalTestScriptException {
+        TestSelection selection = TestSelection.parse("TestMain#selected");
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        gen.setTestSelection(selection);
+        testMain("testSelection", "srcTree", gen);
+        SrcTreeGenerator prefilterGen = generator(null, null, JUNIT4);
+        prefilterGen.setTestSelection(selection);
+        prefilterGen.setPrefilter(true);
+        testMain("testSelection", "srcTree", prefilterGen);
+
+        SrcTree allSrcTree = generator(null, null, JUNIT4).generateWithRuntimeClassPath(
+                new File(testResourceDir("testSelection"), "input"), Charsets.UTF_8);
+        gen.applyTestSelection(allSrcTree);
+        assertSrcTree("testSelection", "srcTree", allSrcTree);
+    }
+
+    // multiple source root directories and excluded directory
+    @Test
+    public void srcFileFilter() throws IllegalTestScriptException {
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        gen.setSrcFileFilter(Arrays.<String>asList(), Arrays.asList("generated/**"));
+        List<File> srcRootDirs = Arrays.asList(new File(testResourceDir("srcFileFilter"), "input"),
+                new File(testResourceDir("srcFileFilter"), "input2"));
+        assertSrcTree("srcFileFilter", "srcTree",
+                gen.generateWithRuntimeClassPath(srcRootDirs, Charsets.UTF_8));
+    }
+
+    // the directory links must be followed, and the links to the ancestor directories must not
+    @Test
+    public void srcFileFinderSymbolicLink() throws IOException {
+        clearWorkDir("srcFileFinderSymbolicLink");
+        File srcRootDir = new File(mkWorkDir("srcFileFinderSymbolicLink"), "src");
+        FileUtils.copyDirectory(new File(testResourceDir("srcFileFilter"), "input"), srcRootDir);
+        File linkedDir = new File(testResourceDir("srcFileFilter"), "input2").getAbsoluteFile();
+        Files.createSymbolicLink(new File(srcRootDir, "linked").toPath(), linkedDir.toPath());
+        Files.createSymbolicLink(new File(srcRootDir, "generated/loop").toPath(),
+                srcRootDir.getAbsoluteFile().toPath());
+
+        SrcFileFinder finder = new SrcFileFinder(Arrays.asList(srcRootDir));
+        finder.setExcludes(Arrays.asList("generated/**"));
+        String rootPath = srcRootDir.getAbsolutePath();
+        assertEquals(Arrays.asList(
+                new File(rootPath, "TestMain.java").getPath(),
+                new File(rootPath, "linked/TestPage.java").getPath()), finder.find());
+
+        finder.setExcludes(Arrays.<String>asList());
+        assertEquals(Arrays.asList(
+                new File(rootPath, "TestMain.java").getPath(),
+                new File(rootPath, "generated/GeneratedTest.java").getPath(),
+                new File(rootPath, "linked/TestPage.java").getPath()), finder.find());
+    }
+
+    private void assertSameSrcTree(SrcTree expected, SrcTree actual) {
+        expected.sort();
+        actual.sort();
+        assertYamlEquals(expected.toYamlObject(), actual.toYamlObject());
+    }
+
+    // copies the prefilter input to workDir/src and returns the package directory
+    private File copyPrefilterInput(File workDir) throws IOException {
+        // keep the directory structure which matches to the package name
+        File packageDir = new File(workDir,
+                "src/org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/prefilter/input");
+        FileUtils.copyDirectory(new File(testResourceDir("prefilter"), "input"), packageDir);
+        return packageDir;
+    }
+
+    // generation with the cache must generate the same srcTree as the full generation
+    // after changing, adding and deleting source files
+    @Test
+    public void srcTreeCache() throws IllegalTestScriptException, IOException {
+        clearWorkDir("srcTreeCache");
+        File workDir = mkWorkDir("srcTreeCache");
+        File srcRootDir = new File(workDir, "src");
+        File packageDir = copyPrefilterInput(workDir);
+        File cacheDir = new File(workDir, "cache");
+
+        // TestHelper is skipped by the prefilter and only its declared types are cached
+        SrcTreeGenerator cacheGen = generator(null, null, JUNIT4);
+        cacheGen.setCacheDir(cacheDir);
+        cacheGen.setPrefilter(true);
+        SrcTreeGenerator fullGen = generator(null, null, JUNIT4);
+
+        // all files are parsed, then all files are loaded from the cache
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                cacheGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8));
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                cacheGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8));
+
+        // changed file and TestMain which depends on it
+        File pageFile = new File(packageDir, "TestPage.java");
+        String pageSrc = FileUtils.readFileToString(pageFile, Charsets.UTF_8);
+        FileUtils.writeStringToFile(pageFile,
+                pageSrc.replace("Doc:pageMethod:{arg}", "Doc:changed:{arg}"), Charsets.UTF_8);
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                cacheGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8));
+
+        // changed file which is skipped by the prefilter
+        File helperFile = new File(packageDir, "TestHelper.java");
+        String helperSrc = FileUtils.readFileToString(helperFile, Charsets.UTF_8);
+        FileUtils.writeStringToFile(helperFile, helperSrc.replace(
+                "public static class Inner {}", "public static class Inner2 {}"), Charsets.UTF_8);
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                cacheGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8));
+
+        // added file which the cached TestMain refers to
+        File mainFile = new File(packageDir, "TestMain.java");
+        String mainSrc = FileUtils.readFileToString(mainFile, Charsets.UTF_8);
+        FileUtils.writeStringToFile(new File(packageDir, "TestPage2.java"), String.format(
+                "package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.prefilter.input;%n%n"
+                + "import org.sahagin.runlib.external.TestDoc;%n%n"
+                + "public class TestPage2 {%n%n"
+                + "    @TestDoc(\"Doc:page2Method\")%n"
+                + "    public static void page2Method() {}%n"
+                + "}%n"), Charsets.UTF_8);
+        FileUtils.writeStringToFile(mainFile, mainSrc.replace(
+                "page.pageMethod(\"abc\");", "page.pageMethod(\"abc\");TestPage2.page2Method();"),
+                Charsets.UTF_8);
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                cacheGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8));
+
+        // deleted file
+        FileUtils.forceDelete(new File(packageDir, "TestPage2.java"));
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                cacheGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8));
+    }
+
+    private List<String> runtimeClassPath() {
+        return Arrays.asList(
+                System.getProperty("java.class.path").split(Pattern.quote(File.pathSeparator)));
+    }
+
+    // writes the jar which only has the manifest with Class-Path attribute
+    // such as the booter jar of Maven surefire plug-in
+    private void writeManifestOnlyJar(File jarFile, List<String> classPathEntries)
+            throws IOException {
+        StringBuilder classPath = new StringBuilder(4096);
+        for (String classPathEntry : classPathEntries) {
+            if (classPath.length() > 0) {
+                classPath.append(" ");
+            }
+            classPath.append("file:").append(new File(classPathEntry).getAbsolutePath());
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath.toString());
+        jarFile.getParentFile().mkdirs();
+        new JarOutputStream(new FileOutputStream(jarFile), manifest).close();
+    }
+
+    // generates srcTree with the java.class.path property replaced by classPath
+    private SrcTree generateWithClassPath(SrcTreeGenerator gen, File srcRootDir, String classPath)
+            throws IllegalTestScriptException {
+        String orgClassPath = System.getProperty("java.class.path");
+        System.setProperty("java.class.path", classPath);
+        try {
+            return gen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8);
+        } finally {
+            System.setProperty("java.class.path", orgClassPath);
+        }
+    }
+
+    // the cache must be reused even if the manifest-only jar in the class path
+    // has the different name for each run as the booter jar of Maven surefire plug-in
+    @Test
+    public void srcTreeCacheManifestOnlyJar() throws IllegalTestScriptException, IOException {
+        clearWorkDir("srcTreeCacheManifestOnlyJar");
+        File workDir = mkWorkDir("srcTreeCacheManifestOnlyJar");
+        File srcRootDir = new File(workDir, "src");
+        int srcFileCount = copyPrefilterInput(workDir).listFiles().length;
+        File firstJar = new File(workDir, "booter1/surefirebooter123.jar");
+        writeManifestOnlyJar(firstJar, runtimeClassPath());
+        File secondJar = new File(workDir, "booter2/surefirebooter456.jar");
+        writeManifestOnlyJar(secondJar, runtimeClassPath());
+        SrcTreeGenerator cacheGen = generator(null, null, JUNIT4);
+        cacheGen.setCacheDir(new File(workDir, "cache"));
+        SrcTreeGenerator fullGen = generator(null, null, JUNIT4);
+
+        SrcTree firstSrcTree = generateWithClassPath(cacheGen, srcRootDir, firstJar.getPath());
+        assertEquals(0, cacheGen.getCacheLoadedFileCount());
+        assertSameSrcTree(fullGen.generateWithRuntimeClassPath(srcRootDir, Charsets.UTF_8),
+                firstSrcTree);
+        SrcTree secondSrcTree = generateWithClassPath(cacheGen, srcRootDir, secondJar.getPath());
+        assertEquals(srcFileCount, cacheGen.getCacheLoadedFileCount());
+        assertSameSrcTree(firstSrcTree, secondSrcTree);
+    }
+
+    // returns the code of the first line of the root method, or null if not found
+    private Code firstRootCode(SrcTree srcTree, String rootMethodName) {
+        for (TestMethod method : srcTree.getRootMethodTable().getTestMethods()) {
+            if (method.getSimpleName().equals(rootMethodName)) {
+                return method.getCodeBody().get(0).getCode();
+            }
+        }
+        return null;
+    }
+
+    // The entries in the jar manifest are added only once,
+    // and the class path directory is added without its package sub directories.
+    // LibPage in the nested package of the class directory must be resolved
+    // to find pageMethod of its super class
+    @Test
+    public void classPathEntries() throws IllegalTestScriptException, IOException {
+        clearWorkDir("classPathEntries");
+        File workDir = mkWorkDir("classPathEntries");
+        File srcRootDir = new File(workDir, "src");
+        // keep the directory structure which matches to the package name
+        FileUtils.copyDirectory(new File(testResourceDir("classPath"), "input"), new File(srcRootDir,
+                "org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/classPath/input"));
+        File classDir = mkWorkDir("classPathEntries/classes");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            // only LibPage is compiled to the class directory.
+            // The class file version must be the one which JDT can read
+            List<String> options = Arrays.asList("-d", classDir.getPath(),
+                    "-source", "1.7", "-target", "1.7",
+                    "-cp", System.getProperty("java.class.path"),
+                    "-sourcepath", srcRootDir.getPath(), "-implicit:none", "-proc:none");
+            assertTrue(compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjects(
+                            new File(testResourceDir("classPath"), "lib/sub/LibPage.java"))).call());
+        } finally {
+            fileManager.close();
+        }
+        File libPageDir = new File(classDir,
+                "org/sahagin/runlib/srctreegen/SrcTreeGeneratorTestRes/classPath/lib/sub");
+        assertTrue(new File(libPageDir, "LibPage.class").exists());
+
+        // the manifest refers to the class directory which is also in java.class.path
+        File booterJar = new File(workDir, "booter/surefirebooter.jar");
+        List<String> manifestEntries = new ArrayList<>(runtimeClassPath().size() + 1);
+        manifestEntries.add(classDir.getPath());
+        manifestEntries.addAll(runtimeClassPath());
+        writeManifestOnlyJar(booterJar, manifestEntries);
+        String classPath = booterJar.getPath() + File.pathSeparator + classDir.getPath();
+        SrcTreeGenerator gen = generator(null, null, JUNIT4);
+        String orgClassPath = System.getProperty("java.class.path");
+        List<String> entries;
+        System.setProperty("java.class.path", classPath);
+        try {
+            entries = Arrays.asList(gen.runtimeClassPathEntries());
+        } finally {
+            System.setProperty("java.class.path", orgClassPath);
+        }
+        assertEquals(booterJar.getAbsolutePath(), entries.get(0));
+        assertEquals(classDir.getAbsolutePath(), entries.get(1));
+        assertEquals(1, Collections.frequency(entries, classDir.getAbsolutePath()));
+        for (String entry : entries) {
+            assertFalse(entry, entry.startsWith(classDir.getAbsolutePath() + File.separator));
+        }
+        for (String runtimeEntry : runtimeClassPath()) {
+            if (runtimeEntry.endsWith(".jar")) {
+                assertTrue(runtimeEntry, entries.contains(new File(runtimeEntry).getAbsolutePath()));
+            }
+        }
+
+        Code code = firstRootCode(generateWithClassPath(gen, srcRootDir, classPath), "test");
+        assertTrue(code instanceof SubMethodInvoke);
+        assertEquals("pageMethod", ((SubMethodInvoke) code).getSubMethod().getSimpleName());
+
+        // the manifest is read again when the jar is updated,
+        // and LibPage cannot be resolved without the class directory
+        writeManifestOnlyJar(booterJar, runtimeClassPath());
+        assertTrue(booterJar.setLastModified(booterJar.lastModified() - 10000));
+        System.setProperty("java.class.path", booterJar.getPath());
+        try {
+            entries = Arrays.asList(gen.runtimeClassPathEntries());
+        } finally {
+            System.setProperty("java.class.path", orgClassPath);
+        }
+        assertFalse(entries.contains(classDir.getAbsolutePath()));
+        code = firstRootCode(
+                generateWithClassPath(gen, srcRootDir, booterJar.getPath()), "test");
+        assertFalse(code instanceof SubMethodInvoke);
+    }
+
+    // javac front end must generate the same srcTree as variousData
+    // except for the original code format
+    @Test
+    public void javacCollector() throws IOException {
+        final JavacSrcTreeCollector collector;
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            Collection<File> srcFiles = FileUtils.listFiles(
+                    new File(testResourceDir("variousData"), "input"), new String[] {"java"}, true);
+            List<String> options = Arrays.asList("-d", mkWorkDir("javacCollector").getPath(),
+                    "-cp", System.getProperty("java.class.path"), "-proc:none");
+            final JavacTask task = (JavacTask) compiler.getTask(null, fileManager, null, options,
+                    null, fileManager.getJavaFileObjectsFromFiles(srcFiles));
+            collector = new JavacSrcTreeCollector(generator(null, null, JUNIT4), task, "jUnit4");
+            task.addTaskListener(new TaskListener() {
+
+                @Override
+                public void started(TaskEvent e) {}
+
+                @Override
+                public void finished(TaskEvent e) {
+                    if (e.getKind() == TaskEvent.Kind.ANALYZE && e.getTypeElement() != null) {
+                        collector.collect(e.getCompilationUnit(), e.getTypeElement());
+                    }
+                }
+            });
+            assertTrue(task.call());
+        } finally {
+            fileManager.close();
+        }
+        assertSrcTree("variousData", "javacSrcTree", collector.generate());
+    }
+
     @Test
     public void innerClass() {
         testMain("innerClass", null, null, JUNIT4);
@@ -155,6 +555,43 @@ public class SrcTreeGeneratorTest extends TestBase {
         testMain("testStepLabel", null, null, JUNIT4);
     }
 
+    // runtime projection must keep code line ranges, TestStepLabel and capture information
+    // both for the projection from srcTree and the one lazily read from the snapshot
+    @Test
+    public void runtimeSrcTree() throws IllegalTestScriptException, IllegalDataStructureException {
+        SrcTree srcTree = generator(null, null, JUNIT4).generateWithRuntimeClassPath(
+                new File(testResourceDir("testStepLabel"), "input"), Charsets.UTF_8);
+        assertRuntimeSrcTree(new RuntimeSrcTree(srcTree));
+        File snapshotFile = new File(mkWorkDir("runtimeSrcTree"), "srcTree.bin");
+        SrcTreeSnapshot.write(srcTree, snapshotFile);
+        assertRuntimeSrcTree(new RuntimeSrcTree(SrcTreeSnapshot.open(snapshotFile)));
+    }
+
+    private void assertRuntimeSrcTree(RuntimeSrcTree runtimeSrcTree) {
+        String classQualifiedName
+        = "org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.testStepLabel.input.TestMain";
+
+        int[] rootIds = runtimeSrcTree.getRootMethodIdsByName(classQualifiedName, "testMethod");
+        assertEquals(1, rootIds.length);
+        int rootId = rootIds[0];
+        assertTrue(runtimeSrcTree.isRootMethod(rootId));
+        assertEquals(rootId, runtimeSrcTree.getMethodIdByKey(runtimeSrcTree.getMethodKey(rootId)));
+        assertEquals(5, runtimeSrcTree.getCodeBodySize(rootId));
+        assertTrue(runtimeSrcTree.isTestStepLabel(rootId, 0));
+        assertFalse(runtimeSrcTree.isTestStepLabel(rootId, 1));
+        assertFalse(runtimeSrcTree.capturesThisLine(rootId, 1));
+        assertTrue(runtimeSrcTree.capturesThisLine(rootId, 3));
+        assertEquals(3, runtimeSrcTree.getFirstCodeBodyIndexAt(rootId, 16));
+        assertEquals(16, runtimeSrcTree.getStartLine(rootId, 3));
+        assertEquals(-1, runtimeSrcTree.getFirstCodeBodyIndexAt(rootId, 100));
+
+        int[] subIds = runtimeSrcTree.getSubMethodIdsByName(classQualifiedName, "subMethod");
+        assertEquals(1, subIds.length);
+        assertFalse(runtimeSrcTree.isRootMethod(subIds[0]));
+        assertEquals(CaptureStyle.THIS_LINE, runtimeSrcTree.getCaptureStyle(subIds[0]));
+        assertEquals(0, runtimeSrcTree.getRootMethodIdsByName(classQualifiedName, "subMethod").length);
+    }
+
     @Test
     public void assertTest() {
         AcceptableLocales locales = AcceptableLocales.getInstance(Locale.EN_US);
@@ -1,13 +1,19 @@
 package org.sahagin.share.runresults;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 import org.sahagin.TestBase;
+import org.sahagin.share.IllegalDataStructureException;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlUtils;
 
+import static org.junit.Assert.*;
+
 public class RootMethodRunResultTest extends TestBase {
 
     // convert YAML -> rootMethodRunResult -> YAML, then compare 2 YAML
@@ -20,4 +26,95 @@ public class RootMethodRunResultTest extends TestBase {
         Map<String, Object> toYamlObj = result.toYamlObject();
         assertYamlEquals(fromYamlObj, toYamlObj);
     }
+
+    // YAML stream -> rootMethodRunResult -> YAML stream must be the same as the YAML object conversion
+    @Test
+    public void yamlStreamConversion() throws YamlConvertException {
+        File fromYamlFile = new File(testResourceDir("yamlConversion"), "rootMethodRunResult");
+        Map<String, Object> fromYamlObj = YamlUtils.load(fromYamlFile);
+        RootMethodRunResult result = new RootMethodRunResult();
+        YamlUtils.loadStream(fromYamlFile, result);
+        assertYamlEquals(fromYamlObj, result.toYamlObject());
+        File toYamlFile = new File(mkWorkDir("yamlStreamConversion"), "rootMethodRunResult");
+        YamlUtils.dumpStream(result, toYamlFile);
+        assertYamlEquals(fromYamlObj, YamlUtils.load(toYamlFile));
+    }
+
+    // records must be read by scanning before the index is written, and by the index after that
+    @Test
+    public void segmentConversion()
+            throws YamlConvertException, IllegalDataStructureException, IOException {
+        File fromYamlFile = new File(testResourceDir("yamlConversion"), "rootMethodRunResult");
+        Map<String, Object> fromYamlObj = YamlUtils.load(fromYamlFile);
+        RootMethodRunResult result = new RootMethodRunResult();
+        result.fromYamlObject(fromYamlObj);
+        File segmentFile = new File(mkWorkDir("segmentConversion"), "runResults.segment");
+        RunResultsSegmentWriter writer = new RunResultsSegmentWriter(segmentFile);
+        writer.append(result);
+
+        RunResultsSegmentReader unclosedReader = new RunResultsSegmentReader(segmentFile);
+        assertEquals(1, unclosedReader.getAll().size());
+        assertYamlEquals(fromYamlObj, unclosedReader.getAll().get(0).toYamlObject());
+
+        writer.close();
+        RunResultsSegmentReader reader = new RunResultsSegmentReader(segmentFile);
+        assertYamlEquals(fromYamlObj, reader.get(result.getRootMethodKey()).toYamlObject());
+        assertNull(reader.get("noSuchKey"));
+    }
+
+    private RootMethodRunResult runResult(String rootMethodKey, int executionTime) {
+        RootMethodRunResult result = new RootMethodRunResult();
+        result.setRootMethodKey(rootMethodKey);
+        result.setExecutionTime(executionTime);
+        return result;
+    }
+
+    // the latest appended record must win when the same root method is found in multiple segments,
+    // regardless of the order of the given segment files and the order the segments are created
+    @Test
+    public void segmentDuplicatedKeys() throws IllegalDataStructureException, IOException {
+        clearWorkDir("segmentDuplicatedKeys");
+        File segmentDir = mkWorkDir("segmentDuplicatedKeys");
+        File firstFile = RunResultsSegmentWriter.newSegmentFile(segmentDir);
+        RunResultsSegmentWriter firstWriter = new RunResultsSegmentWriter(firstFile);
+        firstWriter.append(runResult("test.Test.test1-void", 1));
+        firstWriter.append(runResult("test.Test.test2-void", 2));
+        firstWriter.append(runResult("test.Test.test1-void", 3));
+        File secondFile = RunResultsSegmentWriter.newSegmentFile(segmentDir);
+        RunResultsSegmentWriter secondWriter = new RunResultsSegmentWriter(secondFile);
+        secondWriter.append(runResult("test.Test.test1-void", 4));
+        secondWriter.append(runResult("test.Test.test3-void", 5));
+        // the segment created first is appended after the segment created later,
+        // as the segments of the different threads are
+        firstWriter.append(runResult("test.Test.test3-void", 6));
+        firstWriter.close();
+        secondWriter.close();
+        assertTrue(firstFile.getName().compareTo(secondFile.getName()) < 0);
+
+        List<RootMethodRunResult> results = RunResultsSegmentReader.readAll(
+                Arrays.asList(secondFile.toPath(), firstFile.toPath()));
+        assertEquals(3, results.size());
+        assertEquals("test.Test.test1-void", results.get(0).getRootMethodKey());
+        assertEquals(4, results.get(0).getExecutionTime());
+        assertEquals("test.Test.test2-void", results.get(1).getRootMethodKey());
+        assertEquals(2, results.get(1).getExecutionTime());
+        assertEquals("test.Test.test3-void", results.get(2).getRootMethodKey());
+        assertEquals(6, results.get(2).getExecutionTime());
+    }
+
+    // the record appended after close must be ignored without breaking the closed segment
+    @Test
+    public void segmentAppendAfterClose() throws IllegalDataStructureException, IOException {
+        File segmentFile = new File(mkWorkDir("segmentAppendAfterClose"), "runResults.segment");
+        RunResultsSegmentWriter writer = new RunResultsSegmentWriter(segmentFile);
+        writer.append(runResult("test.Test.test1-void", 1));
+        writer.close();
+        writer.append(runResult("test.Test.test2-void", 2));
+        writer.close();
+
+        RunResultsSegmentReader reader = new RunResultsSegmentReader(segmentFile);
+        assertEquals(1, reader.getAll().size());
+        assertEquals(1, reader.get("test.Test.test1-void").getExecutionTime());
+        assertNull(reader.get("test.Test.test2-void"));
+    }
 }
@@ -1,13 +1,29 @@
 package org.sahagin.share.srctree;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 import org.sahagin.TestBase;
+import org.sahagin.share.CommonPath;
+import org.sahagin.share.IllegalDataStructureException;
+import org.sahagin.share.IntermediateDataArchive;
+import org.sahagin.share.srctree.code.ClassInstance;
+import org.sahagin.share.srctree.code.Code;
+import org.sahagin.share.srctree.code.CodeLine;
+import org.sahagin.share.srctree.code.Field;
+import org.sahagin.share.srctree.code.SubMethodInvoke;
+import org.sahagin.share.srctree.code.TestStep;
+import org.sahagin.share.srctree.code.VarAssign;
 import org.sahagin.share.yaml.YamlConvertException;
 import org.sahagin.share.yaml.YamlUtils;
 
+import static org.junit.Assert.*;
+
 public class SrcTreeTest extends TestBase {
 
     // convert YAML -> srcTree -> YAML, then compare 2 YAML
@@ -20,4 +36,164 @@ public class SrcTreeTest extends TestBase {
         Map<String, Object> toYamlObj = srcTree.toYamlObject();
         assertYamlEquals(fromYamlObj, toYamlObj);
     }
+
+    // YAML stream -> srcTree -> YAML stream must be the same as the YAML object conversion
+    @Test
+    public void yamlStreamConversion() throws YamlConvertException {
+        File fromYamlFile = new File(testResourceDir("yamlConversion"), "srcTree");
+        Map<String, Object> fromYamlObj = YamlUtils.load(fromYamlFile);
+        SrcTree srcTree = new SrcTree();
+        YamlUtils.loadStream(fromYamlFile, srcTree);
+        assertYamlEquals(fromYamlObj, srcTree.toYamlObject());
+        File toYamlFile = new File(mkWorkDir("yamlStreamConversion"), "srcTree");
+        YamlUtils.dumpStream(srcTree, toYamlFile);
+        assertYamlEquals(fromYamlObj, YamlUtils.load(toYamlFile));
+    }
+
+    @Test
+    public void snapshotConversion() throws YamlConvertException, IllegalDataStructureException {
+        File fromYamlFile = new File(testResourceDir("yamlConversion"), "srcTree");
+        Map<String, Object> fromYamlObj = YamlUtils.load(fromYamlFile);
+        SrcTree srcTree = new SrcTree();
+        srcTree.fromYamlObject(fromYamlObj);
+        File snapshotFile = new File(mkWorkDir("snapshotConversion"), "srcTree.bin");
+        SrcTreeSnapshot.write(srcTree, snapshotFile);
+        assertYamlEquals(fromYamlObj, SrcTreeSnapshot.read(snapshotFile).toYamlObject());
+    }
+
+    // srcTree packed to the archive must be read through the zip file system
+    @Test
+    public void archiveConversion() throws YamlConvertException, IllegalDataStructureException {
+        File fromYamlFile = new File(testResourceDir("yamlConversion"), "srcTree");
+        Map<String, Object> fromYamlObj = YamlUtils.load(fromYamlFile);
+        SrcTree srcTree = new SrcTree();
+        srcTree.fromYamlObject(fromYamlObj);
+        File workDir = mkWorkDir("archiveConversion");
+        for (boolean binary : new boolean[] {false, true}) {
+            File dataDir = new File(workDir, "data-" + binary);
+            SrcTreeFiles.dump(srcTree, dataDir, binary);
+            File archiveFile = CommonPath.intermediateDataArchiveFile(dataDir);
+            IntermediateDataArchive.pack(dataDir, archiveFile);
+            assertTrue(IntermediateDataArchive.isArchive(archiveFile));
+            assertEquals(dataDir, IntermediateDataArchive.packedDir(archiveFile));
+            try (FileSystem archive = IntermediateDataArchive.open(archiveFile)) {
+                assertYamlEquals(fromYamlObj,
+                        SrcTreeFiles.load(archive.getPath("/")).toYamlObject());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // merging the same srcTree must not add any class, method, field or key
+    @Test
+    public void mergeSameTree() throws YamlConvertException {
+        File yamlFile = new File(testResourceDir("yamlConversion"), "srcTree");
+        Map<String, Object> yamlObj = YamlUtils.load(yamlFile);
+        SrcTree srcTree = new SrcTree();
+        srcTree.fromYamlObject(yamlObj);
+        SrcTree sameSrcTree = new SrcTree();
+        sameSrcTree.fromYamlObject(YamlUtils.load(yamlFile));
+        srcTree.merge(sameSrcTree);
+        assertYamlEquals(yamlObj, srcTree.toYamlObject());
+    }
+
+    // lookup result must follow the table modification through the table list
+    @Test
+    public void tableIndex() throws YamlConvertException, IllegalDataStructureException {
+        File fromYamlFile = new File(testResourceDir("yamlConversion"), "srcTree");
+        SrcTree srcTree = new SrcTree();
+        srcTree.fromYamlObject(YamlUtils.load(fromYamlFile));
+        srcTree.resolveKeyReference();
+        TestMethodTable table = srcTree.getSubMethodTable();
+        assertFalse(table.isEmpty());
+        for (TestMethod method : table.getTestMethods()) {
+            assertSame(method, table.getByKey(method.getKey()));
+            assertTrue(table.getByName(method.getTestClass().getQualifiedName(),
+                    method.getSimpleName()).contains(method));
+        }
+
+        TestMethod removed = table.getTestMethods().remove(0);
+        assertNull(table.getByKey(removed.getKey()));
+        assertFalse(table.getByName(removed.getTestClass().getQualifiedName(),
+                removed.getSimpleName()).contains(removed));
+        table.addTestMethod(removed);
+        assertSame(removed, table.getByKey(removed.getKey()));
+        assertTrue(table.getByName(removed.getTestClass().getQualifiedName(),
+                removed.getSimpleName()).contains(removed));
+
+        TestClass testClass = removed.getTestClass();
+        assertSame(testClass, srcTree.getTestClassByKey(testClass.getKey(), false));
+    }
+
+    private void addResolvedReferences(Code code, List<Object> references) {
+        if (code instanceof SubMethodInvoke) {
+            SubMethodInvoke invoke = (SubMethodInvoke) code;
+            references.add(invoke.getSubMethod());
+            addResolvedReferences(invoke.getThisInstance(), references);
+            for (Code arg : invoke.getArgs()) {
+                addResolvedReferences(arg, references);
+            }
+        } else if (code instanceof Field) {
+            references.add(((Field) code).getField());
+            addResolvedReferences(((Field) code).getThisInstance(), references);
+        } else if (code instanceof VarAssign) {
+            addResolvedReferences(((VarAssign) code).getVariable(), references);
+            addResolvedReferences(((VarAssign) code).getValue(), references);
+        } else if (code instanceof ClassInstance) {
+            references.add(((ClassInstance) code).getTestClass());
+        } else if (code instanceof TestStep) {
+            for (CodeLine step : ((TestStep) code).getStepBody()) {
+                addResolvedReferences(step.getCode(), references);
+            }
+        }
+    }
+
+    // the keys of the objects referred from the methods and the codes of the methods
+    private List<String> resolvedReferenceKeys(SrcTree srcTree) {
+        List<Object> references = new ArrayList<>(256);
+        List<TestMethod> methods = new ArrayList<>(srcTree.getRootMethodTable().getTestMethods());
+        methods.addAll(srcTree.getSubMethodTable().getTestMethods());
+        for (TestMethod method : methods) {
+            references.add(method.getTestClass());
+            for (CodeLine codeLine : method.getCodeBody()) {
+                addResolvedReferences(codeLine.getCode(), references);
+            }
+        }
+        List<String> result = new ArrayList<>(references.size());
+        for (Object reference : references) {
+            if (reference instanceof TestMethod) {
+                result.add(((TestMethod) reference).getKey());
+            } else if (reference instanceof TestField) {
+                result.add(((TestField) reference).getKey());
+            } else if (reference instanceof TestClass) {
+                result.add(((TestClass) reference).getKey());
+            } else {
+                result.add(String.valueOf(reference));
+            }
+        }
+        return result;
+    }
+
+    // parallel and lazy resolution must give the same result as the sequential one
+    @Test
+    public void keyReferenceResolutionModes()
+            throws YamlConvertException, IllegalDataStructureException {
+        File yamlFile = new File(testResourceDir("yamlConversion"), "srcTree");
+        SrcTree srcTree = new SrcTree();
+        srcTree.fromYamlObject(YamlUtils.load(yamlFile));
+        srcTree.resolveKeyReference();
+        List<String> expected = resolvedReferenceKeys(srcTree);
+        assertFalse(expected.contains("null"));
+
+        SrcTree parallelSrcTree = new SrcTree();
+        parallelSrcTree.fromYamlObject(YamlUtils.load(yamlFile));
+        parallelSrcTree.resolveKeyReference(2);
+        assertEquals(expected, resolvedReferenceKeys(parallelSrcTree));
+
+        SrcTree lazySrcTree = new SrcTree();
+        lazySrcTree.fromYamlObject(YamlUtils.load(yamlFile));
+        lazySrcTree.resolveKeyReferenceLazily();
+        assertEquals(expected, resolvedReferenceKeys(lazySrcTree));
+    }
 }
@@ -0,0 +1,9 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.classPath.input;
+
+import org.sahagin.runlib.external.TestDoc;
+
+public class SrcBase {
+
+    @TestDoc("Doc:pageMethod")
+    public void pageMethod() {}
+}
@@ -0,0 +1,12 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.classPath.input;
+
+import org.junit.Test;
+import org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.classPath.lib.sub.LibPage;
+
+public class TestMain {
+
+    @Test
+    public void test() {
+        new LibPage().pageMethod();
+    }
+}
@@ -0,0 +1,6 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.classPath.lib.sub;
+
+import org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.classPath.input.SrcBase;
+
+// compiled to the class directory, and not given to the generator as a source file
+public class LibPage extends SrcBase {}
@@ -0,0 +1,15 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.prefilter.input;
+
+// this file contains neither @Test nor @TestDoc,
+// so it is not parsed when the prefilter is enabled
+public class TestHelper {
+
+    public static TestPage createPage() {
+        return new TestPage();
+    }
+
+    public static void log(String message) {}
+
+    public static class Inner {}
+
+}
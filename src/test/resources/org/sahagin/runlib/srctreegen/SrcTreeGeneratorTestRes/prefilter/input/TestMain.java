@@ -0,0 +1,13 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.prefilter.input;
+
+import org.junit.Test;
+
+public class TestMain {
+
+    @Test
+    public void test() {
+        TestPage page = TestHelper.createPage();
+        page.pageMethod("abc");
+        TestHelper.log("Test and TestDoc in the string literal are ignored");
+    }
+}
@@ -0,0 +1,12 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.prefilter.input;
+
+import org.sahagin.runlib.external.PageDoc;
+import org.sahagin.runlib.external.TestDoc;
+
+@PageDoc("Doc:TestPage")
+public class TestPage {
+
+    @TestDoc("Doc:pageMethod:{arg}")
+    public void pageMethod(String arg) {}
+
+}
@@ -0,0 +1,12 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.pruneUnreachable.input;
+
+import org.junit.Test;
+
+public class TestMain {
+
+    @Test
+    public void test() {
+        TestPage page = new TestSubPage();
+        page.reachable();
+    }
+}
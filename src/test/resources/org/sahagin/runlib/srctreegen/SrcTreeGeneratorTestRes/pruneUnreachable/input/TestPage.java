@@ -0,0 +1,22 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.pruneUnreachable.input;
+
+import org.sahagin.runlib.external.PageDoc;
+import org.sahagin.runlib.external.TestDoc;
+
+@PageDoc("Doc:TestPage")
+public class TestPage {
+
+    @TestDoc("Doc:reachable")
+    public void reachable() {
+        nested();
+    }
+
+    @TestDoc("Doc:nested")
+    public void nested() {}
+
+    @TestDoc("Doc:unreachable")
+    public void unreachable() {
+        nested();
+    }
+
+}
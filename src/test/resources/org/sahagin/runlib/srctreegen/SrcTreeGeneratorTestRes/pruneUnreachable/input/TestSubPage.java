@@ -0,0 +1,16 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.pruneUnreachable.input;
+
+import org.sahagin.runlib.external.PageDoc;
+import org.sahagin.runlib.external.TestDoc;
+
+@PageDoc("Doc:TestSubPage")
+public class TestSubPage extends TestPage {
+
+    // reachable since this method may be called instead of TestPage.reachable
+    @TestDoc("Doc:sub:reachable")
+    @Override
+    public void reachable() {
+        nested();
+    }
+
+}
@@ -0,0 +1,13 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.srcFileFilter.input;
+
+import org.junit.Test;
+import org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.srcFileFilter.input2.TestPage;
+
+public class TestMain {
+
+    @Test
+    public void test() {
+        TestPage page = new TestPage();
+        page.doSomething();
+    }
+}
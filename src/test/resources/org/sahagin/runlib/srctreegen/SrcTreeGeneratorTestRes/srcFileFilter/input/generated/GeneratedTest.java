@@ -0,0 +1,10 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.srcFileFilter.input.generated;
+
+import org.junit.Test;
+
+// excluded by the source file filter
+public class GeneratedTest {
+
+    @Test
+    public void test() {}
+}
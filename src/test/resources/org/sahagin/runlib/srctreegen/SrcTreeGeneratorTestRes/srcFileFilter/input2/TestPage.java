@@ -0,0 +1,13 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.srcFileFilter.input2;
+
+import org.sahagin.runlib.external.PageDoc;
+import org.sahagin.runlib.external.TestDoc;
+
+// in the other source root directory
+@PageDoc("Doc:TestPage")
+public class TestPage {
+
+    @TestDoc("Doc:doSomething")
+    public void doSomething() {}
+
+}
@@ -0,0 +1,12 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.testSelection.input;
+
+import org.junit.Test;
+
+public class OtherTest {
+
+    @Test
+    public void selected() {
+        TestPage page = new TestPage();
+        page.second();
+    }
+}
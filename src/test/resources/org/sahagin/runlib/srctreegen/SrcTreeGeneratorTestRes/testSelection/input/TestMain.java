@@ -0,0 +1,18 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.testSelection.input;
+
+import org.junit.Test;
+
+public class TestMain {
+
+    @Test
+    public void selected() {
+        TestPage page = new TestPage();
+        page.first();
+    }
+
+    @Test
+    public void notSelected() {
+        TestPage page = new TestPage();
+        page.second();
+    }
+}
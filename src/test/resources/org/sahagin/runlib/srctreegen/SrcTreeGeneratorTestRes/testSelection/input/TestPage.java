@@ -0,0 +1,15 @@
+package org.sahagin.runlib.srctreegen.SrcTreeGeneratorTestRes.testSelection.input;
+
+import org.sahagin.runlib.external.PageDoc;
+import org.sahagin.runlib.external.TestDoc;
+
+@PageDoc("Doc:TestPage")
+public class TestPage {
+
+    @TestDoc("Doc:first")
+    public void first() {}
+
+    @TestDoc("Doc:second")
+    public void second() {}
+
+}